@@ -1,4 +1,3 @@
-
 plugins {
     id("java")
     application
@@ -11,13 +10,55 @@ repositories {
     mavenCentral()
 }
 
+// JMH 效能測試 (src/jmh/java), 可存取 main 的類別
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[jmh.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
+val jmhVersion = "1.37"
+
 dependencies {
     // H2 版本必須是 2.1.214 才能相容 JDK 1.8
     implementation("com.h2database:h2:2.1.214")
-    // Guava (用於 Strings.repeat())
-    implementation("com.google.guava:guava:33.2.1-jre")
+
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:$jmhVersion")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
 }
 
 application {
     mainClass = "com.example.realtimevalsystem.MainApplication"
-}
\ No newline at end of file
+}
+
+// 將 -Dnav.* 系統屬性 (執行緒模型, 報價日誌等) 轉交給應用程式: ./gradlew run -Dnav.pipeline=conflating
+tasks.named<JavaExec>("run") {
+    systemProperties(System.getProperties().filterKeys { it.toString().startsWith("nav.") }.mapKeys { it.key.toString() })
+}
+
+// 單元測試 (src/test/java): ./gradlew test [--tests XxxTest], check 也會執行
+// Monte Carlo 與插值表的測試會建立上百萬筆樣本, 需要較大的 heap
+tasks.test {
+    useJUnitPlatform()
+    maxHeapSize = "2g"
+}
+
+// 執行 JMH: ./gradlew jmh [-Pjmh.includes=Regex]
+// 輸出 throughput 與 gc profiler 的配置速率 (gc.alloc.rate.norm), 結果存於 build/reports/jmh/results.json
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks in src/jmh/java."
+    dependsOn(tasks.named(jmh.classesTaskName))
+    classpath = jmh.runtimeClasspath
+    mainClass = "org.openjdk.jmh.Main"
+
+    val resultFile = layout.buildDirectory.file("reports/jmh/results.json")
+    doFirst { resultFile.get().asFile.parentFile.mkdirs() }
+    args("-prof", "gc", "-rf", "json", "-rff", resultFile.get().asFile.absolutePath)
+    project.findProperty("jmh.includes")?.let { args(it.toString()) }
+}
@@ -0,0 +1,82 @@
+package com.example.realtimevalsystem.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多個投資組合持有重疊合約時, 共用合約價格 (ContractPriceTable) 的效果
+ * 合成宇宙只有 universeContracts 筆持倉 (每標的 20 筆), portfolios 個投資組合各自抽樣 positionsPerPortfolio 筆,
+ * 因此每個合約平均被 portfolios * positionsPerPortfolio / universeContracts 筆持倉持有;
+ * 每次呼叫讓每個標的各跳動一次並等待所有分片處理完畢 (單位為每秒處理的市場快照數)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ContractPriceSharingBenchmark {
+
+    @Param({"true", "false"})
+    public boolean shared;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"2000"})
+    public int universeContracts;
+
+    @Param({"1000"})
+    public int portfolios;
+
+    @Param({"100"})
+    public int positionsPerPortfolio;
+
+    private MultiPortfolioValuationEngine engine;
+    private String[] tickers;
+    private double[] basePrices;
+    private double bump;
+
+    @Setup
+    public void setUp() {
+        SyntheticBookGenerator universe = SyntheticBookGenerator.forPositionCount(universeContracts, 20, 42L);
+        tickers = universe.getTickers().toArray(new String[0]);
+        basePrices = new double[tickers.length];
+        for (int u = 0; u < tickers.length; u++) {
+            basePrices[u] = universe.getInitialPrices().get(tickers[u]);
+        }
+        engine = new MultiPortfolioValuationEngine(
+                universe.clientPortfolios(portfolios, positionsPerPortfolio, 7L),
+                universe.getSecurities(), universe.getInitialPrices(), new OptionPricingService(), threads, shared);
+        engine.setListener((portfolioId, update) -> { });
+        engine.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.stop();
+    }
+
+    @Benchmark
+    public void marketSnapshot() {
+        bump = bump > 0.01 ? -0.01 : bump + 0.001;
+        for (int u = 0; u < tickers.length; u++) {
+            engine.onStockPriceUpdate(tickers[u], basePrices[u] * (1.0 + bump));
+        }
+        while (!engine.isIdle()) {
+            Thread.yield();
+        }
+    }
+}
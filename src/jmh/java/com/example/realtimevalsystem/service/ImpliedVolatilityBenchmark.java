@@ -0,0 +1,72 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.ImpliedVolatilityResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一批 quoteCount 筆報價的隱含波動率求解時間 (毫秒), 依 fork-join 執行緒數與 N(x) 實作
+ * 報價以已知波動率 (0.05 - 1.5, 到期 0.02 - 3 年, 履約價 50% - 200%) 計算
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ImpliedVolatilityBenchmark {
+
+    @Param({"1000000"})
+    public int quoteCount;
+
+    @Param({"1", "4", "8"})
+    public int parallelism;
+
+    @Param({NormalCdf.CODY, NormalCdf.TABLE})
+    public String normalCdf;
+
+    private ImpliedVolatilityService service;
+    private double[] prices;
+    private double[] spots;
+    private double[] strikes;
+    private double[] maturities;
+    private double[] signs;
+
+    @Setup
+    public void setUp() {
+        OptionPricingService pricingService = new OptionPricingService(NormalCdf.create(normalCdf));
+        service = new ImpliedVolatilityService(pricingService);
+        RandomStream random = RandomStream.create(RandomStream.SPLITTABLE, 2024L);
+        prices = new double[quoteCount];
+        spots = new double[quoteCount];
+        strikes = new double[quoteCount];
+        maturities = new double[quoteCount];
+        signs = new double[quoteCount];
+        for (int i = 0; i < quoteCount; i++) {
+            spots[i] = 100.0;
+            strikes[i] = 100.0 * (0.5 + 1.5 * random.nextDouble());
+            maturities[i] = 0.02 + 2.98 * random.nextDouble();
+            double sigma = 0.05 + 1.45 * random.nextDouble();
+            boolean call = (i & 1) == 0;
+            signs[i] = call ? OptionPricingService.CALL_SIGN : OptionPricingService.PUT_SIGN;
+            prices[i] = call ? pricingService.calculateCallPrice(100.0, strikes[i], sigma, maturities[i])
+                    : pricingService.calculatePutPrice(100.0, strikes[i], sigma, maturities[i]);
+        }
+    }
+
+    @Benchmark
+    public ImpliedVolatilityResult solve() {
+        return service.solve(prices, spots, strikes, maturities, signs, parallelism);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.realtimevalsystem.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 以最快速度重播報價日誌到 PortfolioValuationService (score 為每微秒處理的 tick 數)
+ * - replayOnly:     只讀取日誌, 監聽器為 no-op (日誌讀取本身的成本)
+ * - replayValuation: 讀取日誌 + 帳本重新估值
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class JournalReplayBenchmark {
+
+    private static final int TICKS = 1 << 20;
+
+    @Param({"1000", "100000"})
+    public int positionCount;
+
+    private Path directory;
+    private TickJournalReplayPublisher replayOnly;
+    private TickJournalReplayPublisher replayValuation;
+    private double checksum;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticBookGenerator portfolio = SyntheticBookGenerator.forPositionCount(positionCount, 100, 42L);
+        int[] tickerIndexes = new int[TICKS];
+        double[] prices = portfolio.tickPrices(tickerIndexes, 7L);
+
+        directory = Files.createTempDirectory("tick-journal-bench");
+        SymbolTable journalSymbols = new SymbolTable();
+        try (TickJournalWriter writer = new TickJournalWriter(directory, portfolio.getTickers(), journalSymbols, TICKS / 4)) {
+            for (int i = 0; i < TICKS; i++) {
+                writer.onStockPriceUpdate(journalSymbols.idOf(portfolio.getTickers().get(tickerIndexes[i])), prices[i]);
+            }
+        }
+
+        replayOnly = new TickJournalReplayPublisher(directory, TickJournalReplayPublisher.Speed.MAX);
+        replayOnly.setListener((ticker, price) -> checksum += price);
+
+        PortfolioValuationService valuationService = new PortfolioValuationService(
+                portfolio.getPositions(), portfolio.getSecurities(), portfolio.getInitialPrices(), new OptionPricingService());
+        replayValuation = new TickJournalReplayPublisher(directory, TickJournalReplayPublisher.Speed.MAX,
+                valuationService.getSymbolTable());
+        replayValuation.addSymbolIdListener(valuationService); // 與 MainApplication 相同, 以代碼 id 送入
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public long replayOnly() throws IOException {
+        return replayOnly.replay();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public long replayValuation() throws IOException {
+        return replayValuation.replay();
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.realtimevalsystem.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 延遲指標在熱路徑上的成本 (score 為每次操作的奈秒數)
+ * - nanoTime:              一次 System.nanoTime() (每個時間戳的成本)
+ * - record:                一次 LatencyHistogram.record
+ * - record4Threads:        4 個線程同時記錄到同一個直方圖 (共用桶的快取行競爭)
+ * - recordValuation:       估值線程每次發布的指標成本 (兩個直方圖 + 兩個計數器)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LatencyMetricsBenchmark {
+
+    private final LatencyHistogram histogram = new LatencyHistogram("benchmark");
+    private final LatencyMetrics metrics = new LatencyMetrics();
+
+    @State(Scope.Thread)
+    public static class Sample {
+        long value = 1_000L;
+
+        // 在數個桶之間變動的延遲樣本 (約 1 - 65 微秒)
+        long next() {
+            value = (value * 2862933555777941757L + 3037000493L) & 0xFFFFL;
+            return 1_000L + value;
+        }
+    }
+
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Benchmark
+    public void record(Sample sample) {
+        histogram.record(sample.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void record4Threads(Sample sample) {
+        histogram.record(sample.next());
+    }
+
+    @Benchmark
+    public void recordValuation(Sample sample) {
+        long start = sample.next();
+        metrics.recordValuation(0L, start, start + sample.next(), 1);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.RiskReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monte Carlo VaR / ES 的執行時間 (score 為每次的毫秒數)
+ * 每次模擬 scenarioCount 個情境, 每個情境重新估值整個帳本; parallelism = 0 代表使用所有 CPU 核心
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class MonteCarloRiskBenchmark {
+
+    private static final double[] CONFIDENCE_LEVELS = {0.95, 0.99, 0.999};
+
+    @Param({"10000"})
+    public int positionCount;
+
+    @Param({"100000"})
+    public int scenarioCount;
+
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private MonteCarloRiskEngine engine;
+
+    @Setup
+    public void setUp() {
+        SyntheticBookGenerator portfolio = SyntheticBookGenerator.forPositionCount(positionCount, 100, 42L);
+        engine = new MonteCarloRiskEngine(portfolio.getPositions(), portfolio.getSecurities(), portfolio.getInitialPrices(),
+                new OptionPricingService());
+        engine.setConstantCorrelation(0.3);
+    }
+
+    @Benchmark
+    public RiskReport oneDayVaR() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return engine.run(scenarioCount, 1.0 / 252, CONFIDENCE_LEVELS, 42L, threads);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.realtimevalsystem.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MultiPortfolioValuationEngine 在 1/2/4/8 個工作線程下的吞吐量
+ * 每次呼叫讓每個標的各跳動一次 (分片內不會發生 conflation), 再等待所有分片處理完畢;
+ * 結果單位為 "每秒處理的市場快照數", 理想情況下隨線程數線性成長 (受限於實體核心數)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class MultiPortfolioBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"256"})
+    public int portfolios;
+
+    @Param({"200"})
+    public int positionsPerPortfolio;
+
+    private MultiPortfolioValuationEngine engine;
+    private String[] tickers;
+    private int[] symbolIds;
+    private double[] basePrices;
+    private double bump;
+
+    @Setup
+    public void setUp() {
+        SyntheticBookGenerator universe = SyntheticBookGenerator.forPositionCount(5_000, 100, 42L);
+        tickers = universe.getTickers().toArray(new String[0]);
+        basePrices = new double[tickers.length];
+        for (int u = 0; u < tickers.length; u++) {
+            basePrices[u] = universe.getInitialPrices().get(tickers[u]);
+        }
+        engine = new MultiPortfolioValuationEngine(
+                universe.clientPortfolios(portfolios, positionsPerPortfolio, 7L),
+                universe.getSecurities(), universe.getInitialPrices(), new OptionPricingService(), threads, true, new SymbolTable());
+        symbolIds = new int[tickers.length];
+        for (int u = 0; u < tickers.length; u++) {
+            symbolIds[u] = engine.getSymbolTable().intern(tickers[u]); // 與 MainApplication 相同, 以代碼 id 送入
+        }
+        engine.setListener((portfolioId, update) -> { });
+        engine.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.stop();
+    }
+
+    @Benchmark
+    public void marketSnapshot() {
+        bump = bump > 0.01 ? -0.01 : bump + 0.001;
+        for (int u = 0; u < tickers.length; u++) {
+            engine.onStockPriceUpdate(symbolIds[u], basePrices[u] * (1.0 + bump));
+        }
+        while (!engine.isIdle()) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.realtimevalsystem.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各 NormalCdf 實作的速度 (score 為每微秒的次數)
+ * - cdf:              N(x) 本身, x 在 [-4, 4] 均勻分佈
+ * - prices:           以預先計算的合約常數批次定價 (每筆 2 次 N(x))
+ * - pricesAndGreeks:  CompiledBook 每個 tick 使用的價格 + Greeks (每筆 2 次 N(x) 與 1 次 exp)
+ * 精度見 NormalCdfTest
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NormalCdfBenchmark {
+
+    private static final int SIZE = 1024;
+
+    @Param({NormalCdf.CODY, NormalCdf.TABLE, NormalCdf.ABRAMOWITZ_STEGUN})
+    public String method;
+
+    private NormalCdf cdf;
+    private OptionPricingService pricingService;
+    private final double[] zs = new double[SIZE];
+    private final double[] strikes = new double[SIZE];
+    private final double[] maturities = new double[SIZE];
+    private final double[] driftTerms = new double[SIZE];
+    private final double[] sigmaSqrtTs = new double[SIZE];
+    private final double[] discountedStrikes = new double[SIZE];
+    private final double[] signs = new double[SIZE];
+    private final double[] out = new double[SIZE];
+    private final GreeksBuffer greeks = new GreeksBuffer(SIZE);
+
+    @Setup
+    public void setUp() {
+        cdf = NormalCdf.create(method);
+        pricingService = new OptionPricingService(cdf);
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            zs[i] = 8.0 * random.nextDouble() - 4.0;
+            double sigma = 0.1 + 0.5 * random.nextDouble();
+            strikes[i] = 50.0 + 100.0 * random.nextDouble();
+            maturities[i] = 0.05 + 2.0 * random.nextDouble();
+            driftTerms[i] = OptionPricingService.driftTerm(sigma, maturities[i]);
+            sigmaSqrtTs[i] = OptionPricingService.sigmaSqrtT(sigma, maturities[i]);
+            discountedStrikes[i] = OptionPricingService.discountedStrike(strikes[i], maturities[i]);
+            signs[i] = random.nextBoolean() ? OptionPricingService.CALL_SIGN : OptionPricingService.PUT_SIGN;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double cdf() {
+        double sum = 0.0;
+        for (int i = 0; i < SIZE; i++) {
+            sum += cdf.cdf(zs[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void prices() {
+        pricingService.calculatePrices(100.0, strikes, driftTerms, sigmaSqrtTs, discountedStrikes, signs, out, 0, SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void pricesAndGreeks() {
+        pricingService.calculatePricesAndGreeks(100.0, strikes, maturities, driftTerms, sigmaSqrtTs, discountedStrikes,
+                signs, out, greeks, 0, SIZE);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.realtimevalsystem.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 常態分佈亂數的產生速度 (score 為每微秒的樣本數)
+ * - sampler:            每個線程自己的 RandomStream + NormalSampler (演算法 x 取樣方法)
+ * - sharedJdkRandom:    舊的做法, 所有線程共用一個 java.util.Random.nextGaussian (AtomicLong CAS + synchronized 的 spare)
+ * - sharedJdkRandom4Threads: 同上, 4 個線程同時取樣 (競爭的成本)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NormalSamplerBenchmark {
+
+    private static final int SAMPLES = 1024;
+    private static final Random SHARED = new Random(42L);
+
+    /**
+     * 每個線程自己的取樣器 (參數只套用在 sampler benchmark)
+     */
+    @State(Scope.Thread)
+    public static class Sampler {
+        @Param({RandomStream.JDK, RandomStream.SPLITTABLE, RandomStream.XOROSHIRO_128_PLUS, RandomStream.XOROSHIRO_128_PLUS_PLUS})
+        public String algorithm;
+
+        @Param({NormalSampler.POLAR, NormalSampler.ZIGGURAT})
+        public String normalMethod;
+
+        NormalSampler sampler;
+
+        @Setup
+        public void setUp() {
+            sampler = new SimulationRandom(algorithm, normalMethod, 42L).newSampler();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double sampler(Sampler state) {
+        NormalSampler sampler = state.sampler;
+        double sum = 0.0;
+        for (int i = 0; i < SAMPLES; i++) {
+            sum += sampler.nextGaussian();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double sharedJdkRandom() {
+        return sumShared();
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(SAMPLES)
+    public double sharedJdkRandom4Threads() {
+        return sumShared();
+    }
+
+    private static double sumShared() {
+        double sum = 0.0;
+        for (int i = 0; i < SAMPLES; i++) {
+            sum += SHARED.nextGaussian();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.realtimevalsystem.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OptionPricingService 單筆定價、批次定價與 N(x)/erf(x) 的吞吐量
+ * 批次 benchmark 每次呼叫計算 SIZE 筆, 以 OperationsPerInvocation 換算成每筆選擇權的吞吐量
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptionPricingBenchmark {
+
+    private static final int SIZE = 1024; // 2 的次方, 以位元遮罩輪替輸入
+
+    private final OptionPricingService pricingService = new OptionPricingService();
+    private final double[] spots = new double[SIZE];
+    private final double[] strikes = new double[SIZE];
+    private final double[] sigmas = new double[SIZE];
+    private final double[] maturities = new double[SIZE];
+    private final double[] zs = new double[SIZE];
+    private final boolean[] isCall = new boolean[SIZE];
+    private final double[] driftTerms = new double[SIZE];
+    private final double[] sigmaSqrtTs = new double[SIZE];
+    private final double[] discountedStrikes = new double[SIZE];
+    private final double[] signs = new double[SIZE];
+    private final double[] out = new double[SIZE];
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            spots[i] = 50.0 + 100.0 * random.nextDouble();
+            strikes[i] = 50.0 + 100.0 * random.nextDouble();
+            sigmas[i] = 0.1 + 0.5 * random.nextDouble();
+            maturities[i] = 0.05 + 2.0 * random.nextDouble();
+            zs[i] = 8.0 * random.nextDouble() - 4.0;
+            isCall[i] = random.nextBoolean();
+            driftTerms[i] = OptionPricingService.driftTerm(sigmas[i], maturities[i]);
+            sigmaSqrtTs[i] = OptionPricingService.sigmaSqrtT(sigmas[i], maturities[i]);
+            discountedStrikes[i] = OptionPricingService.discountedStrike(strikes[i], maturities[i]);
+            signs[i] = isCall[i] ? OptionPricingService.CALL_SIGN : OptionPricingService.PUT_SIGN;
+        }
+    }
+
+    private int next() {
+        return cursor = (cursor + 1) & (SIZE - 1);
+    }
+
+    @Benchmark
+    public double callPrice() {
+        int i = next();
+        return pricingService.calculateCallPrice(spots[i], strikes[i], sigmas[i], maturities[i]);
+    }
+
+    @Benchmark
+    public double putPrice() {
+        int i = next();
+        return pricingService.calculatePutPrice(spots[i], strikes[i], sigmas[i], maturities[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void scalarLoop() {
+        for (int i = 0; i < SIZE; i++) {
+            out[i] = isCall[i]
+                    ? pricingService.calculateCallPrice(spots[i], strikes[i], sigmas[i], maturities[i])
+                    : pricingService.calculatePutPrice(spots[i], strikes[i], sigmas[i], maturities[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void batch() {
+        pricingService.calculatePrices(spots, strikes, sigmas, maturities, isCall, out, SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void batchPrecomputed() {
+        pricingService.calculatePrices(spots[0], strikes, driftTerms, sigmaSqrtTs, discountedStrikes, signs, out, 0, SIZE);
+    }
+
+    @Benchmark
+    public double normalCdf() {
+        return pricingService.N(zs[next()]);
+    }
+
+    @Benchmark
+    public double erf() {
+        return pricingService.erf(zs[next()]);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.PortfolioUpdate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PortfolioValuationService 的重新估值與端到端延遲
+ * - revaluation: 沒有訂閱者, 只量測 tick -> 帳本重新估值
+ * - revaluationBySymbolId: 同上, 但以代碼 id 送入 (陣列查找標的, 沒有 String 雜湊/比對)
+ * - endToEnd:    onStockPriceUpdate -> onPortfolioUpdate, 訂閱者為 no-op
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class PortfolioValuationBenchmark {
+
+    private static final int TICKS = 4096; // 2 的次方, 以位元遮罩輪替 tick
+
+    @Param({"10", "1000", "100000"})
+    public int positionCount;
+
+    @Param({"100"})
+    public int positionsPerUnderlying;
+
+    private PortfolioValuationService revaluationOnly;
+    private PortfolioValuationService endToEnd;
+    private String[] tickTickers;
+    private int[] tickSymbolIds;
+    private double[] tickPrices;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        SyntheticBookGenerator portfolio = SyntheticBookGenerator.forPositionCount(positionCount, positionsPerUnderlying, 42L);
+        int[] tickerIndexes = new int[TICKS];
+        tickPrices = portfolio.tickPrices(tickerIndexes, 7L);
+        tickTickers = new String[TICKS];
+        for (int i = 0; i < TICKS; i++) {
+            tickTickers[i] = portfolio.getTickers().get(tickerIndexes[i]);
+        }
+
+        OptionPricingService pricingService = new OptionPricingService();
+        revaluationOnly = new PortfolioValuationService(
+                portfolio.getPositions(), portfolio.getSecurities(), portfolio.getInitialPrices(), pricingService);
+        tickSymbolIds = new int[TICKS];
+        for (int i = 0; i < TICKS; i++) {
+            tickSymbolIds[i] = revaluationOnly.getSymbolTable().idOf(tickTickers[i]);
+        }
+        endToEnd = new PortfolioValuationService(
+                portfolio.getPositions(), portfolio.getSecurities(), portfolio.getInitialPrices(), pricingService);
+        endToEnd.setListener(new NoOpListener());
+    }
+
+    @Benchmark
+    public void revaluation() {
+        int i = cursor = (cursor + 1) & (TICKS - 1);
+        revaluationOnly.onStockPriceUpdate(tickTickers[i], tickPrices[i]);
+    }
+
+    @Benchmark
+    public void revaluationBySymbolId() {
+        int i = cursor = (cursor + 1) & (TICKS - 1);
+        revaluationOnly.onStockPriceUpdate(tickSymbolIds[i], tickPrices[i]);
+    }
+
+    @Benchmark
+    public void endToEnd() {
+        int i = cursor = (cursor + 1) & (TICKS - 1);
+        endToEnd.onStockPriceUpdate(tickTickers[i], tickPrices[i]);
+    }
+
+    // 保留最後一筆更新的參考, 避免 escape analysis 把整個發布流程消除
+    private static final class NoOpListener implements PortfolioResultListener {
+        private PortfolioUpdate last;
+
+        @Override
+        public void onPortfolioUpdate(PortfolioUpdate update) {
+            last = update;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.Position;
+import com.example.realtimevalsystem.model.PositionTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 載入 5M 列的持倉 CSV (score 為每次載入的毫秒數)
+ * - legacyReader:     舊版做法, BufferedReader + replaceAll("\\s+", "") + split(",") + Long.parseLong
+ * - mappedSequential: PositionLoader.loadPositionTable, 單線程
+ * - mappedParallel:   PositionLoader.loadPositionTable, 切成 parallelism 個區塊平行解析
+ * distinctSymbols 控制代碼字典的大小 (少量代碼重複出現 vs 大量不同代碼)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class PositionLoaderBenchmark {
+
+    private static final int ROWS = 5_000_000;
+
+    @Param({"500", "250000"})
+    public int distinctSymbols;
+
+    @Param({"4"})
+    public int parallelism;
+
+    private Path file;
+    private final PositionLoader loader = new PositionLoader();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("positions-bench", ".csv");
+        Random random = new Random(42L);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("symbol,positionSize\n");
+            for (int i = 0; i < ROWS; i++) {
+                writer.write("SYN" + random.nextInt(distinctSymbols) + "," + (random.nextInt(2_000_001) - 1_000_000) + "\n");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<Position> legacyReader() throws IOException {
+        List<Position> positions = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine(); // 標頭
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.replaceAll("\\s+", "").split(",");
+                if (parts.length == 2) {
+                    positions.add(new Position(parts[0], Long.parseLong(parts[1])));
+                }
+            }
+        }
+        return positions;
+    }
+
+    @Benchmark
+    public PositionTable mappedSequential() throws IOException {
+        return loader.loadPositionTable(file);
+    }
+
+    @Benchmark
+    public PositionTable mappedParallel() throws IOException {
+        return loader.loadPositionTable(file, parallelism);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.realtimevalsystem.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CompiledBook 每個 tick 的重新估值: 完整 Black-Scholes vs Chebyshev 插值 (score 為每個 tick 的奈秒數)
+ * - exact:         每個 tick 完整定價 (價格 + Greeks)
+ * - interpolation: 插值模式, tick 都落在插值表範圍內 (±BAND/2), 插值表在 setUp 中建立完成
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PriceSurfaceBenchmark {
+
+    private static final int TICKS = 4096; // 2 的次方, 以位元遮罩輪替 tick
+    private static final double BAND = 0.05;
+
+    @Param({"exact", "interpolation"})
+    public String mode;
+
+    @Param({"10", "100"})
+    public int optionsPerUnderlying;
+
+    @Param({"1e-6"})
+    public double maxError;
+
+    private CompiledBook book;
+    private int[] tickUnderlyings;
+    private double[] tickPrices;
+    private int cursor;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        SyntheticBookGenerator synthetic = new SyntheticBookGenerator(100, optionsPerUnderlying, 42L);
+        book = new CompiledBook(synthetic.getPositions(), synthetic.getSecurities(), synthetic.getInitialPrices(),
+                new OptionPricingService());
+        if (mode.equals("interpolation")) {
+            book.enableInterpolationMode(BAND, maxError);
+        }
+        int underlyings = book.underlyingCount();
+        double[] centers = new double[underlyings];
+        for (int u = 0; u < underlyings; u++) {
+            centers[u] = book.getUnderlyingPrice(u);
+            book.updateUnderlyingPrice(u, centers[u]);
+        }
+        ChebyshevPriceCache cache = book.getPriceCache();
+        for (int u = 0; cache != null && u < underlyings; u++) {
+            while (cache.surface(u, centers[u]) == null) {
+                Thread.sleep(1);
+            }
+        }
+
+        RandomStream random = RandomStream.create(RandomStream.SPLITTABLE, 7L);
+        tickUnderlyings = new int[TICKS];
+        tickPrices = new double[TICKS];
+        for (int i = 0; i < TICKS; i++) {
+            int u = random.nextInt(underlyings);
+            tickUnderlyings[i] = u;
+            tickPrices[i] = centers[u] * (1.0 + 0.5 * BAND * (2.0 * random.nextDouble() - 1.0));
+        }
+    }
+
+    @Benchmark
+    public double revalue() {
+        int i = cursor = (cursor + 1) & (TICKS - 1);
+        book.updateUnderlyingPrice(tickUnderlyings[i], tickPrices[i]);
+        return book.getTotalNAV();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.ScenarioGridReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 情境網格重新估值一次的時間 (毫秒): 500 個標的 x (1 股票 + 99 選擇權) = 50,000 筆持倉,
+ * 標的價格 ±20% (間隔 1%) x 波動率 ±50% (間隔 10%) = 41 x 21 個情境; parallelism = 0 代表使用所有 CPU 核心
+ * 持倉版本不變, 每次只重新讀取標的價格 (帳本在第一次暖機時編譯)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ScenarioGridBenchmark {
+
+    @Param({"1", "0"})
+    public int parallelism;
+
+    @Param({NormalCdf.CODY, NormalCdf.TABLE})
+    public String normalCdf;
+
+    private ScenarioGridEngine engine;
+    private double[] spotShocks;
+    private double[] volShocks;
+
+    @Setup
+    public void setUp() {
+        OptionPricingService pricingService = new OptionPricingService(NormalCdf.create(normalCdf));
+        SyntheticBookGenerator synthetic = new SyntheticBookGenerator(500, 99, 42L);
+        PortfolioValuationService valuation = new PortfolioValuationService(
+                synthetic.getPositions(), synthetic.getSecurities(), synthetic.getInitialPrices(), pricingService);
+        engine = new ScenarioGridEngine(valuation, synthetic.getSecurities(), pricingService);
+        spotShocks = ScenarioGridEngine.symmetricShocks(0.20, 20);
+        volShocks = ScenarioGridEngine.symmetricShocks(0.50, 10);
+    }
+
+    @Benchmark
+    public ScenarioGridReport refresh() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return engine.run(spotShocks, volShocks, threads);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.Security;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 證券主檔的啟動成本 (score 為每次的毫秒數)
+ * - batchInsert: 以批次 PreparedStatement 寫入空的 H2 資料庫
+ * - coldStart:   從 H2 讀取全部證券定義並寫入快照 (快照不存在或已失效時的啟動路徑)
+ * - warmStart:   只讀取快照, 不連線資料庫
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SecurityMasterBenchmark {
+
+    private static final String SOURCE_VERSION = "bench";
+    private static final AtomicInteger DATABASE_IDS = new AtomicInteger();
+
+    @Param({"200000"})
+    public int securityCount;
+
+    private Map<String, Security> securities;
+    private SecurityDefinitionService database;
+    private Path snapshotFile;
+    private SecuritySnapshotCache snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        securities = SyntheticBookGenerator.forPositionCount(securityCount, 100, 42L).getSecurities();
+        database = newDatabase();
+        database.createSchema();
+        database.insertSecurities(securities.values());
+
+        snapshotFile = Files.createTempFile("securities-bench", ".snapshot");
+        snapshot = new SecuritySnapshotCache(snapshotFile);
+        snapshot.save(securities, SOURCE_VERSION);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException, IOException {
+        database.close();
+        Files.deleteIfExists(snapshotFile);
+    }
+
+    // 服務在 close 前一直持有同一條連線, 不需要 DB_CLOSE_DELAY; close 後資料庫即被釋放
+    private static SecurityDefinitionService newDatabase() {
+        return new SecurityDefinitionService("jdbc:h2:mem:security_bench_" + DATABASE_IDS.incrementAndGet(), "sa", "");
+    }
+
+    /**
+     * 每次呼叫都是一個新的空資料庫 (只有 batchInsert 使用)
+     */
+    @State(Scope.Thread)
+    public static class EmptyDatabase {
+        SecurityDefinitionService database;
+
+        @Setup(Level.Invocation)
+        public void setUp() throws SQLException {
+            database = newDatabase();
+            database.createSchema();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws SQLException {
+            database.close();
+        }
+    }
+
+    @Benchmark
+    public int batchInsert(EmptyDatabase empty) throws SQLException {
+        return empty.database.insertSecurities(securities.values());
+    }
+
+    @Benchmark
+    public Map<String, Security> coldStart() throws SQLException, IOException {
+        Map<String, Security> loaded = database.loadSecurities();
+        snapshot.save(loaded, SOURCE_VERSION);
+        return loaded;
+    }
+
+    @Benchmark
+    public Map<String, Security> warmStart() {
+        return snapshot.load(SOURCE_VERSION);
+    }
+}
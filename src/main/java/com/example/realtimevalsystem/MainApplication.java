@@ -1,40 +1,121 @@
 package com.example.realtimevalsystem;
 
+import com.example.realtimevalsystem.model.PortfolioUpdate;
 import com.example.realtimevalsystem.model.Position;
 import com.example.realtimevalsystem.model.Security;
+import com.example.realtimevalsystem.service.LatencyMetrics;
+import com.example.realtimevalsystem.service.LoadGeneratorPublisher;
 import com.example.realtimevalsystem.service.MarketDataPublisher;
+import com.example.realtimevalsystem.service.MetricsReporter;
+import com.example.realtimevalsystem.service.MonteCarloRiskEngine;
+import com.example.realtimevalsystem.service.MultiPortfolioValuationEngine;
+import com.example.realtimevalsystem.service.NormalCdf;
 import com.example.realtimevalsystem.service.OptionPricingService;
 import com.example.realtimevalsystem.service.PortfolioValuationService;
+import com.example.realtimevalsystem.service.PositionFileWatcher;
 import com.example.realtimevalsystem.service.PositionLoader;
+import com.example.realtimevalsystem.service.ScenarioGridEngine;
 import com.example.realtimevalsystem.service.SecurityDefinitionService;
+import com.example.realtimevalsystem.service.SecuritySnapshotCache;
+import com.example.realtimevalsystem.service.SimulationRandom;
+import com.example.realtimevalsystem.service.SubscriptionRegistry;
+import com.example.realtimevalsystem.service.SyntheticBookGenerator;
+import com.example.realtimevalsystem.service.SymbolIdMarketDataListener;
+import com.example.realtimevalsystem.service.SymbolTable;
+import com.example.realtimevalsystem.service.TickJournalReplayPublisher;
+import com.example.realtimevalsystem.service.TickJournalWriter;
+import com.example.realtimevalsystem.service.ValuationPipeline;
+import com.example.realtimevalsystem.service.WaitStrategy;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import com.example.realtimevalsystem.service.ConflatingMarketDataDispatcher;
 import com.example.realtimevalsystem.service.ConsoleResultSubscriber;
 public class MainApplication {
 
+    // 內建範例證券資料的版本 (範例資料變動時更新, 讓舊的證券快照失效)
+    private static final String SAMPLE_SECURITY_VERSION = "sample-1";
+    private static final int MAX_REPORTED_PORTFOLIOS = 20;
+
     public static void main(String[] args) {
         System.out.println("系統啟動中...");
 
         try {
             // --- 1. 載入靜態資料 ----------------------------------------------------------------------------------------
-            // 初始化資料庫並載入證券定義
-            SecurityDefinitionService dbService = new SecurityDefinitionService();
-            dbService.initializeDatabase(); // 建立並插入資料
-            Map<String, Security> securityMap = dbService.loadSecurities();
-            System.out.println("資料庫載入完畢. 證券定義: " + securityMap.size() + " 筆");
+            // 載入時為每個代碼指派 int id, 之後報價在管線中只以 id 傳遞
+            SymbolTable symbols = new SymbolTable();
+
+            Map<String, Security> securityMap;
+            List<Position> positions;
+            Map<String, List<Position>> portfolios = null;
+            Map<String, Double> initialStockPrices;
+            Integer syntheticUnderlyings = Integer.getInteger("nav.synthetic.underlyings");
+            if (syntheticUnderlyings != null) {
+                // 壓力測試: 合成的證券 / 持倉 / 初始價格 (-Dnav.synthetic.underlyings=N -Dnav.synthetic.optionsPerUnderlying=M)
+                SyntheticBookGenerator synthetic = new SyntheticBookGenerator(syntheticUnderlyings,
+                        Integer.getInteger("nav.synthetic.optionsPerUnderlying", 9), Long.getLong("nav.synthetic.seed", 42L));
+                securityMap = synthetic.getSecurities();
+                positions = synthetic.getPositions();
+                initialStockPrices = synthetic.getInitialPrices();
+                System.out.println("合成帳本: " + syntheticUnderlyings + " 個標的, " + securityMap.size() + " 筆證券, " + positions.size() + " 筆持倉");
+            } else {
+                // 載入證券定義: 本地快照仍有效時直接使用 (不連線資料庫), 否則初始化資料庫後載入並更新快照
+                // (-Dnav.securityCache=<檔案> -Dnav.securityVersion=<證券主檔版本>)
+                String securityCacheFile = System.getProperty("nav.securityCache");
+                String securityVersion = System.getProperty("nav.securityVersion", SAMPLE_SECURITY_VERSION);
+                SecuritySnapshotCache securityCache = securityCacheFile == null ? null : new SecuritySnapshotCache(Paths.get(securityCacheFile));
+                securityMap = securityCache == null ? null : securityCache.load(securityVersion, symbols);
+                if (securityMap != null) {
+                    System.out.println("證券快照載入完畢. 證券定義: " + securityMap.size() + " 筆");
+                } else {
+                    try (SecurityDefinitionService dbService = new SecurityDefinitionService()) {
+                        dbService.initializeDatabase(); // 建立並插入資料
+                        securityMap = dbService.loadSecurities(symbols);
+                    }
+                    System.out.println("資料庫載入完畢. 證券定義: " + securityMap.size() + " 筆");
+                    if (securityCache != null) {
+                        securityCache.save(securityMap, securityVersion);
+                    }
+                }
+
+                // 載入 CSV 持倉: classpath 的 positions.csv, 或外部大檔案 (-Dnav.positions=<路徑> -Dnav.positionsParallelism=N)
+                // 多投資組合 (-Dnav.portfolios=<路徑>, 欄位 portfolioId,symbol,positionSize): 改以 MultiPortfolioValuationEngine 估值
+                PositionLoader positionLoader = new PositionLoader();
+                String positionsFile = System.getProperty("nav.positions");
+                String portfoliosFile = System.getProperty("nav.portfolios");
+                int parallelism = Integer.getInteger("nav.positionsParallelism", Runtime.getRuntime().availableProcessors());
+                if (portfoliosFile != null) {
+                    portfolios = positionLoader.loadPortfolios(Paths.get(portfoliosFile), parallelism);
+                    positions = null; // 各投資組合的持倉在 portfolios 中
+                    int rows = portfolios.values().stream().mapToInt(List::size).sum();
+                    System.out.println("CSV 載入完畢. 投資組合: " + portfolios.size() + " 個, 持倉: " + rows + " 筆");
+                } else {
+                    positions = positionsFile == null
+                            ? positionLoader.loadPositions("positions.csv")
+                            : positionLoader.loadPositions(Paths.get(positionsFile), parallelism);
+                    System.out.println("CSV 載入完畢. 持倉: " + positions.size() + " 筆");
+                }
 
-            // 載入 CSV 持倉
-            PositionLoader positionLoader = new PositionLoader();
-            List<Position> positions = positionLoader.loadPositions("positions.csv");
-            System.out.println("CSV 載入完畢. 持倉: " + positions.size() + " 筆");
+                // 設定股票的 "初始價格"
+                initialStockPrices = new HashMap<>();
+                initialStockPrices.put("AAPL", 110.00);  // 範例中的初始價格
+                initialStockPrices.put("TELSA", 450.00); // 範例中的初始價格
+            }
 
 
             // --- 2. 準備服務 -------------------------------------------------------------------------------------------
             // 建立定價引擎
-            Thread marketDataThread = getThread(positions, securityMap);
+            Thread marketDataThread = portfolios != null
+                    ? getPortfoliosThread(portfolios, securityMap, initialStockPrices, symbols)
+                    : getThread(positions, securityMap, initialStockPrices, symbols);
             marketDataThread.start();
 
             System.out.println("========================= 系統已啟動：等待市場數據更新...  ===============================");
@@ -48,39 +129,278 @@ public class MainApplication {
         }
     }
 
-    private static Thread getThread(List<Position> positions, Map<String, Security> securityMap) {
-        OptionPricingService pricingService = new OptionPricingService();
+    // N(x) 的實作 (-Dnav.normalCdf=cody|table|abramowitz-stegun)
+    private static OptionPricingService createPricingService() {
+        return new OptionPricingService(
+            NormalCdf.create(System.getProperty("nav.normalCdf", OptionPricingService.DEFAULT_NORMAL_CDF)));
+    }
+
+    // 多投資組合模式: 模擬發布者 -> MultiPortfolioValuationEngine (-Dnav.portfolioThreads=<分片數>), 每秒印出各投資組合的 NAV
+    private static Thread getPortfoliosThread(Map<String, List<Position>> portfolios, Map<String, Security> securityMap,
+                                              Map<String, Double> initialStockPrices, SymbolTable symbols) {
+        MultiPortfolioValuationEngine engine = new MultiPortfolioValuationEngine(
+            portfolios,
+            securityMap,
+            initialStockPrices,
+            createPricingService(),
+            Integer.getInteger("nav.portfolioThreads", Runtime.getRuntime().availableProcessors()),
+            true,
+            symbols
+        );
+        Map<String, PortfolioUpdate> latest = new ConcurrentHashMap<>();
+        engine.setListener(latest::put);
+        engine.start();
+        startPortfolioReport(latest);
 
-        // 設定股票的 "初始價格"
-        Map<String, Double> initialStockPrices = new HashMap<>();
-        initialStockPrices.put("AAPL", 110.00);  // 範例中的初始價格
-        initialStockPrices.put("TELSA", 450.00); // 範例中的初始價格
+        MarketDataPublisher publisher = new MarketDataPublisher(
+            securityMap,
+            initialStockPrices,
+            symbols,
+            SimulationRandom.fromSystemProperties()
+        );
+        publisher.addSymbolIdListener(engine);
+
+        Thread marketDataThread = new Thread(publisher);
+        marketDataThread.setName("MarketDataThread");
+        return marketDataThread;
+    }
+
+    private static Thread getThread(List<Position> positions, Map<String, Security> securityMap,
+                                    Map<String, Double> initialStockPrices, SymbolTable symbols) throws IOException {
+        OptionPricingService pricingService = createPricingService();
 
         // valuation engine
         PortfolioValuationService valuationService = new PortfolioValuationService(
             positions,
             securityMap,
             initialStockPrices,
-            pricingService
+            pricingService,
+            symbols
         );
 
-        // 建立 "訂閱者" (印出服務)
-        ConsoleResultSubscriber subscriber = new ConsoleResultSubscriber();
+        // 插值模式: 標的價格在 ±band 內時以 Chebyshev 插值表計價 (-Dnav.priceCacheBand=0.05 -Dnav.priceCacheMaxError=1e-6)
+        String priceCacheBand = System.getProperty("nav.priceCacheBand");
+        if (priceCacheBand != null) {
+            valuationService.enableInterpolationMode(Double.parseDouble(priceCacheBand),
+                Double.parseDouble(System.getProperty("nav.priceCacheMaxError", "1e-6")));
+        }
 
-        // 將 "訂閱者" 註冊到 "valuation engine"
-        valuationService.setListener(subscriber);
+        SimulationRandom simulationRandom = SimulationRandom.fromSystemProperties();
 
-        // 建立市場發布者
-        MarketDataPublisher publisher = new MarketDataPublisher(
-            securityMap,
-            initialStockPrices
-        );
+        // 啟動時先計算一次 Monte Carlo VaR / ES (-Dnav.varScenarios=N -Dnav.varHorizonDays=1 -Dnav.varCorrelation=0.3)
+        // 種子: -Dnav.seed, 未指定時為固定的預設種子 (模擬發布者未指定種子時仍每次不同)
+        Integer varScenarios = Integer.getInteger("nav.varScenarios");
+        if (varScenarios != null) {
+            MonteCarloRiskEngine riskEngine = new MonteCarloRiskEngine(positions, securityMap, initialStockPrices, pricingService);
+            riskEngine.setRandom(simulationRandom);
+            riskEngine.setConstantCorrelation(Double.parseDouble(System.getProperty("nav.varCorrelation", "0")));
+            double horizonYears = Double.parseDouble(System.getProperty("nav.varHorizonDays", "1")) / 252.0;
+            System.out.print(riskEngine.run(varScenarios, horizonYears, new double[]{0.95, 0.99},
+                Long.getLong("nav.seed", MonteCarloRiskEngine.DEFAULT_SEED)));
+        }
 
-        publisher.setListener(valuationService);
+        // 啟動時先計算一次情境網格 (-Dnav.scenarioSpotShock=0.2 -Dnav.scenarioSpotSteps=20 -Dnav.scenarioVolShock=0.5 -Dnav.scenarioVolSteps=10)
+        String scenarioSpotShock = System.getProperty("nav.scenarioSpotShock");
+        if (scenarioSpotShock != null) {
+            ScenarioGridEngine scenarioEngine = new ScenarioGridEngine(valuationService, securityMap, pricingService);
+            System.out.print(scenarioEngine.run(
+                ScenarioGridEngine.symmetricShocks(Double.parseDouble(scenarioSpotShock), Integer.getInteger("nav.scenarioSpotSteps", 20)),
+                ScenarioGridEngine.symmetricShocks(Double.parseDouble(System.getProperty("nav.scenarioVolShock", "0.5")),
+                    Integer.getInteger("nav.scenarioVolSteps", 10))));
+        }
+
+        // 監看外部持倉檔案, 變動時重新載入 (-Dnav.positions=<路徑>, 不需重新啟動)
+        String positionsFile = System.getProperty("nav.positions");
+        if (positionsFile != null) {
+            PositionFileWatcher watcher = new PositionFileWatcher(Paths.get(positionsFile),
+                Integer.getInteger("nav.positionsParallelism", Runtime.getRuntime().availableProcessors()),
+                1000, new PositionLoader(), valuationService);
+            Thread watcherThread = new Thread(watcher);
+            watcherThread.setName("PositionFileWatcher");
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+        }
+
+        // 壓力測試模式 (-Dnav.loadRate=<ticks/秒, 0 = 不限速>): 以產生器取代模擬發布者, 每秒印出吞吐量而不繪製儀表板
+        String loadRate = System.getProperty("nav.loadRate");
+
+        // 建立 "訂閱者" (印出服務), 透過訂閱註冊表在自己的線程上接收最新的更新
+        // 儀表板由自己的 render 線程以最多 10 fps 繪製, 兩幀之間的更新會被合併
+        SubscriptionRegistry subscriptions = new SubscriptionRegistry();
+
+        // 延遲指標: 報價建立 -> 估值開始 -> 估值結束 -> 遞送給訂閱者
+        LatencyMetrics metrics = new LatencyMetrics();
+        valuationService.setMetrics(metrics);
+        subscriptions.setMetrics(metrics);
+
+        if (loadRate == null) {
+            ConsoleResultSubscriber console = new ConsoleResultSubscriber();
+            subscriptions.subscribe("console", console, 1,
+                SubscriptionRegistry.OverflowPolicy.CONFLATE_TO_LATEST);
+            Thread renderThread = new Thread(console);
+            renderThread.setName("ConsoleRenderThread");
+            renderThread.setDaemon(true);
+            renderThread.start();
+        } else {
+            // 壓力測試沒有儀表板: 以不做事的訂閱者量測遞送延遲
+            subscriptions.subscribe("load-sink", update -> { }, 1024,
+                SubscriptionRegistry.OverflowPolicy.DROP_OLDEST);
+        }
+
+        // 選擇執行緒模型 (-Dnav.pipeline=ring|conflating, 預設 ring)
+        SymbolIdMarketDataListener symbolIdEntryPoint;   // 以代碼 id 送入 (模擬發布者 / 報價日誌重播)
+        String pipelineMode = System.getProperty("nav.pipeline", "ring");
+        if ("conflating".equals(pipelineMode)) {
+            // 發布者 -> 合併分派器 -> valuation engine -> 訂閱者 (估值在自己的線程上執行, 不會拖慢市場數據線程)
+            valuationService.setListener(subscriptions);
+            ConflatingMarketDataDispatcher dispatcher = new ConflatingMarketDataDispatcher(
+                symbols,
+                initialStockPrices.keySet(),
+                valuationService
+            );
+            symbolIdEntryPoint = dispatcher;
+
+            Thread valuationThread = new Thread(dispatcher);
+            valuationThread.setName("ValuationThread");
+            valuationThread.start();
+        } else {
+            // 發布者 -[ring]-> 估值線程 -[ring]-> 分派線程 -> 訂閱者 (-Dnav.waitStrategy=busy-spin|yield|park)
+            WaitStrategy waitStrategy = WaitStrategy.fromName(System.getProperty("nav.waitStrategy", "park"));
+            ValuationPipeline pipeline = new ValuationPipeline(valuationService, 1024, waitStrategy);
+            pipeline.addSubscriber(subscriptions);
+            metrics.register(pipeline.getTickQueueLatency());
+            metrics.register(pipeline.getUpdateQueueLatency());
+            metrics.register(pipeline.getFanOutLatency());
+            symbolIdEntryPoint = pipeline;
+            pipeline.start();
+        }
+
+        // 定期寫出延遲指標 (-Dnav.metricsInterval=<秒> -Dnav.metricsLog=<檔案>, 未指定檔案時寫到標準輸出)
+        startMetricsReporter(metrics);
 
         // --- 3. 啟動系統 -----------------------------------------------------------------------------------------------
-        Thread marketDataThread = new Thread(publisher);
+        // 市場數據來源: 重播報價日誌 (-Dnav.replay=<目錄> -Dnav.replaySpeed=recorded|max), 或模擬的市場發布者
+        Runnable marketDataSource;
+        String replayDirectory = System.getProperty("nav.replay");
+        if (replayDirectory != null) {
+            TickJournalReplayPublisher replay = new TickJournalReplayPublisher(Paths.get(replayDirectory),
+                TickJournalReplayPublisher.Speed.fromName(System.getProperty("nav.replaySpeed", "recorded")), symbols);
+            replay.addSymbolIdListener(symbolIdEntryPoint);
+            marketDataSource = replay;
+        } else if (loadRate != null) {
+            // 壓力測試產生器 (-Dnav.loadThreads=N -Dnav.loadArrival=uniform|poisson|burst -Dnav.loadBurst=<筆數>)
+            // ring 管線是單一生產者, 只能搭配 1 個產生器線程; 多個產生器線程請搭配 -Dnav.pipeline=conflating
+            int loadThreads = Integer.getInteger("nav.loadThreads", 1);
+            if (!"conflating".equals(pipelineMode) && loadThreads > 1) {
+                System.out.println("ring 管線只支援單一生產者, 產生器線程數改為 1");
+                loadThreads = 1;
+            }
+            LoadGeneratorPublisher generator = new LoadGeneratorPublisher(
+                securityMap,
+                initialStockPrices,
+                symbols,
+                simulationRandom,
+                loadThreads
+            );
+            generator.setRate(Double.parseDouble(loadRate));
+            generator.setArrival(LoadGeneratorPublisher.Arrival.fromName(System.getProperty("nav.loadArrival", "uniform")),
+                Integer.getInteger("nav.loadBurst", 100));
+            generator.addSymbolIdListener(symbolIdEntryPoint);
+            startLoadReport(generator, valuationService);
+            marketDataSource = generator;
+        } else {
+            // 建立市場發布者 (亂數演算法: -Dnav.rng=xoroshiro128++ -Dnav.normal=ziggurat -Dnav.seed=N)
+            MarketDataPublisher publisher = new MarketDataPublisher(
+                securityMap,
+                initialStockPrices,
+                symbols,
+                simulationRandom
+            );
+            publisher.addSymbolIdListener(symbolIdEntryPoint);
+
+            // 記錄報價日誌 (-Dnav.journal=<目錄>), 之後可用 -Dnav.replay 重播
+            String journalDirectory = System.getProperty("nav.journal");
+            if (journalDirectory != null) {
+                TickJournalWriter journal = new TickJournalWriter(Paths.get(journalDirectory), initialStockPrices.keySet(), symbols, 1 << 20);
+                publisher.addSymbolIdListener(journal);
+                // 結束時只 flush 不 close: 市場數據線程可能仍在寫入
+                Runtime.getRuntime().addShutdownHook(new Thread(journal::flush));
+            }
+            marketDataSource = publisher;
+        }
+
+        Thread marketDataThread = new Thread(marketDataSource);
         marketDataThread.setName("MarketDataThread");
         return marketDataThread;
     }
-}
\ No newline at end of file
+
+    private static void startMetricsReporter(LatencyMetrics metrics) throws IOException {
+        String interval = System.getProperty("nav.metricsInterval");
+        if (interval == null) {
+            return;
+        }
+        String metricsLog = System.getProperty("nav.metricsLog");
+        PrintStream out = metricsLog == null ? System.out : new PrintStream(new FileOutputStream(metricsLog, true), true, "UTF-8");
+        Thread reporter = new Thread(new MetricsReporter(metrics, (long) (Double.parseDouble(interval) * 1000), out));
+        reporter.setName("MetricsReporterThread");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    // 每秒印出各投資組合最近一次的 NAV (依代碼排序, 最多 MAX_REPORTED_PORTFOLIOS 個) 與合計
+    private static void startPortfolioReport(Map<String, PortfolioUpdate> latest) {
+        Thread reporter = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(1000);
+                    Map<String, PortfolioUpdate> snapshot = new TreeMap<>(latest);
+                    double total = 0.0;
+                    int printed = 0;
+                    for (Map.Entry<String, PortfolioUpdate> entry : snapshot.entrySet()) {
+                        total += entry.getValue().getTotalNAV();
+                        if (printed++ < MAX_REPORTED_PORTFOLIOS) {
+                            System.out.printf("  %-12s NAV %,18.2f  (更新 #%d)%n", entry.getKey(),
+                                entry.getValue().getTotalNAV(), entry.getValue().getUpdateNumber());
+                        }
+                    }
+                    System.out.printf("%d 個投資組合合計 NAV %,.2f%n", snapshot.size(), total);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        reporter.setName("PortfolioReportThread");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    // 每秒印出: 產生的報價 / 估值服務套用的報價 / 發布的更新; 套用速率持續低於產生速率 (或產生速率低於目標) 即已飽和
+    private static void startLoadReport(LoadGeneratorPublisher generator, PortfolioValuationService valuationService) {
+        Thread reporter = new Thread(() -> {
+            long published = 0;
+            long applied = 0;
+            long updates = 0;
+            long behind = 0;
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(1000);
+                    long nowPublished = generator.getTicksPublished();
+                    long nowApplied = valuationService.getTicksApplied();
+                    long nowUpdates = valuationService.getUpdatesPublished();
+                    long nowBehind = generator.getTicksBehindSchedule();
+                    System.out.printf("產生 %,d ticks/s | 套用 %,d ticks/s | 發布 %,d updates/s | 落後排程 %,d%n",
+                        nowPublished - published, nowApplied - applied, nowUpdates - updates, nowBehind - behind);
+                    published = nowPublished;
+                    applied = nowApplied;
+                    updates = nowUpdates;
+                    behind = nowBehind;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        reporter.setName("LoadReportThread");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+}
@@ -9,13 +9,17 @@ public class CalculatedPosition {
     private final double price;
     private final long qty;
     private final double value;
+    private final Greeks greeks; // 已乘上數量的持倉 Greeks
+    private final int index; // 在帳本中的列位置 (增量更新時用來定位)
 
-    public CalculatedPosition(String symbol, String type, double price, long qty, double value) {
+    public CalculatedPosition(String symbol, String type, double price, long qty, double value, Greeks greeks, int index) {
         this.symbol = symbol;
         this.type = type; // <-- 新增
         this.price = price;
         this.qty = qty;
         this.value = value;
+        this.greeks = greeks;
+        this.index = index;
     }
 
     public String getSymbol() { return symbol; }
@@ -23,4 +27,6 @@ public class CalculatedPosition {
     public double getPrice() { return price; }
     public long getQty() { return qty; }
     public double getValue() { return value; }
+    public Greeks getGreeks() { return greeks; }
+    public int getIndex() { return index; }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.example.realtimevalsystem.model;
+
+/**
+ * 選擇權 / 持倉的風險敏感度 (Greeks)
+ * - delta: ∂V/∂S
+ * - gamma: ∂²V/∂S²
+ * - vega:  ∂V/∂σ (σ 變動 1.00, 即 100 個波動率點)
+ * - theta: ∂V/∂t (每年, 時間經過為負)
+ * - rho:   ∂V/∂r (r 變動 1.00)
+ */
+public class Greeks {
+
+    public static final Greeks ZERO = new Greeks(0.0, 0.0, 0.0, 0.0, 0.0);
+
+    private final double delta;
+    private final double gamma;
+    private final double vega;
+    private final double theta;
+    private final double rho;
+
+    public Greeks(double delta, double gamma, double vega, double theta, double rho) {
+        this.delta = delta;
+        this.gamma = gamma;
+        this.vega = vega;
+        this.theta = theta;
+        this.rho = rho;
+    }
+
+    public double getDelta() { return delta; }
+    public double getGamma() { return gamma; }
+    public double getVega() { return vega; }
+    public double getTheta() { return theta; }
+    public double getRho() { return rho; }
+}
@@ -0,0 +1,106 @@
+package com.example.realtimevalsystem.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一批報價的隱含波動率 (見 ImpliedVolatilityService)
+ * - 以報價的索引存取; 以代碼求解時另有代碼 (getSymbol), getVolatilities() 只包含收斂的合約
+ * - 未收斂或無法求解的報價波動率為 NaN, 並以 Status 標示原因
+ */
+public class ImpliedVolatilityResult {
+
+    public enum Status {
+        /** 已收斂 */
+        CONVERGED,
+        /** 輸入不合法 (價格為負數, 標的價格 / 履約價 / 到期時間非正數, 任一為 NaN, 代碼不是選擇權或缺少標的價格) */
+        INVALID_INPUT,
+        /** 價格不在無套利範圍內 (不大於內含價值, 或不小於買權 S / 賣權 K·e^(-rt) 的上限), 不存在隱含波動率 */
+        OUT_OF_BOUNDS,
+        /** 超過最大疊代次數仍未收斂 */
+        NOT_CONVERGED
+    }
+
+    private final String[] symbols;          // null = 以陣列求解
+    private final double[] volatilities;
+    private final Status[] statuses;
+    private final int[] iterations;
+    private final long elapsedNanos;
+
+    public ImpliedVolatilityResult(String[] symbols, double[] volatilities, Status[] statuses, int[] iterations, long elapsedNanos) {
+        this.symbols = symbols;
+        this.volatilities = volatilities;
+        this.statuses = statuses;
+        this.iterations = iterations;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int size() { return volatilities.length; }
+    public String getSymbol(int i) { return symbols == null ? null : symbols[i]; }
+    public double getVolatility(int i) { return volatilities[i]; }
+    public Status getStatus(int i) { return statuses[i]; }
+    public int getIterations(int i) { return iterations[i]; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    public int getConvergedCount() {
+        int count = 0;
+        for (Status status : statuses) {
+            if (status == Status.CONVERGED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return 未收斂或無法求解的報價索引
+     */
+    public List<Integer> getFailures() {
+        List<Integer> failures = new ArrayList<>();
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] != Status.CONVERGED) {
+                failures.add(i);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return 收斂的合約: 代碼 -> 隱含波動率 (可直接送入 PortfolioValuationService.updateVolatilities); 以陣列求解時為空
+     */
+    public Map<String, Double> getVolatilities() {
+        if (symbols == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (int i = 0; i < symbols.length; i++) {
+            if (statuses[i] == Status.CONVERGED) {
+                result.put(symbols[i], volatilities[i]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        int[] counts = new int[Status.values().length];
+        long totalIterations = 0;
+        for (int i = 0; i < statuses.length; i++) {
+            counts[statuses[i].ordinal()]++;
+            totalIterations += iterations[i];
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("隱含波動率: %,d 筆報價, 收斂 %,d 筆, 平均疊代 %.2f 次 (%.0f ms)",
+                statuses.length, counts[Status.CONVERGED.ordinal()],
+                statuses.length == 0 ? 0.0 : (double) totalIterations / statuses.length, elapsedNanos / 1e6));
+        for (Status status : Status.values()) {
+            if (status != Status.CONVERGED && counts[status.ordinal()] > 0) {
+                sb.append(String.format(", %s %,d 筆", status, counts[status.ordinal()]));
+            }
+        }
+        return sb.toString();
+    }
+}
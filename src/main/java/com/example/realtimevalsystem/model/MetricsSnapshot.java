@@ -0,0 +1,105 @@
+package com.example.realtimevalsystem.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 延遲指標的快照 (見 LatencyMetrics.snapshot)
+ * - stages: 每個階段的樣本數與延遲百分位數 (奈秒, 為對數分桶的上界, 相對誤差約 3%)
+ * - counters: 累計計數 (報價 / 更新 / 遞送); rates: 與上一次快照之間的每秒速率
+ */
+public class MetricsSnapshot {
+
+    /**
+     * 單一階段的延遲分佈
+     */
+    public static class Stage {
+        private final String name;
+        private final long count;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        public Stage(String name, long count, long p50, long p99, long p999, long max) {
+            this.name = name;
+            this.count = count;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public String getName() { return name; }
+        public long getCount() { return count; }
+        public long getP50() { return p50; }
+        public long getP99() { return p99; }
+        public long getP999() { return p999; }
+        public long getMax() { return max; }
+
+        @Override
+        public String toString() {
+            return String.format("%-18s n=%,d p50=%s p99=%s p99.9=%s max=%s",
+                    name, count, formatNanos(p50), formatNanos(p99), formatNanos(p999), formatNanos(max));
+        }
+    }
+
+    private final long timestamp;       // 建立時間 (毫秒)
+    private final long intervalNanos;   // 與上一次快照 (或建立指標) 之間的時間
+    private final List<Stage> stages;
+    private final Map<String, Long> counters;
+    private final Map<String, Double> rates;
+
+    public MetricsSnapshot(long intervalNanos, List<Stage> stages, Map<String, Long> counters, Map<String, Double> rates) {
+        this.timestamp = System.currentTimeMillis();
+        this.intervalNanos = intervalNanos;
+        this.stages = Collections.unmodifiableList(stages);
+        this.counters = Collections.unmodifiableMap(counters);
+        this.rates = Collections.unmodifiableMap(rates);
+    }
+
+    public long getTimestamp() { return timestamp; }
+    public long getIntervalNanos() { return intervalNanos; }
+    public List<Stage> getStages() { return stages; }
+    public Map<String, Long> getCounters() { return counters; }
+    public Map<String, Double> getRates() { return rates; }
+
+    /**
+     * @return 指定名稱的階段; 不存在時回傳 null
+     */
+    public Stage getStage(String name) {
+        for (Stage stage : stages) {
+            if (stage.getName().equals(name)) {
+                return stage;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("[metrics %tT] 區間 %.1f s |", timestamp, intervalNanos / 1e9));
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            Double rate = rates.get(counter.getKey());
+            sb.append(String.format(" %s %,d (%,.0f/s)", counter.getKey(), counter.getValue(), rate == null ? 0.0 : rate));
+        }
+        sb.append(System.lineSeparator());
+        for (Stage stage : stages) {
+            sb.append("  ").append(stage).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    // 以適當的單位顯示奈秒
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000L) {
+            return nanos + "ns";
+        }
+        if (nanos < 1_000_000L) {
+            return String.format("%.1fus", nanos / 1e3);
+        }
+        return String.format("%.1fms", nanos / 1e6);
+    }
+}
@@ -1,9 +1,18 @@
 package com.example.realtimevalsystem.model;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
- * 代表一次完整的投資組合更新事件
+ * 代表一次投資組合更新事件
+ * - 完整快照 (snapshot): positions 為全部持倉
+ * - 增量更新 (delta): positions 只含自上次發布後有變動的持倉 (以 CalculatedPosition.getIndex() 定位),
+ *   underlyingGreeks 只含有變動的標的; NAV 與投資組合 Greeks 永遠是最新的完整數值
+ * updateNumber 為連續的序號, 訂閱者可據此偵測遺漏 (見 PortfolioStateTracker)
+ * positionsVersion 為已套用的持倉變更版本 (成交 / 重新載入), 一次變更的全部內容一定同時出現在同一筆更新中
+ * tickNanos / valuationStartNanos / valuationEndNanos 為 System.nanoTime() 時間戳 (只能彼此相減, 0 = 未記錄):
+ * 觸發本次估值的最早報價建立時間、估值開始與估值結束 (更新可發布) 的時間, 供延遲指標使用
  */
 public class PortfolioUpdate {
     private final long updateNumber;
@@ -12,14 +21,40 @@ public class PortfolioUpdate {
     private final List<CalculatedPosition> positions;
     private final double totalNAV;
     private final long timestamp; // <-- 新增
+    private final Map<String, Greeks> underlyingGreeks; // 標的代碼 -> 彙總 Greeks
+    private final Greeks portfolioGreeks;
+    private final double approximationError; // 快速模式 (泰勒展開) 或插值模式的估計誤差 (完整定價時為 0)
+    private final boolean snapshot;
+    private final int positionCount; // 帳本的總持倉數 (增量更新時 positions 可能比這少)
+    private final long positionsVersion;
+    private final long tickNanos;
+    private final long valuationStartNanos;
+    private final long valuationEndNanos;
 
-    public PortfolioUpdate(long updateNumber, String triggerTicker, double triggerPrice, List<CalculatedPosition> positions, double totalNAV) {
-        this.updateNumber = updateNumber;
-        this.triggerTicker = triggerTicker;
-        this.triggerPrice = triggerPrice;
-        this.positions = positions;
-        this.totalNAV = totalNAV;
+    private PortfolioUpdate(Builder builder) {
+        this.updateNumber = builder.updateNumber;
+        this.triggerTicker = builder.triggerTicker;
+        this.triggerPrice = builder.triggerPrice;
+        this.positions = builder.positions;
+        this.totalNAV = builder.totalNAV;
         this.timestamp = System.currentTimeMillis(); // <-- 新增: 自動記錄建立時間
+        this.underlyingGreeks = builder.underlyingGreeks;
+        this.portfolioGreeks = builder.portfolioGreeks;
+        this.approximationError = builder.approximationError;
+        this.snapshot = builder.snapshot;
+        this.positionCount = builder.positionCount < 0 ? builder.positions.size() : builder.positionCount;
+        this.positionsVersion = builder.positionsVersion;
+        this.tickNanos = builder.tickNanos;
+        this.valuationStartNanos = builder.valuationStartNanos;
+        this.valuationEndNanos = builder.valuationEndNanos;
+    }
+
+    /**
+     * @param updateNumber 連續的更新序號
+     * @param positions    本次更新的持倉 (完整快照為全部持倉, 增量更新為變動的持倉)
+     */
+    public static Builder builder(long updateNumber, List<CalculatedPosition> positions) {
+        return new Builder(updateNumber, positions);
     }
 
     public long getUpdateNumber() { return updateNumber; }
@@ -28,4 +63,83 @@ public class PortfolioUpdate {
     public List<CalculatedPosition> getPositions() { return positions; }
     public double getTotalNAV() { return totalNAV; }
     public long getTimestamp() { return timestamp; } // <-- 新增
-}
\ No newline at end of file
+    public Map<String, Greeks> getUnderlyingGreeks() { return underlyingGreeks; }
+    public Greeks getPortfolioGreeks() { return portfolioGreeks; }
+    public double getApproximationError() { return approximationError; }
+    public boolean isSnapshot() { return snapshot; }
+    public int getPositionCount() { return positionCount; }
+    public long getPositionsVersion() { return positionsVersion; }
+    public long getTickNanos() { return tickNanos; }
+    public long getValuationStartNanos() { return valuationStartNanos; }
+    public long getValuationEndNanos() { return valuationEndNanos; }
+
+    /**
+     * 未設定的欄位: 沒有 Greeks (空 Map / Greeks.ZERO), 誤差 0, 完整快照, 總持倉數為 positions 的筆數, 版本與時間戳為 0
+     */
+    public static class Builder {
+        private final long updateNumber;
+        private final List<CalculatedPosition> positions;
+        private String triggerTicker;
+        private double triggerPrice;
+        private double totalNAV;
+        private Map<String, Greeks> underlyingGreeks = Collections.emptyMap();
+        private Greeks portfolioGreeks = Greeks.ZERO;
+        private double approximationError;
+        private boolean snapshot = true;
+        private int positionCount = -1;
+        private long positionsVersion;
+        private long tickNanos;
+        private long valuationStartNanos;
+        private long valuationEndNanos;
+
+        private Builder(long updateNumber, List<CalculatedPosition> positions) {
+            this.updateNumber = updateNumber;
+            this.positions = positions;
+        }
+
+        public Builder trigger(String ticker, double price) {
+            this.triggerTicker = ticker;
+            this.triggerPrice = price;
+            return this;
+        }
+
+        public Builder totalNAV(double totalNAV) {
+            this.totalNAV = totalNAV;
+            return this;
+        }
+
+        public Builder greeks(Map<String, Greeks> underlyingGreeks, Greeks portfolioGreeks) {
+            this.underlyingGreeks = underlyingGreeks;
+            this.portfolioGreeks = portfolioGreeks;
+            return this;
+        }
+
+        public Builder approximationError(double approximationError) {
+            this.approximationError = approximationError;
+            return this;
+        }
+
+        // 增量更新: positions 只含變動的持倉, positionCount 為帳本的總持倉數
+        public Builder delta(int positionCount) {
+            this.snapshot = false;
+            this.positionCount = positionCount;
+            return this;
+        }
+
+        public Builder positionsVersion(long positionsVersion) {
+            this.positionsVersion = positionsVersion;
+            return this;
+        }
+
+        public Builder timing(long tickNanos, long valuationStartNanos, long valuationEndNanos) {
+            this.tickNanos = tickNanos;
+            this.valuationStartNanos = valuationStartNanos;
+            this.valuationEndNanos = valuationEndNanos;
+            return this;
+        }
+
+        public PortfolioUpdate build() {
+            return new PortfolioUpdate(this);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.realtimevalsystem.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以欄位 (columnar) 形式儲存的持倉檔案內容
+ * - 代碼只以 int id 儲存, 相同代碼共用同一個 String (symbols 字典)
+ * - 數量為原始型別 long[]
+ * - 多投資組合的檔案 (portfolioId,symbol,positionSize) 另有每列的投資組合 id (portfolios 字典)
+ * - 格式錯誤而被略過的列 (含行號) 記錄在 malformedRows
+ */
+public class PositionTable {
+
+    private final String[] symbols;   // 代碼 id -> 代碼
+    private final int[] symbolIds;    // 列 -> 代碼 id
+    private final long[] quantities;  // 列 -> 數量
+    private final String[] portfolios; // 投資組合 id -> 投資組合代碼 (null = 單一投資組合的檔案)
+    private final int[] portfolioIds; // 列 -> 投資組合 id
+    private final List<MalformedRow> malformedRows;
+
+    public PositionTable(String[] symbols, int[] symbolIds, long[] quantities, List<MalformedRow> malformedRows) {
+        this(symbols, symbolIds, quantities, null, null, malformedRows);
+    }
+
+    public PositionTable(String[] symbols, int[] symbolIds, long[] quantities, String[] portfolios, int[] portfolioIds,
+                         List<MalformedRow> malformedRows) {
+        this.symbols = symbols;
+        this.symbolIds = symbolIds;
+        this.quantities = quantities;
+        this.portfolios = portfolios;
+        this.portfolioIds = portfolioIds;
+        this.malformedRows = Collections.unmodifiableList(malformedRows);
+    }
+
+    public int size() { return symbolIds.length; }
+    public int symbolCount() { return symbols.length; }
+    public int getSymbolId(int row) { return symbolIds[row]; }
+    public String getSymbol(int row) { return symbols[symbolIds[row]]; }
+    public String getSymbolById(int symbolId) { return symbols[symbolId]; }
+    public long getQuantity(int row) { return quantities[row]; }
+    public List<MalformedRow> getMalformedRows() { return malformedRows; }
+    public boolean hasPortfolios() { return portfolios != null; }
+    public int portfolioCount() { return portfolios == null ? 0 : portfolios.length; }
+    public int getPortfolioId(int row) { return portfolioIds[row]; }
+    public String getPortfolio(int row) { return portfolios[portfolioIds[row]]; }
+    public String getPortfolioById(int portfolioId) { return portfolios[portfolioId]; }
+
+    /**
+     * @return 轉換成 Position 列表 (相同代碼的 Position 共用同一個 String)
+     */
+    public List<Position> toPositions() {
+        List<Position> positions = new ArrayList<>(symbolIds.length);
+        for (int row = 0; row < symbolIds.length; row++) {
+            positions.add(new Position(symbols[symbolIds[row]], quantities[row]));
+        }
+        return positions;
+    }
+
+    /**
+     * @return 投資組合代碼 -> Position 列表 (投資組合依檔案中首次出現的順序, 列的順序與檔案相同)
+     */
+    public Map<String, List<Position>> toPortfolios() {
+        if (portfolios == null) {
+            throw new IllegalStateException("持倉檔案沒有投資組合欄位 (portfolioId,symbol,positionSize)");
+        }
+        List<List<Position>> books = new ArrayList<>(portfolios.length);
+        Map<String, List<Position>> result = new LinkedHashMap<>();
+        for (String portfolio : portfolios) {
+            List<Position> book = new ArrayList<>();
+            books.add(book);
+            result.put(portfolio, book);
+        }
+        for (int row = 0; row < symbolIds.length; row++) {
+            books.get(portfolioIds[row]).add(new Position(symbols[symbolIds[row]], quantities[row]));
+        }
+        return result;
+    }
+
+    /**
+     * 一筆格式錯誤的資料列
+     */
+    public static class MalformedRow {
+        private final long lineNumber; // 從 1 開始 (標頭為第 1 行)
+        private final String reason;
+        private final String content;
+
+        public MalformedRow(long lineNumber, String reason, String content) {
+            this.lineNumber = lineNumber;
+            this.reason = reason;
+            this.content = content;
+        }
+
+        public long getLineNumber() { return lineNumber; }
+        public String getReason() { return reason; }
+        public String getContent() { return content; }
+
+        @Override
+        public String toString() {
+            return "第 " + lineNumber + " 行: " + reason + " [" + content + "]";
+        }
+    }
+}
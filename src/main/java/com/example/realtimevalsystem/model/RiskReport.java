@@ -0,0 +1,65 @@
+package com.example.realtimevalsystem.model;
+
+import java.util.Arrays;
+
+/**
+ * Monte Carlo 風險計算結果
+ * - VaR / ES 以正數表示損失 (e.g., VaR 99% = 1,000 代表 1% 的情境損失超過 1,000)
+ * - 損益 (P&L) = 期末投資組合價值 - 目前價值
+ */
+public class RiskReport {
+    private final int scenarioCount;
+    private final double horizonYears;
+    private final double portfolioValue;     // 目前的投資組合價值
+    private final double meanPnl;
+    private final double[] confidenceLevels;
+    private final double[] valueAtRisk;
+    private final double[] expectedShortfall;
+    private final long elapsedNanos;
+
+    public RiskReport(int scenarioCount, double horizonYears, double portfolioValue, double meanPnl,
+                      double[] confidenceLevels, double[] valueAtRisk, double[] expectedShortfall, long elapsedNanos) {
+        this.scenarioCount = scenarioCount;
+        this.horizonYears = horizonYears;
+        this.portfolioValue = portfolioValue;
+        this.meanPnl = meanPnl;
+        this.confidenceLevels = confidenceLevels.clone();
+        this.valueAtRisk = valueAtRisk.clone();
+        this.expectedShortfall = expectedShortfall.clone();
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getScenarioCount() { return scenarioCount; }
+    public double getHorizonYears() { return horizonYears; }
+    public double getPortfolioValue() { return portfolioValue; }
+    public double getMeanPnl() { return meanPnl; }
+    public double[] getConfidenceLevels() { return confidenceLevels.clone(); }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /**
+     * @param confidence 信賴水準 (必須是計算時指定的其中一個, e.g., 0.99)
+     */
+    public double getValueAtRisk(double confidence) { return valueAtRisk[indexOf(confidence)]; }
+    public double getExpectedShortfall(double confidence) { return expectedShortfall[indexOf(confidence)]; }
+
+    private int indexOf(double confidence) {
+        for (int i = 0; i < confidenceLevels.length; i++) {
+            if (confidenceLevels[i] == confidence) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("未計算此信賴水準: " + confidence + " (已計算: " + Arrays.toString(confidenceLevels) + ")");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Monte Carlo: %,d 情境, 期間 %.4f 年, 投資組合價值 %,.2f, 平均損益 %,.2f (%.0f ms)%n",
+                scenarioCount, horizonYears, portfolioValue, meanPnl, elapsedNanos / 1e6));
+        for (int i = 0; i < confidenceLevels.length; i++) {
+            sb.append(String.format("  %.2f%%  VaR %,.2f  ES %,.2f%n",
+                    confidenceLevels[i] * 100.0, valueAtRisk[i], expectedShortfall[i]));
+        }
+        return sb.toString();
+    }
+}
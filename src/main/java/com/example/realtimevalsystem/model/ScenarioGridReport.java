@@ -0,0 +1,102 @@
+package com.example.realtimevalsystem.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 情境網格的重新估值結果 (見 ScenarioGridEngine)
+ * - 網格: 標的價格變動 (列) x 波動率變動 (欄), 皆為相對變動 (e.g., -0.2 = -20%); 所有標的同時套用同一個變動
+ * - 損益 (P&L) = 情境下的價值 - 目前價值, 依標的與合計各一個矩陣
+ */
+public class ScenarioGridReport {
+    private final double[] spotShocks;
+    private final double[] volShocks;
+    private final List<String> underlyingTickers;
+    private final double[][] underlyingPnl;   // underlying id -> [spot * volShocks.length + vol]
+    private final double[] totalPnl;          // [spot * volShocks.length + vol]
+    private final double portfolioValue;      // 目前價格下的價值
+    private final long positionsVersion;
+    private final long elapsedNanos;
+
+    public ScenarioGridReport(double[] spotShocks, double[] volShocks, List<String> underlyingTickers,
+                              double[][] underlyingPnl, double[] totalPnl, double portfolioValue,
+                              long positionsVersion, long elapsedNanos) {
+        this.spotShocks = spotShocks.clone();
+        this.volShocks = volShocks.clone();
+        this.underlyingTickers = Collections.unmodifiableList(underlyingTickers);
+        this.underlyingPnl = underlyingPnl;
+        this.totalPnl = totalPnl;
+        this.portfolioValue = portfolioValue;
+        this.positionsVersion = positionsVersion;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public double[] getSpotShocks() { return spotShocks.clone(); }
+    public double[] getVolShocks() { return volShocks.clone(); }
+    public List<String> getUnderlyingTickers() { return underlyingTickers; }
+    public double getPortfolioValue() { return portfolioValue; }
+    public long getPositionsVersion() { return positionsVersion; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /**
+     * @param spot 標的價格變動的索引 (getSpotShocks())
+     * @param vol  波動率變動的索引 (getVolShocks())
+     */
+    public double getTotalPnl(int spot, int vol) { return totalPnl[cell(spot, vol)]; }
+    public double getPnl(String ticker, int spot, int vol) { return underlyingPnl[indexOf(ticker)][cell(spot, vol)]; }
+
+    /**
+     * @return 合計損益矩陣 [標的價格變動][波動率變動]
+     */
+    public double[][] getTotalPnlMatrix() { return matrix(totalPnl); }
+    public double[][] getPnlMatrix(String ticker) { return matrix(underlyingPnl[indexOf(ticker)]); }
+
+    private int cell(int spot, int vol) {
+        if (spot < 0 || spot >= spotShocks.length || vol < 0 || vol >= volShocks.length) {
+            throw new IndexOutOfBoundsException("情境 [" + spot + ", " + vol + "] 不在 "
+                    + spotShocks.length + " x " + volShocks.length + " 的網格內");
+        }
+        return spot * volShocks.length + vol;
+    }
+
+    private int indexOf(String ticker) {
+        int u = underlyingTickers.indexOf(ticker);
+        if (u < 0) {
+            throw new IllegalArgumentException("帳本中沒有此標的: " + ticker);
+        }
+        return u;
+    }
+
+    private double[][] matrix(double[] pnl) {
+        double[][] matrix = new double[spotShocks.length][];
+        for (int s = 0; s < spotShocks.length; s++) {
+            matrix[s] = Arrays.copyOfRange(pnl, s * volShocks.length, (s + 1) * volShocks.length);
+        }
+        return matrix;
+    }
+
+    @Override
+    public String toString() {
+        int worst = 0;
+        int best = 0;
+        for (int c = 1; c < totalPnl.length; c++) {
+            if (totalPnl[c] < totalPnl[worst]) {
+                worst = c;
+            }
+            if (totalPnl[c] > totalPnl[best]) {
+                best = c;
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("情境網格: %d x %d (標的價格 x 波動率), %d 個標的, 投資組合價值 %,.2f (%.0f ms)%n",
+                spotShocks.length, volShocks.length, underlyingTickers.size(), portfolioValue, elapsedNanos / 1e6));
+        if (totalPnl.length > 0) {
+            sb.append(String.format("  最大損失 %,.2f (標的價格 %+.1f%%, 波動率 %+.1f%%)%n", totalPnl[worst],
+                    spotShocks[worst / volShocks.length] * 100.0, volShocks[worst % volShocks.length] * 100.0));
+            sb.append(String.format("  最大獲利 %,.2f (標的價格 %+.1f%%, 波動率 %+.1f%%)%n", totalPnl[best],
+                    spotShocks[best / volShocks.length] * 100.0, volShocks[best % volShocks.length] * 100.0));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.realtimevalsystem.model;
+
+/**
+ * 一筆日內成交: 代碼與帶正負號的成交數量 (買進為正, 賣出為負)
+ */
+public class Trade {
+    private final String symbol;
+    private final long quantity;
+
+    public Trade(String symbol, long quantity) {
+        this.symbol = symbol;
+        this.quantity = quantity;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+}
@@ -0,0 +1,308 @@
+package com.example.realtimevalsystem.service;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 選擇權價格對標的價格的 Chebyshev 插值快取 (CompiledBook 的插值模式)
+ * - 每個標的一個 Surface: 在 [spot * (1 - band), spot * (1 + band)] 上, 每個合約各自一個 Chebyshev 多項式 P(S)
+ *   以及它的一階 / 二階導數 (delta / gamma); band 內的 tick 只需 Clenshaw 求值 (每項一次乘加), 不呼叫 log / exp
+ * - 次數自適應: 依序嘗試 DEGREES, 在 VALIDATION_POINTS 個等距驗證點上與完整 Black-Scholes 比較,
+ *   誤差不超過 maxError * SAFETY 即採用; 最高次數仍達不到的合約 (e.g., 即將到期) 不快取, 每個 tick 完整定價
+ * - Surface 在背景線程 (所有快取共用一個) 上建立, 完成後以 volatile 寫入發布; 估值線程只讀取, 不等待
+ * - 標的價格離開 band、尚未建立或合約參數變動 (invalidate) 時, 該 tick 以完整定價計算並要求重新建立
+ * 價格誤差上限為每單位合約的絕對誤差; delta / gamma 為插值多項式的導數, 誤差較價格大, 不另外驗證
+ */
+final class ChebyshevPriceCache {
+
+    private static final int[] DEGREES = {8, 12, 16, 24, 32, 48, 64};
+    private static final int VALIDATION_POINTS = 129;
+    private static final double SAFETY = 0.5; // 驗證點之間的誤差可能略大於驗證點上的誤差
+
+    private static final ExecutorService BUILDER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setName("PriceSurfaceBuilder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final OptionPricingService pricingService;
+    private final double bandWidth;
+    private final double maxError;
+
+    private final AtomicReferenceArray<Surface> surfaces;
+    private final AtomicIntegerArray building;  // 0 = 沒有建立中的 Surface
+    private final int[] versions;               // 合約參數的版本 (只有估值線程寫入)
+
+    // --- 計數器 ------------------------------------------------------------------------------------------------------
+    private final LongAdder surfacesBuilt = new LongAdder();
+    private final LongAdder buildNanos = new LongAdder();
+
+    /**
+     * @param bandWidth 以建立時標的價格為中心的相對範圍 (e.g., 0.05 = ±5%)
+     * @param maxError  每單位合約的價格誤差上限
+     */
+    ChebyshevPriceCache(OptionPricingService pricingService, int underlyingCount, double bandWidth, double maxError) {
+        if (!(bandWidth > 0.0 && bandWidth < 1.0)) {
+            throw new IllegalArgumentException("bandWidth must be in (0, 1): " + bandWidth);
+        }
+        if (!(maxError > 0.0)) {
+            throw new IllegalArgumentException("maxError must be > 0: " + maxError);
+        }
+        this.pricingService = pricingService;
+        this.bandWidth = bandWidth;
+        this.maxError = maxError;
+        this.surfaces = new AtomicReferenceArray<>(underlyingCount);
+        this.building = new AtomicIntegerArray(underlyingCount);
+        this.versions = new int[underlyingCount];
+    }
+
+    /**
+     * 估值線程: 可用於此標的價格的 Surface, 沒有時回傳 null
+     */
+    Surface surface(int u, double spot) {
+        Surface surface = surfaces.get(u);
+        if (surface == null || surface.version != versions[u] || spot < surface.lower || spot > surface.upper) {
+            return null;
+        }
+        return surface;
+    }
+
+    /**
+     * 估值線程: 合約參數變動後呼叫, 既有的 Surface 不再使用
+     */
+    void invalidate(int u) {
+        versions[u]++;
+    }
+
+    /**
+     * 估值線程: 以目前標的價格為中心在背景重新建立 Surface (已有建立中的 Surface 時忽略)
+     * 合約參數在此複製, 背景線程不讀取帳本的陣列
+     */
+    void requestBuild(int u, double spot, double[] strikes, double[] driftTerms, double[] sigmaSqrtTs,
+                      double[] discountedStrikes, double[] signs, int start, int end) {
+        if (end <= start || !(spot > 0.0) || !building.compareAndSet(u, 0, 1)) {
+            return;
+        }
+        Contracts contracts = new Contracts(strikes, driftTerms, sigmaSqrtTs, discountedStrikes, signs, start, end);
+        int version = versions[u];
+        try {
+            BUILDER.execute(() -> {
+                try {
+                    long begin = System.nanoTime();
+                    surfaces.set(u, build(contracts, spot * (1.0 - bandWidth), spot * (1.0 + bandWidth), version));
+                    buildNanos.add(System.nanoTime() - begin);
+                    surfacesBuilt.increment();
+                } catch (RuntimeException e) {
+                    System.err.println("建立價格插值表失敗: " + e.getMessage());
+                    e.printStackTrace();
+                } finally {
+                    building.set(u, 0);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            building.set(u, 0);
+        }
+    }
+
+    // --- 建立 (背景線程) ----------------------------------------------------------------------------------------------
+    Surface build(Contracts contracts, double lower, double upper, int version) {
+        int m = contracts.size();
+        double mid = 0.5 * (upper + lower);
+        double half = 0.5 * (upper - lower);
+
+        // 驗證點上的完整定價 (所有次數共用)
+        double[][] exact = new double[VALIDATION_POINTS][m];
+        double[] validationX = new double[VALIDATION_POINTS];
+        for (int p = 0; p < VALIDATION_POINTS; p++) {
+            validationX[p] = -1.0 + 2.0 * p / (VALIDATION_POINTS - 1);
+            contracts.price(pricingService, mid + half * validationX[p], exact[p]);
+        }
+
+        int[] degrees = new int[m];
+        double[] errors = new double[m];
+        double[][] chosen = new double[m][];
+        int remaining = m;
+        for (int n : DEGREES) {
+            if (remaining == 0) {
+                break;
+            }
+            // Chebyshev 節點 (第一類) 上的完整定價
+            double[][] nodeValues = new double[n][];
+            for (int j = 0; j < n; j++) {
+                nodeValues[j] = new double[m];
+                contracts.price(pricingService, mid + half * Math.cos(Math.PI * (j + 0.5) / n), nodeValues[j]);
+            }
+            double[][] cosines = new double[n][n];
+            for (int k = 0; k < n; k++) {
+                for (int j = 0; j < n; j++) {
+                    cosines[k][j] = Math.cos(Math.PI * k * (j + 0.5) / n);
+                }
+            }
+            for (int c = 0; c < m; c++) {
+                if (degrees[c] != 0) {
+                    continue;
+                }
+                double[] coefficients = new double[n];
+                for (int k = 0; k < n; k++) {
+                    double sum = 0.0;
+                    for (int j = 0; j < n; j++) {
+                        sum += nodeValues[j][c] * cosines[k][j];
+                    }
+                    coefficients[k] = 2.0 * sum / n;
+                }
+                coefficients[0] *= 0.5;
+
+                double error = 0.0;
+                for (int p = 0; p < VALIDATION_POINTS; p++) {
+                    error = Math.max(error, Math.abs(clenshaw(coefficients, 0, n, validationX[p]) - exact[p][c]));
+                }
+                if (error <= maxError * SAFETY) { // NaN (無法定價的合約) 不會通過
+                    degrees[c] = n;
+                    errors[c] = error;
+                    chosen[c] = coefficients;
+                    remaining--;
+                }
+            }
+        }
+
+        // 依序存放每個合約的 價格 (n) / delta (n - 1) / gamma (n - 2) 係數, 導數已換算成對 S 的導數
+        int[] offsets = new int[m];
+        int total = 0;
+        for (int c = 0; c < m; c++) {
+            offsets[c] = total;
+            total += degrees[c] == 0 ? 0 : 3 * degrees[c] - 3;
+        }
+        double[] packed = new double[total];
+        double scale = 1.0 / half;
+        for (int c = 0; c < m; c++) {
+            int n = degrees[c];
+            if (n == 0) {
+                continue;
+            }
+            double[] delta = derivative(chosen[c], n, scale);
+            double[] gamma = derivative(delta, n - 1, scale);
+            System.arraycopy(chosen[c], 0, packed, offsets[c], n);
+            System.arraycopy(delta, 0, packed, offsets[c] + n, n - 1);
+            System.arraycopy(gamma, 0, packed, offsets[c] + 2 * n - 1, n - 2);
+        }
+        return new Surface(lower, upper, version, degrees, offsets, packed, errors);
+    }
+
+    /**
+     * Chebyshev 級數 sum a_k T_k(x) 的導數係數 (a_0 為已減半的常數項), 再乘上 dx/dS
+     */
+    static double[] derivative(double[] a, int n, double scale) {
+        double[] d = new double[n - 1];
+        double next = 0.0;     // c'_{k+1}
+        double nextNext = 0.0; // c'_{k+2}
+        for (int k = n - 1; k >= 1; k--) {
+            double value = nextNext + 2.0 * k * a[k]; // c'_{k-1}
+            d[k - 1] = value * scale;
+            nextNext = next;
+            next = value;
+        }
+        d[0] *= 0.5;
+        return d;
+    }
+
+    /**
+     * Clenshaw 求值: sum_{k < n} c[offset + k] T_k(x), 常數項已減半
+     */
+    static double clenshaw(double[] c, int offset, int n, double x) {
+        double twoX = 2.0 * x;
+        double b1 = 0.0;
+        double b2 = 0.0;
+        for (int k = n - 1; k >= 1; k--) {
+            double b0 = twoX * b1 - b2 + c[offset + k];
+            b2 = b1;
+            b1 = b0;
+        }
+        return x * b1 - b2 + c[offset];
+    }
+
+    public long getSurfacesBuilt() { return surfacesBuilt.sum(); }
+    public long getBuildNanos() { return buildNanos.sum(); }
+    public double getBandWidth() { return bandWidth; }
+    public double getMaxError() { return maxError; }
+
+    /**
+     * 一個標的所有合約的插值表 (建立後不再變動)
+     */
+    static final class Surface {
+        final double lower;
+        final double upper;
+        final double mid;
+        final double scale;        // dx/dS = 2 / (upper - lower)
+        final int version;
+        final int[] degrees;       // 合約 (slot - start) -> 次數, 0 = 不快取
+        final int[] offsets;
+        final double[] coefficients;
+        final double[] errors;     // 驗證點上的最大價格誤差 (每單位合約)
+
+        Surface(double lower, double upper, int version, int[] degrees, int[] offsets, double[] coefficients, double[] errors) {
+            this.lower = lower;
+            this.upper = upper;
+            this.mid = 0.5 * (upper + lower);
+            this.scale = 2.0 / (upper - lower);
+            this.version = version;
+            this.degrees = degrees;
+            this.offsets = offsets;
+            this.coefficients = coefficients;
+            this.errors = errors;
+        }
+
+        /**
+         * @return 標的價格對應的 Chebyshev 變數 x (-1 ~ 1)
+         */
+        double toX(double spot) {
+            return (spot - mid) * scale;
+        }
+
+        /**
+         * @return 快取的合約數 (其餘為完整定價)
+         */
+        int cachedCount() {
+            int count = 0;
+            for (int degree : degrees) {
+                if (degree != 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 建立時複製的合約參數 (索引 0 ~ size-1 對應 slot start ~ end-1)
+     */
+    static final class Contracts {
+        private final double[] strikes;
+        private final double[] driftTerms;
+        private final double[] sigmaSqrtTs;
+        private final double[] discountedStrikes;
+        private final double[] signs;
+
+        Contracts(double[] strikes, double[] driftTerms, double[] sigmaSqrtTs, double[] discountedStrikes,
+                  double[] signs, int start, int end) {
+            this.strikes = Arrays.copyOfRange(strikes, start, end);
+            this.driftTerms = Arrays.copyOfRange(driftTerms, start, end);
+            this.sigmaSqrtTs = Arrays.copyOfRange(sigmaSqrtTs, start, end);
+            this.discountedStrikes = Arrays.copyOfRange(discountedStrikes, start, end);
+            this.signs = Arrays.copyOfRange(signs, start, end);
+        }
+
+        int size() {
+            return strikes.length;
+        }
+
+        void price(OptionPricingService pricingService, double spot, double[] out) {
+            pricingService.calculatePrices(spot, strikes, driftTerms, sigmaSqrtTs, discountedStrikes, signs, out, 0, strikes.length);
+        }
+    }
+}
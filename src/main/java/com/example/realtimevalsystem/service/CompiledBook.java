@@ -0,0 +1,723 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.EuropeanCallOption;
+import com.example.realtimevalsystem.model.EuropeanPutOption;
+import com.example.realtimevalsystem.model.Greeks;
+import com.example.realtimevalsystem.model.Position;
+import com.example.realtimevalsystem.model.Security;
+import com.example.realtimevalsystem.model.Stock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * "編譯後" 的投資組合帳本 (Struct-of-Arrays)
+ * - 將 List<Position> + Map<String, Security> 轉成原始型別陣列 (int id, double 參數, long 數量)
+ * - 選擇權合約參數依標的連續存放 (option slot), 並預先計算定價常數, 每個 tick 以批次定價 API 計算
+ * - 價格與價值寫入預先配置的緩衝區, 穩定狀態下每個 tick 不產生任何物件 (只限帳本本身; 發布更新的配置見 PortfolioValuationService)
+ * - 完整重新定價時同時計算 Greeks, 並依標的彙總
+ * - 快速模式: 標的小幅變動時以快取的 Greeks 做二階泰勒展開 (ΔV ≈ Δ·dS + ½Γ·dS²),
+ *   超過變動門檻或快取過期才完整重新定價, 並以三階項 |speed|·|dS|³/6 估計誤差
+ * - 插值模式: 標的價格落在背景建立的 Chebyshev 插值表 (ChebyshevPriceCache) 範圍內時, 以多項式求值取得價格與 delta/gamma,
+ *   誤差為建表時驗證的每單位誤差 × |qty|; 範圍外或尚未建立時完整重新定價並要求重新建表 (與快速模式互斥)
+ * - 共用合約價格 (shareContractPrices): 完整重新定價時從 ContractPriceTable 複製價格與 Greeks,
+ *   同一合約在多筆持倉 / 多個帳本之間每個標的價格只定價一次
+ * - 非執行緒安全: 應由單一估值線程更新
+ */
+public class CompiledBook {
+
+    public static final byte TYPE_UNKNOWN = 0;
+    public static final byte TYPE_STOCK = 1;
+    public static final byte TYPE_CALL = 2;
+    public static final byte TYPE_PUT = 3;
+
+    private static final String[] TYPE_NAMES = {"UNKNOWN", "STOCK", "CALL", "PUT"};
+    private static final int NO_UNDERLYING = -1;
+    private static final int RESUM_INTERVAL = 1024;  // 以差額更新總額的最少次數, 之後重新加總 (實際為 max(此值, 持倉筆數), 分攤後每次更新 <= 1 次加法)
+
+    private final OptionPricingService pricingService;
+
+    // --- 標的 (股票) 欄位, 以 underlying id 為索引 --------------------------------------------------------------------
+    private final Map<String, Integer> underlyingIds = new HashMap<>();
+    private final int[] underlyingBySymbol;       // 代碼 id (SymbolTable) -> underlying id, 熱路徑不做 String 查找
+    private final String[] underlyingTickers;
+    private final double[] underlyingPrices;
+    private final boolean[] underlyingPriced;     // 是否已有報價
+    private final int[][] positionsByUnderlying;  // underlying id -> 持倉索引
+    private final int[][] stocksByUnderlying;     // underlying id -> 股票持倉索引
+    private final int[] optionSlotStart;          // underlying id -> 選擇權 slot 區間 [start, end)
+    private final int[] optionSlotEnd;
+    private final double[] referenceSpots;        // 快取 Greeks 時的標的價格 (0 = 尚無快取)
+    private final long[] referenceNanos;          // 快取 Greeks 的時間
+    private final double[] approximationErrors;   // 目前泰勒展開 (或插值) 的估計誤差
+    private final boolean[] interpolated;         // 目前價格是否來自插值表
+    private final double[] underlyingDelta;       // 依標的彙總的持倉 Greeks
+    private final double[] underlyingGamma;
+    private final double[] underlyingVega;
+    private final double[] underlyingTheta;
+    private final double[] underlyingRho;
+
+    // --- 選擇權合約欄位, 以 option slot 為索引 (同一標的連續存放) ------------------------------------------------------
+    private final int[] slotPosition;             // slot -> 持倉索引
+    private final double[] slotStrikes;
+    private final double[] slotSigmas;
+    private final double[] slotMaturities;
+    private final double[] slotDriftTerms;        // (r + sigma^2 / 2) * t
+    private final double[] slotSigmaSqrtTs;       // sigma * sqrt(t)
+    private final double[] slotDiscountedStrikes; // K * e^(-rt)
+    private final double[] slotSigns;             // +1 買權 / -1 賣權
+    private final double[] slotPrices;            // 批次定價的輸出緩衝區
+    private final double[] slotReferencePrices;   // 快取 Greeks 時的價格
+    private final GreeksBuffer referenceGreeks;   // 快取的 Greeks (泰勒展開的基準)
+    private final GreeksBuffer currentGreeks;     // 目前的 Greeks (快速模式下 delta/gamma 會一併推移)
+    private final double[] slotInterpolationErrors; // 插值的每單位價格誤差 (完整定價為 0)
+
+    // --- 證券符號表, 以 security id 為索引 -----------------------------------------------------------------------------
+    private final String[] securityTickers;
+
+    // --- 持倉欄位, 以持倉索引為索引 -------------------------------------------------------------------------------------
+    private final int[] securityIds;
+    private final byte[] types;
+    private final int[] underlyingOf;
+    private final int[] optionSlotOf;             // 持倉索引 -> option slot (非選擇權為 -1)
+    private final long[] quantities;
+    private final double[] prices;
+    private final double[] values;
+
+    private double totalNAV;
+    private double totalApproximationError;
+    private int updatesSinceResum;        // 上次重新加總之後以差額更新的次數
+
+    // --- 快速模式設定 ---------------------------------------------------------------------------------------------------
+    private boolean fastMode;
+    private double fastModeMaxMove;       // 相對於快取價格的最大變動比例
+    private long fastModeMaxStalenessNanos;
+
+    // --- 插值模式 (null = 停用) -----------------------------------------------------------------------------------------
+    private ChebyshevPriceCache priceCache;
+
+    // --- 共用合約價格 (null = 停用) -------------------------------------------------------------------------------------
+    private ContractPriceTable contractPrices;
+    private int[] slotContracts;          // slot -> contract id
+    private int[] sharedUnderlyings;      // underlying id -> table 的 underlying id (有任一 slot 不在表中或參數不同時為 -1)
+    private int[] sharedVersions;         // underlying id -> 綁定時表中的參數版本
+
+    public CompiledBook(List<Position> positions,
+                        Map<String, Security> securityMap,
+                        Map<String, Double> initialStockPrices,
+                        OptionPricingService pricingService) {
+        this(positions, securityMap, initialStockPrices, pricingService, new SymbolTable());
+    }
+
+    /**
+     * @param symbols 代碼符號表: 持倉與標的代碼都在此指派 id, 之後可用 underlyingId(int) 以 id 查找標的
+     */
+    public CompiledBook(List<Position> positions,
+                        Map<String, Security> securityMap,
+                        Map<String, Double> initialStockPrices,
+                        OptionPricingService pricingService,
+                        SymbolTable symbols) {
+        this.pricingService = pricingService;
+
+        int n = positions.size();
+        this.securityIds = new int[n];
+        this.types = new byte[n];
+        this.underlyingOf = new int[n];
+        this.optionSlotOf = new int[n];
+        this.quantities = new long[n];
+        this.prices = new double[n];
+        this.values = new double[n];
+
+        // --- 1. 編譯每筆持倉 -------------------------------------------------------------------------------------------
+        Map<String, Integer> securityIdMap = new HashMap<>();
+        List<String> securityList = new ArrayList<>();
+        List<String> underlyingList = new ArrayList<>();
+        List<List<Integer>> grouped = new ArrayList<>();
+        Security[] securities = new Security[n];
+
+        for (int i = 0; i < n; i++) {
+            Position pos = positions.get(i);
+            String ticker = pos.getSymbol();
+            Security sec = securityMap.get(ticker);
+            securities[i] = sec;
+
+            Integer securityId = securityIdMap.get(ticker);
+            if (securityId == null) {
+                securityId = securityList.size();
+                securityIdMap.put(ticker, securityId);
+                securityList.add(ticker);
+            }
+            securityIds[i] = securityId;
+            quantities[i] = pos.getPositionSize();
+
+            String underlying = null;
+            if (sec instanceof Stock) {
+                types[i] = TYPE_STOCK;
+                underlying = ticker;
+            } else if (sec instanceof EuropeanCallOption) {
+                types[i] = TYPE_CALL;
+                underlying = ((EuropeanCallOption) sec).getUnderlyingTicker();
+            } else if (sec instanceof EuropeanPutOption) {
+                types[i] = TYPE_PUT;
+                underlying = ((EuropeanPutOption) sec).getUnderlyingTicker();
+            } else {
+                types[i] = TYPE_UNKNOWN;
+            }
+
+            if (underlying == null) {
+                underlyingOf[i] = NO_UNDERLYING;
+                continue;
+            }
+            Integer underlyingId = underlyingIds.get(underlying);
+            if (underlyingId == null) {
+                underlyingId = underlyingList.size();
+                underlyingIds.put(underlying, underlyingId);
+                underlyingList.add(underlying);
+                grouped.add(new ArrayList<>());
+            }
+            underlyingOf[i] = underlyingId;
+            grouped.get(underlyingId).add(i);
+        }
+
+        this.securityTickers = securityList.toArray(new String[0]);
+        this.underlyingTickers = underlyingList.toArray(new String[0]);
+        symbols.internAll(securityList);
+        int[] underlyingSymbolIds = new int[underlyingTickers.length];
+        int maxSymbolId = -1;
+        for (int u = 0; u < underlyingTickers.length; u++) {
+            underlyingSymbolIds[u] = symbols.intern(underlyingTickers[u]);
+            maxSymbolId = Math.max(maxSymbolId, underlyingSymbolIds[u]);
+        }
+        this.underlyingBySymbol = new int[maxSymbolId + 1];
+        Arrays.fill(underlyingBySymbol, NO_UNDERLYING);
+        for (int u = 0; u < underlyingTickers.length; u++) {
+            underlyingBySymbol[underlyingSymbolIds[u]] = u;
+        }
+
+        // --- 2. 依標的排列選擇權 slot 並預先計算定價常數 ---------------------------------------------------------------------
+        int underlyingCount = underlyingTickers.length;
+        int optionCount = 0;
+        for (byte type : types) {
+            if (type == TYPE_CALL || type == TYPE_PUT) {
+                optionCount++;
+            }
+        }
+        this.positionsByUnderlying = new int[underlyingCount][];
+        this.stocksByUnderlying = new int[underlyingCount][];
+        this.optionSlotStart = new int[underlyingCount];
+        this.optionSlotEnd = new int[underlyingCount];
+        this.slotPosition = new int[optionCount];
+        this.slotStrikes = new double[optionCount];
+        this.slotSigmas = new double[optionCount];
+        this.slotMaturities = new double[optionCount];
+        this.slotDriftTerms = new double[optionCount];
+        this.slotSigmaSqrtTs = new double[optionCount];
+        this.slotDiscountedStrikes = new double[optionCount];
+        this.slotSigns = new double[optionCount];
+        this.slotPrices = new double[optionCount];
+        this.slotReferencePrices = new double[optionCount];
+        this.referenceGreeks = new GreeksBuffer(optionCount);
+        this.currentGreeks = new GreeksBuffer(optionCount);
+        this.slotInterpolationErrors = new double[optionCount];
+        this.referenceSpots = new double[underlyingCount];
+        this.referenceNanos = new long[underlyingCount];
+        this.approximationErrors = new double[underlyingCount];
+        this.interpolated = new boolean[underlyingCount];
+        this.underlyingDelta = new double[underlyingCount];
+        this.underlyingGamma = new double[underlyingCount];
+        this.underlyingVega = new double[underlyingCount];
+        this.underlyingTheta = new double[underlyingCount];
+        this.underlyingRho = new double[underlyingCount];
+        Arrays.fill(optionSlotOf, -1);
+
+        int slot = 0;
+        for (int u = 0; u < underlyingCount; u++) {
+            List<Integer> members = grouped.get(u);
+            positionsByUnderlying[u] = members.stream().mapToInt(Integer::intValue).toArray();
+            stocksByUnderlying[u] = members.stream().filter(i -> types[i] == TYPE_STOCK).mapToInt(Integer::intValue).toArray();
+
+            optionSlotStart[u] = slot;
+            for (int i : members) {
+                if (types[i] == TYPE_CALL) {
+                    EuropeanCallOption call = (EuropeanCallOption) securities[i];
+                    compileOption(slot++, i, call.getStrikePrice(), call.getSigma(), call.getTimeToMaturity(), OptionPricingService.CALL_SIGN);
+                } else if (types[i] == TYPE_PUT) {
+                    EuropeanPutOption put = (EuropeanPutOption) securities[i];
+                    compileOption(slot++, i, put.getStrikePrice(), put.getSigma(), put.getTimeToMaturity(), OptionPricingService.PUT_SIGN);
+                }
+            }
+            optionSlotEnd[u] = slot;
+        }
+
+        // --- 3. 載入初始價格並完整計算一次 ----------------------------------------------------------------------------------
+        this.underlyingPrices = new double[underlyingCount];
+        this.underlyingPriced = new boolean[underlyingCount];
+        for (int u = 0; u < underlyingCount; u++) {
+            Double price = initialStockPrices.get(underlyingTickers[u]);
+            if (price != null) {
+                underlyingPrices[u] = price;
+                underlyingPriced[u] = true;
+            }
+            revalueUnderlying(u, 0L);
+        }
+        resumTotals();
+    }
+
+    /**
+     * 依持倉索引順序重新加總總 NAV 與近似誤差, 消除差額累加的捨入漂移
+     * 結果與以目前價格 / 數量重新建立的帳本逐位元相同; 發布快照時與每 max(RESUM_INTERVAL, 持倉筆數) 次差額更新後呼叫
+     */
+    public void resumTotals() {
+        double nav = 0.0;
+        for (int i = 0; i < values.length; i++) {
+            nav += values[i];
+        }
+        double error = 0.0;
+        for (int u = 0; u < approximationErrors.length; u++) {
+            error += approximationErrors[u];
+        }
+        totalNAV = nav;
+        totalApproximationError = error;
+        updatesSinceResum = 0;
+    }
+
+    // 差額更新之後呼叫: 累積的次數達到門檻時重新加總, 讓漂移有上限
+    private void countIncrementalUpdate() {
+        if (++updatesSinceResum >= Math.max(RESUM_INTERVAL, values.length)) {
+            resumTotals();
+        }
+    }
+
+    private void compileOption(int slot, int position, double strike, double sigma, double maturity, double sign) {
+        slotPosition[slot] = position;
+        optionSlotOf[position] = slot;
+        slotStrikes[slot] = strike;
+        slotSigmas[slot] = sigma;
+        slotMaturities[slot] = maturity;
+        slotDriftTerms[slot] = OptionPricingService.driftTerm(sigma, maturity);
+        slotSigmaSqrtTs[slot] = OptionPricingService.sigmaSqrtT(sigma, maturity);
+        slotDiscountedStrikes[slot] = OptionPricingService.discountedStrike(strike, maturity);
+        slotSigns[slot] = sign;
+    }
+
+    /**
+     * 啟用快速模式 (應在估值線程上或開始接收 tick 前呼叫)
+     * @param maxRelativeMove  標的相對於快取價格的變動比例上限, 超過即完整重新定價 (e.g., 0.01 = 1%)
+     * @param maxStalenessNanos 快取的最長有效時間, 超過即完整重新定價
+     */
+    public void enableFastMode(double maxRelativeMove, long maxStalenessNanos) {
+        this.fastModeMaxMove = maxRelativeMove;
+        this.fastModeMaxStalenessNanos = maxStalenessNanos;
+        this.fastMode = true;
+        this.priceCache = null;
+    }
+
+    public void disableFastMode() {
+        this.fastMode = false;
+    }
+
+    /**
+     * 啟用插值模式 (應在估值線程上或開始接收 tick 前呼叫), 會停用快速模式
+     * 插值表在各標的下一次完整定價後於背景建立, 之前的 tick 仍完整定價
+     * @param bandWidth 插值範圍: 建表時標的價格的 ±比例 (e.g., 0.05 = ±5%)
+     * @param maxError  每單位合約的價格誤差上限; 達不到的合約 (e.g., 即將到期) 不插值, 每個 tick 完整定價
+     */
+    public void enableInterpolationMode(double bandWidth, double maxError) {
+        this.priceCache = new ChebyshevPriceCache(pricingService, underlyingTickers.length, bandWidth, maxError);
+        this.fastMode = false;
+    }
+
+    public void disableInterpolationMode() {
+        this.priceCache = null;
+    }
+
+    public boolean isInterpolationMode() { return priceCache != null; }
+
+    ChebyshevPriceCache getPriceCache() { return priceCache; }
+
+    /**
+     * 完整重新定價時改從共用的合約價格表取得價格與 Greeks (應在估值線程上或開始接收 tick 前呼叫; null = 停用)
+     * 只有所有選擇權合約都在表中且參數完全相同的標的會共用, 其餘標的照常自行定價; 兩者的結果逐位元相同
+     * @throws IllegalArgumentException 表與帳本的 N(x) 實作 (NormalCdf) 不同 (價格不會逐位元相同); 帳本的設定不變
+     */
+    public void shareContractPrices(ContractPriceTable table) {
+        if (table == null) {
+            this.contractPrices = null;
+            return;
+        }
+        if (table.getNormalCdf() != pricingService.getNormalCdf()) {
+            throw new IllegalArgumentException("共用合約價格表的 N(x) 實作 (" + table.getNormalCdf().getClass().getSimpleName()
+                    + ") 與帳本 (" + pricingService.getNormalCdf().getClass().getSimpleName() + ") 不同");
+        }
+        this.slotContracts = new int[slotPosition.length];
+        this.sharedUnderlyings = new int[underlyingTickers.length];
+        this.sharedVersions = new int[underlyingTickers.length];
+        for (int slot = 0; slot < slotPosition.length; slot++) {
+            slotContracts[slot] = table.contractId(securityTickers[securityIds[slotPosition[slot]]]);
+        }
+        for (int u = 0; u < underlyingTickers.length; u++) {
+            bindSharedUnderlying(table, u);
+        }
+        this.contractPrices = table;
+    }
+
+    // 標的的所有合約都在表中且參數相同時才共用, 並記錄表中的參數版本
+    private void bindSharedUnderlying(ContractPriceTable table, int u) {
+        int tableUnderlying = table.underlyingId(underlyingTickers[u]);
+        int version = NO_UNDERLYING;
+        if (tableUnderlying >= 0 && optionSlotStart[u] < optionSlotEnd[u]) {
+            version = table.bind(tableUnderlying, slotContracts, slotStrikes, slotSigmas, slotMaturities, slotSigns,
+                    optionSlotStart[u], optionSlotEnd[u]);
+        }
+        sharedUnderlyings[u] = version < 0 ? NO_UNDERLYING : tableUnderlying;
+        sharedVersions[u] = version;
+    }
+
+    /**
+     * 更新選擇權合約的波動率 (e.g., 由 ImpliedVolatilityService 校準), 並以目前標的價格重新計算受影響的標的 (應在估值線程上呼叫)
+     * 受影響標的的泰勒展開基準與插值表作廢; 共用合約價格時, 表中也已套用相同波動率 (ContractPriceTable.updateVolatilities) 才會繼續共用
+     * @param sigmas 合約代碼 -> 波動率; 帳本中沒有的代碼略過
+     * @return 受影響的標的 id
+     */
+    public int[] updateVolatilities(Map<String, Double> sigmas) {
+        boolean[] affected = new boolean[underlyingTickers.length];
+        int count = 0;
+        for (int slot = 0; slot < slotPosition.length; slot++) {
+            Double sigma = sigmas.get(securityTickers[securityIds[slotPosition[slot]]]);
+            if (sigma == null || sigma == slotSigmas[slot]) {
+                continue;
+            }
+            compileOption(slot, slotPosition[slot], slotStrikes[slot], sigma, slotMaturities[slot], slotSigns[slot]);
+            int u = underlyingOf[slotPosition[slot]];
+            if (!affected[u]) {
+                affected[u] = true;
+                count++;
+            }
+        }
+
+        int[] result = new int[count];
+        int n = 0;
+        for (int u = 0; u < affected.length; u++) {
+            if (!affected[u]) {
+                continue;
+            }
+            result[n++] = u;
+            referenceSpots[u] = 0.0;
+            if (priceCache != null) {
+                priceCache.invalidate(u);
+            }
+        }
+        // 表中的參數版本以標的為單位遞增: 沒有受影響合約的標的也要重新綁定, 否則會一直自行定價
+        ContractPriceTable table = contractPrices;
+        for (int u = 0; table != null && u < underlyingTickers.length; u++) {
+            bindSharedUnderlying(table, u);
+        }
+        for (int u : result) {
+            if (underlyingPriced[u]) {
+                updateUnderlyingPrice(u, underlyingPrices[u]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return 標的代碼對應的 underlying id, 若帳本中沒有持倉依賴此代碼則回傳 -1
+     */
+    public int underlyingId(String ticker) {
+        Integer id = underlyingIds.get(ticker);
+        return id == null ? NO_UNDERLYING : id;
+    }
+
+    /**
+     * @return 代碼 id 對應的 underlying id, 若帳本中沒有持倉依賴此代碼則回傳 -1 (陣列查找)
+     */
+    public int underlyingId(int symbolId) {
+        return symbolId >= 0 && symbolId < underlyingBySymbol.length ? underlyingBySymbol[symbolId] : NO_UNDERLYING;
+    }
+
+    /**
+     * 更新一個標的的價格, 只重新計算依賴它的持倉, 並以差額更新總 NAV (不配置任何物件)
+     * @return 受影響的持倉索引 (內部陣列, 呼叫端不可修改)
+     */
+    public int[] updateUnderlyingPrice(int underlyingId, double newPrice) {
+        underlyingPrices[underlyingId] = newPrice;
+        underlyingPriced[underlyingId] = true;
+
+        int[] affected = positionsByUnderlying[underlyingId];
+        double navBefore = 0.0;
+        for (int index : affected) {
+            navBefore += values[index];
+        }
+        double errorBefore = approximationErrors[underlyingId];
+        double navAfter = revalueUnderlying(underlyingId, fastMode ? System.nanoTime() : 0L);
+        totalNAV += navAfter - navBefore;
+        totalApproximationError += approximationErrors[underlyingId] - errorBefore;
+        countIncrementalUpdate();
+        return affected;
+    }
+
+    /**
+     * 變更單一持倉的數量 (e.g., 日內成交), 不重新定價 (不配置任何物件)
+     * 價格與單位 Greeks 不受數量影響, 因此該持倉的價值, 標的彙總 Greeks, 總 NAV 與近似誤差都只以差額更新
+     */
+    public void setQuantity(int i, long quantity) {
+        long change = quantity - quantities[i];
+        if (change == 0) {
+            return;
+        }
+        quantities[i] = quantity;
+        double valueBefore = values[i];
+        values[i] = prices[i] * quantity;
+        totalNAV += values[i] - valueBefore;
+        countIncrementalUpdate();
+
+        int u = underlyingOf[i];
+        if (u == NO_UNDERLYING) {
+            return;
+        }
+        int slot = optionSlotOf[i];
+        if (slot < 0) {
+            underlyingDelta[u] += change; // 股票
+            return;
+        }
+        underlyingDelta[u] += change * currentGreeks.delta[slot];
+        underlyingGamma[u] += change * currentGreeks.gamma[slot];
+        underlyingVega[u] += change * currentGreeks.vega[slot];
+        underlyingTheta[u] += change * currentGreeks.theta[slot];
+        underlyingRho[u] += change * currentGreeks.rho[slot];
+
+        // 泰勒展開與插值的誤差都與 |qty| 成正比 (完整定價後 dS = 0, 誤差不變)
+        double reference = referenceSpots[u];
+        if (interpolated[u]) {
+            double errorChange = (Math.abs(quantity) - Math.abs(quantity - change)) * slotInterpolationErrors[slot];
+            approximationErrors[u] += errorChange;
+            totalApproximationError += errorChange;
+        } else if (reference > 0.0) {
+            double dS = underlyingPrices[u] - reference;
+            double errorChange = (Math.abs(quantity) - Math.abs(quantity - change))
+                    * Math.abs(referenceGreeks.speed[slot]) * Math.abs(dS * dS * dS) / 6.0;
+            approximationErrors[u] += errorChange;
+            totalApproximationError += errorChange;
+        }
+    }
+
+    /**
+     * 以目前標的價格重新計算該標的下的所有持倉並彙總 Greeks; 標的尚未有報價的選擇權以 0 計價
+     * @return 這些持倉的價值總和
+     */
+    private double revalueUnderlying(int u, long nowNanos) {
+        double spot = underlyingPrices[u];
+        double sum = 0.0;
+        double delta = 0.0;
+
+        for (int i : stocksByUnderlying[u]) {
+            prices[i] = spot;
+            values[i] = spot * quantities[i];
+            sum += values[i];
+            delta += quantities[i];
+        }
+
+        int start = optionSlotStart[u];
+        int end = optionSlotEnd[u];
+        if (underlyingPriced[u]) {
+            ChebyshevPriceCache cache = priceCache;
+            ChebyshevPriceCache.Surface surface;
+            if (canApproximate(u, spot, nowNanos)) {
+                approximate(u, spot - referenceSpots[u], start, end);
+            } else if (cache != null && (surface = cache.surface(u, spot)) != null) {
+                interpolate(u, surface, spot, start, end);
+            } else {
+                fullReprice(u, spot, nowNanos, start, end);
+                if (cache != null) {
+                    cache.requestBuild(u, spot, slotStrikes, slotDriftTerms, slotSigmaSqrtTs, slotDiscountedStrikes,
+                            slotSigns, start, end);
+                }
+            }
+        }
+
+        double gamma = 0.0, vega = 0.0, theta = 0.0, rho = 0.0;
+        for (int slot = start; slot < end; slot++) {
+            int i = slotPosition[slot];
+            long qty = quantities[i];
+            prices[i] = slotPrices[slot];
+            values[i] = slotPrices[slot] * qty;
+            sum += values[i];
+            delta += qty * currentGreeks.delta[slot];
+            gamma += qty * currentGreeks.gamma[slot];
+            vega += qty * currentGreeks.vega[slot];
+            theta += qty * currentGreeks.theta[slot];
+            rho += qty * currentGreeks.rho[slot];
+        }
+        underlyingDelta[u] = delta;
+        underlyingGamma[u] = gamma;
+        underlyingVega[u] = vega;
+        underlyingTheta[u] = theta;
+        underlyingRho[u] = rho;
+        return sum;
+    }
+
+    private boolean canApproximate(int u, double spot, long nowNanos) {
+        double reference = referenceSpots[u];
+        return fastMode
+                && reference > 0.0
+                && Math.abs(spot - reference) <= fastModeMaxMove * reference
+                && nowNanos - referenceNanos[u] < fastModeMaxStalenessNanos;
+    }
+
+    // 完整 Black-Scholes 定價, 並將結果存為泰勒展開的新基準
+    private void fullReprice(int u, double spot, long nowNanos, int start, int end) {
+        ContractPriceTable table = contractPrices;
+        int shared = table == null ? NO_UNDERLYING : sharedUnderlyings[u];
+        if (shared == NO_UNDERLYING
+                || !table.copyPricesAndGreeks(shared, sharedVersions[u], spot, slotContracts, slotPrices, referenceGreeks, start, end)) {
+            pricingService.calculatePricesAndGreeks(spot, slotStrikes, slotMaturities, slotDriftTerms, slotSigmaSqrtTs,
+                    slotDiscountedStrikes, slotSigns, slotPrices, referenceGreeks, start, end);
+        }
+        int length = end - start;
+        System.arraycopy(slotPrices, start, slotReferencePrices, start, length);
+        System.arraycopy(referenceGreeks.delta, start, currentGreeks.delta, start, length);
+        System.arraycopy(referenceGreeks.gamma, start, currentGreeks.gamma, start, length);
+        System.arraycopy(referenceGreeks.vega, start, currentGreeks.vega, start, length);
+        System.arraycopy(referenceGreeks.theta, start, currentGreeks.theta, start, length);
+        System.arraycopy(referenceGreeks.rho, start, currentGreeks.rho, start, length);
+        referenceSpots[u] = spot;
+        referenceNanos[u] = nowNanos;
+        approximationErrors[u] = 0.0;
+        interpolated[u] = false;
+    }
+
+    // Chebyshev 插值: 價格與 delta/gamma 為插值多項式及其導數, vega/theta/rho 沿用上一次完整定價的值
+    private void interpolate(int u, ChebyshevPriceCache.Surface surface, double spot, int start, int end) {
+        double x = surface.toX(spot);
+        double twoX = 2.0 * x;
+        double[] coefficients = surface.coefficients;
+        double error = 0.0;
+        for (int slot = start; slot < end; slot++) {
+            int n = surface.degrees[slot - start];
+            if (n == 0) {
+                pricingService.calculatePricesAndGreeks(spot, slotStrikes, slotMaturities, slotDriftTerms, slotSigmaSqrtTs,
+                        slotDiscountedStrikes, slotSigns, slotPrices, currentGreeks, slot, slot + 1);
+                slotInterpolationErrors[slot] = 0.0;
+                continue;
+            }
+            // 價格 (n 項) / delta (n - 1 項) / gamma (n - 2 項) 的 Clenshaw 遞迴在同一個迴圈中交錯執行 (三條獨立的相依鏈)
+            int p = surface.offsets[slot - start];
+            int d = p + n;
+            int g = d + n - 1;
+            double p1 = twoX * coefficients[p + n - 1] + coefficients[p + n - 2];
+            double p2 = coefficients[p + n - 1];
+            double d1 = coefficients[d + n - 2];
+            double d2 = 0.0;
+            double g1 = 0.0;
+            double g2 = 0.0;
+            for (int k = n - 3; k >= 1; k--) {
+                double pk = twoX * p1 - p2 + coefficients[p + k];
+                double dk = twoX * d1 - d2 + coefficients[d + k];
+                double gk = twoX * g1 - g2 + coefficients[g + k];
+                p2 = p1;
+                p1 = pk;
+                d2 = d1;
+                d1 = dk;
+                g2 = g1;
+                g1 = gk;
+            }
+            slotPrices[slot] = x * p1 - p2 + coefficients[p];
+            currentGreeks.delta[slot] = x * d1 - d2 + coefficients[d];
+            currentGreeks.gamma[slot] = x * g1 - g2 + coefficients[g];
+            double slotError = surface.errors[slot - start];
+            slotInterpolationErrors[slot] = slotError;
+            error += Math.abs(quantities[slotPosition[slot]]) * slotError;
+        }
+        approximationErrors[u] = error;
+        interpolated[u] = true;
+    }
+
+    // 二階泰勒展開: V(S + dS) ≈ V + Δ·dS + ½Γ·dS², 誤差估計為 |qty|·|speed|·|dS|³/6
+    private void approximate(int u, double dS, int start, int end) {
+        double halfDS2 = 0.5 * dS * dS;
+        double cubicTerm = Math.abs(dS * dS * dS) / 6.0;
+        double error = 0.0;
+        for (int slot = start; slot < end; slot++) {
+            double refDelta = referenceGreeks.delta[slot];
+            double refGamma = referenceGreeks.gamma[slot];
+            double refSpeed = referenceGreeks.speed[slot];
+            slotPrices[slot] = slotReferencePrices[slot] + refDelta * dS + refGamma * halfDS2;
+            currentGreeks.delta[slot] = refDelta + refGamma * dS;
+            currentGreeks.gamma[slot] = refGamma + refSpeed * dS;
+            error += Math.abs(quantities[slotPosition[slot]] * refSpeed) * cubicTerm;
+        }
+        approximationErrors[u] = error;
+    }
+
+    public int size() { return types.length; }
+    public int underlyingCount() { return underlyingTickers.length; }
+    public double getTotalNAV() { return totalNAV; }
+    public double getTotalApproximationError() { return totalApproximationError; }
+
+    public String getSymbol(int i) { return securityTickers[securityIds[i]]; }
+    public int getSecurityId(int i) { return securityIds[i]; }
+    public byte getType(int i) { return types[i]; }
+    public String getTypeName(int i) { return TYPE_NAMES[types[i]]; }
+    public long getQuantity(int i) { return quantities[i]; }
+    public double getPrice(int i) { return prices[i]; }
+    public double getValue(int i) { return values[i]; }
+
+    /** @return 持倉的標的 id, 沒有標的 (未知證券) 時為 -1 */
+    public int getUnderlyingOf(int i) { return underlyingOf[i]; }
+
+    public String getUnderlyingTicker(int underlyingId) { return underlyingTickers[underlyingId]; }
+    /** @return 依賴此標的的持倉索引 (內部陣列, 呼叫端不可修改) */
+    public int[] getPositionsForUnderlying(int underlyingId) { return positionsByUnderlying[underlyingId]; }
+    public double getUnderlyingPrice(int underlyingId) { return underlyingPrices[underlyingId]; }
+    public boolean isUnderlyingPriced(int underlyingId) { return underlyingPriced[underlyingId]; }
+
+    // --- 選擇權 slot 的合約參數與定價常數 (MergedContractBook 合併合約時沿用, 不重新計算) ---
+    int securityCount() { return securityTickers.length; }
+    int getOptionSlot(int i) { return optionSlotOf[i]; }
+    double getSlotStrike(int slot) { return slotStrikes[slot]; }
+    double getSlotSigma(int slot) { return slotSigmas[slot]; }
+    double getSlotMaturity(int slot) { return slotMaturities[slot]; }
+    double getSlotSign(int slot) { return slotSigns[slot]; }
+    double getSlotDriftTerm(int slot) { return slotDriftTerms[slot]; }
+    double getSlotSigmaSqrtT(int slot) { return slotSigmaSqrtTs[slot]; }
+    double getSlotDiscountedStrike(int slot) { return slotDiscountedStrikes[slot]; }
+
+    /**
+     * @return 單一持倉的 Greeks (已乘上數量); 股票的 delta 即為股數
+     */
+    public Greeks getGreeks(int i) {
+        long qty = quantities[i];
+        int slot = optionSlotOf[i];
+        if (slot < 0) {
+            return types[i] == TYPE_STOCK ? new Greeks(qty, 0.0, 0.0, 0.0, 0.0) : Greeks.ZERO;
+        }
+        return new Greeks(qty * currentGreeks.delta[slot], qty * currentGreeks.gamma[slot],
+                qty * currentGreeks.vega[slot], qty * currentGreeks.theta[slot], qty * currentGreeks.rho[slot]);
+    }
+
+    /**
+     * @return 依標的彙總的持倉 Greeks
+     */
+    public Greeks getUnderlyingGreeks(int underlyingId) {
+        return new Greeks(underlyingDelta[underlyingId], underlyingGamma[underlyingId],
+                underlyingVega[underlyingId], underlyingTheta[underlyingId], underlyingRho[underlyingId]);
+    }
+
+    /**
+     * @return 整個投資組合的 Greeks
+     */
+    public Greeks getPortfolioGreeks() {
+        double delta = 0.0, gamma = 0.0, vega = 0.0, theta = 0.0, rho = 0.0;
+        for (int u = 0; u < underlyingTickers.length; u++) {
+            delta += underlyingDelta[u];
+            gamma += underlyingGamma[u];
+            vega += underlyingVega[u];
+            theta += underlyingTheta[u];
+            rho += underlyingRho[u];
+        }
+        return new Greeks(delta, gamma, vega, theta, rho);
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.realtimevalsystem.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 市場數據合併 (conflation) 分派器
+ * - 介於 MarketDataPublisher 與估值引擎之間: 發布者線程只寫入每支股票的最新價格, 永不阻塞
+ * - 估值線程 (run) 一次取出所有有變動的股票, 以 onStockPriceBatch 整批送出, 每批只重新估值一次
+ * - 同一支股票在被取出前的多次報價只保留最新一筆 (計入 ticksConflated)
+ *
+ * 股票代碼在建構時註冊成固定的 slot, 之後的讀寫只經過不可變的 HashMap 與 atomic 陣列, 不需要鎖
+ * 以 SymbolTable 建構時也可以代碼 id 送入 (以陣列查找 slot), 並以代碼 id 整批送給下游
+ * 每個 slot 與最新價格一起保存該報價的建立時間; 整批送出時帶本批最早的時間 (被合併掉的舊報價不計)
+ */
+public class ConflatingMarketDataDispatcher implements MarketDataListener, SymbolIdMarketDataListener, Runnable {
+
+    private static final int CLEAN = 0;
+    private static final int DIRTY = 1;
+
+    private final MarketDataListener downstream;
+    private final SymbolIdMarketDataListener symbolIdDownstream; // 不為 null 時以代碼 id 送出
+
+    // --- slot map (建構後不再變動) ------------------------------------------------------------------------------------
+    private final Map<String, Integer> slotIds = new HashMap<>();
+    private final int[] slotBySymbolId; // 代碼 id -> slot (-1 = 未註冊)
+    private final String[] slotTickers;
+    private final int[] slotSymbolIds;
+    private final AtomicLongArray latestPrices;  // Double.doubleToRawLongBits
+    private final AtomicLongArray latestTickNanos; // 最新價格的報價建立時間
+    private final AtomicIntegerArray dirty;
+
+    // --- 估值線程專用的批次緩衝區 --------------------------------------------------------------------------------------
+    private final String[] batchTickers;
+    private final int[] batchSymbolIds;
+    private final double[] batchPrices;
+    private long batchTickNanos;
+    private volatile Thread consumerThread;
+    private volatile boolean busy; // 估值線程正在取出或處理一批
+
+    // --- 計數器 ------------------------------------------------------------------------------------------------------
+    private final LongAdder ticksReceived = new LongAdder();
+    private final LongAdder ticksConflated = new LongAdder();
+    private final LongAdder ticksIgnored = new LongAdder();
+    private volatile long batchesProcessed;
+
+    /**
+     * @param tickers    會收到報價的股票代碼
+     * @param downstream 下游監聽器 (通常是 PortfolioValuationService), 只會在估值線程上被呼叫
+     */
+    public ConflatingMarketDataDispatcher(Collection<String> tickers, MarketDataListener downstream) {
+        this(tickers, downstream, null, new SymbolTable());
+    }
+
+    /**
+     * @param symbols    代碼符號表 (通常為 downstream.getSymbolTable())
+     * @param tickers    會收到報價的股票代碼
+     * @param downstream 下游 (估值服務或 MultiPortfolioValuationEngine 的分片), 以代碼 id 整批接收, 只會在估值線程上被呼叫
+     */
+    public ConflatingMarketDataDispatcher(SymbolTable symbols, Collection<String> tickers, SymbolIdMarketDataListener downstream) {
+        this(tickers, null, downstream, symbols);
+    }
+
+    private ConflatingMarketDataDispatcher(Collection<String> tickers, MarketDataListener downstream,
+                                           SymbolIdMarketDataListener symbolIdDownstream, SymbolTable symbols) {
+        this.downstream = downstream;
+        this.symbolIdDownstream = symbolIdDownstream;
+        this.slotTickers = new String[tickers.size()];
+        this.slotSymbolIds = new int[tickers.size()];
+        int slot = 0;
+        int maxSymbolId = -1;
+        for (String ticker : tickers) {
+            if (!slotIds.containsKey(ticker)) {
+                slotIds.put(ticker, slot);
+                slotTickers[slot] = ticker;
+                slotSymbolIds[slot] = symbols.intern(ticker);
+                maxSymbolId = Math.max(maxSymbolId, slotSymbolIds[slot]);
+                slot++;
+            }
+        }
+        this.slotBySymbolId = new int[maxSymbolId + 1];
+        Arrays.fill(slotBySymbolId, -1);
+        for (int s = 0; s < slot; s++) {
+            slotBySymbolId[slotSymbolIds[s]] = s;
+        }
+        this.latestPrices = new AtomicLongArray(slot);
+        this.latestTickNanos = new AtomicLongArray(slot);
+        this.dirty = new AtomicIntegerArray(slot);
+        this.batchTickers = new String[slot];
+        this.batchSymbolIds = new int[slot];
+        this.batchPrices = new double[slot];
+    }
+
+    /**
+     * 發布者線程呼叫: 記錄最新價格並喚醒估值線程, 永不阻塞
+     * 未註冊的股票代碼會被忽略 (計入 ticksIgnored)
+     */
+    @Override
+    public void onStockPriceUpdate(String ticker, double newPrice) {
+        Integer slot = slotIds.get(ticker);
+        offer(slot == null ? -1 : slot, newPrice, System.nanoTime());
+    }
+
+    /**
+     * 發布者線程呼叫 (以代碼 id): 與 onStockPriceUpdate(String, double) 相同, 但以陣列查找 slot
+     */
+    @Override
+    public void onStockPriceUpdate(int symbolId, double newPrice) {
+        onStockPriceUpdate(symbolId, newPrice, System.nanoTime());
+    }
+
+    @Override
+    public void onStockPriceUpdate(int symbolId, double newPrice, long tickNanos) {
+        offer(symbolId >= 0 && symbolId < slotBySymbolId.length ? slotBySymbolId[symbolId] : -1, newPrice, tickNanos);
+    }
+
+    private void offer(int slot, double newPrice, long tickNanos) {
+        ticksReceived.increment();
+        if (slot < 0) {
+            ticksIgnored.increment();
+            return;
+        }
+
+        latestTickNanos.set(slot, tickNanos);
+        latestPrices.set(slot, Double.doubleToRawLongBits(newPrice));
+        if (dirty.getAndSet(slot, DIRTY) == DIRTY) {
+            ticksConflated.increment(); // 前一筆尚未被取出, 直接覆蓋
+        } else {
+            Thread consumer = consumerThread;
+            if (consumer != null) {
+                LockSupport.unpark(consumer);
+            }
+        }
+    }
+
+    /**
+     * 估值線程: 取出所有有變動的股票並整批送給下游, 沒有變動時 park 等待
+     */
+    @Override
+    public void run() {
+        consumerThread = Thread.currentThread();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                busy = true;
+                int count = drain();
+                if (count > 0) {
+                    if (symbolIdDownstream != null) {
+                        symbolIdDownstream.onStockPriceBatch(batchSymbolIds, batchPrices, count, batchTickNanos);
+                    } else {
+                        downstream.onStockPriceBatch(batchTickers, batchPrices, count);
+                    }
+                    batchesProcessed++;
+                }
+                busy = false;
+                if (count == 0) {
+                    LockSupport.park(this);
+                }
+            }
+        } finally {
+            consumerThread = null;
+        }
+        System.out.println("估值線程已中斷。");
+    }
+
+    // 先清除 dirty 再讀價格: 若期間又有新報價, dirty 會被重新設定, 下一批會再取一次 (不會遺失)
+    // 時間戳與價格不是同一次原子讀取, 與發布者同時寫入時可能取到相鄰報價的時間 (只影響指標)
+    private int drain() {
+        int count = 0;
+        for (int slot = 0; slot < slotTickers.length; slot++) {
+            if (dirty.get(slot) == DIRTY && dirty.getAndSet(slot, CLEAN) == DIRTY) {
+                batchTickers[count] = slotTickers[slot];
+                batchSymbolIds[count] = slotSymbolIds[slot];
+                batchPrices[count] = Double.longBitsToDouble(latestPrices.get(slot));
+                long tickNanos = latestTickNanos.get(slot);
+                if (count == 0 || tickNanos - batchTickNanos < 0L) {
+                    batchTickNanos = tickNanos;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return 沒有待處理的報價且估值線程不在處理中 (供測試 / benchmark 等待處理完畢)
+     * 先檢查 dirty 再檢查 busy: busy 在清除 dirty 之前設定, 因此不會漏看正在處理的批次
+     */
+    public boolean isIdle() {
+        for (int slot = 0; slot < slotTickers.length; slot++) {
+            if (dirty.get(slot) == DIRTY) {
+                return false;
+            }
+        }
+        return !busy;
+    }
+
+    public long getTicksReceived() { return ticksReceived.sum(); }
+    public long getTicksConflated() { return ticksConflated.sum(); }
+    public long getTicksIgnored() { return ticksIgnored.sum(); }
+    public long getBatchesProcessed() { return batchesProcessed; }
+}
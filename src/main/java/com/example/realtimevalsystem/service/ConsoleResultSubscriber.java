@@ -2,20 +2,22 @@ package com.example.realtimevalsystem.service;
 
 import com.example.realtimevalsystem.model.CalculatedPosition;
 import com.example.realtimevalsystem.model.PortfolioUpdate;
-import com.google.common.base.Strings;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 /**
  * [已升級] 儀表板風格的即時訂閱者
  * - 支援 ANSI 顏色
  * - 支援 Δ% 變化
- * - 支援畫面刷新 (Clear Screen)
+ * - 支援完整快照與增量更新 (以 PortfolioStateTracker 重建全部持倉)
+ * - 差異繪製: 只以 ANSI 游標定位重畫數值有變動的欄位, 持倉數改變時才整頁重畫
+ * - 限制刷新率 (預設 10 fps): onPortfolioUpdate 只更新狀態, 兩幀之間的更新會被合併, 由 render 線程 (run) 繪製
+ * - 數字以 TerminalBuffer 格式化到重複使用的緩衝區, 穩定狀態下繪製不配置物件
  */
-public class ConsoleResultSubscriber implements PortfolioResultListener {
+public class ConsoleResultSubscriber implements PortfolioResultListener, Runnable {
 
     // --- ANSI 顏色代碼 -------------------------------------------------------------------------------------------------
     public static final String ANSI_RESET = "\u001B[0m";
@@ -25,112 +27,233 @@ public class ConsoleResultSubscriber implements PortfolioResultListener {
     public static final String ANSI_CYAN = "\u001B[36m"; // 標題用
     public static final String ANSI_BOLD = "\u001B[1m";
 
-    // --- 畫面刷新代碼 ---------------------------------------------------------------------------------------------------
-    public static final String ANSI_CLEAR_SCREEN = "\033[H\033[2J";
+    // --- 版面 (行與欄皆從 1 開始) ---------------------------------------------------------------------------------------
+    private static final int LINE_WIDTH = 86;
+    private static final int FIRST_ROW_LINE = 4; // 標題, 欄位標頭, 分隔線之後
+    private static final int COL_SYMBOL = 1, W_SYMBOL = 25;
+    private static final int COL_TYPE = 27, W_TYPE = 8;
+    private static final int COL_QTY = 36, W_QTY = 10;
+    private static final int COL_PRICE = 47, W_PRICE = 12;
+    private static final int COL_VALUE = 60, W_VALUE = 15;
+    private static final int COL_CHANGE = 76, W_CHANGE = 12;
 
-    // --- 狀態儲存 ------------------------------------------------------------------------------------------------------
-    private Map<String, Double> previousPrices = new HashMap<>();
-    private double previousTotalNAV = 0.0;
-    private final Object printLock = new Object();
-    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+    private static final int COLOR_GRAY = 0;
+    private static final int COLOR_GREEN = 1;
+    private static final int COLOR_RED = -1;
 
-    @Override
-    public void onPortfolioUpdate(PortfolioUpdate update) {
-        synchronized (printLock) {
-            StringBuilder output = new StringBuilder();
-
-            // 1. 清除畫面 -----------------------------------------------------------------------------------------------
-            output.append(ANSI_CLEAR_SCREEN);
+    // --- 狀態儲存 (printLock 保護) ------------------------------------------------------------------------------------
+    private final PortfolioStateTracker state = new PortfolioStateTracker();
+    private final Object printLock = new Object();
+    private boolean pendingFrame;
+    private long updatesReceived;
+    private long triggerUpdateNumber;
+    private String triggerTicker = "";
+    private long triggerTimestamp;
 
-            String time = timeFormat.format(new Date(update.getTimestamp()));
+    // --- 已繪製在畫面上的內容 (只有 render 線程讀寫) -------------------------------------------------------------------
+    private final PrintStream out;
+    private final long frameIntervalNanos;
+    private final TerminalBuffer buffer = new TerminalBuffer(64 * 1024);
+    private final TimeZone timeZone = TimeZone.getDefault();
+    private int renderedRows = -1; // -1 代表需要整頁重畫
+    private CalculatedPosition[] renderedPositions = new CalculatedPosition[0];
+    private double[] renderedPrices = new double[0];
+    private double[] renderedChanges = new double[0];
+    private int[] renderedColors = new int[0];
+    private double renderedNAV = Double.NaN;
+    private double renderedNAVChange = Double.NaN;
+    private long framesRendered;
 
-            // 2. 印出標題 -----------------------------------------------------------------------------------------------
-            output.append(ANSI_BOLD + ANSI_CYAN);
-            output.append(String.format("================= Portfolio Update (%s | #%d | Trigger: %s) =================\n",
-                    time, update.getUpdateNumber(), update.getTriggerTicker()));
-            output.append(ANSI_RESET);
+    public ConsoleResultSubscriber() {
+        this(System.out, 10);
+    }
 
-            // 3. 印出欄位標頭 (調整寬度) ----------------------------------------------------------------------------------
-            output.append(String.format("%-25s %-8s %10s %12s %15s %12s\n",
-                    "Symbol", "Type", "Qty", "Price", "Market Value", "ΔChange"));
-            output.append(Strings.repeat("-", 86)).append("\n"); // 調整分隔線長度
+    /**
+     * @param out    輸出目標
+     * @param maxFps 每秒最多繪製幾幀 (>= 1)
+     */
+    public ConsoleResultSubscriber(PrintStream out, int maxFps) {
+        if (maxFps < 1) {
+            throw new IllegalArgumentException("maxFps must be >= 1: " + maxFps);
+        }
+        this.out = out;
+        this.frameIntervalNanos = TimeUnit.SECONDS.toNanos(1) / maxFps;
+    }
 
-            // 4. 遍歷所有持倉 -------------------------------------------------------------------------------------------
-            Map<String, Double> newPrices = new HashMap<>();
-            for (CalculatedPosition pos : update.getPositions()) {
-                double newPrice = pos.getPrice();
-                double oldPrice = previousPrices.getOrDefault(pos.getSymbol(), newPrice);
+    /**
+     * 只更新重建的狀態並標記有新幀待繪製, 不做任何格式化或輸出
+     */
+    @Override
+    public void onPortfolioUpdate(PortfolioUpdate update) {
+        synchronized (printLock) {
+            updatesReceived++;
+            if (!state.apply(update)) {
+                return; // 偵測到遺漏的增量更新, 等待下一個完整快照
+            }
+            triggerUpdateNumber = update.getUpdateNumber();
+            triggerTicker = update.getTriggerTicker();
+            triggerTimestamp = update.getTimestamp();
+            pendingFrame = true;
+        }
+    }
 
-                double pctChange = 0.0;
-                if (oldPrice != 0.0) {
-                    pctChange = (newPrice - oldPrice) / oldPrice;
+    /**
+     * render 線程: 每 frameIntervalNanos 最多繪製一幀
+     */
+    @Override
+    public void run() {
+        long nextFrame = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            long wait = nextFrame - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // 保持中斷狀態
+                    break;
                 }
+            }
+            nextFrame = System.nanoTime() + frameIntervalNanos;
+            renderFrame();
+        }
+    }
 
-                String changeStr = formatChange(pctChange);
-                String color = getColor(pctChange);
-
-                output.append(String.format("%s%-25s %-8s %10d %12.4f %,15.2f %12s%s\n",
-                        color,
-                        pos.getSymbol(),
-                        pos.getType(),
-                        pos.getQty(),
-                        newPrice,     // 價格
-                        pos.getValue(),
-                        changeStr,    // ΔChange
-                        ANSI_RESET));
-
-                newPrices.put(pos.getSymbol(), newPrice);
+    /**
+     * 若有待繪製的更新就繪製一幀 (在 printLock 內組好輸出, 鎖外寫出)
+     * @return 是否有繪製
+     */
+    public boolean renderFrame() {
+        synchronized (printLock) {
+            if (!pendingFrame) {
+                return false;
             }
+            pendingFrame = false;
+            buffer.reset();
+            if (renderedRows != state.size()) {
+                drawLayout();
+            }
+            drawHeader();
+            for (int i = 0; i < renderedRows; i++) {
+                drawRow(i, state.getPosition(i));
+            }
+            drawTotal();
+            buffer.cursorTo(FIRST_ROW_LINE + renderedRows + 3, 1); // 游標停在儀表板下方
+            framesRendered++;
+        }
+        buffer.writeTo(out);
+        return true;
+    }
 
-            output.append(Strings.repeat("-", 86)).append("\n"); // 調整分隔線長度
+    // --- 1. 整頁重畫: 清除畫面並畫出固定的欄位標頭與分隔線 --------------------------------------------------------------
+    private void drawLayout() {
+        int rows = state.size();
+        buffer.clearScreen();
+        buffer.cursorTo(2, 1).appendLeft("Symbol", W_SYMBOL).append(' ').appendLeft("Type", W_TYPE).append(' ');
+        buffer.repeat(' ', W_QTY - 3).append("Qty").append(' ');
+        buffer.repeat(' ', W_PRICE - 5).append("Price").append(' ');
+        buffer.repeat(' ', W_VALUE - 12).append("Market Value").append(' ');
+        buffer.repeat(' ', W_CHANGE - 7).append("ΔChange");
+        buffer.cursorTo(3, 1).repeat('-', LINE_WIDTH);
+        buffer.cursorTo(FIRST_ROW_LINE + rows, 1).repeat('-', LINE_WIDTH);
+        buffer.cursorTo(FIRST_ROW_LINE + rows + 2, 1).append(ANSI_CYAN).repeat('=', LINE_WIDTH).append(ANSI_RESET);
 
-            // 5. 印出總 NAV ---------------------------------------------------------------------------------------------
-            double navPctChange = 0.0;
-            if (previousTotalNAV != 0.0) {
-                navPctChange = (update.getTotalNAV() - previousTotalNAV) / previousTotalNAV;
-            }
-            String navChangeStr = formatChange(navPctChange);
-            String navColor = getColor(navPctChange);
+        renderedRows = rows;
+        renderedPositions = new CalculatedPosition[rows];
+        renderedPrices = new double[rows];
+        renderedChanges = new double[rows];
+        renderedColors = new int[rows];
+        Arrays.fill(renderedPrices, Double.NaN);
+        renderedNAV = Double.NaN;
+        renderedNAVChange = Double.NaN;
+    }
 
-            output.append(String.format("%-25s %-8s %10s %12s %s%,15.2f %12s%s\n",
-                    ANSI_BOLD + "Total Portfolio NAV:", "", "", "",
-                    navColor + ANSI_BOLD,
-                    update.getTotalNAV(),
-                    navChangeStr,
-                    ANSI_RESET));
+    // --- 2. 標題 (每幀重畫一行) ------------------------------------------------------------------------------------------
+    private void drawHeader() {
+        buffer.cursorTo(1, 1).append(ANSI_BOLD + ANSI_CYAN).append("================= Portfolio Update (");
+        buffer.appendTime(triggerTimestamp, timeZone.getOffset(triggerTimestamp)).append(" | #").appendLong(triggerUpdateNumber, 0);
+        buffer.append(" | Trigger: ").append(triggerTicker).append(") =================").append(ANSI_RESET).clearToEndOfLine();
+    }
 
-            output.append(ANSI_CYAN).append(Strings.repeat("=", 86)).append("\n").append(ANSI_RESET);
+    // --- 3. 持倉列: 只重畫變動的欄位, 顏色改變或持倉本身改變時重畫整列 ------------------------------------------------------
+    // Δ% 相對於上一幀畫出的價格 (沒有變動的列在下一幀回到 0.00%)
+    private void drawRow(int i, CalculatedPosition pos) {
+        CalculatedPosition previous = renderedPositions[i];
+        double newPrice = pos.getPrice();
+        double oldPrice = Double.isNaN(renderedPrices[i]) ? newPrice : renderedPrices[i];
+        double pctChange = oldPrice != 0.0 ? (newPrice - oldPrice) / oldPrice : 0.0;
+        int color = colorOf(pctChange);
+        int line = FIRST_ROW_LINE + i;
 
-            // 6. 更新狀態 -----------------------------------------------------------------------------------------------
-            this.previousPrices = newPrices;
-            this.previousTotalNAV = update.getTotalNAV();
+        if (previous == null || color != renderedColors[i] || !previous.getSymbol().equals(pos.getSymbol())
+                || !previous.getType().equals(pos.getType()) || previous.getQty() != pos.getQty()) {
+            buffer.cursorTo(line, COL_SYMBOL).append(ansiColor(color));
+            buffer.appendLeft(pos.getSymbol(), W_SYMBOL).append(' ');
+            buffer.appendLeft(pos.getType(), W_TYPE).append(' ');
+            buffer.appendLong(pos.getQty(), W_QTY).append(' ');
+            buffer.appendFixed(newPrice, 4, false, W_PRICE).append(' ');
+            buffer.appendFixed(pos.getValue(), 2, true, W_VALUE).append(' ');
+            buffer.appendPercentChange(pctChange, W_CHANGE).append(ANSI_RESET).clearToEndOfLine();
+        } else {
+            if (newPrice != oldPrice) {
+                buffer.cursorTo(line, COL_PRICE).append(ansiColor(color)).appendFixed(newPrice, 4, false, W_PRICE).append(ANSI_RESET);
+            }
+            if (pos.getValue() != previous.getValue()) {
+                buffer.cursorTo(line, COL_VALUE).append(ansiColor(color)).appendFixed(pos.getValue(), 2, true, W_VALUE).append(ANSI_RESET);
+            }
+            if (pctChange != renderedChanges[i]) {
+                buffer.cursorTo(line, COL_CHANGE).append(ansiColor(color)).appendPercentChange(pctChange, W_CHANGE).append(ANSI_RESET);
+            }
+        }
+        renderedPositions[i] = pos;
+        renderedPrices[i] = newPrice;
+        renderedChanges[i] = pctChange;
+        renderedColors[i] = color;
+    }
 
-            // 7. 一次性印出 ---------------------------------------------------------------------------------------------
-            System.out.print(output.toString());
-            System.out.flush();
+    // --- 4. 總 NAV (Δ% 相對於上一幀) -------------------------------------------------------------------------------------
+    private void drawTotal() {
+        double nav = state.getTotalNAV();
+        double navPctChange = 0.0;
+        if (!Double.isNaN(renderedNAV) && renderedNAV != 0.0) {
+            navPctChange = (nav - renderedNAV) / renderedNAV;
+        }
+        if (nav == renderedNAV && navPctChange == renderedNAVChange) {
+            return;
         }
+        int line = FIRST_ROW_LINE + renderedRows + 1;
+        buffer.cursorTo(line, 1).append(ANSI_BOLD).appendLeft("Total Portfolio NAV:", W_SYMBOL).append(ANSI_RESET);
+        buffer.cursorTo(line, COL_VALUE).append(ansiColor(colorOf(navPctChange))).append(ANSI_BOLD);
+        buffer.appendFixed(nav, 2, true, W_VALUE).append(' ').appendPercentChange(navPctChange, W_CHANGE);
+        buffer.append(ANSI_RESET).clearToEndOfLine();
+        renderedNAV = nav;
+        renderedNAVChange = navPctChange;
     }
 
     /**
-     * 根據變化百分比回傳 ANSI 顏色
+     * 根據變化百分比回傳顏色
      */
-    private String getColor(double pctChange) {
+    private static int colorOf(double pctChange) {
         if (pctChange > 0.000001) {
-            return ANSI_GREEN;
+            return COLOR_GREEN;
         } else if (pctChange < -0.000001) {
-            return ANSI_RED;
+            return COLOR_RED;
         }
-        return ANSI_GRAY; // 無變化用灰色
+        return COLOR_GRAY; // 無變化用灰色
     }
 
-    /**
-     * 格式化百分比字串
-     */
-    private String formatChange(double pctChange) {
-        if (Math.abs(pctChange) < 0.000001) {
-            return "0.00%"; // 顯示 2 位小數
+    private static String ansiColor(int color) {
+        return color == COLOR_GREEN ? ANSI_GREEN : color == COLOR_RED ? ANSI_RED : ANSI_GRAY;
+    }
+
+    public long getUpdatesReceived() {
+        synchronized (printLock) {
+            return updatesReceived;
+        }
+    }
+
+    public long getFramesRendered() {
+        synchronized (printLock) {
+            return framesRendered;
         }
-        String symbol = (pctChange > 0) ? "▲ +" : "▼ ";
-        return String.format("%s%.2f%%", symbol, Math.abs(pctChange * 100));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,269 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.EuropeanCallOption;
+import com.example.realtimevalsystem.model.EuropeanPutOption;
+import com.example.realtimevalsystem.model.Security;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 以合約 (證券代碼) 為單位的共用價格表: 同一合約不論出現在幾筆持倉 / 幾個投資組合, 每個標的價格只定價一次
+ * - 合約依標的連續存放 (與 CompiledBook 的 option slot 相同的 SoA 排列), 表中記錄目前價格對應的標的價格
+ * - 每個標的一個 StampedLock 作為版本戳 (seqlock): 第一個看到新標的價格的估值線程取得寫入鎖, 以批次 API 定價整個標的的所有合約;
+ *   其他線程以樂觀讀取複製價格與 Greeks, 讀取後驗證版本戳未變動, 且表中的標的價格必須與自己的標的價格完全相同,
+ *   因此不會讀到舊價格或寫入到一半的價格
+ * - 寫入鎖被其他線程持有時不等待: 呼叫端自行定價 (結果逐位元相同), 估值線程永不阻塞
+ * - 合約參數 (波動率) 變更時遞增該標的的參數版本; 帳本綁定時記錄版本, 版本不同時改為自行定價, 直到帳本也套用相同的參數
+ * 由 CompiledBook.shareContractPrices 使用 (帳本的 N(x) 實作必須與表相同); 可由任意數量的估值線程共用
+ */
+public class ContractPriceTable {
+
+    private static final int NO_ID = -1;
+
+    private final OptionPricingService pricingService;
+
+    // --- 標的欄位, 以 table 的 underlying id 為索引 ----------------------------------------------------------------------
+    private final Map<String, Integer> underlyingIds = new HashMap<>();
+    private final int[] contractStart;          // 合約區間 [start, end)
+    private final int[] contractEnd;
+    private final StampedLock[] locks;          // 版本戳
+    private final double[] pricedSpots;         // 表中價格對應的標的價格 (NaN = 尚未定價)
+    private final int[] parameterVersions;      // 合約參數的版本 (波動率變更時遞增)
+
+    // --- 合約欄位, 以 contract id 為索引 (同一標的連續存放) ------------------------------------------------------------
+    private final Map<String, Integer> contractIds = new HashMap<>();
+    private final String[] contractSymbols;
+    private final double[] strikes;
+    private final double[] sigmas;
+    private final double[] maturities;
+    private final double[] driftTerms;
+    private final double[] sigmaSqrtTs;
+    private final double[] discountedStrikes;
+    private final double[] signs;
+    private final double[] prices;
+    private final GreeksBuffer greeks;
+
+    // --- 計數器 ------------------------------------------------------------------------------------------------------
+    private final LongAdder computed = new LongAdder();  // 取得寫入鎖並定價整個標的
+    private final LongAdder shared = new LongAdder();    // 直接複製表中的價格
+    private final LongAdder contended = new LongAdder(); // 其他線程正在寫入, 呼叫端自行定價
+
+    /**
+     * @param securityMap 證券定義
+     * @param symbols     要共用價格的證券代碼 (e.g., 所有投資組合持倉代碼的聯集); 非選擇權的代碼會被略過
+     */
+    public ContractPriceTable(Map<String, Security> securityMap, Collection<String> symbols, OptionPricingService pricingService) {
+        this.pricingService = pricingService;
+
+        // --- 1. 依標的分組 (重複的代碼只保留一個合約) ----------------------------------------------------------------------
+        List<String> underlyingList = new ArrayList<>();
+        List<List<Security>> grouped = new ArrayList<>();
+        for (String symbol : new LinkedHashSet<>(symbols)) {
+            Security security = securityMap.get(symbol);
+            String underlying;
+            if (security instanceof EuropeanCallOption) {
+                underlying = ((EuropeanCallOption) security).getUnderlyingTicker();
+            } else if (security instanceof EuropeanPutOption) {
+                underlying = ((EuropeanPutOption) security).getUnderlyingTicker();
+            } else {
+                continue;
+            }
+            Integer underlyingId = underlyingIds.get(underlying);
+            if (underlyingId == null) {
+                underlyingId = underlyingList.size();
+                underlyingIds.put(underlying, underlyingId);
+                underlyingList.add(underlying);
+                grouped.add(new ArrayList<>());
+            }
+            grouped.get(underlyingId).add(security);
+        }
+
+        // --- 2. 連續排列合約並預先計算定價常數 ---------------------------------------------------------------------------
+        int underlyingCount = underlyingList.size();
+        int contractCount = 0;
+        for (List<Security> contracts : grouped) {
+            contractCount += contracts.size();
+        }
+        this.contractStart = new int[underlyingCount];
+        this.contractEnd = new int[underlyingCount];
+        this.locks = new StampedLock[underlyingCount];
+        this.pricedSpots = new double[underlyingCount];
+        this.parameterVersions = new int[underlyingCount];
+        this.contractSymbols = new String[contractCount];
+        this.strikes = new double[contractCount];
+        this.sigmas = new double[contractCount];
+        this.maturities = new double[contractCount];
+        this.driftTerms = new double[contractCount];
+        this.sigmaSqrtTs = new double[contractCount];
+        this.discountedStrikes = new double[contractCount];
+        this.signs = new double[contractCount];
+        this.prices = new double[contractCount];
+        this.greeks = new GreeksBuffer(contractCount);
+        Arrays.fill(pricedSpots, Double.NaN);
+
+        int c = 0;
+        for (int u = 0; u < underlyingCount; u++) {
+            locks[u] = new StampedLock();
+            contractStart[u] = c;
+            for (Security security : grouped.get(u)) {
+                if (security instanceof EuropeanCallOption) {
+                    EuropeanCallOption call = (EuropeanCallOption) security;
+                    compileContract(c, call.getStrikePrice(), call.getSigma(), call.getTimeToMaturity(), OptionPricingService.CALL_SIGN);
+                } else {
+                    EuropeanPutOption put = (EuropeanPutOption) security;
+                    compileContract(c, put.getStrikePrice(), put.getSigma(), put.getTimeToMaturity(), OptionPricingService.PUT_SIGN);
+                }
+                contractSymbols[c] = security.getTicker();
+                contractIds.put(security.getTicker(), c++);
+            }
+            contractEnd[u] = c;
+        }
+    }
+
+    private void compileContract(int c, double strike, double sigma, double maturity, double sign) {
+        strikes[c] = strike;
+        sigmas[c] = sigma;
+        maturities[c] = maturity;
+        driftTerms[c] = OptionPricingService.driftTerm(sigma, maturity);
+        sigmaSqrtTs[c] = OptionPricingService.sigmaSqrtT(sigma, maturity);
+        discountedStrikes[c] = OptionPricingService.discountedStrike(strike, maturity);
+        signs[c] = sign;
+    }
+
+    /**
+     * @return 標的代碼對應的 underlying id, 表中沒有此標的的合約時回傳 -1
+     */
+    public int underlyingId(String ticker) {
+        Integer id = underlyingIds.get(ticker);
+        return id == null ? NO_ID : id;
+    }
+
+    /**
+     * @return 合約代碼對應的 contract id, 表中沒有此合約時回傳 -1
+     */
+    public int contractId(String symbol) {
+        Integer id = contractIds.get(symbol);
+        return id == null ? NO_ID : id;
+    }
+
+    /**
+     * 綁定呼叫端的合約: slot from ~ to-1 的合約 (contracts[slot]) 都必須屬於標的 u 且參數與表中完全相同 (共用價格的前提)
+     * @return 目前的參數版本 (之後以 copyPricesAndGreeks 讀取時帶入); 任一合約不符時回傳 -1
+     */
+    int bind(int u, int[] contracts, double[] strikes, double[] sigmas, double[] maturities, double[] signs, int from, int to) {
+        StampedLock lock = locks[u];
+        long stamp = lock.readLock();
+        try {
+            for (int slot = from; slot < to; slot++) {
+                int c = contracts[slot];
+                if (c < contractStart[u] || c >= contractEnd[u] || this.strikes[c] != strikes[slot]
+                        || this.sigmas[c] != sigmas[slot] || this.maturities[c] != maturities[slot] || this.signs[c] != signs[slot]) {
+                    return NO_ID;
+                }
+            }
+            return parameterVersions[u];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 更新合約的波動率 (e.g., 由 ImpliedVolatilityService 校準); 受影響標的的價格作廢並遞增參數版本
+     * 應在各帳本套用相同的波動率 (CompiledBook.updateVolatilities) 之前呼叫
+     * @param sigmas 合約代碼 -> 波動率; 表中沒有的代碼略過
+     * @return 更新的合約數
+     */
+    public int updateVolatilities(Map<String, Double> sigmas) {
+        int updated = 0;
+        for (int u = 0; u < contractStart.length; u++) {
+            long stamp = 0L;
+            for (int c = contractStart[u]; c < contractEnd[u]; c++) {
+                Double sigma = sigmas.get(contractSymbols[c]);
+                if (sigma == null || sigma == this.sigmas[c]) {
+                    continue;
+                }
+                if (stamp == 0L) {
+                    stamp = locks[u].writeLock();
+                }
+                compileContract(c, strikes[c], sigma, maturities[c], signs[c]);
+                updated++;
+            }
+            if (stamp != 0L) {
+                pricedSpots[u] = Double.NaN;
+                parameterVersions[u]++;
+                locks[u].unlockWrite(stamp);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * 估值線程: 取得標的價格為 spot 時的價格與 Greeks, 複製到呼叫端的 slot (contracts[slot] 為 contract id)
+     * 表中已是此標的價格: 樂觀讀取並驗證版本戳; 否則取得寫入鎖 (不等待) 定價整個標的後複製
+     * @param version 綁定時的參數版本 (見 bind)
+     * @return false = 其他線程正在寫入此標的, 或參數版本已不同, 呼叫端應自行定價
+     */
+    boolean copyPricesAndGreeks(int u, int version, double spot, int[] contracts, double[] outPrices, GreeksBuffer out,
+                                int from, int to) {
+        StampedLock lock = locks[u];
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L && parameterVersions[u] == version && pricedSpots[u] == spot) {
+            copy(contracts, outPrices, out, from, to);
+            if (lock.validate(stamp)) {
+                shared.increment();
+                return true;
+            }
+        }
+
+        long writeStamp = lock.tryWriteLock();
+        if (writeStamp == 0L) {
+            contended.increment();
+            return false;
+        }
+        try {
+            if (parameterVersions[u] != version) {
+                return false;
+            }
+            if (pricedSpots[u] != spot) { // 可能已由剛釋放寫入鎖的線程定價
+                pricingService.calculatePricesAndGreeks(spot, strikes, maturities, driftTerms, sigmaSqrtTs,
+                        discountedStrikes, signs, prices, greeks, contractStart[u], contractEnd[u]);
+                pricedSpots[u] = spot;
+                computed.increment();
+            } else {
+                shared.increment();
+            }
+            copy(contracts, outPrices, out, from, to);
+        } finally {
+            lock.unlockWrite(writeStamp);
+        }
+        return true;
+    }
+
+    private void copy(int[] contracts, double[] outPrices, GreeksBuffer out, int from, int to) {
+        for (int slot = from; slot < to; slot++) {
+            int c = contracts[slot];
+            outPrices[slot] = prices[c];
+            out.delta[slot] = greeks.delta[c];
+            out.gamma[slot] = greeks.gamma[c];
+            out.vega[slot] = greeks.vega[c];
+            out.theta[slot] = greeks.theta[c];
+            out.rho[slot] = greeks.rho[c];
+            out.speed[slot] = greeks.speed[c];
+        }
+    }
+
+    public int underlyingCount() { return contractStart.length; }
+    NormalCdf getNormalCdf() { return pricingService.getNormalCdf(); }
+    public int contractCount() { return strikes.length; }
+    public long getComputedCount() { return computed.sum(); }
+    public long getSharedCount() { return shared.sum(); }
+    public long getContendedCount() { return contended.sum(); }
+}
@@ -0,0 +1,47 @@
+package com.example.realtimevalsystem.service;
+
+/**
+ * Ring buffer 的消費者線程: 等待新事件並整批交給 handler, 處理完後前移自己的序號
+ * 以 Thread.interrupt() 停止
+ */
+public final class EventProcessor<E> implements Runnable {
+
+    /**
+     * 事件處理器; endOfBatch 為 true 時表示目前可取得的事件已全部處理完
+     */
+    public interface EventHandler<E> {
+        void onEvent(E event, long sequence, boolean endOfBatch);
+    }
+
+    private final RingBuffer<E> ringBuffer;
+    private final EventHandler<E> handler;
+    private final Sequence sequence = new Sequence(-1L);
+
+    public EventProcessor(RingBuffer<E> ringBuffer, EventHandler<E> handler) {
+        this.ringBuffer = ringBuffer;
+        this.handler = handler;
+        ringBuffer.setGatingSequence(sequence);
+    }
+
+    public Sequence getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public void run() {
+        WaitStrategy waitStrategy = ringBuffer.getWaitStrategy();
+        long next = sequence.get() + 1L;
+        try {
+            while (true) {
+                long available = waitStrategy.waitFor(next, ringBuffer.getCursor());
+                for (long s = next; s <= available; s++) {
+                    handler.onEvent(ringBuffer.get(s), s, s == available);
+                }
+                sequence.set(available);
+                next = available + 1L;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // 保持中斷狀態
+        }
+    }
+}
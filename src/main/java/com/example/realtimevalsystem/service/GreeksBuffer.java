@@ -0,0 +1,24 @@
+package com.example.realtimevalsystem.service;
+
+/**
+ * 批次計算 Greeks 的輸出緩衝區 (Struct-of-Arrays, 單位為 "每一單位合約")
+ * speed (∂Γ/∂S) 用於估計二階泰勒展開的誤差
+ */
+final class GreeksBuffer {
+
+    final double[] delta;
+    final double[] gamma;
+    final double[] vega;
+    final double[] theta;
+    final double[] rho;
+    final double[] speed;
+
+    GreeksBuffer(int capacity) {
+        this.delta = new double[capacity];
+        this.gamma = new double[capacity];
+        this.vega = new double[capacity];
+        this.theta = new double[capacity];
+        this.rho = new double[capacity];
+        this.speed = new double[capacity];
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.EuropeanCallOption;
+import com.example.realtimevalsystem.model.EuropeanPutOption;
+import com.example.realtimevalsystem.model.ImpliedVolatilityResult;
+import com.example.realtimevalsystem.model.ImpliedVolatilityResult.Status;
+import com.example.realtimevalsystem.model.Security;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 由選擇權報價反推 Black-Scholes 隱含波動率 (批次, fork-join 平行)
+ * - 以總波動率 v = σ√t 求解 f(v) = BS(v) - 報價 = 0, 其中 x = ln(S / (K·e^(-rt))), d1 = x/v + v/2, vega = S·φ(d1);
+ *   與 OptionPricingService 相同的模型 (無風險利率與 N(x) 實作)
+ * - 初始值: Corrado-Miller 的封閉形式近似 (賣權先以買賣權平價換成買權價格), 深度價內/價外時退回 sqrt(2|x|)
+ * - 受保護的 Newton 法: 維持 f 變號的區間 [lo, hi] (f(0) = 內含價值 - 報價 < 0), Newton 步落在區間外或 vega 下溢時改用二分
+ *   (區間上界未知時加倍); |f| 小於價格容許誤差或步長小於波動率容許誤差即收斂
+ * - 報價不在無套利範圍內 (不大於內含價值, 或不小於上限) 時不存在隱含波動率, 以 OUT_OF_BOUNDS 回報, 不疊代
+ */
+public class ImpliedVolatilityService {
+
+    private static final int MAX_ITERATIONS = 100;
+    private static final double TIME_VALUE_TOLERANCE = 1e-10; // |f| <= 時間價值的比例
+    private static final double SPOT_TOLERANCE = 1e-15;       // |f| <= 標的價格的比例 (double 的捨入)
+    private static final double VOLATILITY_TOLERANCE = 1e-10; // 相對步長
+    private static final double INV_SQRT_2PI = 0.3989422804014327;
+    private static final double SQRT_2PI = 2.5066282746310002;
+    private static final int CHUNK_SIZE = 4096;
+
+    private final OptionPricingService pricingService;
+
+    public ImpliedVolatilityService(OptionPricingService pricingService) {
+        this.pricingService = pricingService;
+    }
+
+    /**
+     * 以陣列 (SoA) 求解一批報價
+     * @param prices      選擇權報價
+     * @param spots       標的價格 S
+     * @param strikes     履約價 K
+     * @param maturities  剩餘到期時間 t (年)
+     * @param signs       CALL_SIGN (+1) 或 PUT_SIGN (-1)
+     * @param parallelism fork-join 執行緒數
+     */
+    public ImpliedVolatilityResult solve(double[] prices, double[] spots, double[] strikes, double[] maturities,
+                                         double[] signs, int parallelism) {
+        return solve(null, prices, spots, strikes, maturities, signs, parallelism);
+    }
+
+    /**
+     * 以代碼求解: 履約價 / 到期時間 / 買賣權由證券定義取得, 標的價格由 spots 取得
+     * 代碼不是選擇權或缺少標的價格時以 INVALID_INPUT 回報; 收斂的結果可由 getVolatilities() 送入估值引擎
+     * @param optionPrices 選擇權代碼 -> 報價
+     * @param spots        標的代碼 -> 標的價格
+     */
+    public ImpliedVolatilityResult solve(Map<String, Double> optionPrices, Map<String, Security> securityMap,
+                                         Map<String, Double> spots, int parallelism) {
+        int n = optionPrices.size();
+        String[] symbols = new String[n];
+        double[] prices = new double[n];
+        double[] spotArray = new double[n];
+        double[] strikes = new double[n];
+        double[] maturities = new double[n];
+        double[] signs = new double[n];
+        int i = 0;
+        for (Map.Entry<String, Double> entry : optionPrices.entrySet()) {
+            symbols[i] = entry.getKey();
+            prices[i] = entry.getValue() == null ? Double.NaN : entry.getValue();
+            Security security = securityMap.get(entry.getKey());
+            String underlying = null;
+            if (security instanceof EuropeanCallOption) {
+                EuropeanCallOption call = (EuropeanCallOption) security;
+                underlying = call.getUnderlyingTicker();
+                strikes[i] = call.getStrikePrice();
+                maturities[i] = call.getTimeToMaturity();
+                signs[i] = OptionPricingService.CALL_SIGN;
+            } else if (security instanceof EuropeanPutOption) {
+                EuropeanPutOption put = (EuropeanPutOption) security;
+                underlying = put.getUnderlyingTicker();
+                strikes[i] = put.getStrikePrice();
+                maturities[i] = put.getTimeToMaturity();
+                signs[i] = OptionPricingService.PUT_SIGN;
+            }
+            Double spot = underlying == null ? null : spots.get(underlying);
+            spotArray[i] = spot == null ? Double.NaN : spot; // 不合法的輸入在求解時標示為 INVALID_INPUT
+            i++;
+        }
+        return solve(symbols, prices, spotArray, strikes, maturities, signs, parallelism);
+    }
+
+    private ImpliedVolatilityResult solve(String[] symbols, double[] prices, double[] spots, double[] strikes,
+                                          double[] maturities, double[] signs, int parallelism) {
+        int n = prices.length;
+        if (spots.length != n || strikes.length != n || maturities.length != n || signs.length != n) {
+            throw new IllegalArgumentException("報價陣列的長度不一致");
+        }
+        long start = System.nanoTime();
+        double[] volatilities = new double[n];
+        Status[] statuses = new Status[n];
+        int[] iterations = new int[n];
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            pool.invoke(new SolveTask(prices, spots, strikes, maturities, signs, volatilities, statuses, iterations, 0, n));
+        } finally {
+            pool.shutdown();
+        }
+        return new ImpliedVolatilityResult(symbols, volatilities, statuses, iterations, System.nanoTime() - start);
+    }
+
+    // 二分報價範圍直到不超過 CHUNK_SIZE 筆
+    @SuppressWarnings("serial")
+    private final class SolveTask extends RecursiveAction {
+        private final double[] prices;
+        private final double[] spots;
+        private final double[] strikes;
+        private final double[] maturities;
+        private final double[] signs;
+        private final double[] volatilities;
+        private final Status[] statuses;
+        private final int[] iterations;
+        private final int from;
+        private final int to;
+
+        SolveTask(double[] prices, double[] spots, double[] strikes, double[] maturities, double[] signs,
+                  double[] volatilities, Status[] statuses, int[] iterations, int from, int to) {
+            this.prices = prices;
+            this.spots = spots;
+            this.strikes = strikes;
+            this.maturities = maturities;
+            this.signs = signs;
+            this.volatilities = volatilities;
+            this.statuses = statuses;
+            this.iterations = iterations;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    volatilities[i] = Double.NaN;
+                    statuses[i] = solveOne(prices[i], spots[i], strikes[i], maturities[i], signs[i], volatilities, iterations, i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SolveTask(prices, spots, strikes, maturities, signs, volatilities, statuses, iterations, from, middle),
+                    new SolveTask(prices, spots, strikes, maturities, signs, volatilities, statuses, iterations, middle, to));
+        }
+    }
+
+    /**
+     * 單一報價: 結果寫入 volatilities[i] 與 iterations[i]
+     */
+    Status solveOne(double price, double S, double K, double t, double w, double[] volatilities, int[] iterations, int i) {
+        if (!(price >= 0.0) || !(S > 0.0) || !(K > 0.0) || !(t > 0.0) || (w != OptionPricingService.CALL_SIGN && w != OptionPricingService.PUT_SIGN)
+                || Double.isInfinite(price) || Double.isInfinite(S) || Double.isInfinite(K) || Double.isInfinite(t)) {
+            return Status.INVALID_INPUT;
+        }
+        double X = OptionPricingService.discountedStrike(K, t);
+        double intrinsic = Math.max(w * (S - X), 0.0);
+        double upper = w > 0.0 ? S : X;
+        if (!(price > intrinsic && price < upper)) {
+            return Status.OUT_OF_BOUNDS;
+        }
+        double x = Math.log(S / X);
+        double tolerance = Math.max(TIME_VALUE_TOLERANCE * (price - intrinsic), SPOT_TOLERANCE * S);
+
+        double lo = 0.0;
+        double hi = Double.POSITIVE_INFINITY;
+        double v = initialGuess(price, S, X, x, w);
+        for (int iteration = 1; iteration <= MAX_ITERATIONS; iteration++) {
+            double d1 = x / v + 0.5 * v;
+            double d2 = d1 - v;
+            double f = w * (S * pricingService.N(w * d1) - X * pricingService.N(w * d2)) - price;
+            if (Math.abs(f) <= tolerance) {
+                return converged(v, t, volatilities, iterations, i, iteration);
+            }
+            if (f < 0.0) {
+                lo = v;
+            } else {
+                hi = v;
+            }
+            double vega = S * Math.exp(-0.5 * d1 * d1) * INV_SQRT_2PI;
+            double next = v - f / vega;
+            if (!(next > lo && next < hi)) { // 包含 vega 下溢 (next 為 ±Infinity 或 NaN)
+                next = hi == Double.POSITIVE_INFINITY ? 2.0 * v : 0.5 * (lo + hi);
+            }
+            if (Math.abs(next - v) <= VOLATILITY_TOLERANCE * v) {
+                return converged(next, t, volatilities, iterations, i, iteration);
+            }
+            v = next;
+        }
+        iterations[i] = MAX_ITERATIONS;
+        return Status.NOT_CONVERGED;
+    }
+
+    private static Status converged(double v, double t, double[] volatilities, int[] iterations, int i, int iteration) {
+        volatilities[i] = v / Math.sqrt(t);
+        iterations[i] = iteration;
+        return Status.CONVERGED;
+    }
+
+    /**
+     * Corrado-Miller: v ≈ sqrt(2π)/(S+X) · [C - (S-X)/2 + sqrt((C - (S-X)/2)² - (S-X)²/π)], C 為買權價格
+     * 根號內為負 (深度價內/價外) 時取 0; 結果不為正時退回 sqrt(2|x|) (d1 的反曲點, 此處 vega 對 v 的變化最平緩)
+     */
+    static double initialGuess(double price, double S, double X, double x, double w) {
+        double call = w > 0.0 ? price : price + S - X;
+        double a = call - 0.5 * (S - X);
+        double discriminant = a * a - (S - X) * (S - X) / Math.PI;
+        double v = SQRT_2PI / (S + X) * (a + Math.sqrt(Math.max(discriminant, 0.0)));
+        if (v > 1e-3) {
+            return v;
+        }
+        return Math.max(Math.sqrt(2.0 * Math.abs(x)), 0.1);
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.realtimevalsystem.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 無鎖、不配置物件的對數分桶延遲直方圖 (HDR 風格, 單位: 奈秒)
+ * - 0 ~ 31 ns 每 1 ns 一個桶; 之後每個 2 的次方區間再細分 32 個子桶, 相對誤差約 3%
+ * - record() 只做一次 atomic increment 與一次 volatile 讀取 (最大值需要時才 CAS), 可由多個線程同時呼叫;
+ *   樣本數不另外計數, 讀取時由各桶加總 (熱路徑上少一次 atomic 操作)
+ * - 讀取 (百分位數) 可在任何線程進行, 結果為近似的即時快照
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;           // 32
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 記錄一個延遲樣本 (負值視為 0)
+     */
+    public void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        buckets.getAndIncrement(bucketIndex(value));
+        long currentMax;
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+            // 重試直到寫入較大的值
+        }
+    }
+
+    public long getCount() {
+        long total = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += buckets.get(i);
+        }
+        return total;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile 0 ~ 100 (e.g., 99.9)
+     * @return 該百分位數所在桶的上界 (奈秒); 沒有樣本時回傳 0
+     */
+    public long getValueAtPercentile(double percentile) {
+        return getValuesAtPercentiles(percentile)[0];
+    }
+
+    /**
+     * 由同一份快照一次取得多個百分位數 (彼此一致, 也只需複製一次桶陣列)
+     * @param percentiles 0 ~ 100, 由小到大
+     * @return 對應的桶上界 (奈秒); 沒有樣本時全為 0
+     */
+    public long[] getValuesAtPercentiles(double... percentiles) {
+        long[] values = new long[percentiles.length];
+        long total = 0L;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0L) {
+            return values;
+        }
+        long currentMax = getMax();
+        long seen = 0L;
+        int i = -1;
+        for (int p = 0; p < percentiles.length; p++) {
+            long target = Math.max(1L, (long) Math.ceil(percentiles[p] / 100.0 * total));
+            while (seen < target && i < BUCKET_COUNT - 1) {
+                seen += snapshot[++i];
+            }
+            values[p] = seen >= target ? Math.min(bucketUpperBound(i), currentMax) : currentMax;
+        }
+        return values;
+    }
+
+    /**
+     * 清除所有樣本 (與 record 同時進行時, 少數樣本可能落在清除前或後)
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0L);
+        }
+        max.set(0L);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);       // value 在 [2^e, 2^(e+1))
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;        // 0 ~ 31
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1L;
+    }
+}
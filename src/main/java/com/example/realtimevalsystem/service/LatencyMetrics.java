@@ -0,0 +1,132 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.MetricsSnapshot;
+import com.example.realtimevalsystem.model.PortfolioUpdate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 端到端延遲指標: 以報價建立 / 估值開始 / 估值結束 / 遞送給訂閱者的 System.nanoTime() 時間戳, 記錄各階段的延遲
+ *
+ *   tick-to-valuation  報價建立 -> 估值開始 (發布者與佇列 / 合併的等待時間)
+ *   valuation          估值開始 -> 估值結束 (套用價格、重新定價與建立 PortfolioUpdate)
+ *   delivery           估值結束 -> 訂閱者的遞送線程取出更新 (分派與訂閱者佇列)
+ *   end-to-end         報價建立 -> 遞送
+ *
+ * - 批次以最早一筆報價的時間為準 (批次中最久的等待時間); 被合併掉的報價沒有被估值, 不計入
+ * - 熱路徑上只有 System.nanoTime() 與 LatencyHistogram.record (一次 atomic increment) 及 LongAdder 計數, 不配置物件
+ * - 其他元件的直方圖 (e.g., ValuationPipeline 的各階段) 可以 register 加入同一份快照
+ * - snapshot 可在任何線程呼叫, 回傳 MetricsSnapshot; reset 為 true 時清除直方圖 (區間百分位數)
+ */
+public class LatencyMetrics {
+
+    public static final String TICK_TO_VALUATION = "tick-to-valuation";
+    public static final String VALUATION = "valuation";
+    public static final String DELIVERY = "delivery";
+    public static final String END_TO_END = "end-to-end";
+
+    public static final String TICKS = "ticks";
+    public static final String UPDATES = "updates";
+    public static final String DELIVERIES = "deliveries";
+
+    private final LatencyHistogram tickToValuation = new LatencyHistogram(TICK_TO_VALUATION);
+    private final LatencyHistogram valuation = new LatencyHistogram(VALUATION);
+    private final LatencyHistogram delivery = new LatencyHistogram(DELIVERY);
+    private final LatencyHistogram endToEnd = new LatencyHistogram(END_TO_END);
+    private final List<LatencyHistogram> histograms = new CopyOnWriteArrayList<>();
+
+    // --- 計數器 ------------------------------------------------------------------------------------------------------
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder deliveries = new LongAdder();
+
+    // 上一次快照 (計算速率用, 只在 snapshot 內讀寫)
+    private long lastSnapshotNanos = System.nanoTime();
+    private final Map<String, Long> lastCounters = new LinkedHashMap<>();
+
+    public LatencyMetrics() {
+        histograms.add(tickToValuation);
+        histograms.add(valuation);
+        histograms.add(delivery);
+        histograms.add(endToEnd);
+    }
+
+    /**
+     * 加入另一個直方圖, 之後的快照會包含它
+     */
+    public void register(LatencyHistogram histogram) {
+        histograms.add(histogram);
+    }
+
+    // --- 記錄 (熱路徑) ------------------------------------------------------------------------------------------------
+
+    /**
+     * 估值線程在發布更新前呼叫
+     * @param tickNanos  本次估值最早一筆報價的建立時間
+     * @param startNanos 估值開始
+     * @param endNanos   估值結束
+     * @param tickCount  本次套用的報價數
+     */
+    public void recordValuation(long tickNanos, long startNanos, long endNanos, int tickCount) {
+        tickToValuation.record(startNanos - tickNanos);
+        valuation.record(endNanos - startNanos);
+        ticks.add(tickCount);
+        updates.increment();
+    }
+
+    /**
+     * 訂閱者的遞送線程在把更新交給訂閱者時呼叫; 沒有時間戳的更新 (不是由估值服務建立) 只計數
+     */
+    public void recordDelivery(PortfolioUpdate update, long deliveredNanos) {
+        deliveries.increment();
+        if (update.getValuationEndNanos() != 0L) {
+            delivery.record(deliveredNanos - update.getValuationEndNanos());
+            endToEnd.record(deliveredNanos - update.getTickNanos());
+        }
+    }
+
+    // --- 讀取 --------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param reset true = 讀取後清除所有直方圖 (下一次快照只含這段區間的樣本); 計數器永遠是累計值
+     */
+    public synchronized MetricsSnapshot snapshot(boolean reset) {
+        long now = System.nanoTime();
+        long intervalNanos = now - lastSnapshotNanos;
+        lastSnapshotNanos = now;
+
+        List<MetricsSnapshot.Stage> stages = new ArrayList<>();
+        for (LatencyHistogram histogram : histograms) {
+            long[] percentiles = histogram.getValuesAtPercentiles(50.0, 99.0, 99.9);
+            long max = histogram.getMax();
+            long count = histogram.getCount();
+            if (reset) {
+                histogram.reset();
+            }
+            stages.add(new MetricsSnapshot.Stage(histogram.getName(), count,
+                    percentiles[0], percentiles[1], percentiles[2], max));
+        }
+
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put(TICKS, ticks.sum());
+        counters.put(UPDATES, updates.sum());
+        counters.put(DELIVERIES, deliveries.sum());
+        Map<String, Double> rates = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            Long previous = lastCounters.put(counter.getKey(), counter.getValue());
+            long delta = counter.getValue() - (previous == null ? 0L : previous);
+            rates.put(counter.getKey(), intervalNanos > 0L ? delta * 1e9 / intervalNanos : 0.0);
+        }
+        return new MetricsSnapshot(intervalNanos, stages, counters, rates);
+    }
+
+    public LatencyHistogram getTickToValuationLatency() { return tickToValuation; }
+    public LatencyHistogram getValuationLatency() { return valuation; }
+    public LatencyHistogram getDeliveryLatency() { return delivery; }
+    public LatencyHistogram getEndToEndLatency() { return endToEnd; }
+}
@@ -0,0 +1,280 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.Security;
+import com.example.realtimevalsystem.model.Stock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 壓力測試用的市場數據產生器 (取代 MarketDataPublisher 的隨機 0.5 - 2 秒休眠)
+ * - 以目標速率 (ticks/秒, 所有線程合計) 產生報價; 速率 0 = 不限速 (盡快產生, 用來找估值服務的飽和點)
+ * - 到達過程: UNIFORM (固定間隔), POISSON (指數分布的間隔), BURST (每次連續 burstSize 筆, 之後休息, 平均速率不變)
+ * - 股票依索引分給多個產生器線程 (每支股票只由一個線程更新), 每個線程有自己的亂數串流, 線程之間不共用狀態
+ * - 價格以與 MarketDataPublisher 相同的 GBM 公式更新
+ * - 已到期的報價整批 (最多 maxBatch 筆) 以 onStockPriceBatch 送出; 落後排程超過 MAX_LAG_NANOS 時丟棄積欠的報價
+ *   (計入 ticksBehindSchedule), 發布速率低於目標速率即代表下游已飽和
+ *
+ * 多個產生器線程會同時呼叫監聽器, 監聽器必須可由多個線程呼叫 (e.g., ConflatingMarketDataDispatcher);
+ * 單一生產者的 ValuationPipeline 只能搭配 1 個產生器線程
+ */
+public class LoadGeneratorPublisher implements Runnable {
+
+    public enum Arrival {
+        UNIFORM, POISSON, BURST;
+
+        /**
+         * 依名稱取得到達過程 ("uniform", "poisson", "burst")
+         */
+        public static Arrival fromName(String name) {
+            switch (name) {
+                case "uniform":
+                    return UNIFORM;
+                case "poisson":
+                    return POISSON;
+                case "burst":
+                    return BURST;
+                default:
+                    throw new IllegalArgumentException("未知的到達過程: " + name);
+            }
+        }
+    }
+
+    private static final long MAX_LAG_NANOS = 1_000_000_000L; // 落後排程超過 1 秒時放棄追趕
+    private static final long SPIN_THRESHOLD_NANOS = 50_000L;  // 距離下一筆不到 50 微秒時自旋, 否則 park
+
+    private final Stock[] stocks;
+    private final int[] stockSymbolIds;
+    private final double[] initialPrices;
+    private final SimulationRandom simulationRandom;
+    private final int threadCount;
+
+    private final List<MarketDataListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<SymbolIdMarketDataListener> symbolIdListeners = new CopyOnWriteArrayList<>();
+
+    private volatile double ticksPerSecond;
+    private volatile Arrival arrival = Arrival.UNIFORM;
+    private volatile int burstSize = 1;
+    private volatile int maxBatch = 256;
+
+    // --- 計數器 ------------------------------------------------------------------------------------------------------
+    private final LongAdder ticksPublished = new LongAdder();
+    private final LongAdder ticksBehindSchedule = new LongAdder();
+
+    /**
+     * @param symbols          代碼符號表 (股票代碼在此指派 id)
+     * @param simulationRandom 每個產生器線程從中取得自己的亂數串流
+     * @param threadCount      產生器線程數 (股票數少於線程數時以股票數為準)
+     */
+    public LoadGeneratorPublisher(Map<String, Security> securityMap, Map<String, Double> initialPrices,
+                                  SymbolTable symbols, SimulationRandom simulationRandom, int threadCount) {
+        List<Stock> priced = new ArrayList<>();
+        for (Security sec : securityMap.values()) {
+            if (sec instanceof Stock && initialPrices.containsKey(sec.getTicker())) {
+                priced.add((Stock) sec);
+            }
+        }
+        if (priced.isEmpty()) {
+            throw new IllegalArgumentException("沒有任何有初始價格的股票");
+        }
+        this.stocks = priced.toArray(new Stock[0]);
+        this.stockSymbolIds = new int[stocks.length];
+        this.initialPrices = new double[stocks.length];
+        for (int i = 0; i < stocks.length; i++) {
+            stockSymbolIds[i] = symbols.intern(stocks[i].getTicker());
+            this.initialPrices[i] = initialPrices.get(stocks[i].getTicker());
+        }
+        this.simulationRandom = simulationRandom;
+        this.threadCount = Math.max(1, Math.min(threadCount, stocks.length));
+    }
+
+    // --- 設定 (啟動前設定; 速率與到達過程也可在執行中調整) -------------------------------------------------------------
+
+    /**
+     * @param ticksPerSecond 所有線程合計的目標速率; 0 = 不限速
+     */
+    public void setRate(double ticksPerSecond) {
+        this.ticksPerSecond = Math.max(0.0, ticksPerSecond);
+    }
+
+    /**
+     * @param burstSize BURST 模式每次連續送出的筆數 (其他模式忽略)
+     */
+    public void setArrival(Arrival arrival, int burstSize) {
+        this.arrival = arrival;
+        this.burstSize = Math.max(1, burstSize);
+    }
+
+    /**
+     * @param maxBatch 每次 onStockPriceBatch 最多的筆數
+     */
+    public void setMaxBatch(int maxBatch) {
+        this.maxBatch = Math.max(1, maxBatch);
+    }
+
+    public void addListener(MarketDataListener listener) {
+        listeners.add(listener);
+    }
+
+    public void addSymbolIdListener(SymbolIdMarketDataListener listener) {
+        symbolIdListeners.add(listener);
+    }
+
+    // --- 執行 ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * 啟動其餘的產生器線程, 呼叫端線程負責第 0 個分區; 中斷時停止所有產生器線程
+     */
+    @Override
+    public void run() {
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 1; t < threadCount; t++) {
+            Thread worker = new Thread(new Shard(t, simulationRandom.newSampler()));
+            worker.setName("LoadGenerator-" + t);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+        Shard first = new Shard(0, simulationRandom.newSampler());
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        try {
+            first.run();
+        } finally {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            System.out.println("壓力測試產生器已停止。");
+        }
+    }
+
+    /**
+     * 一個產生器線程: 負責索引 % threadCount == index 的股票
+     */
+    private final class Shard implements Runnable {
+        private final NormalSampler gaussian;
+        private final RandomStream uniform;
+        private final String[] tickers;
+        private final int[] symbolIds;
+        private final double[] prices;
+        private final double[] drifts;
+        private final double[] diffusions;
+
+        private int[] batchSymbolIds = new int[0];
+        private double[] batchPrices = new double[0];
+        private String[] batchTickers = new String[0];
+        private int burstRemaining;
+
+        Shard(int index, NormalSampler gaussian) {
+            this.gaussian = gaussian;
+            this.uniform = simulationRandom.newStream();
+            int count = (stocks.length - index + threadCount - 1) / threadCount;
+            this.tickers = new String[count];
+            this.symbolIds = new int[count];
+            this.prices = new double[count];
+            this.drifts = new double[count];
+            this.diffusions = new double[count];
+            for (int k = 0, i = index; i < stocks.length; k++, i += threadCount) {
+                tickers[k] = stocks[i].getTicker();
+                symbolIds[k] = stockSymbolIds[i];
+                prices[k] = initialPrices[i];
+                drifts[k] = MarketDataPublisher.gbmDrift(stocks[i].getMu());
+                diffusions[k] = MarketDataPublisher.gbmDiffusion(stocks[i].getSigma());
+            }
+        }
+
+        @Override
+        public void run() {
+            // 下一筆報價的排程時間 (相對於啟動時間的 double 奈秒, 高速率時間隔小於 1 ns 也不會累積捨入誤差)
+            long start = System.nanoTime();
+            double nextDue = 0.0;
+            while (!Thread.currentThread().isInterrupted()) {
+                int limit = maxBatch;
+                if (batchSymbolIds.length < limit) {
+                    batchSymbolIds = new int[limit];
+                    batchPrices = new double[limit];
+                    batchTickers = new String[limit];
+                }
+                double rate = ticksPerSecond / threadCount;
+
+                int count;
+                if (rate <= 0.0) {
+                    count = limit;
+                    nextDue = System.nanoTime() - start;
+                } else {
+                    double now = System.nanoTime() - start;
+                    if (nextDue > now) {
+                        long wait = (long) (nextDue - now);
+                        if (wait > SPIN_THRESHOLD_NANOS) {
+                            LockSupport.parkNanos(wait - SPIN_THRESHOLD_NANOS / 2);
+                        }
+                        continue;
+                    }
+                    if (now - nextDue > MAX_LAG_NANOS) { // 下游跟不上: 丟棄積欠的排程
+                        ticksBehindSchedule.add((long) ((now - nextDue) * rate / 1e9));
+                        nextDue = now;
+                    }
+                    double meanInterval = 1e9 / rate;
+                    count = 0;
+                    while (count < limit && nextDue <= now) {
+                        count++;
+                        nextDue += interArrival(meanInterval);
+                    }
+                }
+
+                long tickNanos = System.nanoTime(); // 本批報價的建立時間
+                for (int n = 0; n < count; n++) {
+                    int k = uniform.nextInt(tickers.length);
+                    double price = MarketDataPublisher.nextPriceGBM(prices[k], drifts[k], diffusions[k], gaussian.nextGaussian());
+                    prices[k] = price;
+                    batchSymbolIds[n] = symbolIds[k];
+                    batchPrices[n] = price;
+                    batchTickers[n] = tickers[k];
+                }
+                for (SymbolIdMarketDataListener listener : symbolIdListeners) {
+                    listener.onStockPriceBatch(batchSymbolIds, batchPrices, count, tickNanos);
+                }
+                for (MarketDataListener listener : listeners) {
+                    for (int n = 0; n < count; n++) {
+                        listener.onStockPriceUpdate(batchTickers[n], batchPrices[n]);
+                    }
+                }
+                ticksPublished.add(count);
+            }
+        }
+
+        // 到下一筆報價的間隔 (奈秒)
+        private double interArrival(double meanInterval) {
+            switch (arrival) {
+                case POISSON:
+                    return -Math.log(1.0 - uniform.nextDouble()) * meanInterval;
+                case BURST:
+                    if (--burstRemaining > 0) {
+                        return 0.0;
+                    }
+                    burstRemaining = burstSize;
+                    return burstSize * meanInterval;
+                default:
+                    return meanInterval;
+            }
+        }
+    }
+
+    // --- 觀測 --------------------------------------------------------------------------------------------------------
+    public long getTicksPublished() { return ticksPublished.sum(); }
+    public long getTicksBehindSchedule() { return ticksBehindSchedule.sum(); }
+    public int getThreadCount() { return threadCount; }
+    public int getStockCount() { return stocks.length; }
+}
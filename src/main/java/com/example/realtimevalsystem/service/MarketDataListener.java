@@ -11,4 +11,17 @@ public interface MarketDataListener {
      * @param newPrice 新的價格
      */
     void onStockPriceUpdate(String ticker, double newPrice);
+
+    /**
+     * 一次收到一批股票的最新價格 (e.g., 由 ConflatingMarketDataDispatcher 合併後送出)
+     * 預設逐筆呼叫 onStockPriceUpdate; 實作可覆寫以在整批套用後只重新估值/發布一次
+     * @param tickers 股票代碼 (只讀取前 count 筆, 呼叫結束後陣列會被重複使用)
+     * @param prices  對應的新價格
+     * @param count   本批筆數
+     */
+    default void onStockPriceBatch(String[] tickers, double[] prices, int count) {
+        for (int i = 0; i < count; i++) {
+            onStockPriceUpdate(tickers[i], prices[i]);
+        }
+    }
 }
\ No newline at end of file
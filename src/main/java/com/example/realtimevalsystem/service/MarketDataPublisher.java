@@ -6,41 +6,75 @@ import com.example.realtimevalsystem.model.Stock;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class MarketDataPublisher implements Runnable {
 
-    // 儲存所有 "股票" 證券，我們只模擬股票價格
-    private final List<Stock> stocks = new ArrayList<>();
+    // 儲存所有 "股票" 證券，我們只模擬股票價格 (只模擬有初始價格的股票)
+    private final Stock[] stocks;
+    private final int[] stockSymbolIds; // stocks[i] 的代碼 id
 
-    // 儲存股票的目前價格
-    private final Map<String, Double> currentStockPrices;
+    // 儲存股票的目前價格 (以代碼 id 為索引)
+    private final PriceTable currentStockPrices;
 
-    // 監聽器，用於通知價格變化
-    private MarketDataListener listener;
+    // 監聽器，用於通知價格變化 (可同時有多個); 以代碼 id 接收
+    private final List<SymbolIdMarketDataListener> symbolIdListeners = new CopyOnWriteArrayList<>();
 
-    private final Random random = new Random();
+    // 均勻亂數 (選股, 休眠時間) 與 GBM 的常態分佈亂數; 只在發布者線程上使用, 不共用狀態
+    private final RandomStream random;
+    private final NormalSampler gaussian;
 
     /**
      * @param securityMap 從 SecurityDefinitionService 載入的所有證券
      * @param initialPrices 股票的初始價格 Map
      */
     public MarketDataPublisher(Map<String, Security> securityMap, Map<String, Double> initialPrices) {
-        // 1. 篩選出所有 Stock
+        this(securityMap, initialPrices, new SymbolTable());
+    }
+
+    /**
+     * @param symbols 代碼符號表 (股票代碼在此指派 id, 送給 SymbolIdMarketDataListener)
+     */
+    public MarketDataPublisher(Map<String, Security> securityMap, Map<String, Double> initialPrices, SymbolTable symbols) {
+        this(securityMap, initialPrices, symbols, new SimulationRandom(
+                SimulationRandom.DEFAULT_ALGORITHM, SimulationRandom.DEFAULT_NORMAL_METHOD, System.nanoTime()));
+    }
+
+    /**
+     * @param simulationRandom 亂數演算法與種子 (發布者從中取得自己的串流)
+     */
+    public MarketDataPublisher(Map<String, Security> securityMap, Map<String, Double> initialPrices, SymbolTable symbols,
+                               SimulationRandom simulationRandom) {
+        this.random = simulationRandom.newStream();
+        this.gaussian = simulationRandom.sampler(random);
+
+        // 1. 篩選出所有有初始價格的 Stock
+        List<Stock> priced = new ArrayList<>();
         for (Security sec : securityMap.values()) {
-            if (sec instanceof Stock) {
-                stocks.add((Stock) sec);
+            if (sec instanceof Stock && initialPrices.containsKey(sec.getTicker())) {
+                priced.add((Stock) sec);
             }
         }
-        // 2. 儲存目前價格的 Map
-        this.currentStockPrices = initialPrices;
+        this.stocks = priced.toArray(new Stock[0]);
+        this.stockSymbolIds = new int[stocks.length];
+
+        // 2. 目前價格以代碼 id 存放
+        this.currentStockPrices = new PriceTable(symbols.size() + stocks.length);
+        for (int i = 0; i < stocks.length; i++) {
+            stockSymbolIds[i] = symbols.intern(stocks[i].getTicker());
+            currentStockPrices.set(stockSymbolIds[i], initialPrices.get(stocks[i].getTicker()));
+        }
     }
 
     /**
-     * 註冊一個監聽器來接收價格更新
+     * 增加一個以代碼 id 接收價格的監聽器 (不傳遞 String); 所有監聽器都在市場數據線程上依註冊順序被呼叫
      */
-    public void setListener(MarketDataListener listener) {
-        this.listener = listener;
+    public void addSymbolIdListener(SymbolIdMarketDataListener listener) {
+        symbolIdListeners.add(listener);
+    }
+
+    public void removeSymbolIdListener(SymbolIdMarketDataListener listener) {
+        symbolIdListeners.remove(listener);
     }
 
     @Override
@@ -48,18 +82,21 @@ public class MarketDataPublisher implements Runnable {
         // 挑戰要求：在一個單獨的線程中運行
         try {
             while (!Thread.currentThread().isInterrupted()) {
-                // 1. 隨機選擇一支股票
-                Stock stockToUpdate = stocks.get(random.nextInt(stocks.size()));
+                // 1. 隨機選擇一支股票 (報價的建立時間, 供延遲指標使用)
+                long tickNanos = System.nanoTime();
+                int index = random.nextInt(stocks.length);
+                Stock stockToUpdate = stocks[index];
+                int symbolId = stockSymbolIds[index];
 
                 // 2. 計算 GBM [cite: 62-67]
-                double newPrice = calculateNewPriceGBM(stockToUpdate);
+                double newPrice = calculateNewPriceGBM(stockToUpdate, currentStockPrices.get(symbolId));
 
                 // 3. 更新內部價格
-                currentStockPrices.put(stockToUpdate.getTicker(), newPrice);
+                currentStockPrices.set(symbolId, newPrice);
 
                 // 4. 發布更新 [cite: 18]
-                if (listener != null) {
-                    listener.onStockPriceUpdate(stockToUpdate.getTicker(), newPrice);
+                for (SymbolIdMarketDataListener listener : symbolIdListeners) {
+                    listener.onStockPriceUpdate(symbolId, newPrice, tickNanos);
                 }
 
                 // 5. 隨機休眠 0.5 - 2 秒
@@ -75,20 +112,35 @@ public class MarketDataPublisher implements Runnable {
     /**
      * 根據離散時間幾何布朗運動 (GBM) 公式計算新價格
      */
-    private double calculateNewPriceGBM(Stock stock) {
-        double S = currentStockPrices.get(stock.getTicker()); // 目前價格
-        double mu = stock.getMu();
-        double sigma = stock.getSigma();
+    private double calculateNewPriceGBM(Stock stock, double S) { // S: 目前價格
+        double epsilon = gaussian.nextGaussian(); // 標準常態分佈隨機變數 [cite: 66]
+        return nextPriceGBM(S, gbmDrift(stock.getMu()), gbmDiffusion(stock.getSigma()), epsilon);
+    }
 
-        // 挑戰要求：隨機 0.5 - 2 秒
-        // 這裡我們用一個簡化的 delta T (dt)，假設為 "1 tick" 的時間單位
-        // 7257600 看似是一個年度秒數的常數，我們將 dt/7257600 視為一個小的時間步長
-        double dt_over_const = 1.0 / 7257600.0; // 簡化模擬
+    // --- GBM (與 LoadGeneratorPublisher 共用) --------------------------------------------------------------------------
+    // 挑戰要求：隨機 0.5 - 2 秒
+    // 這裡我們用一個簡化的 delta T (dt)，假設為 "1 tick" 的時間單位
+    // 7257600 看似是一個年度秒數的常數，我們將 dt/7257600 視為一個小的時間步長
+    static final double GBM_DT = 1.0 / 7257600.0; // 簡化模擬
 
-        double epsilon = random.nextGaussian(); // 標準常態分佈隨機變數 [cite: 66]
+    // 每一步的漂移 μ(Δt/C)
+    static double gbmDrift(double mu) {
+        return mu * GBM_DT;
+    }
 
-        // 公式: (ΔS / S) = μ(Δt/C) + σε√(Δt/C)  [cite: 64]
-        double deltaS_over_S = (mu * dt_over_const) + (sigma * epsilon * Math.sqrt(dt_over_const));
+    // 每一步的擴散係數 σ√(Δt/C)
+    static double gbmDiffusion(double sigma) {
+        return sigma * Math.sqrt(GBM_DT);
+    }
+
+    /**
+     * 公式: (ΔS / S) = μ(Δt/C) + σε√(Δt/C)  [cite: 64]
+     * @param drift     gbmDrift(mu)
+     * @param diffusion gbmDiffusion(sigma)
+     * @param epsilon   標準常態分佈隨機變數
+     */
+    static double nextPriceGBM(double S, double drift, double diffusion, double epsilon) {
+        double deltaS_over_S = drift + diffusion * epsilon;
         double deltaS = S * deltaS_over_S;
 
         double newPrice = S + deltaS;
@@ -96,4 +148,4 @@ public class MarketDataPublisher implements Runnable {
         // 價格永遠不能小於 0 [cite: 67]
         return Math.max(0.0, newPrice);
     }
-}
\ No newline at end of file
+}
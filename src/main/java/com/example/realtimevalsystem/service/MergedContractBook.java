@@ -0,0 +1,130 @@
+package com.example.realtimevalsystem.service;
+
+import java.util.Arrays;
+
+/**
+ * 重新估值整個帳本用的合併帳本 (唯讀, 供 MonteCarloRiskEngine 與 ScenarioGridEngine 共用)
+ * - 由 CompiledBook 建立: 只包含已有報價的標的, 股票持倉依標的彙總數量, 同一合約 (security id) 的選擇權持倉合併成一個 slot
+ * - 選擇權 slot 依標的連續存放 (順序同 CompiledBook), 合約參數與定價常數 (d1 的漂移項, σ√t, K·e^(-rt)) 直接沿用 CompiledBook 的值,
+ *   另外預先計算 ln(K); 已到期的合約 (t <= 0) 以 t = 0, σ√t = 0, K·e^(-rt) = K 表示, 呼叫端以內含價值計算
+ */
+final class MergedContractBook {
+
+    // --- 標的, 以 underlying id 為索引 ----------------------------------------------------------------------------------
+    final String[] tickers;
+    final double[] spots;               // 建立時的標的價格
+    final double[] stockQuantities;     // 同一標的所有股票持倉的數量合計
+    final int[] optionStart;            // underlying id -> 選擇權 slot 區間 [start, end)
+    final int[] optionEnd;
+
+    // --- 選擇權合約, 以 slot 為索引 (同一標的連續存放) --------------------------------------------------------------------
+    final double[] strikes;
+    final double[] logStrikes;
+    final double[] maturities;
+    final double[] sigmas;
+    final double[] signs;               // +1 買權 / -1 賣權
+    final double[] driftTerms;          // (r + sigma^2 / 2) * t
+    final double[] sigmaSqrtTs;         // sigma * sqrt(t)
+    final double[] discountedStrikes;   // K * e^(-rt)
+    final double[] optionQuantities;    // 合併後的數量
+
+    final int skipped;                  // 沒有證券定義或標的價格而略過的持倉數
+    final String[] unpricedTickers;     // 建立時還沒有報價而略過的標的
+
+    MergedContractBook(CompiledBook book) {
+        int bookUnderlyings = book.underlyingCount();
+        int n = 0;
+        int optionPositions = 0;
+        int included = 0;
+        for (int u = 0; u < bookUnderlyings; u++) {
+            if (!book.isUnderlyingPriced(u)) {
+                continue;
+            }
+            n++;
+            for (int i : book.getPositionsForUnderlying(u)) {
+                included++;
+                if (book.getOptionSlot(i) >= 0) {
+                    optionPositions++;
+                }
+            }
+        }
+        this.skipped = book.size() - included;
+        this.unpricedTickers = new String[bookUnderlyings - n];
+        for (int b = 0, k = 0; b < bookUnderlyings; b++) {
+            if (!book.isUnderlyingPriced(b)) {
+                unpricedTickers[k++] = book.getUnderlyingTicker(b);
+            }
+        }
+
+        // --- 1. 合併: security id -> 合併後的 slot (每個標的重設) -----------------------------------------------------------
+        int[] mergedSlots = new int[book.securityCount()];
+        Arrays.fill(mergedSlots, -1);
+        int[] sourceSlots = new int[optionPositions];  // 合併後的 slot -> CompiledBook 的 slot
+        double[] quantities = new double[optionPositions];
+        this.tickers = new String[n];
+        this.spots = new double[n];
+        this.stockQuantities = new double[n];
+        this.optionStart = new int[n];
+        this.optionEnd = new int[n];
+        int u = 0;
+        int slot = 0;
+        for (int b = 0; b < bookUnderlyings; b++) {
+            if (!book.isUnderlyingPriced(b)) {
+                continue;
+            }
+            tickers[u] = book.getUnderlyingTicker(b);
+            spots[u] = book.getUnderlyingPrice(b);
+            optionStart[u] = slot;
+            int[] members = book.getPositionsForUnderlying(b);
+            for (int i : members) {
+                int source = book.getOptionSlot(i);
+                if (source < 0) {
+                    stockQuantities[u] += book.getQuantity(i);
+                    continue;
+                }
+                int security = book.getSecurityId(i);
+                int merged = mergedSlots[security];
+                if (merged < 0) {
+                    merged = slot++;
+                    mergedSlots[security] = merged;
+                    sourceSlots[merged] = source;
+                }
+                quantities[merged] += book.getQuantity(i);
+            }
+            for (int i : members) {
+                mergedSlots[book.getSecurityId(i)] = -1;
+            }
+            optionEnd[u] = slot;
+            u++;
+        }
+
+        // --- 2. 沿用 CompiledBook 的合約參數與定價常數 ---------------------------------------------------------------------
+        this.strikes = new double[slot];
+        this.logStrikes = new double[slot];
+        this.maturities = new double[slot];
+        this.sigmas = new double[slot];
+        this.signs = new double[slot];
+        this.driftTerms = new double[slot];
+        this.sigmaSqrtTs = new double[slot];
+        this.discountedStrikes = new double[slot];
+        this.optionQuantities = Arrays.copyOf(quantities, slot);
+        for (int k = 0; k < slot; k++) {
+            int source = sourceSlots[k];
+            strikes[k] = book.getSlotStrike(source);
+            logStrikes[k] = Math.log(strikes[k]);
+            sigmas[k] = book.getSlotSigma(source);
+            signs[k] = book.getSlotSign(source);
+            if (book.getSlotMaturity(source) > 0.0) {
+                maturities[k] = book.getSlotMaturity(source);
+                driftTerms[k] = book.getSlotDriftTerm(source);
+                sigmaSqrtTs[k] = book.getSlotSigmaSqrtT(source);
+                discountedStrikes[k] = book.getSlotDiscountedStrike(source);
+            } else {
+                discountedStrikes[k] = strikes[k]; // 已到期
+            }
+        }
+    }
+
+    int underlyingCount() { return tickers.length; }
+    int contractCount() { return strikes.length; }
+}
@@ -0,0 +1,45 @@
+package com.example.realtimevalsystem.service;
+
+import java.io.PrintStream;
+
+/**
+ * 定期把 LatencyMetrics 的快照寫到日誌 (每個區間的百分位數, 之後清除直方圖)
+ * 在自己的線程上執行, 不影響記錄端; 中斷時寫出最後一次快照後結束
+ */
+public class MetricsReporter implements Runnable {
+
+    private final LatencyMetrics metrics;
+    private final long intervalMillis;
+    private final PrintStream out;
+
+    /**
+     * @param intervalMillis 兩次寫出之間的時間 (毫秒)
+     * @param out            輸出目的地 (System.out 或日誌檔)
+     */
+    public MetricsReporter(LatencyMetrics metrics, long intervalMillis, PrintStream out) {
+        if (intervalMillis <= 0L) {
+            throw new IllegalArgumentException("intervalMillis must be > 0: " + intervalMillis);
+        }
+        this.metrics = metrics;
+        this.intervalMillis = intervalMillis;
+        this.out = out;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(intervalMillis);
+                report();
+            }
+        } catch (InterruptedException e) {
+            report();
+            Thread.currentThread().interrupt(); // 保持中斷狀態
+        }
+    }
+
+    private void report() {
+        out.print(metrics.snapshot(true));
+        out.flush();
+    }
+}
@@ -0,0 +1,411 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.Position;
+import com.example.realtimevalsystem.model.RiskReport;
+import com.example.realtimevalsystem.model.Security;
+import com.example.realtimevalsystem.model.Stock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Monte Carlo 投資組合風險 (VaR / Expected Shortfall)
+ * - 所有標的以相關的 GBM 模擬到期間終點 (與 MarketDataPublisher 相同的 mu / sigma):
+ *   S_h = S_0 * exp((mu - sigma^2 / 2) * h + sigma * sqrt(h) * Z), Z = L * ε (L 為相關矩陣的 Cholesky 分解)
+ * - 每個情境重新估值整個帳本: 股票依標的彙總數量, 選擇權以 Black-Scholes 在剩餘到期時間 (t - h) 重新定價
+ *   (期間內到期的選擇權以內含價值計算); 選擇權自己的 sigma 在情境中維持不變
+ * - 情境切成固定大小的區塊 (BLOCK_SIZE), 每個區塊有自己的亂數串流 (依序由種子 split 出來, 演算法見 setRandom),
+ *   區塊以 fork-join 平行計算, 結果寫入各自的情境索引; 因此同一種子的結果與執行緒數量無關 (逐位元一致)
+ *
+ * 建立時把帳本編譯成依標的連續存放的陣列 (MergedContractBook, 相同合約的持倉合併), 之後可重複執行不同的情境數 / 期間 / 種子;
+ * 建立後為唯讀, run 可由多個執行緒同時呼叫 (相關矩陣須在 run 之前設定)
+ */
+public class MonteCarloRiskEngine {
+
+    static final int BLOCK_SIZE = 1024; // 每個區塊的情境數 (決定亂數串流的切分, 改變會改變結果)
+    public static final long DEFAULT_SEED = 42L; // 未指定種子時使用固定種子, 同一帳本每次啟動的 VaR 相同
+
+    private final OptionPricingService pricingService;
+
+    // --- 標的, 以 underlying id 為索引 ----------------------------------------------------------------------------------
+    private final String[] underlyingTickers;
+    private final double[] logSpots;            // ln(S_0)
+    private final double[] mus;
+    private final double[] sigmas;
+    private final double[] stockQuantities;     // 同一標的所有股票持倉的數量合計
+    private final int[] optionStart;            // underlying id -> 選擇權 slot 區間 [start, end)
+    private final int[] optionEnd;
+    private double[][] cholesky;                // 下三角 (第 i 列長度 i + 1); null = 各標的獨立
+    private SimulationRandom random = new SimulationRandom(RandomStream.SPLITTABLE, NormalSampler.ZIGGURAT, 0L);
+
+    // --- 選擇權合約, 以 slot 為索引 (同一標的連續存放) --------------------------------------------------------------------
+    private final double[] strikes;
+    private final double[] logStrikes;
+    private final double[] maturities;
+    private final double[] optionSigmas;
+    private final double[] signs;               // +1 買權 / -1 賣權
+    private final double[] optionQuantities;    // 相同合約的持倉合併後的數量
+
+    private final double portfolioValue;        // 目前價格下的帳本價值 (損益的基準)
+
+    /**
+     * @param positions   持倉
+     * @param securityMap 證券定義
+     * @param spotPrices  標的目前價格; 沒有價格的標的 (及其選擇權) 不列入計算
+     */
+    public MonteCarloRiskEngine(List<Position> positions, Map<String, Security> securityMap,
+                                Map<String, Double> spotPrices, OptionPricingService pricingService) {
+        this.pricingService = pricingService;
+
+        // --- 1. 合併帳本: 依標的彙總股票數量, 合併相同合約的選擇權持倉 (定價常數沿用 CompiledBook) ---------------------------
+        MergedContractBook merged = new MergedContractBook(new CompiledBook(positions, securityMap, spotPrices, pricingService));
+        if (merged.skipped > 0) {
+            System.err.println("Monte Carlo: " + merged.skipped + " 筆持倉沒有證券定義或標的價格, 不列入計算");
+        }
+        underlyingTickers = merged.tickers;
+        stockQuantities = merged.stockQuantities;
+        optionStart = merged.optionStart;
+        optionEnd = merged.optionEnd;
+        strikes = merged.strikes;
+        logStrikes = merged.logStrikes;
+        maturities = merged.maturities;
+        optionSigmas = merged.sigmas;
+        signs = merged.signs;
+        optionQuantities = merged.optionQuantities;
+
+        // --- 2. 標的的模擬參數: 股票定義的 mu / sigma; 沒有股票定義的標的以其第一個選擇權的 sigma 模擬 (mu = 0) ------------
+        int n = underlyingTickers.length;
+        logSpots = new double[n];
+        mus = new double[n];
+        sigmas = new double[n];
+        for (int u = 0; u < n; u++) {
+            Security definition = securityMap.get(underlyingTickers[u]);
+            logSpots[u] = Math.log(merged.spots[u]);
+            if (definition instanceof Stock) {
+                mus[u] = ((Stock) definition).getMu();
+                sigmas[u] = ((Stock) definition).getSigma();
+            } else {
+                sigmas[u] = optionSigmas[optionStart[u]];
+            }
+        }
+
+        // --- 3. 目前價值 (與情境使用相同的公式, 損益中沒有模型差異) ---------------------------------------------------------
+        PricingConstants current = new PricingConstants(merged.driftTerms, merged.sigmaSqrtTs, merged.discountedStrikes);
+        double value = 0.0;
+        for (int u = 0; u < n; u++) {
+            value += revalueUnderlying(u, logSpots[u], current);
+        }
+        this.portfolioValue = value;
+    }
+
+    // --- 相關矩陣 -------------------------------------------------------------------------------------------------------
+
+    /**
+     * 設定標的之間的相關係數; tickers 以外的標的彼此獨立, 不在本帳本中的代碼會被忽略
+     * @param correlation tickers.size() x tickers.size() 的對稱矩陣, 對角線為 1, 必須正定
+     */
+    public void setCorrelation(List<String> tickers, double[][] correlation) {
+        Map<String, Integer> ids = underlyingIds();
+        int n = underlyingTickers.length;
+        double[][] matrix = identity(n);
+        for (int i = 0; i < tickers.size(); i++) {
+            if (correlation[i].length != tickers.size()) {
+                throw new IllegalArgumentException("相關矩陣必須是 " + tickers.size() + " x " + tickers.size());
+            }
+            Integer row = ids.get(tickers.get(i));
+            for (int j = 0; j < tickers.size(); j++) {
+                if (correlation[i][j] != correlation[j][i] || Math.abs(correlation[i][j]) > 1.0 || (i == j && correlation[i][j] != 1.0)) {
+                    throw new IllegalArgumentException("相關矩陣必須對稱, 對角線為 1, 元素介於 -1 與 1: ["
+                            + tickers.get(i) + ", " + tickers.get(j) + "] = " + correlation[i][j]);
+                }
+                Integer column = ids.get(tickers.get(j));
+                if (row != null && column != null) {
+                    matrix[row][column] = correlation[i][j];
+                }
+            }
+        }
+        this.cholesky = choleskyDecompose(matrix);
+    }
+
+    /**
+     * 所有標的兩兩之間使用相同的相關係數 (單因子模型); rho 必須大於 -1 / (標的數 - 1)
+     */
+    public void setConstantCorrelation(double rho) {
+        int n = underlyingTickers.length;
+        double[][] matrix = identity(n);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i != j) {
+                    matrix[i][j] = rho;
+                }
+            }
+        }
+        this.cholesky = choleskyDecompose(matrix);
+    }
+
+    private Map<String, Integer> underlyingIds() {
+        Map<String, Integer> ids = new HashMap<>();
+        for (int u = 0; u < underlyingTickers.length; u++) {
+            ids.put(underlyingTickers[u], u);
+        }
+        return ids;
+    }
+
+    private static double[][] identity(int n) {
+        double[][] matrix = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            matrix[i][i] = 1.0;
+        }
+        return matrix;
+    }
+
+    // A = L * L^T, 回傳下三角 L (第 i 列只存 i + 1 個元素)
+    static double[][] choleskyDecompose(double[][] matrix) {
+        int n = matrix.length;
+        double[][] lower = new double[n][];
+        for (int i = 0; i < n; i++) {
+            lower[i] = new double[i + 1];
+            for (int j = 0; j <= i; j++) {
+                double sum = matrix[i][j];
+                for (int k = 0; k < j; k++) {
+                    sum -= lower[i][k] * lower[j][k];
+                }
+                if (i == j) {
+                    if (sum <= 0.0) {
+                        throw new IllegalArgumentException("相關矩陣不是正定矩陣 (第 " + i + " 列)");
+                    }
+                    lower[i][i] = Math.sqrt(sum);
+                } else {
+                    lower[i][j] = sum / lower[j][j];
+                }
+            }
+        }
+        return lower;
+    }
+
+    // --- 亂數 -----------------------------------------------------------------------------------------------------------
+
+    /**
+     * 設定亂數演算法與常態分佈取樣方法 (預設 SplittableRandom + Ziggurat); 種子以 run 的參數為準
+     */
+    public void setRandom(SimulationRandom random) {
+        this.random = random;
+    }
+
+    // --- 模擬 -----------------------------------------------------------------------------------------------------------
+
+    /**
+     * 以所有 CPU 核心執行模擬
+     * @see #run(int, double, double[], long, int)
+     */
+    public RiskReport run(int scenarioCount, double horizonYears, double[] confidenceLevels, long seed) {
+        return run(scenarioCount, horizonYears, confidenceLevels, seed, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 模擬 scenarioCount 個情境並計算 VaR / ES
+     * VaR_a = 最差的 ceil((1 - a) * N) 個情境中損失最小者, ES_a = 這些情境的平均損失
+     * @param horizonYears     期間 (年), e.g., 1 個交易日 = 1 / 252
+     * @param confidenceLevels 信賴水準, e.g., {0.95, 0.99}
+     * @param seed             同一種子 (與相同的情境數) 在任何 parallelism 下結果都相同
+     * @param parallelism      fork-join 執行緒數
+     */
+    public RiskReport run(int scenarioCount, double horizonYears, double[] confidenceLevels, long seed, int parallelism) {
+        for (double confidence : confidenceLevels) {
+            if (!(confidence > 0.0 && confidence < 1.0)) {
+                throw new IllegalArgumentException("信賴水準必須介於 0 與 1: " + confidence);
+            }
+        }
+        long start = System.nanoTime();
+        double[] pnl = simulatePnl(scenarioCount, horizonYears, seed, parallelism);
+
+        double total = 0.0;
+        for (double p : pnl) {
+            total += p;
+        }
+        Arrays.sort(pnl); // 由最大損失開始
+
+        double[] valueAtRisk = new double[confidenceLevels.length];
+        double[] expectedShortfall = new double[confidenceLevels.length];
+        for (int c = 0; c < confidenceLevels.length; c++) {
+            // 扣掉浮點誤差, 避免 (1 - 0.99) * 100000 = 1000.0000000000009 變成 1001
+            int tail = Math.max(1, (int) Math.ceil((1.0 - confidenceLevels[c]) * scenarioCount - 1e-9));
+            double tailSum = 0.0;
+            for (int i = 0; i < tail; i++) {
+                tailSum += pnl[i];
+            }
+            valueAtRisk[c] = -pnl[tail - 1];
+            expectedShortfall[c] = -tailSum / tail;
+        }
+        return new RiskReport(scenarioCount, horizonYears, portfolioValue, total / scenarioCount,
+                confidenceLevels, valueAtRisk, expectedShortfall, System.nanoTime() - start);
+    }
+
+    /**
+     * 模擬每個情境的損益 (期末價值 - 目前價值), 依情境索引排列 (未排序)
+     */
+    public double[] simulatePnl(int scenarioCount, double horizonYears, long seed, int parallelism) {
+        if (scenarioCount <= 0 || !(horizonYears > 0.0)) {
+            throw new IllegalArgumentException("情境數與期間必須大於 0: " + scenarioCount + ", " + horizonYears);
+        }
+        // 期間內的常數: 漂移 (mu - sigma^2 / 2) * h 與 sigma * sqrt(h)
+        int n = underlyingTickers.length;
+        double[] drifts = new double[n];
+        double[] volatilities = new double[n];
+        for (int u = 0; u < n; u++) {
+            drifts[u] = (mus[u] - sigmas[u] * sigmas[u] / 2.0) * horizonYears;
+            volatilities[u] = sigmas[u] * Math.sqrt(horizonYears);
+        }
+
+        // 每個區塊的亂數串流依序 split, 與之後由哪個執行緒執行無關
+        int blocks = (scenarioCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        SimulationRandom seeded = random.withSeed(seed);
+        NormalSampler[] samplers = new NormalSampler[blocks];
+        for (int b = 0; b < blocks; b++) {
+            samplers[b] = seeded.newSampler();
+        }
+
+        PricingConstants atHorizon = PricingConstants.afterElapsed(strikes, maturities, optionSigmas, horizonYears);
+        double[] pnl = new double[scenarioCount];
+        ScenarioTask task = new ScenarioTask(pnl, samplers, drifts, volatilities, atHorizon, 0, blocks);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            pool.invoke(task);
+        } finally {
+            pool.shutdown();
+        }
+        return pnl;
+    }
+
+    // 二分區塊範圍直到只剩一個區塊
+    @SuppressWarnings("serial")
+    private final class ScenarioTask extends RecursiveAction {
+        private final double[] pnl;
+        private final NormalSampler[] samplers;
+        private final double[] drifts;
+        private final double[] volatilities;
+        private final PricingConstants atHorizon;
+        private final int fromBlock;
+        private final int toBlock;
+
+        ScenarioTask(double[] pnl, NormalSampler[] samplers, double[] drifts, double[] volatilities,
+                     PricingConstants atHorizon, int fromBlock, int toBlock) {
+            this.pnl = pnl;
+            this.samplers = samplers;
+            this.drifts = drifts;
+            this.volatilities = volatilities;
+            this.atHorizon = atHorizon;
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+        }
+
+        @Override
+        protected void compute() {
+            if (toBlock - fromBlock == 1) {
+                int from = fromBlock * BLOCK_SIZE;
+                simulateBlock(pnl, from, Math.min(from + BLOCK_SIZE, pnl.length), samplers[fromBlock],
+                        drifts, volatilities, atHorizon);
+                return;
+            }
+            int middle = (fromBlock + toBlock) >>> 1;
+            invokeAll(new ScenarioTask(pnl, samplers, drifts, volatilities, atHorizon, fromBlock, middle),
+                    new ScenarioTask(pnl, samplers, drifts, volatilities, atHorizon, middle, toBlock));
+        }
+    }
+
+    private void simulateBlock(double[] pnl, int from, int to, NormalSampler gaussian,
+                               double[] drifts, double[] volatilities, PricingConstants atHorizon) {
+        int n = underlyingTickers.length;
+        double[] normals = new double[n];
+        double[] correlated = cholesky == null ? normals : new double[n];
+        double[][] lower = cholesky;
+
+        for (int s = from; s < to; s++) {
+            for (int u = 0; u < n; u++) {
+                normals[u] = gaussian.nextGaussian();
+            }
+            if (lower != null) {
+                for (int u = 0; u < n; u++) {
+                    double[] row = lower[u];
+                    double z = 0.0;
+                    for (int k = 0; k <= u; k++) {
+                        z += row[k] * normals[k];
+                    }
+                    correlated[u] = z;
+                }
+            }
+
+            double value = 0.0;
+            for (int u = 0; u < n; u++) {
+                value += revalueUnderlying(u, logSpots[u] + drifts[u] + volatilities[u] * correlated[u], atHorizon);
+            }
+            pnl[s] = value - portfolioValue;
+        }
+    }
+
+    /**
+     * 單一標的 (股票 + 選擇權) 在 ln(S) = logSpot 時的價值
+     * d1 直接由 ln(S) - ln(K) 計算, 每個選擇權不需要再呼叫 Math.log
+     */
+    private double revalueUnderlying(int u, double logSpot, PricingConstants constants) {
+        double spot = Math.exp(logSpot);
+        double value = stockQuantities[u] * spot;
+        double[] driftTerms = constants.driftTerms;
+        double[] sigmaSqrtTs = constants.sigmaSqrtTs;
+        double[] discountedStrikes = constants.discountedStrikes;
+        for (int i = optionStart[u]; i < optionEnd[u]; i++) {
+            double w = signs[i];
+            double sigmaSqrtT = sigmaSqrtTs[i];
+            double price;
+            if (sigmaSqrtT > 0.0) {
+                double d1 = (logSpot - logStrikes[i] + driftTerms[i]) / sigmaSqrtT;
+                double d2 = d1 - sigmaSqrtT;
+                price = w * ((spot * pricingService.N(w * d1)) - (discountedStrikes[i] * pricingService.N(w * d2)));
+            } else {
+                price = Math.max(w * (spot - strikes[i]), 0.0); // 期間內到期: 內含價值
+            }
+            value += optionQuantities[i] * price;
+        }
+        return value;
+    }
+
+    /**
+     * 每個選擇權的定價常數: 目前的常數沿用 MergedContractBook, 經過 elapsedYears 後的常數每次模擬計算一次 (情境迴圈中不呼叫 pow / sqrt / exp)
+     * 已到期的合約 sigmaSqrtT = 0, 以內含價值計算
+     */
+    private static final class PricingConstants {
+        final double[] driftTerms;
+        final double[] sigmaSqrtTs;
+        final double[] discountedStrikes;
+
+        PricingConstants(double[] driftTerms, double[] sigmaSqrtTs, double[] discountedStrikes) {
+            this.driftTerms = driftTerms;
+            this.sigmaSqrtTs = sigmaSqrtTs;
+            this.discountedStrikes = discountedStrikes;
+        }
+
+        static PricingConstants afterElapsed(double[] strikes, double[] maturities, double[] sigmas, double elapsedYears) {
+            double[] driftTerms = new double[strikes.length];
+            double[] sigmaSqrtTs = new double[strikes.length];
+            double[] discountedStrikes = new double[strikes.length];
+            for (int i = 0; i < strikes.length; i++) {
+                double t = maturities[i] - elapsedYears;
+                if (t > 0.0) {
+                    driftTerms[i] = OptionPricingService.driftTerm(sigmas[i], t);
+                    sigmaSqrtTs[i] = OptionPricingService.sigmaSqrtT(sigmas[i], t);
+                    discountedStrikes[i] = OptionPricingService.discountedStrike(strikes[i], t);
+                }
+            }
+            return new PricingConstants(driftTerms, sigmaSqrtTs, discountedStrikes);
+        }
+    }
+
+    // --- 查詢 -----------------------------------------------------------------------------------------------------------
+    public double getPortfolioValue() { return portfolioValue; }
+    public int getUnderlyingCount() { return underlyingTickers.length; }
+    public int getOptionContractCount() { return strikes.length; }
+}
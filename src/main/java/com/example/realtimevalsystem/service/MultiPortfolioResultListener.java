@@ -0,0 +1,11 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.PortfolioUpdate;
+
+/**
+ * 多投資組合引擎的訂閱者介面, 每次更新都附帶投資組合代碼
+ * 會在各分片 (shard) 的工作線程上被呼叫, 實作必須是執行緒安全的
+ */
+public interface MultiPortfolioResultListener {
+    void onPortfolioUpdate(String portfolioId, PortfolioUpdate update);
+}
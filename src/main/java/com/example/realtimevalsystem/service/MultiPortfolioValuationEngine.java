@@ -0,0 +1,292 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.Position;
+import com.example.realtimevalsystem.model.Security;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 多投資組合估值引擎
+ * - 依投資組合代碼將 N 個投資組合分散到固定數量的分片 (shard), 每個分片由一個工作線程負責
+ * - 同一投資組合永遠在同一個線程上估值, 因此帳本不需要任何同步
+ * - 每個 tick 只送到持有該標的的分片; 分片以 ConflatingMarketDataDispatcher 接收, 發布者線程永不阻塞
+ * - 所有投資組合共用一個 SymbolTable: 路由 (代碼 id -> 分片 -> 投資組合) 與各帳本都以代碼 id 查陣列, 熱路徑上不雜湊 String;
+ *   以 SymbolIdMarketDataListener 接收時完全不經過 String, 以 MarketDataListener 接收時每筆報價查一次代碼 id
+ * - 每個投資組合各自發布 PortfolioUpdate (附帶投資組合代碼)
+ * - 所有投資組合共用一個 ContractPriceTable: 多個投資組合持有的同一合約, 每個標的價格只定價一次 (可停用)
+ */
+public class MultiPortfolioValuationEngine implements MarketDataListener, SymbolIdMarketDataListener {
+
+    private static final int[] NO_SHARDS = new int[0];
+
+    private final SymbolTable symbols;
+    private final Shard[] shards;
+    private final int[][] shardsBySymbolId; // 代碼 id -> 持有該標的的分片
+    private final List<Thread> threads = new ArrayList<>();
+    private final ContractPriceTable contractPrices;
+    private volatile MultiPortfolioResultListener resultListener;
+
+    /**
+     * @param portfolios  投資組合代碼 -> 持倉
+     * @param threadCount 工作線程 (分片) 數量
+     */
+    public MultiPortfolioValuationEngine(Map<String, List<Position>> portfolios,
+                                         Map<String, Security> securityMap,
+                                         Map<String, Double> initialStockPrices,
+                                         OptionPricingService pricingService,
+                                         int threadCount) {
+        this(portfolios, securityMap, initialStockPrices, pricingService, threadCount, true);
+    }
+
+    /**
+     * @param shareContractPrices 是否在投資組合之間共用合約價格 (false = 每個投資組合各自定價)
+     */
+    public MultiPortfolioValuationEngine(Map<String, List<Position>> portfolios,
+                                         Map<String, Security> securityMap,
+                                         Map<String, Double> initialStockPrices,
+                                         OptionPricingService pricingService,
+                                         int threadCount,
+                                         boolean shareContractPrices) {
+        this(portfolios, securityMap, initialStockPrices, pricingService, threadCount, shareContractPrices, new SymbolTable());
+    }
+
+    /**
+     * @param symbols 代碼符號表 (通常與 MarketDataPublisher 共用同一個, 發布者送出的代碼 id 直接用於路由)
+     */
+    public MultiPortfolioValuationEngine(Map<String, List<Position>> portfolios,
+                                         Map<String, Security> securityMap,
+                                         Map<String, Double> initialStockPrices,
+                                         OptionPricingService pricingService,
+                                         int threadCount,
+                                         boolean shareContractPrices,
+                                         SymbolTable symbols) {
+        this.symbols = symbols;
+        this.shards = new Shard[threadCount];
+        for (int s = 0; s < threadCount; s++) {
+            shards[s] = new Shard(symbols);
+        }
+        if (shareContractPrices) {
+            Set<String> heldSymbols = new LinkedHashSet<>();
+            for (List<Position> positions : portfolios.values()) {
+                for (Position position : positions) {
+                    heldSymbols.add(position.getSymbol());
+                }
+            }
+            this.contractPrices = new ContractPriceTable(securityMap, heldSymbols, pricingService); // 與帳本相同的 N(x), 共用不會被拒絕
+        } else {
+            this.contractPrices = null;
+        }
+
+        // --- 1. 依投資組合代碼分片, 每個投資組合編譯成自己的帳本 ----------------------------------------------------------
+        for (Map.Entry<String, List<Position>> entry : portfolios.entrySet()) {
+            String portfolioId = entry.getKey();
+            PortfolioValuationService portfolio = new PortfolioValuationService(
+                    entry.getValue(), securityMap, initialStockPrices, pricingService, symbols);
+            if (contractPrices != null) {
+                portfolio.setContractPriceTable(contractPrices);
+            }
+            portfolio.setListener(update -> {
+                MultiPortfolioResultListener listener = resultListener;
+                if (listener != null) {
+                    listener.onPortfolioUpdate(portfolioId, update);
+                }
+            });
+            shards[shardOf(portfolioId)].add(portfolio);
+        }
+
+        // --- 2. 建立 "代碼 id -> 分片" 索引, 並為每個分片建立只包含自己標的的分派器 -------------------------------------------
+        for (Shard shard : shards) {
+            shard.compile();
+        }
+        this.shardsBySymbolId = new int[symbols.size()][];
+        for (int id = 0; id < shardsBySymbolId.length; id++) {
+            int count = 0;
+            for (Shard shard : shards) {
+                if (shard.holds(id)) {
+                    count++;
+                }
+            }
+            int[] holders = count == 0 ? NO_SHARDS : new int[count];
+            count = 0;
+            for (int s = 0; s < threadCount; s++) {
+                if (shards[s].holds(id)) {
+                    holders[count++] = s;
+                }
+            }
+            shardsBySymbolId[id] = holders;
+        }
+    }
+
+    public void setListener(MultiPortfolioResultListener listener) {
+        this.resultListener = listener;
+    }
+
+    public int shardOf(String portfolioId) {
+        return Math.floorMod(portfolioId.hashCode(), shards.length);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * 更新所有投資組合的選擇權波動率 (可由任何線程呼叫): 先更新共用表, 再排入每個投資組合, 由各分片在兩個 tick 之間套用
+     * 尚未套用的投資組合因參數版本不同而自行定價, 不會讀到以新波動率計算的價格
+     * @param sigmas 合約代碼 -> 波動率
+     */
+    public void updateVolatilities(Map<String, Double> sigmas) {
+        if (contractPrices != null) {
+            contractPrices.updateVolatilities(sigmas);
+        }
+        for (Shard shard : shards) {
+            for (PortfolioValuationService portfolio : shard.portfolios) {
+                portfolio.updateVolatilities(sigmas);
+            }
+        }
+    }
+
+    /**
+     * @return 共用的合約價格表 (停用時為 null)
+     */
+    public ContractPriceTable getContractPriceTable() {
+        return contractPrices;
+    }
+
+    public void start() {
+        for (int s = 0; s < shards.length; s++) {
+            Thread thread = new Thread(shards[s].dispatcher);
+            thread.setName("ValuationShard-" + s);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    public void stop() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * 市場數據線程: 查出代碼 id 後與 onStockPriceUpdate(int, double) 相同
+     */
+    @Override
+    public void onStockPriceUpdate(String ticker, double newPrice) {
+        onStockPriceUpdate(symbols.idOf(ticker), newPrice, System.nanoTime());
+    }
+
+    @Override
+    public void onStockPriceUpdate(int symbolId, double newPrice) {
+        onStockPriceUpdate(symbolId, newPrice, System.nanoTime());
+    }
+
+    /**
+     * 市場數據線程 (以代碼 id): 只送到持有此標的的分片 (陣列查找, 不阻塞)
+     */
+    @Override
+    public void onStockPriceUpdate(int symbolId, double newPrice, long tickNanos) {
+        if (symbolId < 0 || symbolId >= shardsBySymbolId.length) {
+            return; // 沒有任何投資組合持有的代碼
+        }
+        for (int s : shardsBySymbolId[symbolId]) {
+            shards[s].dispatcher.onStockPriceUpdate(symbolId, newPrice, tickNanos);
+        }
+    }
+
+    /**
+     * @return 所有分片都沒有待處理的報價 (供 benchmark / 測試等待處理完畢)
+     */
+    public boolean isIdle() {
+        for (Shard shard : shards) {
+            if (!shard.dispatcher.isIdle()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 單一分片: 一組投資組合 + 一個工作線程
+     * onStockPriceBatch 只在該分片的工作線程上被呼叫
+     */
+    private static final class Shard implements SymbolIdMarketDataListener {
+
+        private final SymbolTable symbols;
+        private final List<PortfolioValuationService> portfolios = new ArrayList<>();
+        private int[][] portfoliosBySymbolId; // 代碼 id -> 持有該標的的投資組合 (null = 沒有)
+        private ConflatingMarketDataDispatcher dispatcher;
+
+        // 本批受影響的投資組合 (工作線程專用)
+        private boolean[] dirty;
+        private int[] dirtyList;
+
+        Shard(SymbolTable symbols) {
+            this.symbols = symbols;
+        }
+
+        void add(PortfolioValuationService portfolio) {
+            portfolios.add(portfolio);
+        }
+
+        void compile() {
+            Map<String, List<Integer>> grouped = new LinkedHashMap<>();
+            for (int p = 0; p < portfolios.size(); p++) {
+                for (String ticker : portfolios.get(p).getUnderlyingTickers()) {
+                    grouped.computeIfAbsent(ticker, k -> new ArrayList<>()).add(p);
+                }
+            }
+            symbols.internAll(grouped.keySet());
+            this.portfoliosBySymbolId = new int[symbols.size()][];
+            for (Map.Entry<String, List<Integer>> entry : grouped.entrySet()) {
+                portfoliosBySymbolId[symbols.idOf(entry.getKey())] =
+                        entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            }
+            this.dirty = new boolean[portfolios.size()];
+            this.dirtyList = new int[portfolios.size()];
+            this.dispatcher = new ConflatingMarketDataDispatcher(symbols, grouped.keySet(), this);
+        }
+
+        boolean holds(int symbolId) {
+            return symbolId < portfoliosBySymbolId.length && portfoliosBySymbolId[symbolId] != null;
+        }
+
+        @Override
+        public void onStockPriceUpdate(int symbolId, double newPrice) {
+            onStockPriceBatch(new int[]{symbolId}, new double[]{newPrice}, 1);
+        }
+
+        @Override
+        public void onStockPriceBatch(int[] symbolIds, double[] prices, int count) {
+            onStockPriceBatch(symbolIds, prices, count, System.nanoTime());
+        }
+
+        @Override
+        public void onStockPriceBatch(int[] symbolIds, double[] prices, int count, long tickNanos) {
+            int dirtyCount = 0;
+            for (int i = 0; i < count; i++) {
+                for (int p : portfoliosBySymbolId[symbolIds[i]]) {
+                    if (!dirty[p]) {
+                        dirty[p] = true;
+                        dirtyList[dirtyCount++] = p;
+                    }
+                }
+            }
+            // 每個受影響的投資組合整批套用 (帳本中沒有的代碼 id 會被略過) 並只發布一次
+            for (int d = 0; d < dirtyCount; d++) {
+                int p = dirtyList[d];
+                dirty[p] = false;
+                portfolios.get(p).onStockPriceBatch(symbolIds, prices, count, tickNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.realtimevalsystem.service;
+
+/**
+ * 標準常態分佈的累積分佈函數 N(x) (Black-Scholes 每個合約每個 tick 呼叫 2 - 4 次)
+ * - CODY:              W. J. Cody 的有理函數逼近 (ACM TOMS 715 的 ANORM), 三個區間各一個有理函數;
+ *                      |x| > sqrt(32) 的尾端以兩次 exp 計算 exp(-x^2/2) 以保留相對精度. 絕對誤差約 1e-16 (double 的捨入), 左尾相對誤差約 1e-15
+ * - TABLE:             [-9, 9] 每 1/128 一個區間的三次 Hermite 插值 (區間兩端的 N 與 N' = φ), 以 Cody 建表;
+ *                      不呼叫 exp, 只有 4 個相鄰的係數與一次 Horner. 絕對誤差約 5e-12, 區間外回傳 0 / 1
+ * - ABRAMOWITZ_STEGUN: Abramowitz & Stegun 7.1.26 的 erf 逼近 (原本的實作), 絕對誤差約 7.5e-8
+ * 誤差以 NormalCdfTest 對高精度參考值驗證; 所有實作皆為無狀態, 可由多個線程共用
+ */
+public interface NormalCdf {
+
+    String CODY = "cody";
+    String TABLE = "table";
+    String ABRAMOWITZ_STEGUN = "abramowitz-stegun";
+
+    double cdf(double x);
+
+    /**
+     * 依名稱取得實作 ("cody", "table", "abramowitz-stegun"), 供設定檔 / 系統參數使用
+     */
+    static NormalCdf create(String method) {
+        switch (method) {
+            case CODY:
+                return Cody.INSTANCE;
+            case TABLE:
+                return Table.INSTANCE;
+            case ABRAMOWITZ_STEGUN:
+                return AbramowitzStegun.INSTANCE;
+            default:
+                throw new IllegalArgumentException("未知的常態分佈 CDF 實作: " + method);
+        }
+    }
+
+    final class Cody implements NormalCdf {
+        static final Cody INSTANCE = new Cody();
+
+        private static final double THRESHOLD = 0.66291;
+        private static final double ROOT32 = 5.656854248;
+        private static final double INV_SQRT_2PI = 0.3989422804014327;
+        private static final double EPSILON = 1.11e-16;
+
+        private Cody() {
+        }
+
+        @Override
+        public double cdf(double x) {
+            double y = Math.abs(x);
+            if (y <= THRESHOLD) {
+                // N(x) = 1/2 + x * R(x^2), R 為 (4, 4) 次有理函數
+                double xsq = y > EPSILON ? x * x : 0.0;
+                double num = ((((6.5682337918207449113e-2 * xsq + 2.2352520354606839287e00) * xsq
+                        + 1.6102823106855587881e02) * xsq + 1.0676894854603709582e03) * xsq + 1.8154981253343561249e04);
+                double den = ((((xsq + 4.7202581904688241870e01) * xsq
+                        + 9.7609855173777669322e02) * xsq + 1.0260932208618978205e04) * xsq + 4.5507789335026729956e04);
+                return 0.5 + x * num / den;
+            }
+
+            double tail; // N(-|x|)
+            if (y <= ROOT32) {
+                // N(-y) = exp(-y^2/2) * R(y), R 為 (8, 8) 次有理函數
+                double num = ((((((((1.0765576773720192317e-8 * y + 3.9894151208813466764e-1) * y
+                        + 8.8831497943883759412e00) * y + 9.3506656132177855979e01) * y + 5.9727027639480026226e02) * y
+                        + 2.4945375852903726711e03) * y + 6.8481904505362823326e03) * y + 1.1602651437647350124e04) * y
+                        + 9.8427148383839780218e03);
+                double den = ((((((((y + 2.2266688044328115691e01) * y + 2.3538790178262499861e02) * y
+                        + 1.5193775994075548050e03) * y + 6.4855582982667607550e03) * y + 1.8615571640885098091e04) * y
+                        + 3.4900952721145977266e04) * y + 3.8912003286093271411e04) * y + 1.9685429676859990727e04);
+                tail = Math.exp(-0.5 * y * y) * num / den;
+            } else {
+                // N(-y) = exp(-y^2/2) / y * (1/sqrt(2π) - R(1/y^2) / y^2), R 為 (5, 5) 次有理函數
+                double xsq = 1.0 / (y * y);
+                double num = (((((2.307344176494017303e-2 * xsq + 2.1589853405795699e-1) * xsq
+                        + 1.274011611602473639e-1) * xsq + 2.2235277870649807e-2) * xsq + 1.421619193227893466e-3) * xsq
+                        + 2.9112874951168792e-5);
+                double den = (((((xsq + 1.28426009614491121e00) * xsq + 4.68238212480865118e-1) * xsq
+                        + 6.59881378689285515e-2) * xsq + 3.78239633202758244e-3) * xsq + 7.29751555083966205e-5);
+                // 尾端: exp(-y^2/2) = exp(-r^2/2) * exp(-(y-r)(y+r)/2), r = y 截斷到 1/16 (r^2 可以精確表示), 保留相對精度
+                double rounded = (int) (y * 16.0) / 16.0;
+                double delta = (y - rounded) * (y + rounded);
+                tail = Math.exp(-rounded * rounded * 0.5) * Math.exp(-delta * 0.5)
+                        * (INV_SQRT_2PI - xsq * num / den) / y;
+            }
+            return x > 0.0 ? 1.0 - tail : tail;
+        }
+    }
+
+    final class Table implements NormalCdf {
+        static final Table INSTANCE = new Table();
+
+        private static final double LOWER = -9.0;              // N(-9) ≈ 1.1e-19
+        private static final double UPPER = 9.0;
+        private static final int STEPS_PER_UNIT = 128;
+        private static final double STEP = 1.0 / STEPS_PER_UNIT;
+        private static final int INTERVALS = (int) ((UPPER - LOWER) * STEPS_PER_UNIT);
+        // 每個區間的三次多項式係數 c0 + c1*t + c2*t^2 + c3*t^3 (t 為區間內的位置 0 ~ 1), 相鄰存放
+        private static final double[] COEFFICIENTS = new double[4 * INTERVALS];
+
+        static {
+            for (int i = 0; i < INTERVALS; i++) {
+                double x0 = LOWER + i * STEP;
+                double x1 = x0 + STEP;
+                double f0 = Cody.INSTANCE.cdf(x0);
+                double f1 = Cody.INSTANCE.cdf(x1);
+                double d0 = STEP * Math.exp(-0.5 * x0 * x0) * Cody.INV_SQRT_2PI; // 斜率換算成 t 的單位
+                double d1 = STEP * Math.exp(-0.5 * x1 * x1) * Cody.INV_SQRT_2PI;
+                COEFFICIENTS[4 * i] = f0;
+                COEFFICIENTS[4 * i + 1] = d0;
+                COEFFICIENTS[4 * i + 2] = 3.0 * (f1 - f0) - 2.0 * d0 - d1;
+                COEFFICIENTS[4 * i + 3] = 2.0 * (f0 - f1) + d0 + d1;
+            }
+        }
+
+        private Table() {
+        }
+
+        @Override
+        public double cdf(double x) {
+            if (x <= LOWER) {
+                return 0.0;
+            }
+            if (x >= UPPER) {
+                return 1.0;
+            }
+            if (x != x) {
+                return x; // NaN
+            }
+            double position = (x - LOWER) * STEPS_PER_UNIT;
+            int interval = (int) position;
+            double t = position - interval;
+            int k = 4 * interval;
+            return ((COEFFICIENTS[k + 3] * t + COEFFICIENTS[k + 2]) * t + COEFFICIENTS[k + 1]) * t + COEFFICIENTS[k];
+        }
+    }
+
+    final class AbramowitzStegun implements NormalCdf {
+        static final AbramowitzStegun INSTANCE = new AbramowitzStegun();
+
+        private static final double SQRT_2 = Math.sqrt(2.0);
+
+        private AbramowitzStegun() {
+        }
+
+        @Override
+        public double cdf(double z) {
+            // N(z) = 0.5 * (1 + erf(z / sqrt(2)))
+            return 0.5 * (1.0 + erf(z / SQRT_2));
+        }
+
+        /**
+         * 誤差函數 erf(x) 的逼近 (Formula 7.1.26, 絕對誤差 < 1.5e-7)
+         */
+        static double erf(double z) {
+            // 逼近法所使用的常數
+            double a1 =  0.254829592;
+            double a2 = -0.284496736;
+            double a3 =  1.421413741;
+            double a4 = -1.453152027;
+            double a5 =  1.061405429;
+            double p  =  0.3275911;
+
+            // 保存 z 的符號
+            int sign = 1;
+            if (z < 0) {
+                sign = -1;
+            }
+            double absZ = Math.abs(z);
+
+            // A&S formula
+            double t = 1.0 / (1.0 + p * absZ);
+            double y = 1.0 - (((((a5 * t + a4) * t) + a3) * t + a2) * t + a1) * t * Math.exp(-absZ * absZ);
+
+            return sign * y;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.realtimevalsystem.service;
+
+/**
+ * 標準常態分佈 N(0, 1) 的取樣器, 由一個 RandomStream 提供均勻亂數 (非執行緒安全, 每個線程各自一個)
+ * - ZIGGURAT: 128 層 Ziggurat (Marsaglia & Tsang, Doornik 的 ZIGNOR 版本); 約 98.8% 的樣本只需一個 nextLong 與一次乘法,
+ *             其餘落在楔形區或尾端才需要 exp / log
+ * - POLAR:    Marsaglia polar method (java.util.Random.nextGaussian 使用的方法), 每兩個樣本需要一次 log + sqrt
+ */
+public interface NormalSampler {
+
+    String ZIGGURAT = "ziggurat";
+    String POLAR = "polar";
+
+    double nextGaussian();
+
+    /**
+     * 依名稱建立取樣器 ("ziggurat", "polar"), 供設定檔 / 系統參數使用
+     */
+    static NormalSampler create(String method, RandomStream stream) {
+        switch (method) {
+            case ZIGGURAT:
+                return new Ziggurat(stream);
+            case POLAR:
+                return new Polar(stream);
+            default:
+                throw new IllegalArgumentException("未知的常態分佈取樣方法: " + method);
+        }
+    }
+
+    final class Ziggurat implements NormalSampler {
+        private static final int LAYERS = 128;
+        private static final double R = 3.442619855899;         // 最底層 (尾端) 的起點
+        private static final double V = 9.91256303526217e-3;    // 每一層的面積
+        private static final double[] X = new double[LAYERS + 1]; // 每一層矩形的右邊界, X[0] = V / f(R) (底層含尾端的等效寬度)
+        private static final double[] RATIO = new double[LAYERS]; // X[i + 1] / X[i], |u| 小於此值時必定落在矩形內
+
+        static {
+            double f = Math.exp(-0.5 * R * R);
+            X[0] = V / f;
+            X[1] = R;
+            X[LAYERS] = 0.0;
+            for (int i = 2; i < LAYERS; i++) {
+                X[i] = Math.sqrt(-2.0 * Math.log(V / X[i - 1] + f));
+                f = Math.exp(-0.5 * X[i] * X[i]);
+            }
+            for (int i = 0; i < LAYERS; i++) {
+                RATIO[i] = X[i + 1] / X[i];
+            }
+        }
+
+        private final RandomStream stream;
+
+        Ziggurat(RandomStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public double nextGaussian() {
+            while (true) {
+                // 一個 nextLong: 低 7 位元選層, 高 53 位元為 [-1, 1) 的 u (兩者不共用位元)
+                long bits = stream.nextLong();
+                int layer = (int) bits & (LAYERS - 1);
+                double u = 2.0 * ((bits >>> 11) * 0x1.0p-53) - 1.0;
+
+                // 1. 矩形內 (絕大多數)
+                if (Math.abs(u) < RATIO[layer]) {
+                    return u * X[layer];
+                }
+                // 2. 最底層: 從尾端 |x| > R 取樣
+                if (layer == 0) {
+                    return tail(u < 0.0);
+                }
+                // 3. 楔形區: 以密度函數決定是否接受
+                double x = u * X[layer];
+                double f0 = Math.exp(-0.5 * (X[layer] * X[layer] - x * x));
+                double f1 = Math.exp(-0.5 * (X[layer + 1] * X[layer + 1] - x * x));
+                if (f1 + stream.nextDouble() * (f0 - f1) < 1.0) {
+                    return x;
+                }
+            }
+        }
+
+        // Marsaglia (1964) 的尾端取樣; 1 - nextDouble() 落在 (0, 1], 不會取 log(0)
+        private double tail(boolean negative) {
+            double x;
+            double y;
+            do {
+                x = Math.log(1.0 - stream.nextDouble()) / R;
+                y = Math.log(1.0 - stream.nextDouble());
+            } while (-2.0 * y < x * x);
+            return negative ? x - R : R - x;
+        }
+    }
+
+    final class Polar implements NormalSampler {
+        private final RandomStream stream;
+        private double spare;
+        private boolean hasSpare;
+
+        Polar(RandomStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public double nextGaussian() {
+            if (hasSpare) {
+                hasSpare = false;
+                return spare;
+            }
+            double u;
+            double v;
+            double s;
+            do {
+                u = 2.0 * stream.nextDouble() - 1.0;
+                v = 2.0 * stream.nextDouble() - 1.0;
+                s = u * u + v * v;
+            } while (s >= 1.0 || s == 0.0);
+            double factor = Math.sqrt(-2.0 * Math.log(s) / s);
+            spare = v * factor;
+            hasSpare = true;
+            return u * factor;
+        }
+    }
+}
@@ -1,10 +1,39 @@
 package com.example.realtimevalsystem.service;
 
+import com.example.realtimevalsystem.model.Greeks;
+
 public class OptionPricingService {
 
     // 無風險利率 (r) 固定為 2%
     private static final double RISK_FREE_RATE = 0.02;
 
+    // 批次定價的買權/賣權符號 w
+    public static final double CALL_SIGN = 1.0;
+    public static final double PUT_SIGN = -1.0;
+
+    // 1 / sqrt(2π), 標準常態分佈的機率密度函數係數
+    private static final double INV_SQRT_2PI = 0.3989422804014327;
+
+    // 預設的 N(x) 實作
+    public static final String DEFAULT_NORMAL_CDF = NormalCdf.CODY;
+
+    private final NormalCdf normalCdf;
+
+    public OptionPricingService() {
+        this(NormalCdf.create(DEFAULT_NORMAL_CDF));
+    }
+
+    /**
+     * @param normalCdf N(x) 的實作 (精度與速度的取捨, 見 NormalCdf)
+     */
+    public OptionPricingService(NormalCdf normalCdf) {
+        this.normalCdf = normalCdf;
+    }
+
+    public NormalCdf getNormalCdf() {
+        return normalCdf;
+    }
+
     /**
      * 計算歐式買權 (Call Option) 的價格
      * @param S     標的股票的目前價格
@@ -37,6 +66,124 @@ public class OptionPricingService {
         return (K * Math.exp(-RISK_FREE_RATE * t) * N(-d2)) - (S * N(-d1));
     }
 
+    // --- 批次定價 --------------------------------------------------------------------------------------------------------
+
+    /**
+     * 批次計算歐式選擇權價格 (一次迴圈, 無型別分支)
+     * 每個合約的常數在迴圈內計算; 若合約常數可預先計算, 請改用 calculatePrices(double, ...) 版本
+     * @param spots      標的股票的目前價格 S
+     * @param strikes    履約價 K
+     * @param sigmas     波動率
+     * @param maturities 剩餘到期時間 (年)
+     * @param isCall     true = 買權, false = 賣權
+     * @param out        輸出的選擇權價格
+     * @param count      要計算的筆數 (從索引 0 開始)
+     */
+    public void calculatePrices(double[] spots, double[] strikes, double[] sigmas, double[] maturities,
+                                boolean[] isCall, double[] out, int count) {
+        for (int i = 0; i < count; i++) {
+            double t = maturities[i];
+            out[i] = price(spots[i], strikes[i], driftTerm(sigmas[i], t), sigmaSqrtT(sigmas[i], t),
+                    discountedStrike(strikes[i], t), isCall[i] ? CALL_SIGN : PUT_SIGN);
+        }
+    }
+
+    /**
+     * 以預先計算的合約常數批次計算同一標的的選擇權價格, 計算區間為 [from, to)
+     * 常數由 driftTerm / sigmaSqrtT / discountedStrike 在載入證券時算好, 每個 tick 不再呼叫 exp/sqrt/pow
+     * @param S                  標的股票的目前價格
+     * @param strikes            履約價 K
+     * @param driftTerms         (r + sigma^2 / 2) * t
+     * @param sigmaSqrtTs        sigma * sqrt(t)
+     * @param discountedStrikes  K * e^(-rt)
+     * @param signs              CALL_SIGN (+1) 或 PUT_SIGN (-1)
+     * @param out                輸出的選擇權價格
+     */
+    public void calculatePrices(double S, double[] strikes, double[] driftTerms, double[] sigmaSqrtTs,
+                                double[] discountedStrikes, double[] signs, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = price(S, strikes[i], driftTerms[i], sigmaSqrtTs[i], discountedStrikes[i], signs[i]);
+        }
+    }
+
+    /**
+     * 買權與賣權共用的公式: w * (S*N(w*d1) - K*e^(-rt)*N(w*d2)), w = +1 (買權) / -1 (賣權)
+     * 運算順序與 calculateCallPrice / calculatePutPrice 相同, 因此結果逐位元一致
+     */
+    private double price(double S, double K, double driftTerm, double sigmaSqrtT, double discountedStrike, double sign) {
+        double d1 = (Math.log(S / K) + driftTerm) / sigmaSqrtT;
+        double d2 = d1 - sigmaSqrtT;
+        return sign * ((S * N(sign * d1)) - (discountedStrike * N(sign * d2)));
+    }
+
+    // --- Greeks ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * 計算單一歐式選擇權的 Greeks (每一單位合約)
+     * @param S      標的股票的目前價格
+     * @param K      履約價
+     * @param sigma  波動率
+     * @param t      剩餘到期時間 (年)
+     * @param isCall true = 買權, false = 賣權
+     */
+    public Greeks calculateGreeks(double S, double K, double sigma, double t, boolean isCall) {
+        GreeksBuffer greeks = new GreeksBuffer(1);
+        calculatePricesAndGreeks(S, new double[]{K}, new double[]{t}, new double[]{driftTerm(sigma, t)},
+                new double[]{sigmaSqrtT(sigma, t)}, new double[]{discountedStrike(K, t)},
+                new double[]{isCall ? CALL_SIGN : PUT_SIGN}, new double[1], greeks, 0, 1);
+        return new Greeks(greeks.delta[0], greeks.gamma[0], greeks.vega[0], greeks.theta[0], greeks.rho[0]);
+    }
+
+    /**
+     * 以預先計算的合約常數批次計算價格與 Greeks, 計算區間為 [from, to)
+     * 價格與 calculatePrices(double, ...) 逐位元一致; Greeks 寫入 greeks 緩衝區
+     * @param maturities 剩餘到期時間 (年), 用於 vega / theta / rho
+     */
+    void calculatePricesAndGreeks(double S, double[] strikes, double[] maturities, double[] driftTerms,
+                                  double[] sigmaSqrtTs, double[] discountedStrikes, double[] signs,
+                                  double[] out, GreeksBuffer greeks, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double t = maturities[i];
+            double sigmaSqrtT = sigmaSqrtTs[i];
+            double discountedStrike = discountedStrikes[i];
+            double w = signs[i];
+
+            double d1 = (Math.log(S / strikes[i]) + driftTerms[i]) / sigmaSqrtT;
+            double d2 = d1 - sigmaSqrtT;
+            double nd1 = N(w * d1);
+            double nd2 = N(w * d2);
+            double pdf = Math.exp(-0.5 * d1 * d1) * INV_SQRT_2PI;
+
+            out[i] = w * ((S * nd1) - (discountedStrike * nd2));
+
+            // delta: 買權 N(d1), 賣權 N(d1) - 1 = -N(-d1)
+            greeks.delta[i] = w * nd1;
+            greeks.gamma[i] = pdf / (S * sigmaSqrtT);
+            greeks.vega[i] = S * pdf * Math.sqrt(t);
+            // theta: -S*φ(d1)*σ/(2√t) ∓ r*K*e^(-rt)*N(±d2)
+            greeks.theta[i] = -(S * pdf * sigmaSqrtT) / (2.0 * t) - w * RISK_FREE_RATE * discountedStrike * nd2;
+            // rho: ±K*t*e^(-rt)*N(±d2)
+            greeks.rho[i] = w * t * discountedStrike * nd2;
+            // speed: ∂Γ/∂S = -Γ/S * (d1/(σ√t) + 1)
+            greeks.speed[i] = -greeks.gamma[i] / S * (d1 / sigmaSqrtT + 1.0);
+        }
+    }
+
+    // (r + sigma^2 / 2) * t
+    public static double driftTerm(double sigma, double t) {
+        return (RISK_FREE_RATE + Math.pow(sigma, 2) / 2) * t;
+    }
+
+    // sigma * sqrt(t)
+    public static double sigmaSqrtT(double sigma, double t) {
+        return sigma * Math.sqrt(t);
+    }
+
+    // K * e^(-rt)
+    public static double discountedStrike(double K, double t) {
+        return K * Math.exp(-RISK_FREE_RATE * t);
+    }
+
     // 計算 d1
     private double calculateD1(double S, double K, double sigma, double t) {
         // d1 = ( ln(S/K) + (r + sigma^2 / 2) * t ) / ( sigma * sqrt(t) )
@@ -49,37 +196,17 @@ public class OptionPricingService {
         return d1 - sigma * Math.sqrt(t);
     }
     /**
-     * 計算標準常態分佈的累積機率函數 (CDF) - N(x)
-     * 由於 JDK 1.8 限制，我們使用 Abramowitz and Stegun 的 "Formula 7.1.26" 逼近法。
+     * 計算標準常態分佈的累積機率函數 (CDF) - N(x), 由建構時選擇的 NormalCdf 計算
+     * (package-private 以供 JMH 效能測試直接呼叫)
      */
-    private double N(double z) {
-        // N(z) = 0.5 * (1 + erf(z / sqrt(2)))
-        return 0.5 * (1.0 + erf(z / Math.sqrt(2.0)));
+    double N(double z) {
+        return normalCdf.cdf(z);
     }
 
     /**
-     * 誤差函數 erf(x) 的高精度逼近實作 (Formula 7.1.26)
+     * 誤差函數 erf(x) 的逼近 (Abramowitz and Stegun Formula 7.1.26)
      */
-    private double erf(double z) {
-        // 逼近法所使用的常數
-        double a1 =  0.254829592;
-        double a2 = -0.284496736;
-        double a3 =  1.421413741;
-        double a4 = -1.453152027;
-        double a5 =  1.061405429;
-        double p  =  0.3275911;
-
-        // 保存 z 的符號
-        int sign = 1;
-        if (z < 0) {
-            sign = -1;
-        }
-        double absZ = Math.abs(z);
-
-        // A&S formula
-        double t = 1.0 / (1.0 + p * absZ);
-        double y = 1.0 - (((((a5 * t + a4) * t) + a3) * t + a2) * t + a1) * t * Math.exp(-absZ * absZ);
-
-        return sign * y;
+    double erf(double z) {
+        return NormalCdf.AbramowitzStegun.erf(z);
     }
-}
\ No newline at end of file
+}
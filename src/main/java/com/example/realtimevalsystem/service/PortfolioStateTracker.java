@@ -0,0 +1,92 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.CalculatedPosition;
+import com.example.realtimevalsystem.model.Greeks;
+import com.example.realtimevalsystem.model.PortfolioUpdate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 訂閱者端的投資組合狀態重建器
+ * - 完整快照: 取代全部狀態
+ * - 增量更新: 依 CalculatedPosition.getIndex() 覆蓋變動的列
+ * - 以 updateNumber 偵測遺漏: 序號不連續時標記為未同步, 丟棄之後的增量更新直到下一個完整快照
+ *
+ * 非執行緒安全, 應只在單一訂閱者的遞送線程上使用
+ * 注意: 增量模式下若訂閱者會丟棄更新 (DROP_OLDEST / CONFLATE_TO_LATEST), 每次丟棄都要等下一個快照才能重新同步
+ */
+public class PortfolioStateTracker {
+
+    private CalculatedPosition[] rows = new CalculatedPosition[0];
+    private final Map<String, Greeks> underlyingGreeks = new HashMap<>();
+    private Greeks portfolioGreeks = Greeks.ZERO;
+    private double totalNAV;
+    private long lastUpdateNumber;
+    private boolean synced;
+
+    private long gapCount;
+    private long deltasDiscarded;
+
+    /**
+     * 套用一筆更新
+     * @return 套用後狀態是否與發布端一致 (false 代表偵測到遺漏, 正在等待下一個完整快照)
+     */
+    public boolean apply(PortfolioUpdate update) {
+        long updateNumber = update.getUpdateNumber();
+        if (update.isSnapshot()) {
+            if (synced && updateNumber != lastUpdateNumber + 1) {
+                gapCount++;
+            }
+            rows = update.getPositions().toArray(new CalculatedPosition[0]);
+            underlyingGreeks.clear();
+            underlyingGreeks.putAll(update.getUnderlyingGreeks());
+            accept(update);
+            synced = true;
+            return true;
+        }
+
+        if (!synced) {
+            deltasDiscarded++;
+            return false;
+        }
+        if (updateNumber != lastUpdateNumber + 1 || update.getPositionCount() != rows.length) {
+            gapCount++;
+            deltasDiscarded++;
+            synced = false;
+            return false;
+        }
+        for (CalculatedPosition position : update.getPositions()) {
+            rows[position.getIndex()] = position;
+        }
+        underlyingGreeks.putAll(update.getUnderlyingGreeks());
+        accept(update);
+        return true;
+    }
+
+    private void accept(PortfolioUpdate update) {
+        lastUpdateNumber = update.getUpdateNumber();
+        totalNAV = update.getTotalNAV();
+        portfolioGreeks = update.getPortfolioGreeks();
+    }
+
+    /**
+     * @return 目前重建出的全部持倉 (依帳本順序, 唯讀檢視)
+     */
+    public List<CalculatedPosition> getPositions() {
+        return Collections.unmodifiableList(Arrays.asList(rows));
+    }
+
+    public CalculatedPosition getPosition(int index) { return rows[index]; }
+    public int size() { return rows.length; }
+    public Map<String, Greeks> getUnderlyingGreeks() { return Collections.unmodifiableMap(underlyingGreeks); }
+    public Greeks getPortfolioGreeks() { return portfolioGreeks; }
+    public double getTotalNAV() { return totalNAV; }
+    public long getLastUpdateNumber() { return lastUpdateNumber; }
+    public boolean isSynced() { return synced; }
+    public long getGapCount() { return gapCount; }
+    public long getDeltasDiscarded() { return deltasDiscarded; }
+}
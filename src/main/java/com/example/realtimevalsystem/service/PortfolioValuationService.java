@@ -3,43 +3,126 @@ package com.example.realtimevalsystem.service;
 import com.example.realtimevalsystem.model.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 核心估值服務
  * 1. 監聽市場價格
- * 2. 執行計算
- * 3. 將結果發布給訂閱者
+ * 2. 執行計算 (委派給 CompiledBook, 只重新計算受該標的影響的持倉, 並彙總 Greeks)
+ *    報價可以代碼 (MarketDataListener) 或代碼 id (SymbolIdMarketDataListener, 以陣列查找標的) 送入;
+ *    id 由 getSymbolTable() 指派, 只有發布時才轉回觸發代碼的字串
+ * 3. 將結果發布給訂閱者 (完整快照, 或只含變動持倉的增量更新 + 定期快照)
+ *    帳本的重新估值不配置物件, 但每次發布會建立新的 PortfolioUpdate 與變動的列 (CalculatedPosition / Greeks, 不可變,
+ *    訂閱者可以保留或交給其他線程): 完整快照的配置與持倉數成正比, DELTA 模式只與變動標的下的持倉數成正比
+ * 4. 執行中變更持倉 (日內成交 applyTrades / 重新載入 reloadPositions), 不需停止引擎:
+ *    - 任何線程都可提交變更; 變更排入佇列, 由估值線程在兩個 tick 之間整批套用, 之後發布的更新一定包含整批變更
+ *    - 只變更既有持倉的數量: 直接修改帳本, 以差額更新 NAV 與 Greeks (不重新定價)
+ *    - 新增或移除代碼: 在提交者的線程上編譯新的帳本, 估值線程只同步之後變動的標的價格再替換 (copy-on-write)
+ *    新增的標的需由上游送出其報價 (ConflatingMarketDataDispatcher / MultiPortfolioValuationEngine 只轉送建構時的代碼)
+ * 5. 設定 LatencyMetrics 時記錄估值開始 / 結束的時間戳 (報價未帶建立時間時以估值開始時間代替), 並帶在 PortfolioUpdate 中
  */
-public class PortfolioValuationService implements MarketDataListener {
+public class PortfolioValuationService implements MarketDataListener, SymbolIdMarketDataListener {
+
+    public enum UpdateMode {
+        /** 每次發布都帶全部持倉 (預設) */
+        SNAPSHOT,
+        /** 只帶變動的持倉, 每 snapshotInterval 次 (或被要求時) 發布一次完整快照 */
+        DELTA
+    }
 
-    // 靜態資料
-    private final List<Position> positions;
     private final Map<String, Security> securityMap;
+    private final Map<String, Double> initialStockPrices;
     private final OptionPricingService pricingService;
+    private final SymbolTable symbols;
+
+    // 編譯後的帳本 (靜態參數 + 動態價格皆為原始型別陣列); 只有估值線程會替換 (volatile 供提交變更的線程讀取)
+    private volatile CompiledBook book;
+
+    // 發布用的列快取: 只有受影響的列 (與標的 Greeks) 會換成新的物件
+    private CalculatedPosition[] rows;
+    private Greeks[] underlyingGreeksRows;
 
-    // 動態資料
-    private final Map<String, Double> currentPrices = new ConcurrentHashMap<>();
-    private final Map<String, Double> currentStockPrices;
+    // 自上次發布後價格有變動的標的 (發布時才轉換成列)
+    private boolean[] dirtyUnderlyings;
+    private int[] dirtyList;
+    private int dirtyCount;
 
     private PortfolioResultListener resultListener;
-    private final AtomicLong updateCounter = new AtomicLong(0); // 原子計數器
+    private volatile LatencyMetrics metrics;
+    private final AtomicLong updateCounter = new AtomicLong(0); // 原子計數器 (連續序號, 訂閱者據此偵測遺漏)
+    private volatile long ticksApplied; // 已套用的報價數 (只有估值線程寫入)
+
+    // --- 發布模式 ------------------------------------------------------------------------------------------------------
+    private volatile UpdateMode updateMode = UpdateMode.SNAPSHOT;
+    private volatile int snapshotInterval = 1;
+    private volatile boolean snapshotRequested = true; // 第一次發布一定是完整快照
+    private int updatesSinceSnapshot;
+
+    // --- 快速模式設定 (替換帳本時套用到新帳本) ---------------------------------------------------------------------------
+    private volatile boolean fastMode;
+    private volatile double fastModeMaxMove;
+    private volatile long fastModeMaxStalenessNanos;
+    private volatile boolean interpolationMode;
+    private volatile double interpolationBandWidth;
+    private volatile double interpolationMaxError;
+    private volatile ContractPriceTable contractPrices;
+    private final Map<String, Double> volatilityOverrides = new HashMap<>(); // 已套用的波動率 (估值線程專用, 替換帳本時套用到新帳本)
+
+    // --- 持倉變更 ------------------------------------------------------------------------------------------------------
+    // 提交端 (changeLock 保護): 套用所有已提交變更後的持倉, 與其代碼 -> 第一筆持倉索引
+    private final Object changeLock = new Object();
+    private final List<Position> submittedPositions;
+    private final Map<String, Integer> submittedIndexes = new HashMap<>();
+    private final Map<String, Double> submittedVolatilities = new HashMap<>();
+    private long submittedVersion;
+    // 估值線程端: 依提交順序套用
+    private final ConcurrentLinkedQueue<PositionChange> pendingChanges = new ConcurrentLinkedQueue<>();
+    private volatile long appliedVersion;
 
     public PortfolioValuationService(List<Position> positions,
                                      Map<String, Security> securityMap,
                                      Map<String, Double> initialStockPrices,
                                      OptionPricingService pricingService) {
-        this.positions = positions;
+        this(positions, securityMap, initialStockPrices, pricingService, new SymbolTable());
+    }
+
+    /**
+     * @param symbols 代碼符號表 (通常與 SecurityDefinitionService / MarketDataPublisher 共用同一個)
+     */
+    public PortfolioValuationService(List<Position> positions,
+                                     Map<String, Security> securityMap,
+                                     Map<String, Double> initialStockPrices,
+                                     OptionPricingService pricingService,
+                                     SymbolTable symbols) {
+        this.symbols = symbols;
         this.securityMap = securityMap;
+        this.initialStockPrices = initialStockPrices;
         this.pricingService = pricingService;
-        this.currentStockPrices = new ConcurrentHashMap<>(initialStockPrices);
+        this.submittedPositions = new ArrayList<>(positions);
+        indexSubmittedPositions();
+        installBook(new CompiledBook(positions, securityMap, initialStockPrices, pricingService, symbols));
+    }
 
-        for (Position p : positions) {
-            String ticker = p.getSymbol();
-            currentPrices.put(ticker, currentStockPrices.getOrDefault(ticker, 0.0));
+    // 替換帳本並重建所有發布用的列 (只在建構時與估值線程上呼叫)
+    private void installBook(CompiledBook next) {
+        this.book = next;
+        this.rows = new CalculatedPosition[next.size()];
+        this.underlyingGreeksRows = new Greeks[next.underlyingCount()];
+        this.dirtyUnderlyings = new boolean[next.underlyingCount()];
+        this.dirtyList = new int[next.underlyingCount()];
+        this.dirtyCount = 0;
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = toCalculatedPosition(i);
+        }
+        for (int u = 0; u < underlyingGreeksRows.length; u++) {
+            underlyingGreeksRows[u] = next.getUnderlyingGreeks(u);
         }
     }
 
@@ -47,63 +130,469 @@ public class PortfolioValuationService implements MarketDataListener {
         this.resultListener = listener;
     }
 
+    /**
+     * 記錄估值延遲與報價 / 更新數 (null = 不記錄)
+     */
+    public void setMetrics(LatencyMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 啟用快速模式: 標的小幅變動時以快取的 Greeks 做二階泰勒展開, 不重新執行 Black-Scholes
+     * @param maxRelativeMove    標的相對於上次完整定價的變動比例上限 (e.g., 0.005 = 0.5%)
+     * @param maxStalenessMillis 快取的最長有效時間 (毫秒)
+     */
+    public void enableFastMode(double maxRelativeMove, long maxStalenessMillis) {
+        this.fastModeMaxMove = maxRelativeMove;
+        this.fastModeMaxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+        this.fastMode = true;
+        this.interpolationMode = false;
+        book.enableFastMode(fastModeMaxMove, fastModeMaxStalenessNanos);
+    }
+
+    public void disableFastMode() {
+        this.fastMode = false;
+        book.disableFastMode();
+    }
+
+    /**
+     * 啟用插值模式: 每個標的在背景建立價格對標的價格的 Chebyshev 插值表, 範圍內的報價以多項式求值, 不重新執行 Black-Scholes
+     * (會停用快速模式)
+     * @param bandWidth 插值範圍: 建表時標的價格的 ±比例 (e.g., 0.05 = ±5%), 超出時完整定價並重新建表
+     * @param maxError  每單位合約的價格誤差上限 (e.g., 1e-6)
+     */
+    public void enableInterpolationMode(double bandWidth, double maxError) {
+        this.interpolationBandWidth = bandWidth;
+        this.interpolationMaxError = maxError;
+        this.interpolationMode = true;
+        this.fastMode = false;
+        book.enableInterpolationMode(bandWidth, maxError);
+    }
+
+    public void disableInterpolationMode() {
+        this.interpolationMode = false;
+        book.disableInterpolationMode();
+    }
+
+    /**
+     * 與其他投資組合共用合約價格: 完整重新定價時從共用表取得價格與 Greeks, 同一合約每個標的價格只定價一次
+     * (應在開始接收 tick 前呼叫; null = 停用)
+     * @throws IllegalArgumentException 表的 N(x) 實作與本服務的 OptionPricingService 不同 (不變更目前的設定)
+     */
+    public void setContractPriceTable(ContractPriceTable table) {
+        book.shareContractPrices(table); // 先檢查; 之後替換的帳本使用相同的 OptionPricingService, 不會再失敗
+        this.contractPrices = table;
+    }
+
+    /**
+     * 設定發布模式
+     * @param mode             SNAPSHOT 或 DELTA
+     * @param snapshotInterval DELTA 模式下每幾次發布送出一次完整快照 (讓晚加入或遺漏更新的訂閱者重新同步)
+     */
+    public void setUpdateMode(UpdateMode mode, int snapshotInterval) {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("snapshotInterval must be >= 1: " + snapshotInterval);
+        }
+        this.snapshotInterval = snapshotInterval;
+        this.updateMode = mode;
+        this.snapshotRequested = true;
+    }
+
+    /**
+     * 要求下一次發布為完整快照 (e.g., 新訂閱者加入時), 可由任何線程呼叫
+     */
+    public void requestSnapshot() {
+        this.snapshotRequested = true;
+    }
+
+    /**
+     * @return 此投資組合依賴的標的代碼 (股票本身與選擇權的標的)
+     */
+    public List<String> getUnderlyingTickers() {
+        List<String> tickers = new ArrayList<>(book.underlyingCount());
+        for (int u = 0; u < book.underlyingCount(); u++) {
+            tickers.add(book.getUnderlyingTicker(u));
+        }
+        return tickers;
+    }
+
+    /**
+     * 套用一批日內成交 (可由任何線程呼叫)
+     * 同一代碼的數量相加; 帳本中沒有的代碼新增一筆持倉, 已有多筆時加到第一筆
+     * @return 包含這批成交的持倉版本 (見 PortfolioUpdate.getPositionsVersion())
+     */
+    public long applyTrades(List<Trade> trades) {
+        synchronized (changeLock) {
+            Map<Integer, Long> quantities = new LinkedHashMap<>(); // 持倉索引 -> 新數量
+            boolean structural = false;
+            for (Trade trade : trades) {
+                Integer index = submittedIndexes.get(trade.getSymbol());
+                if (index == null) {
+                    index = submittedPositions.size();
+                    submittedIndexes.put(trade.getSymbol(), index);
+                    submittedPositions.add(new Position(trade.getSymbol(), 0L));
+                    structural = true;
+                }
+                long quantity = submittedPositions.get(index).getPositionSize() + trade.getQuantity();
+                submittedPositions.set(index, new Position(trade.getSymbol(), quantity));
+                quantities.put(index, quantity);
+            }
+            return submitChange(structural, quantities);
+        }
+    }
+
+    /**
+     * 以新的持倉清單 (e.g., 重新讀取的持倉檔案) 取代目前的持倉 (可由任何線程呼叫)
+     * 代碼與順序都不變時只更新數量, 否則編譯新的帳本後替換
+     * @return 包含這次重新載入的持倉版本
+     */
+    public long reloadPositions(List<Position> positions) {
+        synchronized (changeLock) {
+            boolean structural = positions.size() != submittedPositions.size();
+            Map<Integer, Long> quantities = new LinkedHashMap<>();
+            for (int i = 0; i < positions.size() && !structural; i++) {
+                Position next = positions.get(i);
+                Position current = submittedPositions.get(i);
+                if (!next.getSymbol().equals(current.getSymbol())) {
+                    structural = true;
+                } else if (next.getPositionSize() != current.getPositionSize()) {
+                    quantities.put(i, next.getPositionSize());
+                }
+            }
+            submittedPositions.clear();
+            submittedPositions.addAll(positions);
+            if (structural) {
+                indexSubmittedPositions();
+            }
+            return submitChange(structural, quantities);
+        }
+    }
+
+    /**
+     * 更新選擇權合約的波動率 (e.g., ImpliedVolatilityService 的校準結果), 可由任何線程呼叫
+     * 與持倉變更排在同一個佇列, 由估值線程在兩個 tick 之間套用: 受影響的標的以目前價格重新定價, 之後替換的帳本也沿用這些波動率
+     * 與其他投資組合共用合約價格時, 應先更新共用表 (見 MultiPortfolioValuationEngine.updateVolatilities)
+     * @param sigmas 合約代碼 -> 波動率
+     * @return 包含這次更新的持倉版本 (見 PortfolioUpdate.getPositionsVersion())
+     */
+    public long updateVolatilities(Map<String, Double> sigmas) {
+        synchronized (changeLock) {
+            submittedVolatilities.putAll(sigmas);
+            PositionChange change = new PositionChange(++submittedVersion);
+            change.volatilities = new HashMap<>(sigmas);
+            pendingChanges.add(change);
+            return change.version;
+        }
+    }
+
+    // 提交者線程 (持有 changeLock): 排入一個變更; 結構變更在此編譯新帳本, 不佔用估值線程
+    private long submitChange(boolean structural, Map<Integer, Long> quantities) {
+        PositionChange change = new PositionChange(++submittedVersion);
+        if (structural) {
+            change.book = new CompiledBook(submittedPositions, securityMap, estimateCurrentPrices(), pricingService, symbols);
+        } else {
+            change.indexes = new int[quantities.size()];
+            change.quantities = new long[quantities.size()];
+            int n = 0;
+            for (Map.Entry<Integer, Long> entry : quantities.entrySet()) {
+                change.indexes[n] = entry.getKey();
+                change.quantities[n++] = entry.getValue();
+            }
+        }
+        pendingChanges.add(change);
+        return change.version;
+    }
+
+    /**
+     * 情境分析用 (見 ScenarioGridEngine): 複製已提交的持倉與波動率覆寫, 可由任何線程呼叫
+     * @return 這些持倉的版本 (版本相同時內容也相同)
+     */
+    long copySubmittedPositions(List<Position> positions, Map<String, Double> volatilities) {
+        synchronized (changeLock) {
+            positions.addAll(submittedPositions);
+            volatilities.putAll(submittedVolatilities);
+            return submittedVersion;
+        }
+    }
+
+    // 新帳本 / 情境分析的標的價格: 初始價格 + 目前帳本的標的價格
+    // 這裡讀取的是估值線程正在更新的陣列, 只是估計值; 替換時估值線程會再同步一次 (見 swapBook)
+    Map<String, Double> estimateCurrentPrices() {
+        Map<String, Double> prices = new HashMap<>(initialStockPrices);
+        CompiledBook current = book;
+        for (int u = 0; u < current.underlyingCount(); u++) {
+            if (current.isUnderlyingPriced(u)) {
+                prices.put(current.getUnderlyingTicker(u), current.getUnderlyingPrice(u));
+            }
+        }
+        return prices;
+    }
+
+    private void indexSubmittedPositions() {
+        submittedIndexes.clear();
+        for (int i = 0; i < submittedPositions.size(); i++) {
+            submittedIndexes.putIfAbsent(submittedPositions.get(i).getSymbol(), i);
+        }
+    }
+
+    /**
+     * @return 本服務使用的代碼符號表 (以 id 送入報價時使用)
+     */
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * @return 估值線程已套用的持倉版本 (0 = 建構時的持倉)
+     */
+    public long getAppliedPositionsVersion() {
+        return appliedVersion;
+    }
+
+    /**
+     * @return 已套用的報價數 (批次中的每一筆都計入)
+     */
+    public long getTicksApplied() {
+        return ticksApplied;
+    }
+
+    /**
+     * @return 已發布的 PortfolioUpdate 數 (沒有結果監聽器時不發布)
+     */
+    public long getUpdatesPublished() {
+        return updateCounter.get();
+    }
+
     @Override
     public void onStockPriceUpdate(String ticker, double newPrice) {
-        currentStockPrices.put(ticker, newPrice);
-        recalculatePortfolio(ticker, newPrice);
-    }
-
-    private void recalculatePortfolio(String updatedTicker, double updatedPrice) {
-        double totalNAV = 0.0;
-        List<CalculatedPosition> calculatedPositions = new ArrayList<>();
-
-        // --- 1. 更新價格並計算價值 --------------------------------------------------------------------------------------
-        for (Position pos : positions) {
-            String ticker = pos.getSymbol();
-            Security sec = securityMap.get(ticker);
-            double newPrice = 0.0;
-            String typeStr = "UNKNOWN";
-
-            if (sec instanceof Stock) {
-                typeStr = "STOCK";
-                newPrice = currentStockPrices.getOrDefault(ticker, 0.0);
-            } else if (sec instanceof EuropeanCallOption) {
-                typeStr = "CALL";
-                EuropeanCallOption call = (EuropeanCallOption) sec;
-                double S = currentStockPrices.get(call.getUnderlyingTicker());
-                newPrice = pricingService.calculateCallPrice(
-                        S, call.getStrikePrice(), call.getSigma(), call.getTimeToMaturity()
-                );
-            } else if (sec instanceof EuropeanPutOption) {
-                typeStr = "PUT";
-                EuropeanPutOption put = (EuropeanPutOption) sec;
-                double S = currentStockPrices.get(put.getUnderlyingTicker());
-                newPrice = pricingService.calculatePutPrice(
-                        S, put.getStrikePrice(), put.getSigma(), put.getTimeToMaturity()
-                );
+        long startNanos = System.nanoTime();
+        ticksApplied++;
+        applyPendingChanges();
+        applyPrice(ticker, newPrice);
+        publish(ticker, newPrice, startNanos, startNanos, 1);
+    }
+
+    /**
+     * 整批套用價格後只發布一次; PortfolioUpdate 的觸發代碼/價格為本批最後一筆
+     */
+    @Override
+    public void onStockPriceBatch(String[] tickers, double[] prices, int count) {
+        if (count == 0) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        ticksApplied += count;
+        applyPendingChanges();
+        for (int i = 0; i < count; i++) {
+            applyPrice(tickers[i], prices[i]);
+        }
+        publish(tickers[count - 1], prices[count - 1], startNanos, startNanos, count);
+    }
+
+    @Override
+    public void onStockPriceUpdate(int symbolId, double newPrice) {
+        onStockPriceUpdate(symbolId, newPrice, System.nanoTime());
+    }
+
+    @Override
+    public void onStockPriceUpdate(int symbolId, double newPrice, long tickNanos) {
+        long startNanos = System.nanoTime();
+        ticksApplied++;
+        applyPendingChanges();
+        applyPrice(book.underlyingId(symbolId), newPrice);
+        publish(symbols.symbol(symbolId), newPrice, tickNanos, startNanos, 1);
+    }
+
+    /**
+     * 整批套用價格 (以代碼 id) 後只發布一次
+     */
+    @Override
+    public void onStockPriceBatch(int[] symbolIds, double[] prices, int count) {
+        onStockPriceBatch(symbolIds, prices, count, System.nanoTime());
+    }
+
+    @Override
+    public void onStockPriceBatch(int[] symbolIds, double[] prices, int count, long tickNanos) {
+        if (count == 0) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        ticksApplied += count;
+        applyPendingChanges();
+        CompiledBook current = book;
+        for (int i = 0; i < count; i++) {
+            applyPrice(current.underlyingId(symbolIds[i]), prices[i]);
+        }
+        publish(symbols.symbol(symbolIds[count - 1]), prices[count - 1], tickNanos, startNanos, count);
+    }
+
+    // --- 0. 在 tick 之間套用已提交的持倉變更 (估值線程) ----------------------------------------------------------------
+    private void applyPendingChanges() {
+        PositionChange change;
+        while ((change = pendingChanges.poll()) != null) {
+            if (change.book != null) {
+                swapBook(change.book);
+            } else if (change.volatilities != null) {
+                volatilityOverrides.putAll(change.volatilities);
+                for (int u : book.updateVolatilities(change.volatilities)) {
+                    for (int i : book.getPositionsForUnderlying(u)) {
+                        markDirty(i);
+                    }
+                }
+            } else {
+                for (int n = 0; n < change.indexes.length; n++) {
+                    int i = change.indexes[n];
+                    book.setQuantity(i, change.quantities[n]);
+                    markDirty(i);
+                }
+            }
+            appliedVersion = change.version;
+        }
+    }
+
+    private void markDirty(int i) {
+        int u = book.getUnderlyingOf(i);
+        if (u < 0) {
+            rows[i] = toCalculatedPosition(i); // 沒有標的的持倉不在增量更新的範圍內, 下一次改發完整快照
+            snapshotRequested = true;
+        } else if (!dirtyUnderlyings[u]) {
+            dirtyUnderlyings[u] = true;
+            dirtyList[dirtyCount++] = u;
+        }
+    }
+
+    // 新帳本以提交時估計的價格編譯; 只有之後價格又變動的標的需要重新計算
+    private void swapBook(CompiledBook next) {
+        CompiledBook current = book;
+        next.shareContractPrices(contractPrices);
+        if (!volatilityOverrides.isEmpty()) {
+            next.updateVolatilities(volatilityOverrides);
+        }
+        for (int u = 0; u < next.underlyingCount(); u++) {
+            int old = current.underlyingId(next.getUnderlyingTicker(u));
+            if (old >= 0 && current.isUnderlyingPriced(old)) {
+                double price = current.getUnderlyingPrice(old);
+                if (!next.isUnderlyingPriced(u) || next.getUnderlyingPrice(u) != price) {
+                    next.updateUnderlyingPrice(u, price);
+                }
             }
+        }
+        if (fastMode) {
+            next.enableFastMode(fastModeMaxMove, fastModeMaxStalenessNanos);
+        }
+        if (interpolationMode) {
+            next.enableInterpolationMode(interpolationBandWidth, interpolationMaxError);
+        }
+        installBook(next);
+        snapshotRequested = true; // 持倉索引已改變, 訂閱者需要完整快照
+    }
 
-            currentPrices.put(ticker, newPrice);
+    // --- 1. 更新價格並計算價值 (只計算受此標的影響的持倉) -----------------------------------------------------------------
+    private void applyPrice(String ticker, double newPrice) {
+        applyPrice(book.underlyingId(ticker), newPrice);
+    }
+
+    private void applyPrice(int underlyingId, double newPrice) {
+        if (underlyingId < 0) {
+            return;
+        }
+        book.updateUnderlyingPrice(underlyingId, newPrice);
+        if (!dirtyUnderlyings[underlyingId]) {
+            dirtyUnderlyings[underlyingId] = true;
+            dirtyList[dirtyCount++] = underlyingId;
+        }
+    }
 
-            long qty = pos.getPositionSize();
-            double value = newPrice * qty;
-            totalNAV += value;
+    // --- 2. 發布結果給訂閱者 --------------------------------------------------------------------------------------------
+    // tickNanos: 本次最早報價的建立時間; startNanos: 估值開始; 估值結束時間在更新內容準備好後取得
+    private void publish(String triggerTicker, double triggerPrice, long tickNanos, long startNanos, int tickCount) {
+        PortfolioResultListener listener = this.resultListener;
+        if (listener == null) {
+            return; // 變動的標的保留到下次有訂閱者時再轉換
+        }
 
-            // --- 傳入 typeStr ---
-            calculatedPositions.add(new CalculatedPosition(ticker, typeStr, newPrice, qty, value));
+        boolean snapshot = isSnapshotDue();
+        List<CalculatedPosition> positions;
+        Map<String, Greeks> greeksByUnderlying = new HashMap<>();
+        if (snapshot) {
+            book.resumTotals(); // 快照的 NAV 與完整重新計算一致 (差額累加的漂移歸零)
+            refreshRows(null, null);
+            positions = new ArrayList<>(Arrays.asList(rows));
+            for (int u = 0; u < underlyingGreeksRows.length; u++) {
+                greeksByUnderlying.put(book.getUnderlyingTicker(u), underlyingGreeksRows[u]);
+            }
+        } else {
+            positions = new ArrayList<>();
+            refreshRows(positions, greeksByUnderlying);
         }
 
-        // --- 2. 發布結果給訂閱者 ----------------------------------------------------------------------------------------
-        if (resultListener != null) {
-            long currentUpdateNum = updateCounter.incrementAndGet();
-            PortfolioUpdate update = new PortfolioUpdate(
-                    currentUpdateNum,
-                    updatedTicker,
-                    updatedPrice,
-                    calculatedPositions,
-                    totalNAV
-            );
-            resultListener.onPortfolioUpdate(update);
+        long currentUpdateNum = updateCounter.incrementAndGet();
+        long endNanos = System.nanoTime();
+        PortfolioUpdate.Builder builder = PortfolioUpdate.builder(currentUpdateNum, positions)
+                .trigger(triggerTicker, triggerPrice)
+                .totalNAV(book.getTotalNAV())
+                .greeks(greeksByUnderlying, book.getPortfolioGreeks())
+                .approximationError(book.getTotalApproximationError())
+                .positionsVersion(appliedVersion)
+                .timing(tickNanos, startNanos, endNanos);
+        if (!snapshot) {
+            builder.delta(rows.length);
+        }
+        PortfolioUpdate update = builder.build();
+        LatencyMetrics currentMetrics = this.metrics;
+        if (currentMetrics != null) {
+            currentMetrics.recordValuation(tickNanos, startNanos, endNanos, tickCount);
+        }
+        listener.onPortfolioUpdate(update);
+    }
+
+    private boolean isSnapshotDue() {
+        if (updateMode == UpdateMode.SNAPSHOT) {
+            return true;
+        }
+        if (snapshotRequested || ++updatesSinceSnapshot >= snapshotInterval) {
+            snapshotRequested = false;
+            updatesSinceSnapshot = 0;
+            return true;
+        }
+        return false;
+    }
+
+    // 將帳本中的數值轉成發布用的 CalculatedPosition / Greeks (只轉換變動標的下的列)
+    // changedRows / changedGreeks 不為 null 時同時收集變動的列 (增量更新用)
+    private void refreshRows(List<CalculatedPosition> changedRows, Map<String, Greeks> changedGreeks) {
+        for (int d = 0; d < dirtyCount; d++) {
+            int u = dirtyList[d];
+            for (int i : book.getPositionsForUnderlying(u)) {
+                rows[i] = toCalculatedPosition(i);
+                if (changedRows != null) {
+                    changedRows.add(rows[i]);
+                }
+            }
+            underlyingGreeksRows[u] = book.getUnderlyingGreeks(u);
+            if (changedGreeks != null) {
+                changedGreeks.put(book.getUnderlyingTicker(u), underlyingGreeksRows[u]);
+            }
+            dirtyUnderlyings[u] = false;
+        }
+        dirtyCount = 0;
+    }
+
+    private CalculatedPosition toCalculatedPosition(int i) {
+        return new CalculatedPosition(book.getSymbol(i), book.getTypeName(i), book.getPrice(i),
+                book.getQuantity(i), book.getValue(i), book.getGreeks(i), i);
+    }
+
+    // 一次持倉變更: 結構變更帶新帳本, 波動率更新帶 (代碼 -> 波動率), 否則為 (持倉索引, 新數量)
+    private static final class PositionChange {
+        final long version;
+        CompiledBook book;
+        Map<String, Double> volatilities;
+        int[] indexes;
+        long[] quantities;
+
+        PositionChange(long version) {
+            this.version = version;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,394 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.PositionTable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * "symbol,positionSize" (或多投資組合的 "portfolioId,symbol,positionSize") 持倉 CSV 的位元組層級解析器 (PositionLoader 專用)
+ * - 讀取 ByteBuffer (memory-mapped 或 heap) 的位元組, 不建立每行的 String / String[]
+ * - 代碼 (與投資組合代碼) 以自己的開放定址雜湊表對應成 id, 只有第一次出現的代碼才建立 String
+ * - 數量直接累加成 long (含溢位檢查)
+ * - 與舊版 (replaceAll("\\s+", "") + split(",")) 相同: 忽略所有空白, 空白行略過
+ *
+ * 一個 parser 只解析一個區塊 (chunk), 非執行緒安全; 平行解析時每個區塊各自一個 parser
+ */
+final class PositionCsvParser {
+
+    private static final int MAX_ERROR_CONTENT = 200;
+    private static final long MAX_QUANTITY_DIV_10 = Long.MAX_VALUE / 10; // 溢位檢查不在每個位數做除法
+
+    private final Dictionary symbolDictionary = new Dictionary();
+    private final Dictionary portfolioDictionary; // null = 單一投資組合的格式 (沒有 portfolioId 欄)
+    private final int expectedFields;
+    private final String fieldNames;
+
+    // --- 解析結果 -------------------------------------------------------------------------------------------------------
+    private int[] symbolIds;
+    private int[] portfolioIds;
+    private long[] quantities;
+    private int rowCount;
+    private long lineCount;
+    private final List<PositionTable.MalformedRow> malformedRows = new ArrayList<>(); // 行號為區塊內的相對行號 (從 1 開始)
+
+    private byte[] window = new byte[1 << 16];
+
+    // --- scanField 的結果 (一個欄位的非空白位元組範圍與雜湊) -------------------------------------------------------------
+    private int fieldStart;
+    private int fieldEnd;
+    private int fieldLength;
+    private int fieldHash;
+
+    PositionCsvParser(int estimatedRows) {
+        this(estimatedRows, false);
+    }
+
+    /**
+     * @param withPortfolio true = 每行的第一欄為投資組合代碼 ("portfolioId,symbol,positionSize")
+     */
+    PositionCsvParser(int estimatedRows, boolean withPortfolio) {
+        this.symbolIds = new int[Math.max(16, estimatedRows)];
+        this.quantities = new long[symbolIds.length];
+        this.portfolioDictionary = withPortfolio ? new Dictionary() : null;
+        this.portfolioIds = withPortfolio ? new int[symbolIds.length] : null;
+        this.expectedFields = withPortfolio ? 3 : 2;
+        this.fieldNames = withPortfolio ? "portfolioId,symbol,positionSize" : "symbol,positionSize";
+    }
+
+    /**
+     * 解析 buffer 中 [start, end) 的所有行
+     * 以大塊複製 (bulk get) 搬到重複使用的 byte[] 視窗後再解析; 逐位元組讀取 direct buffer 每次都有邊界與 scope 檢查, 慢數倍
+     */
+    void parse(ByteBuffer buffer, int start, int end) {
+        ByteBuffer source = buffer.duplicate();
+        source.limit(end);
+        source.position(start);
+        int carry = 0; // 上一個視窗結尾不完整的行, 已搬到視窗開頭
+        while (true) {
+            if (carry == window.length) {
+                window = Arrays.copyOf(window, window.length * 2); // 單行比視窗還長
+            }
+            int read = Math.min(window.length - carry, source.remaining());
+            source.get(window, carry, read);
+            int limit = carry + read;
+            boolean last = !source.hasRemaining();
+
+            int lineStart = 0;
+            int next;
+            while (lineStart < limit && (next = parseLine(lineStart, limit, last)) >= 0) {
+                lineStart = next;
+            }
+            if (last) {
+                return;
+            }
+            carry = limit - lineStart;
+            System.arraycopy(window, lineStart, window, 0, carry);
+        }
+    }
+
+    /**
+     * 解析從 lineStart 開始的一行 (單次掃描)
+     * @return 下一行的起始位置; 視窗中沒有完整的一行 (且不是最後一個視窗) 時回傳 -1, 不記錄任何結果
+     */
+    private int parseLine(int lineStart, int limit, boolean last) {
+        byte[] line = window;
+        int pos = lineStart;
+        byte b = 0;
+        int fields = 1;
+
+        // --- 0. 投資組合代碼 (多投資組合格式): 到第一個逗號為止 (忽略空白) ---------------------------------------------
+        // 只記錄範圍與雜湊, 整行都通過檢查後才登錄到字典 (格式錯誤的列不會產生空的投資組合)
+        int portfolioStart = 0;
+        int portfolioEnd = 0;
+        int portfolioLength = 0;
+        int portfolioHash = 0;
+        if (portfolioDictionary != null) {
+            pos = scanField(pos, limit);
+            if (pos == limit && !last) {
+                return -1;
+            }
+            if (pos == limit || line[pos] == '\n') {
+                lineCount++;
+                if (fieldLength > 0) { // 沒有逗號的空白行直接略過
+                    malformed(lineStart, pos, wrongFieldCount(fields));
+                }
+                return pos + 1;
+            }
+            portfolioStart = fieldStart;
+            portfolioEnd = fieldEnd;
+            portfolioLength = fieldLength;
+            portfolioHash = fieldHash;
+            pos++; // 跳過 ','
+            fields++;
+        }
+
+        // --- 1. 代碼: 到下一個逗號為止 (忽略空白) -----------------------------------------------------------------------
+        pos = scanField(pos, limit);
+        if (pos == limit && !last) {
+            return -1;
+        }
+        if (pos == limit || (b = line[pos]) == '\n') {
+            lineCount++;
+            if (fieldLength > 0 || fields > 1) { // 沒有逗號的空白行直接略過
+                malformed(lineStart, pos, wrongFieldCount(fields));
+            }
+            return pos + 1;
+        }
+        int symbolStart = fieldStart;
+        int symbolEnd = fieldEnd;
+        int symbolLength = fieldLength;
+        int hash = fieldHash;
+        pos++; // 跳過 ','
+        fields++;
+
+        // --- 2. 數量: 直接累加成 long ----------------------------------------------------------------------------------
+        long quantity = 0;
+        int digits = 0;
+        boolean negative = false;
+        boolean signSeen = false;
+        String error = null;
+        while (pos < limit && isWhitespace(b = line[pos])) {
+            pos++;
+        }
+        if (pos < limit && (b == '-' || b == '+')) {
+            signSeen = true;
+            negative = b == '-';
+            pos++;
+        }
+        // 常見情況: 連續的數字, 之後直接是換行
+        while (pos < limit && (b = line[pos]) >= '0' && b <= '9' && quantity < MAX_QUANTITY_DIV_10) {
+            quantity = quantity * 10 + (b - '0');
+            digits++;
+            pos++;
+        }
+        // 其餘情況 (空白, 多餘欄位, 非數字, 接近溢位) 逐字元檢查
+        while (pos < limit && (b = line[pos]) != '\n') {
+            if (b >= '0' && b <= '9') {
+                int digit = b - '0';
+                // 負數可到 -9223372036854775808 (與 Long.parseLong 相同): 累加後為 Long.MIN_VALUE, 取負數仍是自己;
+                // 之後再有位數 (quantity < 0) 即超出範圍
+                if (quantity < 0 || quantity >= MAX_QUANTITY_DIV_10 && (quantity > MAX_QUANTITY_DIV_10 || digit > (negative ? 8 : 7))) {
+                    error = "數量超出 long 範圍";
+                }
+                quantity = quantity * 10 + digit;
+                digits++;
+            } else if (b == ',') {
+                fields++;
+            } else if ((b == '-' || b == '+') && digits == 0 && !signSeen) {
+                signSeen = true;
+                negative = b == '-';
+            } else if (!isWhitespace(b)) {
+                error = "數量不是整數";
+            }
+            pos++;
+        }
+        if (pos == limit && !last) {
+            return -1;
+        }
+        lineCount++;
+
+        if (fields != expectedFields) {
+            error = wrongFieldCount(fields);
+        } else if (portfolioDictionary != null && portfolioLength == 0) {
+            error = "缺少投資組合代碼";
+        } else if (symbolLength == 0) {
+            error = "缺少代碼";
+        } else if (error == null && digits == 0) {
+            error = "缺少數量";
+        }
+        if (error != null) {
+            malformed(lineStart, pos, error);
+        } else {
+            int portfolioId = portfolioDictionary == null
+                    ? -1 : portfolioDictionary.id(line, portfolioHash, portfolioStart, portfolioEnd, portfolioLength);
+            addRow(portfolioId, symbolDictionary.id(line, hash, symbolStart, symbolEnd, symbolLength), negative ? -quantity : quantity);
+        }
+        return pos + 1;
+    }
+
+    // 掃描一個欄位到逗號 / 換行 / limit 為止 (忽略空白), 結果寫入 field*; 回傳停下的位置
+    private int scanField(int pos, int limit) {
+        byte[] line = window;
+        byte b;
+        int start = -1;
+        int end = 0;
+        int length = 0;
+        int hash = 0;
+        while (pos < limit && (b = line[pos]) != ',' && b != '\n') {
+            if (!isWhitespace(b)) {
+                if (start < 0) {
+                    start = pos;
+                }
+                end = pos + 1;
+                length++;
+                hash = 31 * hash + b;
+            }
+            pos++;
+        }
+        fieldStart = start;
+        fieldEnd = end;
+        fieldLength = length;
+        fieldHash = hash;
+        return pos;
+    }
+
+    private String wrongFieldCount(int fields) {
+        return "欄位數應為 " + expectedFields + " (" + fieldNames + "), 實際為 " + fields;
+    }
+
+    private void malformed(int lineStart, int lineEnd, String reason) {
+        int length = Math.min(lineEnd - lineStart, MAX_ERROR_CONTENT);
+        String content = new String(window, lineStart, length, StandardCharsets.UTF_8).trim();
+        malformedRows.add(new PositionTable.MalformedRow(lineCount, reason, content));
+    }
+
+    private void addRow(int portfolioId, int symbolId, long quantity) {
+        if (rowCount == symbolIds.length) {
+            int capacity = symbolIds.length + (symbolIds.length >> 1);
+            symbolIds = Arrays.copyOf(symbolIds, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            if (portfolioIds != null) {
+                portfolioIds = Arrays.copyOf(portfolioIds, capacity);
+            }
+        }
+        if (portfolioIds != null) {
+            portfolioIds[rowCount] = portfolioId;
+        }
+        symbolIds[rowCount] = symbolId;
+        quantities[rowCount] = quantity;
+        rowCount++;
+    }
+
+    // --- 代碼字典 (開放定址, 代碼位元組存在 arena 中) -------------------------------------------------------------------
+    private static final class Dictionary {
+        private byte[] arena = new byte[1 << 16];
+        private int arenaLength;
+        private int[] tableIds = new int[1 << 10]; // -1 代表空
+        private int[] tableHashes = new int[1 << 10];
+        private int[] offsets = new int[256];
+        private int[] lengths = new int[256];
+        private String[] strings = new String[256];
+        private int count;
+        private byte[] scratch = new byte[64];
+
+        Dictionary() {
+            Arrays.fill(tableIds, -1);
+        }
+
+        // 代碼通常在視窗中是連續的位元組, 直接比對; 中間夾有空白時才先壓縮到 scratch
+        int id(byte[] window, int hash, int start, int end, int length) {
+            byte[] bytes = window;
+            if (end - start != length) {
+                if (length > scratch.length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                int n = 0;
+                for (int i = start; i < end; i++) {
+                    if (!isWhitespace(window[i])) {
+                        scratch[n++] = window[i];
+                    }
+                }
+                bytes = scratch;
+                start = 0;
+            }
+
+            int mask = tableIds.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                int id = tableIds[slot];
+                if (id < 0) {
+                    return add(slot, hash, bytes, start, length);
+                }
+                if (tableHashes[slot] == hash && sameBytes(offsets[id], lengths[id], bytes, start, length)) {
+                    return id;
+                }
+            }
+        }
+
+        private boolean sameBytes(int offset, int length, byte[] bytes, int start, int bytesLength) {
+            if (length != bytesLength) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (arena[offset + i] != bytes[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int add(int slot, int hash, byte[] bytes, int start, int length) {
+            int id = count;
+            if (arenaLength + length > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaLength + length));
+            }
+            if (id == strings.length) {
+                offsets = Arrays.copyOf(offsets, id * 2);
+                lengths = Arrays.copyOf(lengths, id * 2);
+                strings = Arrays.copyOf(strings, id * 2);
+            }
+            System.arraycopy(bytes, start, arena, arenaLength, length);
+            offsets[id] = arenaLength;
+            lengths[id] = length;
+            arenaLength += length;
+            strings[id] = new String(bytes, start, length, StandardCharsets.UTF_8);
+            count++;
+
+            tableIds[slot] = id;
+            tableHashes[slot] = hash;
+            if (count * 2 > tableIds.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        private void rehash() {
+            int[] oldIds = tableIds;
+            int[] oldHashes = tableHashes;
+            tableIds = new int[oldIds.length * 2];
+            tableHashes = new int[oldIds.length * 2];
+            Arrays.fill(tableIds, -1);
+            int mask = tableIds.length - 1;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] >= 0) {
+                    int slot = mix(oldHashes[i]) & mask;
+                    while (tableIds[slot] >= 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    tableIds[slot] = oldIds[i];
+                    tableHashes[slot] = oldHashes[i];
+                }
+            }
+        }
+    }
+
+    // 31 倍多項式雜湊對相似代碼 (e.g., "SYN12-3-C") 的低位元分布很差, 以 murmur3 的 finalizer 打散以避免線性探測聚集
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        return hash ^ (hash >>> 16);
+    }
+
+    // 與 regex \\s 相同 (不含已當作行尾的 '\n'); 一般字元 (> ' ') 只需一次比較
+    private static boolean isWhitespace(byte b) {
+        return b <= ' ' && (b == ' ' || (b >= '\t' && b <= '\r' && b != '\n'));
+    }
+
+    // --- 結果 (由 PositionLoader 合併) ---------------------------------------------------------------------------------
+    String[] getSymbols() { return symbolDictionary.strings; }
+    int getSymbolCount() { return symbolDictionary.count; }
+    int[] getSymbolIds() { return symbolIds; }
+    boolean hasPortfolios() { return portfolioDictionary != null; }
+    String[] getPortfolios() { return portfolioDictionary.strings; }
+    int getPortfolioCount() { return portfolioDictionary.count; }
+    int[] getPortfolioIds() { return portfolioIds; }
+    long[] getQuantities() { return quantities; }
+    int getRowCount() { return rowCount; }
+    long getLineCount() { return lineCount; }
+    List<PositionTable.MalformedRow> getMalformedRows() { return malformedRows; }
+}
@@ -0,0 +1,131 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.PositionTable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 持倉檔案監看器
+ * - 定期檢查檔案的修改時間與大小, 有變動時重新載入並以 PortfolioValuationService.reloadPositions 套用, 不需停止引擎
+ * - 變動後的修改時間與大小必須連續 STABLE_POLLS 次檢查都相同才重新載入, 避免讀到寫入到一半的檔案;
+ *   讀取期間檔案又有變動時不套用, 等下一次穩定後再載入
+ * - 以輪詢而非 WatchService: 編輯器 "寫入暫存檔再改名" 與網路磁碟上的事件都不可靠
+ * - 載入失敗或檔案中有格式錯誤的列時保留目前的持倉 (不套用只含部分持倉的帳本), 下一次檔案變動再重試
+ *
+ * 寫入端應先寫到同一目錄下的暫存檔, 完成後再改名 (rename / Files.move ATOMIC_MOVE) 取代持倉檔案:
+ * 改名是原子的, 監看器只會看到舊檔或完整的新檔; 直接覆寫時只能靠上述的穩定檢查, 寫入中途停頓超過兩次檢查間隔仍可能讀到不完整的檔案
+ */
+public class PositionFileWatcher implements Runnable {
+
+    static final int STABLE_POLLS = 2;
+    private static final int MAX_REPORTED_ROWS = 20;
+
+    private final Path file;
+    private final int parallelism;
+    private final long pollMillis;
+    private final PositionLoader loader;
+    private final PortfolioValuationService valuationService;
+
+    // 已載入的版本 (修改時間與大小)
+    private long loadedModified;
+    private long loadedSize;
+    // 最近一次檢查看到的版本, 以及連續看到幾次
+    private long observedModified;
+    private long observedSize;
+    private int stablePolls;
+
+    /**
+     * @param file        持倉檔案 (啟動時已載入的版本不會重新套用)
+     * @param parallelism 重新載入時的平行解析區塊數
+     * @param pollMillis  檢查間隔 (毫秒)
+     */
+    public PositionFileWatcher(Path file, int parallelism, long pollMillis,
+                               PositionLoader loader, PortfolioValuationService valuationService) {
+        this.file = file;
+        this.parallelism = parallelism;
+        this.pollMillis = pollMillis;
+        this.loader = loader;
+        this.valuationService = valuationService;
+        if (readVersion()) { // 記錄目前的版本 (啟動時已載入)
+            loadedModified = observedModified;
+            loadedSize = observedSize;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // 保持中斷狀態
+                return;
+            }
+            if (changedAndStable()) {
+                reload();
+            }
+        }
+    }
+
+    // 與已載入的版本不同, 且連續 STABLE_POLLS 次檢查都看到同一個版本
+    private boolean changedAndStable() {
+        long modified = observedModified;
+        long size = observedSize;
+        if (!readVersion()) {
+            stablePolls = 0;
+            return false; // 檔案暫時不存在 (e.g., 正在被取代), 下次再檢查
+        }
+        if (observedModified == loadedModified && observedSize == loadedSize) {
+            stablePolls = 0;
+            return false;
+        }
+        stablePolls = observedModified == modified && observedSize == size ? stablePolls + 1 : 1;
+        return stablePolls >= STABLE_POLLS;
+    }
+
+    private boolean readVersion() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            observedModified = attributes.lastModifiedTime().toMillis();
+            observedSize = attributes.size();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void reload() {
+        long modified = observedModified;
+        long size = observedSize;
+        loadedModified = modified; // 失敗時不重試同一個版本
+        loadedSize = size;
+        stablePolls = 0;
+        try {
+            PositionTable table = loader.loadPositionTable(file, parallelism);
+            if (!readVersion() || observedModified != modified || observedSize != size) {
+                loadedModified = -1L; // 讀取期間檔案又有變動: 不套用, 等下一次穩定後再載入
+                loadedSize = -1L;
+                System.out.println("持倉檔案在讀取期間有變動, 等待穩定後重新載入: " + file);
+                return;
+            }
+            List<PositionTable.MalformedRow> malformedRows = table.getMalformedRows();
+            if (!malformedRows.isEmpty()) {
+                System.err.println("持倉檔案 " + file + " 有 " + malformedRows.size() + " 列格式錯誤, 保留目前的持倉:");
+                for (int i = 0; i < Math.min(MAX_REPORTED_ROWS, malformedRows.size()); i++) {
+                    System.err.println("  " + malformedRows.get(i));
+                }
+                return;
+            }
+            long version = valuationService.reloadPositions(table.toPositions());
+            System.out.println("持倉檔案已重新載入: " + table.size() + " 筆 (持倉版本 " + version + ")");
+        } catch (IOException e) {
+            System.err.println("重新載入持倉檔案失敗, 保留目前的持倉: " + file);
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,54 +1,313 @@
 package com.example.realtimevalsystem.service;
 
 import com.example.realtimevalsystem.model.Position;
+import com.example.realtimevalsystem.model.PositionTable;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * 持倉 CSV 載入器 (欄位: symbol,positionSize, 第一行為標頭)
+ * - loadPositions(fileName): 從 classpath 讀取 (小檔案)
+ * - loadPositionTable(path, parallelism): 從檔案路徑以 memory-mapped 方式讀取, 可將檔案切成多個區塊平行解析,
+ *   直接由位元組解析成代碼 id 與 long, 適合數百萬列的檔案
+ * - loadPortfolios / loadPortfolioTable: 多投資組合的檔案 (欄位: portfolioId,symbol,positionSize), 以相同的解析器讀取
+ * 格式錯誤的列不會中斷載入, 而是連同行號記錄在 PositionTable.getMalformedRows()
+ */
 public class PositionLoader {
 
+    private static final int MAX_CHUNK_BYTES = 1 << 30; // 單一 mapping 的上限 (MappedByteBuffer 以 int 定址)
+    private static final int BYTES_PER_ROW_ESTIMATE = 16;
+    private static final int MAX_REPORTED_ROWS = 20;
+
     /**
      * 從 classpath 讀取持倉 CSV 檔案
      * @param fileName 位於 'resources' 資料夾中的檔案名稱 (e.g., "positions.csv")
-     * @return Position 列表
+     * @return Position 列表 (格式錯誤的列會印出行號並略過)
      */
     public List<Position> loadPositions(String fileName) {
-        List<Position> positions = new ArrayList<>();
-        // 透過 ClassLoader 從 'resources' 資料夾讀取檔案
+        PositionTable table = loadResource(fileName, false);
+        return table == null ? new ArrayList<>() : table.toPositions(); // 找不到或讀取失敗時返回空列表
+    }
+
+    /**
+     * 從 classpath 讀取多投資組合持倉 CSV 檔案 (欄位: portfolioId,symbol,positionSize)
+     * @param fileName 位於 'resources' 資料夾中的檔案名稱
+     * @return 投資組合代碼 -> Position 列表 (依檔案中首次出現的順序; 格式錯誤的列會印出行號並略過)
+     */
+    public Map<String, List<Position>> loadPortfolios(String fileName) {
+        PositionTable table = loadResource(fileName, true);
+        return table == null ? new LinkedHashMap<>() : table.toPortfolios(); // 找不到或讀取失敗時返回空 Map
+    }
+
+    // 透過 ClassLoader 從 'resources' 資料夾讀取整個檔案後解析; 找不到或讀取失敗時回傳 null
+    private PositionTable loadResource(String fileName, boolean withPortfolio) {
         InputStream is = getClass().getClassLoader().getResourceAsStream(fileName);
 
         if (is == null) {
             System.err.println("錯誤：找不到檔案 " + fileName);
-            return positions; // 返回空列表
+            return null;
         }
 
-        try (InputStreamReader streamReader = new InputStreamReader(is, StandardCharsets.UTF_8);
-             BufferedReader reader = new BufferedReader(streamReader)) {
+        try (InputStream in = is) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) > 0) {
+                bytes.write(chunk, 0, read);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            int dataStart = lineEnd(buffer, 0); // 略過標頭行
+            PositionCsvParser parser = new PositionCsvParser(buffer.limit() / BYTES_PER_ROW_ESTIMATE, withPortfolio);
+            parser.parse(buffer, dataStart, buffer.limit());
+            PositionTable table = merge(Collections.singletonList(parser));
+            reportMalformedRows(fileName, table);
+            return table;
+        } catch (IOException e) {
+            System.err.println("讀取持倉檔案時發生錯誤: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-            String line;
-            // 讀取標頭行並丟棄
-            reader.readLine();
+    /**
+     * 從檔案路徑讀取持倉 (單線程)
+     */
+    public PositionTable loadPositionTable(Path file) throws IOException {
+        return loadPositionTable(file, 1);
+    }
+
+    /**
+     * 從檔案路徑以 memory-mapped 方式讀取持倉
+     * @param file        CSV 檔案
+     * @param parallelism 平行解析的線程數 (1 = 在呼叫者線程上解析); 檔案會在換行處切成區塊
+     * @return 欄位式的持倉內容, 列的順序與檔案相同
+     */
+    public PositionTable loadPositionTable(Path file, int parallelism) throws IOException {
+        return loadTable(file, parallelism, false);
+    }
 
-            // 讀取資料行
-            while ((line = reader.readLine()) != null) {
-                // 移除 " " 並用逗號分割
-                String[] parts = line.replaceAll("\\s+", "").split(",");
-                if (parts.length == 2) {
-                    String symbol = parts[0];
-                    long positionSize = Long.parseLong(parts[1]);
-                    positions.add(new Position(symbol, positionSize));
+    /**
+     * 從檔案路徑以 memory-mapped 方式讀取多投資組合持倉 (欄位: portfolioId,symbol,positionSize)
+     * @return 欄位式的持倉內容, 含每列的投資組合 id (PositionTable.toPortfolios())
+     */
+    public PositionTable loadPortfolioTable(Path file, int parallelism) throws IOException {
+        return loadTable(file, parallelism, true);
+    }
+
+    private PositionTable loadTable(Path file, int parallelism, boolean withPortfolio) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = nextLineStart(channel, 0); // 略過標頭行
+            long[] bounds = chunkBounds(channel, dataStart, size, parallelism);
+            int chunkCount = bounds.length - 1;
+
+            List<PositionCsvParser> parsers = new ArrayList<>(chunkCount);
+            if (parallelism <= 1 || chunkCount == 1) {
+                for (int c = 0; c < chunkCount; c++) {
+                    parsers.add(parseChunk(channel, bounds[c], bounds[c + 1], withPortfolio));
+                }
+            } else {
+                ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, chunkCount), runnable -> {
+                    Thread thread = new Thread(runnable);
+                    thread.setName("PositionLoader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                try {
+                    List<Future<PositionCsvParser>> futures = new ArrayList<>(chunkCount);
+                    for (int c = 0; c < chunkCount; c++) {
+                        long start = bounds[c];
+                        long end = bounds[c + 1];
+                        futures.add(executor.submit(() -> parseChunk(channel, start, end, withPortfolio)));
+                    }
+                    for (Future<PositionCsvParser> future : futures) {
+                        parsers.add(future.get());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // 保持中斷狀態
+                    throw new InterruptedIOException("載入持倉時被中斷: " + file);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                            : new IOException("解析持倉檔案失敗: " + file, e.getCause());
+                } finally {
+                    executor.shutdownNow();
                 }
             }
+            return merge(parsers);
+        }
+    }
 
-        } catch (Exception e) {
-            System.err.println("讀取持倉檔案時發生錯誤: " + e.getMessage());
-            e.printStackTrace();
+    /**
+     * 從檔案路徑讀取持倉並轉成 Position 列表 (格式錯誤的列會印出行號並略過)
+     */
+    public List<Position> loadPositions(Path file, int parallelism) throws IOException {
+        PositionTable table = loadPositionTable(file, parallelism);
+        reportMalformedRows(file.toString(), table);
+        return table.toPositions();
+    }
+
+    /**
+     * 從檔案路徑讀取多投資組合持倉 (格式錯誤的列會印出行號並略過)
+     * @return 投資組合代碼 -> Position 列表 (依檔案中首次出現的順序)
+     */
+    public Map<String, List<Position>> loadPortfolios(Path file, int parallelism) throws IOException {
+        PositionTable table = loadPortfolioTable(file, parallelism);
+        reportMalformedRows(file.toString(), table);
+        return table.toPortfolios();
+    }
+
+    /**
+     * 在 symbols 中為持倉檔的每個代碼指派 id (每個相異代碼只查找一次, 不是每列一次)
+     * @return 每一列的代碼 id (與 table 的列對應)
+     */
+    public int[] internSymbols(PositionTable table, SymbolTable symbols) {
+        int[] globalIds = new int[table.symbolCount()];
+        for (int id = 0; id < globalIds.length; id++) {
+            globalIds[id] = symbols.intern(table.getSymbolById(id));
+        }
+        int[] rowIds = new int[table.size()];
+        for (int row = 0; row < rowIds.length; row++) {
+            rowIds[row] = globalIds[table.getSymbolId(row)];
+        }
+        return rowIds;
+    }
+
+    // --- 區塊切分與解析 -------------------------------------------------------------------------------------------------
+    private static PositionCsvParser parseChunk(FileChannel channel, long start, long end, boolean withPortfolio) throws IOException {
+        int length = (int) (end - start);
+        PositionCsvParser parser = new PositionCsvParser(length / BYTES_PER_ROW_ESTIMATE, withPortfolio);
+        if (length > 0) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            parser.parse(buffer, 0, length);
+        }
+        return parser;
+    }
+
+    // 將 [dataStart, size) 切成約略等長的區塊, 邊界對齊到行首; 每個區塊不超過 MAX_CHUNK_BYTES
+    private static long[] chunkBounds(FileChannel channel, long dataStart, long size, int parallelism) throws IOException {
+        long dataSize = size - dataStart;
+        int chunkCount = (int) Math.max(Math.max(1, parallelism), (dataSize + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+        long[] bounds = new long[chunkCount + 1];
+        int count = 0;
+        bounds[count++] = dataStart;
+        for (int c = 1; c < chunkCount; c++) {
+            long bound = nextLineStart(channel, dataStart + dataSize * c / chunkCount);
+            if (bound > bounds[count - 1] && bound < size) {
+                bounds[count++] = bound;
+            }
+        }
+        bounds[count++] = size;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    // 回傳 from 之後 (含) 第一個 '\n' 的下一個位置; 沒有換行時回傳檔案大小
+    private static long nextLineStart(FileChannel channel, long from) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(8192);
+        long position = from;
+        while (true) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    private static int lineEnd(ByteBuffer buffer, int from) {
+        for (int i = from; i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return buffer.limit();
+    }
+
+    // 合併各區塊: 代碼 (與投資組合) 字典依首次出現順序合併, 區塊內的相對行號轉成檔案行號 (標頭為第 1 行)
+    private static PositionTable merge(List<PositionCsvParser> parsers) {
+        Map<String, Integer> globalIds = new LinkedHashMap<>();
+        Map<String, Integer> portfolioIds = new LinkedHashMap<>();
+        boolean withPortfolio = parsers.get(0).hasPortfolios();
+        int totalRows = 0;
+        for (PositionCsvParser parser : parsers) {
+            totalRows += parser.getRowCount();
+        }
+        int[] symbolIds = new int[totalRows];
+        int[] rowPortfolios = withPortfolio ? new int[totalRows] : null;
+        long[] quantities = new long[totalRows];
+        List<PositionTable.MalformedRow> malformedRows = new ArrayList<>();
+
+        int row = 0;
+        long lineBase = 1;
+        for (PositionCsvParser parser : parsers) {
+            int[] remap = remap(parser.getSymbols(), parser.getSymbolCount(), globalIds);
+            int[] localIds = parser.getSymbolIds();
+            System.arraycopy(parser.getQuantities(), 0, quantities, row, parser.getRowCount());
+            if (withPortfolio) {
+                int[] portfolioRemap = remap(parser.getPortfolios(), parser.getPortfolioCount(), portfolioIds);
+                int[] localPortfolios = parser.getPortfolioIds();
+                for (int i = 0; i < parser.getRowCount(); i++) {
+                    rowPortfolios[row + i] = portfolioRemap[localPortfolios[i]];
+                }
+            }
+            for (int i = 0; i < parser.getRowCount(); i++) {
+                symbolIds[row++] = remap[localIds[i]];
+            }
+            for (PositionTable.MalformedRow malformed : parser.getMalformedRows()) {
+                malformedRows.add(new PositionTable.MalformedRow(lineBase + malformed.getLineNumber(),
+                        malformed.getReason(), malformed.getContent()));
+            }
+            lineBase += parser.getLineCount();
         }
+        return new PositionTable(globalIds.keySet().toArray(new String[0]), symbolIds, quantities,
+                withPortfolio ? portfolioIds.keySet().toArray(new String[0]) : null, rowPortfolios, malformedRows);
+    }
 
-        return positions;
+    // 區塊的字典 id -> 全域 id (新的代碼依出現順序加入 globalIds)
+    private static int[] remap(String[] localStrings, int count, Map<String, Integer> globalIds) {
+        int[] remap = new int[count];
+        for (int i = 0; i < count; i++) {
+            Integer id = globalIds.get(localStrings[i]);
+            if (id == null) {
+                id = globalIds.size();
+                globalIds.put(localStrings[i], id);
+            }
+            remap[i] = id;
+        }
+        return remap;
+    }
+
+    private static void reportMalformedRows(String source, PositionTable table) {
+        List<PositionTable.MalformedRow> malformedRows = table.getMalformedRows();
+        if (malformedRows.isEmpty()) {
+            return;
+        }
+        System.err.println("持倉檔案 " + source + " 有 " + malformedRows.size() + " 列格式錯誤, 已略過:");
+        for (int i = 0; i < Math.min(MAX_REPORTED_ROWS, malformedRows.size()); i++) {
+            System.err.println("  " + malformedRows.get(i));
+        }
     }
-}
\ No newline at end of file
+}
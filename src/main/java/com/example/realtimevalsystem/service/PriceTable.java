@@ -0,0 +1,35 @@
+package com.example.realtimevalsystem.service;
+
+import java.util.Arrays;
+
+/**
+ * 以代碼 id (見 SymbolTable) 為索引的價格表, 底層為 double[] (取代 Map<String, Double>, 沒有雜湊與 boxing)
+ * 尚未有報價的 id 為 NaN; id 超出目前容量時自動擴充
+ * 非執行緒安全: 應只由單一線程寫入與讀取
+ */
+public class PriceTable {
+
+    private double[] prices;
+
+    public PriceTable(int capacity) {
+        this.prices = new double[Math.max(16, capacity)];
+        Arrays.fill(prices, Double.NaN);
+    }
+
+    public double get(int symbolId) {
+        return symbolId < prices.length ? prices[symbolId] : Double.NaN;
+    }
+
+    public boolean hasPrice(int symbolId) {
+        return !Double.isNaN(get(symbolId));
+    }
+
+    public void set(int symbolId, double price) {
+        if (symbolId >= prices.length) {
+            int oldLength = prices.length;
+            prices = Arrays.copyOf(prices, Math.max(oldLength * 2, symbolId + 1));
+            Arrays.fill(prices, oldLength, prices.length, Double.NaN);
+        }
+        prices[symbolId] = price;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.realtimevalsystem.service;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * 模擬用的均勻亂數串流 (非執行緒安全: 每個線程 / 每個模擬區塊各自一個串流, 以 split 取得)
+ * - SPLITTABLE:         java.util.SplittableRandom (SplitMix64), split 產生統計上獨立的串流
+ * - XOROSHIRO_128_PLUS_PLUS: xoroshiro128++, 128 位元狀態, 通過 BigCrush / PractRand; split 以 jump (前進 2^64 步) 切出互不重疊的子序列
+ * - XOROSHIRO_128_PLUS: xoroshiro128+, 比 ++ 略快, 最低幾個位元品質較差 (nextDouble 只用高 53 位元, 不受影響)
+ * - JDK:                java.util.Random (48 位元 LCG, 每次呼叫都是 AtomicLong CAS), 只為了與舊行為比較
+ * 同一演算法與種子, 以相同順序呼叫 split 得到的串流永遠相同 (模擬結果可重現)
+ */
+public interface RandomStream {
+
+    String SPLITTABLE = "splittable";
+    String XOROSHIRO_128_PLUS_PLUS = "xoroshiro128++";
+    String XOROSHIRO_128_PLUS = "xoroshiro128+";
+    String JDK = "jdk";
+
+    /**
+     * 64 個均勻分布的位元
+     */
+    long nextLong();
+
+    /**
+     * [0, 1) 的均勻分布 (取高 53 位元)
+     */
+    default double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * [0, bound) 的整數; 以乘法取代除法 (Lemire), bound 遠小於 2^32 時偏差可忽略
+     */
+    default int nextInt(int bound) {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * 切出一個新的獨立串流 (本串流也會前進); 交給另一個線程或模擬區塊使用
+     */
+    RandomStream split();
+
+    /**
+     * 依名稱建立串流 ("splittable", "xoroshiro128++", "xoroshiro128+", "jdk"), 供設定檔 / 系統參數使用
+     */
+    static RandomStream create(String algorithm, long seed) {
+        switch (algorithm) {
+            case SPLITTABLE:
+                return new Splittable(new SplittableRandom(seed));
+            case XOROSHIRO_128_PLUS_PLUS:
+                return new Xoroshiro128(seed, true);
+            case XOROSHIRO_128_PLUS:
+                return new Xoroshiro128(seed, false);
+            case JDK:
+                return new Jdk(new Random(seed));
+            default:
+                throw new IllegalArgumentException("未知的亂數演算法: " + algorithm);
+        }
+    }
+
+    final class Splittable implements RandomStream {
+        private final SplittableRandom random;
+
+        Splittable(SplittableRandom random) {
+            this.random = random;
+        }
+
+        @Override
+        public long nextLong() { return random.nextLong(); }
+
+        @Override
+        public double nextDouble() { return random.nextDouble(); }
+
+        @Override
+        public RandomStream split() { return new Splittable(random.split()); }
+    }
+
+    /**
+     * xoroshiro128++ / xoroshiro128+ (Blackman & Vigna, 2018)
+     * 狀態以 SplitMix64 展開種子 (避免全為 0 與相近種子的相關性)
+     */
+    final class Xoroshiro128 implements RandomStream {
+        // 前進 2^64 步的多項式 (依各自的狀態轉移常數, 已以 GF(2) 矩陣的 2^64 次方驗證)
+        private static final long[] JUMP_PLUS_PLUS = {0x2bd7a6a6e99c2ddcL, 0x0992ccaf6a6fca05L};
+        private static final long[] JUMP_PLUS = {0xdf900294d8f554a5L, 0x170865df4b3201fcL};
+
+        private final boolean plusPlus;
+        private long s0;
+        private long s1;
+
+        Xoroshiro128(long seed, boolean plusPlus) {
+            this.plusPlus = plusPlus;
+            long x = seed;
+            this.s0 = mix64(x += 0x9E3779B97F4A7C15L);
+            this.s1 = mix64(x + 0x9E3779B97F4A7C15L);
+        }
+
+        private Xoroshiro128(long s0, long s1, boolean plusPlus) {
+            this.s0 = s0;
+            this.s1 = s1;
+            this.plusPlus = plusPlus;
+        }
+
+        @Override
+        public long nextLong() {
+            long x0 = s0;
+            long x1 = s1;
+            long result = plusPlus ? Long.rotateLeft(x0 + x1, 17) + x0 : x0 + x1;
+            x1 ^= x0;
+            if (plusPlus) {
+                s0 = Long.rotateLeft(x0, 49) ^ x1 ^ (x1 << 21);
+                s1 = Long.rotateLeft(x1, 28);
+            } else {
+                s0 = Long.rotateLeft(x0, 24) ^ x1 ^ (x1 << 16);
+                s1 = Long.rotateLeft(x1, 37);
+            }
+            return result;
+        }
+
+        /**
+         * 子串流從目前狀態開始, 本串流前進 2^64 步; 兩者在 2^64 個輸出內不會重疊
+         */
+        @Override
+        public RandomStream split() {
+            Xoroshiro128 child = new Xoroshiro128(s0, s1, plusPlus);
+            jump();
+            return child;
+        }
+
+        private void jump() {
+            long t0 = 0;
+            long t1 = 0;
+            for (long polynomial : plusPlus ? JUMP_PLUS_PLUS : JUMP_PLUS) {
+                for (int bit = 0; bit < 64; bit++) {
+                    if ((polynomial & (1L << bit)) != 0) {
+                        t0 ^= s0;
+                        t1 ^= s1;
+                    }
+                    nextLong();
+                }
+            }
+            s0 = t0;
+            s1 = t1;
+        }
+
+        // SplitMix64 的 finalizer
+        private static long mix64(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    final class Jdk implements RandomStream {
+        private final Random random;
+
+        Jdk(Random random) {
+            this.random = random;
+        }
+
+        @Override
+        public long nextLong() { return random.nextLong(); }
+
+        @Override
+        public double nextDouble() { return random.nextDouble(); }
+
+        @Override
+        public int nextInt(int bound) { return random.nextInt(bound); }
+
+        @Override
+        public RandomStream split() { return new Jdk(new Random(random.nextLong())); }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.realtimevalsystem.service;
+
+import java.util.function.Supplier;
+
+/**
+ * 單一生產者的預先配置 ring buffer (Disruptor 風格)
+ * - 事件物件在建構時全部配置完畢, 之後只覆寫欄位, 不產生垃圾
+ * - 生產者: next() 取得序號 -> get(seq) 填入事件 -> publish(seq)
+ * - 消費者以 EventProcessor 讀取, 並透過 gating sequence 告訴生產者哪些位置可以覆寫
+ * - next()/publish() 只能由同一個線程呼叫
+ */
+public final class RingBuffer<E> {
+
+    private final Object[] entries;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+
+    private final Sequence cursor = new Sequence(-1L);  // 最後一個已發布的序號
+    private Sequence gatingSequence = new Sequence(Long.MAX_VALUE);
+    private long nextSequence = 0L;                      // 生產者線程專用
+
+    /**
+     * @param bufferSize 必須是 2 的次方
+     */
+    public RingBuffer(int bufferSize, Supplier<E> eventFactory, WaitStrategy waitStrategy) {
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize 必須是 2 的次方: " + bufferSize);
+        }
+        this.entries = new Object[bufferSize];
+        this.mask = bufferSize - 1;
+        this.waitStrategy = waitStrategy;
+        for (int i = 0; i < bufferSize; i++) {
+            entries[i] = eventFactory.get();
+        }
+    }
+
+    /**
+     * 設定消費者的序號; 生產者不會覆寫消費者尚未處理的位置
+     */
+    public void setGatingSequence(Sequence consumerSequence) {
+        this.gatingSequence = consumerSequence;
+    }
+
+    /**
+     * 取得下一個可寫入的序號, buffer 已滿時依等待策略等待消費者
+     */
+    public long next() throws InterruptedException {
+        long sequence = nextSequence++;
+        long wrapPoint = sequence - entries.length;
+        if (gatingSequence.get() < wrapPoint) {
+            waitStrategy.waitFor(wrapPoint, gatingSequence);
+        }
+        return sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) (sequence & mask)];
+    }
+
+    public void publish(long sequence) {
+        cursor.set(sequence);
+    }
+
+    public Sequence getCursor() {
+        return cursor;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public int getBufferSize() {
+        return entries.length;
+    }
+
+    /**
+     * @return 已發布但消費者尚未處理的事件數 (queue depth)
+     */
+    public long getDepth() {
+        return Math.max(0L, cursor.get() - gatingSequence.get());
+    }
+}
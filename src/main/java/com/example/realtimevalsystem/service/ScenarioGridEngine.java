@@ -0,0 +1,306 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.Position;
+import com.example.realtimevalsystem.model.ScenarioGridReport;
+import com.example.realtimevalsystem.model.Security;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 情境網格 (標的價格變動 x 波動率變動) 的重新估值
+ * - 以 PortfolioValuationService 目前的持倉、波動率覆寫與標的價格為基準; 每個情境所有標的同時套用相同的相對變動:
+ *   S' = S * (1 + spotShock), σ' = σ * (1 + volShock), 到期時間不變; 股票只受標的價格影響
+ * - 帳本編譯成依標的連續存放的陣列 (MergedContractBook, 相同合約的持倉合併), ln(K), K·e^(-rt), σ√t 沿用編譯結果;
+ *   持倉版本不變時重複使用, 每次只重新讀取標的價格; 編譯時還沒有報價的標的之後有了報價時也重新編譯
+ * - 工作單位為 (標的, 波動率變動): 先計算該欄每個合約的 d1 常數與 1/(σ'√t), 再掃過所有標的價格變動, d1 不需要再呼叫 Math.log;
+ *   工作單位以 fork-join 平行計算, 每個單位寫入各自的格子, 合計依標的順序相加, 因此結果與執行緒數量無關 (逐位元一致)
+ * - 損益以相同的公式計算目前價值後相減: 兩個變動都為 0 的格子損益恰好為 0 (與估值引擎發布的 NAV 可能有捨入誤差等級的差異)
+ * 建立後可由多個執行緒同時呼叫 run
+ */
+public class ScenarioGridEngine {
+
+    private static final int LEAF_EVALUATIONS = 1 << 16; // 每個 fork-join 葉節點的選擇權定價次數上限 (約 1 ms)
+
+    private final PortfolioValuationService valuationService;
+    private final Map<String, Security> securityMap;
+    private final OptionPricingService pricingService;
+
+    private volatile CompiledGrid compiled; // 最近一次編譯的帳本 (以持倉版本辨識)
+
+    public ScenarioGridEngine(PortfolioValuationService valuationService, Map<String, Security> securityMap,
+                              OptionPricingService pricingService) {
+        this.valuationService = valuationService;
+        this.securityMap = securityMap;
+        this.pricingService = pricingService;
+    }
+
+    /**
+     * 對稱的變動: -maxShock, ..., 0, ..., +maxShock 共 2 * steps + 1 個 (中間恰好為 0)
+     * e.g., symmetricShocks(0.20, 20) = -20% ~ +20%, 間隔 1%
+     */
+    public static double[] symmetricShocks(double maxShock, int steps) {
+        if (steps <= 0 || !(maxShock > 0.0)) {
+            throw new IllegalArgumentException("變動範圍與步數必須大於 0: " + maxShock + ", " + steps);
+        }
+        double[] shocks = new double[2 * steps + 1];
+        for (int i = 0; i < shocks.length; i++) {
+            shocks[i] = maxShock * (i - steps) / steps;
+        }
+        return shocks;
+    }
+
+    /**
+     * 以所有 CPU 核心計算
+     * @see #run(double[], double[], int)
+     */
+    public ScenarioGridReport run(double[] spotShocks, double[] volShocks) {
+        return run(spotShocks, volShocks, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 以目前的持倉與標的價格重新估值整個網格
+     * @param spotShocks  標的價格的相對變動, 必須大於 -1 (e.g., -0.2 = -20%)
+     * @param volShocks   波動率的相對變動, 不可小於 -1 (-1 = 波動率為 0, 以遠期內含價值計算)
+     * @param parallelism fork-join 執行緒數
+     */
+    public ScenarioGridReport run(double[] spotShocks, double[] volShocks, int parallelism) {
+        if (spotShocks.length == 0 || volShocks.length == 0) {
+            throw new IllegalArgumentException("網格至少要有一個標的價格變動與一個波動率變動");
+        }
+        for (double shock : spotShocks) {
+            if (!(shock > -1.0) || Double.isInfinite(shock)) {
+                throw new IllegalArgumentException("標的價格變動必須大於 -1: " + shock);
+            }
+        }
+        for (double shock : volShocks) {
+            if (!(shock >= -1.0) || Double.isInfinite(shock)) {
+                throw new IllegalArgumentException("波動率變動不可小於 -1: " + shock);
+            }
+        }
+        long start = System.nanoTime();
+
+        // --- 1. 目前的持倉 (版本不變時沿用編譯結果) 與標的價格 -------------------------------------------------------------
+        List<Position> positions = new ArrayList<>();
+        Map<String, Double> volatilities = new HashMap<>();
+        long version = valuationService.copySubmittedPositions(positions, volatilities);
+        Map<String, Double> prices = valuationService.estimateCurrentPrices();
+        CompiledGrid grid = compiled;
+        if (grid == null || grid.version != version || grid.hasNewlyPriced(prices)) {
+            grid = new CompiledGrid(version, compile(positions, volatilities, prices));
+            compiled = grid;
+        }
+        MergedContractBook book = grid.contracts;
+        int n = book.underlyingCount();
+        double[] spots = new double[n];
+        for (int u = 0; u < n; u++) {
+            spots[u] = prices.get(book.tickers[u]);
+        }
+
+        // --- 2. 情境常數: 每個標的價格變動的 (1 + shock) 與 ln(1 + shock) ------------------------------------------------
+        int rows = spotShocks.length;
+        int columns = volShocks.length;
+        double[] spotFactors = new double[rows];
+        double[] logShifts = new double[rows];
+        for (int s = 0; s < rows; s++) {
+            spotFactors[s] = 1.0 + spotShocks[s];
+            logShifts[s] = Math.log(spotFactors[s]);
+        }
+
+        // --- 3. 平行計算每個 (標的, 波動率變動) 的價值 --------------------------------------------------------------------
+        double[][] values = new double[n][rows * columns];
+        double[] baseValues = new double[n];
+        long[] costs = new long[n * columns + 1]; // 工作單位的定價次數前綴和, 用於切分
+        for (int unit = 0; unit < n * columns; unit++) {
+            int u = unit / columns;
+            costs[unit + 1] = costs[unit] + (long) (book.optionEnd[u] - book.optionStart[u] + 1) * rows;
+        }
+        GridTask task = new GridTask(book, spots, spotFactors, logShifts, volShocks, values, baseValues, costs, 0, n * columns);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            pool.invoke(task);
+        } finally {
+            pool.shutdown();
+        }
+
+        // --- 4. 損益與合計 (依標的順序相加) ------------------------------------------------------------------------------
+        double[] total = new double[rows * columns];
+        double portfolioValue = 0.0;
+        for (int u = 0; u < n; u++) {
+            double[] pnl = values[u];
+            for (int c = 0; c < pnl.length; c++) {
+                pnl[c] -= baseValues[u];
+                total[c] += pnl[c];
+            }
+            portfolioValue += baseValues[u];
+        }
+        return new ScenarioGridReport(spotShocks, volShocks, Arrays.asList(book.tickers), values, total,
+                portfolioValue, version, System.nanoTime() - start);
+    }
+
+    // 以目前持倉 (含波動率覆寫) 編譯 CompiledBook, 再合併相同合約; 合約的定價常數沿用 CompiledBook 的值
+    private MergedContractBook compile(List<Position> positions, Map<String, Double> volatilities, Map<String, Double> prices) {
+        CompiledBook book = new CompiledBook(positions, securityMap, prices, pricingService);
+        if (!volatilities.isEmpty()) {
+            book.updateVolatilities(volatilities);
+        }
+        MergedContractBook merged = new MergedContractBook(book);
+        if (merged.skipped > 0) {
+            System.err.println("情境網格: " + merged.skipped + " 筆持倉沒有證券定義或標的價格, 不列入計算");
+        }
+        return merged;
+    }
+
+    // 二分工作單位範圍直到定價次數不超過 LEAF_EVALUATIONS (或只剩一個單位)
+    @SuppressWarnings("serial")
+    private final class GridTask extends RecursiveAction {
+        private final MergedContractBook book;
+        private final double[] spots;
+        private final double[] spotFactors;
+        private final double[] logShifts;
+        private final double[] volShocks;
+        private final double[][] values;
+        private final double[] baseValues;
+        private final long[] costs;
+        private final int from;
+        private final int to;
+
+        GridTask(MergedContractBook book, double[] spots, double[] spotFactors, double[] logShifts, double[] volShocks,
+                 double[][] values, double[] baseValues, long[] costs, int from, int to) {
+            this.book = book;
+            this.spots = spots;
+            this.spotFactors = spotFactors;
+            this.logShifts = logShifts;
+            this.volShocks = volShocks;
+            this.values = values;
+            this.baseValues = baseValues;
+            this.costs = costs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1 || costs[to] - costs[from] <= LEAF_EVALUATIONS) {
+                revalueUnits(book, spots, spotFactors, logShifts, volShocks, values, baseValues, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new GridTask(book, spots, spotFactors, logShifts, volShocks, values, baseValues, costs, from, middle),
+                    new GridTask(book, spots, spotFactors, logShifts, volShocks, values, baseValues, costs, middle, to));
+        }
+    }
+
+    private void revalueUnits(MergedContractBook book, double[] spots, double[] spotFactors, double[] logShifts, double[] volShocks,
+                              double[][] values, double[] baseValues, int from, int to) {
+        int columns = volShocks.length;
+        int width = 0;
+        for (int unit = from; unit < to; unit++) {
+            int u = unit / columns;
+            width = Math.max(width, book.optionEnd[u] - book.optionStart[u]);
+        }
+        ColumnScratch scratch = new ColumnScratch(width);
+        double[] one = {1.0};
+        double[] zero = {0.0};
+        for (int unit = from; unit < to; unit++) {
+            int u = unit / columns;
+            int vol = unit % columns;
+            revalueColumn(book, u, spots[u], 1.0 + volShocks[vol], spotFactors, logShifts, values[u], vol, columns, scratch);
+            if (vol == 0) { // 目前價值: 同一個公式, 兩個變動都為 0
+                double[] base = new double[1];
+                revalueColumn(book, u, spots[u], 1.0, one, zero, base, 0, 1, scratch);
+                baseValues[u] = base[0];
+            }
+        }
+    }
+
+    /**
+     * 單一標的在波動率乘數 volFactor 下, 每個標的價格變動的價值, 寫入 out[offset + s * stride]
+     * d1 = (ln(S/K) + (r + σ'²/2)t + ln(1 + shock)) / (σ'√t); 常數部分與 1/(σ'√t) 每欄計算一次
+     */
+    private void revalueColumn(MergedContractBook book, int u, double spot, double volFactor, double[] spotFactors, double[] logShifts,
+                               double[] out, int offset, int stride, ColumnScratch scratch) {
+        int start = book.optionStart[u];
+        int count = book.optionEnd[u] - start;
+        double logSpot = Math.log(spot);
+        double[] constants = scratch.constants;
+        double[] inverses = scratch.inverses;
+        double[] sigmaSqrtTs = scratch.sigmaSqrtTs;
+        for (int k = 0; k < count; k++) {
+            int i = start + k;
+            double sigma = book.sigmas[i] * volFactor;
+            double sigmaSqrtT = book.sigmaSqrtTs[i] * volFactor;
+            sigmaSqrtTs[k] = sigmaSqrtT;
+            inverses[k] = sigmaSqrtT > 0.0 ? 1.0 / sigmaSqrtT : 0.0;
+            constants[k] = logSpot - book.logStrikes[i] + OptionPricingService.driftTerm(sigma, book.maturities[i]);
+        }
+
+        double[] signs = book.signs;
+        double[] discountedStrikes = book.discountedStrikes;
+        double[] quantities = book.optionQuantities;
+        for (int s = 0; s < spotFactors.length; s++) {
+            double shocked = spot * spotFactors[s];
+            double logShift = logShifts[s];
+            double value = book.stockQuantities[u] * shocked;
+            for (int k = 0; k < count; k++) {
+                int i = start + k;
+                double w = signs[i];
+                double price;
+                if (inverses[k] > 0.0) {
+                    double d1 = (constants[k] + logShift) * inverses[k];
+                    double d2 = d1 - sigmaSqrtTs[k];
+                    price = w * (shocked * pricingService.N(w * d1) - discountedStrikes[i] * pricingService.N(w * d2));
+                } else {
+                    price = Math.max(w * (shocked - discountedStrikes[i]), 0.0); // 波動率為 0 或已到期: 遠期內含價值
+                }
+                value += quantities[i] * price;
+            }
+            out[offset + s * stride] = value;
+        }
+    }
+
+    // 葉節點的暫存陣列 (一欄的合約常數)
+    private static final class ColumnScratch {
+        final double[] constants;
+        final double[] inverses;
+        final double[] sigmaSqrtTs;
+
+        ColumnScratch(int width) {
+            constants = new double[width];
+            inverses = new double[width];
+            sigmaSqrtTs = new double[width];
+        }
+    }
+
+    // 編譯後的帳本, 以持倉版本與編譯時有報價的標的辨識
+    private static final class CompiledGrid {
+        final long version;
+        final MergedContractBook contracts;
+
+        CompiledGrid(long version, MergedContractBook contracts) {
+            this.version = version;
+            this.contracts = contracts;
+        }
+
+        // 編譯時沒有報價 (不列入計算) 的標的現在有報價了
+        boolean hasNewlyPriced(Map<String, Double> prices) {
+            for (String ticker : contracts.unpricedTickers) {
+                if (prices.containsKey(ticker)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // --- 查詢 -----------------------------------------------------------------------------------------------------------
+    public long getCompiledVersion() {
+        CompiledGrid grid = compiled;
+        return grid == null ? -1L : grid.version;
+    }
+}
@@ -6,16 +6,63 @@ import com.example.realtimevalsystem.model.Security;
 import com.example.realtimevalsystem.model.Stock;
 
 import java.sql.*;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
-public class SecurityDefinitionService {
+/**
+ * 證券主檔 (security master) 服務
+ * - 整個服務只使用一條連線 (第一次需要時建立, close 時關閉)
+ * - 寫入以 PreparedStatement 批次執行 (每 BATCH_SIZE 筆送出一次, 最後才 commit)
+ * - 讀取只選需要的欄位, 以欄位索引存取, forward-only + fetch size 逐批取回, 不一次載入整個結果集
+ * 搭配 SecuritySnapshotCache 時, 快照仍有效就完全不需要連線資料庫
+ */
+public class SecurityDefinitionService implements AutoCloseable {
 
     // H2 in-memory, DB_CLOSE_DELAY=-1 能確保資料庫在所有連線關閉後不會消失
     private static final String DB_URL = "jdbc:h2:mem:security_db;DB_CLOSE_DELAY=-1";
     private static final String DB_USER = "sa";
     private static final String DB_PASSWORD = "";
 
+    private static final int BATCH_SIZE = 1_000;
+    private static final int FETCH_SIZE = 10_000;
+
+    // INSERT 與 SELECT 明確列出相同順序的欄位, 以下列索引存取 (不依賴 SELECT * 的欄位順序, 也不做名稱查找)
+    private static final String INSERT_SQL = "INSERT INTO SECURITIES " +
+            "(ticker, type, underlying_ticker, mu, sigma, strike_price, time_to_maturity) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_SQL = "SELECT " +
+            "ticker, type, underlying_ticker, mu, sigma, strike_price, time_to_maturity FROM SECURITIES";
+    private static final int COL_TICKER = 1;
+    private static final int COL_TYPE = 2;
+    private static final int COL_UNDERLYING = 3;
+    private static final int COL_MU = 4;
+    private static final int COL_SIGMA = 5;
+    private static final int COL_STRIKE = 6;
+    private static final int COL_MATURITY = 7;
+
+    private final String dbUrl;
+    private final String dbUser;
+    private final String dbPassword;
+    private Connection connection;
+
+    public SecurityDefinitionService() {
+        this(DB_URL, DB_USER, DB_PASSWORD);
+    }
+
+    public SecurityDefinitionService(String dbUrl, String dbUser, String dbPassword) {
+        this.dbUrl = dbUrl;
+        this.dbUser = dbUser;
+        this.dbPassword = dbPassword;
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            connection = DriverManager.getConnection(dbUrl, dbUser, dbPassword);
+        }
+        return connection;
+    }
+
     /**
      * 初始化資料庫：建立 Schema 並插入範例資料
      */
@@ -24,9 +71,11 @@ public class SecurityDefinitionService {
         insertSampleData();
     }
 
-    private void createSchema() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-             Statement stmt = conn.createStatement()) {
+    /**
+     * 建立 SECURITIES 資料表
+     */
+    public void createSchema() throws SQLException {
+        try (Statement stmt = connection().createStatement()) {
 
             String sql = "CREATE TABLE SECURITIES (" +
                     "    ticker VARCHAR(255) PRIMARY KEY," +
@@ -43,33 +92,80 @@ public class SecurityDefinitionService {
     }
 
     private void insertSampleData() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-             Statement stmt = conn.createStatement()) {
-
-            // 1. AAPL (Stock)
-            stmt.executeUpdate("INSERT INTO SECURITIES (ticker, type, mu, sigma) " +
-                    "VALUES ('AAPL', 'STOCK', 0.05, 0.20)"); // 假設 mu=5%, sigma=20%
-
-            // 2. AAPL Call (AAPL-OCT-2020-110-C)
-            stmt.executeUpdate("INSERT INTO SECURITIES (ticker, type, underlying_ticker, strike_price, time_to_maturity, sigma) " +
-                    "VALUES ('AAPL-OCT-2020-110-C', 'CALL', 'AAPL', 110.0, 0.25, 0.20)"); // 假設剩 3 個月 (0.25年) 到期, sigma 繼承 AAPL
-
-            // 3. AAPL Put (AAPL-OCT-2020-110-P)
-            stmt.executeUpdate("INSERT INTO SECURITIES (ticker, type, underlying_ticker, strike_price, time_to_maturity, sigma) " +
-                    "VALUES ('AAPL-OCT-2020-110-P', 'PUT', 'AAPL', 110.0, 0.25, 0.20)"); // 同上
-
-            // 4. TELSA (Stock)
-            stmt.executeUpdate("INSERT INTO SECURITIES (ticker, type, mu, sigma) " +
-                    "VALUES ('TELSA', 'STOCK', 0.10, 0.40)"); // 假設 mu=10%, sigma=40%
+        insertSecurities(Arrays.asList(
+                new Stock("AAPL", 0.05, 0.20), // 假設 mu=5%, sigma=20%
+                // 假設剩 3 個月 (0.25年) 到期, sigma 繼承 AAPL
+                new EuropeanCallOption("AAPL-OCT-2020-110-C", "AAPL", 110.0, 0.25, 0.20),
+                new EuropeanPutOption("AAPL-OCT-2020-110-P", "AAPL", 110.0, 0.25, 0.20),
+                new Stock("TELSA", 0.10, 0.40), // 假設 mu=10%, sigma=40%
+                // 假設剩 ~5 個月 (0.4年) 到期, sigma 繼承 TELSA
+                new EuropeanCallOption("TELSA-NOV-2020-400-C", "TELSA", 400.0, 0.40, 0.40),
+                // 假設剩 6 個月 (0.5年) 到期, sigma 繼承 TELSA
+                new EuropeanPutOption("TELSA-DEC-2020-400-P", "TELSA", 400.0, 0.50, 0.40)
+        ));
+    }
 
-            // 5. TELSA Call (TELSA-NOV-2020-400-C)
-            stmt.executeUpdate("INSERT INTO SECURITIES (ticker, type, underlying_ticker, strike_price, time_to_maturity, sigma) " +
-                    "VALUES ('TELSA-NOV-2020-400-C', 'CALL', 'TELSA', 400.0, 0.40, 0.40)"); // 假設剩 ~5 個月 (0.4年) 到期, sigma 繼承 TELSA
+    /**
+     * 以 PreparedStatement 批次寫入證券定義 (單一交易, 失敗時全部回滾)
+     * @return 寫入的筆數
+     */
+    public int insertSecurities(Collection<? extends Security> securities) throws SQLException {
+        Connection conn = connection();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        int count = 0;
+        try (PreparedStatement insert = conn.prepareStatement(INSERT_SQL)) {
+            for (Security security : securities) {
+                if (!bind(insert, security)) {
+                    System.err.println("略過不支援的證券類型: " + security.getTicker());
+                    continue;
+                }
+                insert.addBatch();
+                if (++count % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return count;
+    }
 
-            // 6. TELSA Put (TELSA-DEC-2020-400-P)
-            stmt.executeUpdate("INSERT INTO SECURITIES (ticker, type, underlying_ticker, strike_price, time_to_maturity, sigma) " +
-                    "VALUES ('TELSA-DEC-2020-400-P', 'PUT', 'TELSA', 400.0, 0.50, 0.40)"); // 假設剩 6 個月 (0.5年) 到期, sigma 繼承 TELSA
+    private static boolean bind(PreparedStatement insert, Security security) throws SQLException {
+        insert.setString(COL_TICKER, security.getTicker());
+        if (security instanceof Stock) {
+            Stock stock = (Stock) security;
+            insert.setString(COL_TYPE, "STOCK");
+            insert.setNull(COL_UNDERLYING, Types.VARCHAR);
+            insert.setDouble(COL_MU, stock.getMu());
+            insert.setDouble(COL_SIGMA, stock.getSigma());
+            insert.setNull(COL_STRIKE, Types.DOUBLE);
+            insert.setNull(COL_MATURITY, Types.DOUBLE);
+        } else if (security instanceof EuropeanCallOption) {
+            EuropeanCallOption call = (EuropeanCallOption) security;
+            bindOption(insert, "CALL", call.getUnderlyingTicker(), call.getSigma(), call.getStrikePrice(), call.getTimeToMaturity());
+        } else if (security instanceof EuropeanPutOption) {
+            EuropeanPutOption put = (EuropeanPutOption) security;
+            bindOption(insert, "PUT", put.getUnderlyingTicker(), put.getSigma(), put.getStrikePrice(), put.getTimeToMaturity());
+        } else {
+            return false;
         }
+        return true;
+    }
+
+    private static void bindOption(PreparedStatement insert, String type, String underlying,
+                                   double sigma, double strike, double maturity) throws SQLException {
+        insert.setString(COL_TYPE, type);
+        insert.setString(COL_UNDERLYING, underlying);
+        insert.setNull(COL_MU, Types.DOUBLE);
+        insert.setDouble(COL_SIGMA, sigma);
+        insert.setDouble(COL_STRIKE, strike);
+        insert.setDouble(COL_MATURITY, maturity);
     }
 
     /**
@@ -77,48 +173,61 @@ public class SecurityDefinitionService {
      * @return 一個 Map<String, Security>，Key 是 ticker，Value 是 Security 物件
      */
     public Map<String, Security> loadSecurities() throws SQLException {
+        return loadSecurities(new SymbolTable());
+    }
+
+    /**
+     * 從資料庫讀取所有證券定義, 同時在 symbols 中為每個代碼與標的代碼指派 id
+     * 同一代碼的 String 只保留一份 (選擇權共用標的代碼的 String)
+     */
+    public Map<String, Security> loadSecurities(SymbolTable symbols) throws SQLException {
         Map<String, Security> securities = new HashMap<>();
 
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM SECURITIES")) {
-
-            while (rs.next()) {
-                String ticker = rs.getString("ticker");
-                String type = rs.getString("type");
-
-                switch (type) {
-                    case "STOCK":
-                        Stock stock = new Stock(
-                                ticker,
-                                rs.getDouble("mu"),
-                                rs.getDouble("sigma")
-                        );
-                        securities.put(ticker, stock);
-                        break;
-                    case "CALL":
-                        EuropeanCallOption call = new EuropeanCallOption(
-                                ticker,
-                                rs.getString("underlying_ticker"),
-                                rs.getDouble("strike_price"),
-                                rs.getDouble("time_to_maturity"),
-                                rs.getDouble("sigma") //  sigma 來自標的股票
-                        );
-                        securities.put(ticker, call);
-                        break;
-                    case "PUT":
-                        EuropeanPutOption put = new EuropeanPutOption(
-                                ticker,
-                                rs.getString("underlying_ticker"),
-                                rs.getDouble("strike_price"),
-                                rs.getDouble("time_to_maturity"),
-                                rs.getDouble("sigma") // sigma 來自標的股票
-                        );
-                        securities.put(ticker, put);
-                        break;
+        try (Statement stmt = connection().createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery(SELECT_SQL)) {
+                while (rs.next()) {
+                    String ticker = canonical(symbols, rs.getString(COL_TICKER));
+                    String type = rs.getString(COL_TYPE);
+
+                    switch (type) {
+                        case "STOCK":
+                            securities.put(ticker, new Stock(ticker, rs.getDouble(COL_MU), rs.getDouble(COL_SIGMA)));
+                            break;
+                        case "CALL":
+                            securities.put(ticker, new EuropeanCallOption(
+                                    ticker,
+                                    canonical(symbols, rs.getString(COL_UNDERLYING)),
+                                    rs.getDouble(COL_STRIKE),
+                                    rs.getDouble(COL_MATURITY),
+                                    rs.getDouble(COL_SIGMA) //  sigma 來自標的股票
+                            ));
+                            break;
+                        case "PUT":
+                            securities.put(ticker, new EuropeanPutOption(
+                                    ticker,
+                                    canonical(symbols, rs.getString(COL_UNDERLYING)),
+                                    rs.getDouble(COL_STRIKE),
+                                    rs.getDouble(COL_MATURITY),
+                                    rs.getDouble(COL_SIGMA) // sigma 來自標的股票
+                            ));
+                            break;
+                    }
                 }
             }
         }
         return securities;
     }
-}
\ No newline at end of file
+
+    private static String canonical(SymbolTable symbols, String symbol) {
+        return symbol == null ? null : symbols.symbol(symbols.intern(symbol));
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (connection != null) {
+            connection.close();
+            connection = null;
+        }
+    }
+}
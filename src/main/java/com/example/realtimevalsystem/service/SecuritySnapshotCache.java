@@ -0,0 +1,196 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.EuropeanCallOption;
+import com.example.realtimevalsystem.model.EuropeanPutOption;
+import com.example.realtimevalsystem.model.Security;
+import com.example.realtimevalsystem.model.Stock;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 證券主檔的本地二進位快照
+ * - 冷啟動: 從資料庫載入後 save, 寫到暫存檔再改名, 讀取端不會看到寫到一半的快照
+ * - 暖啟動: load 成功就不需要連線資料庫; 快照不存在, 格式版本不同, 資料版本 (sourceVersion) 不符或檔案損毀時回傳 null
+ * sourceVersion 由呼叫端決定 (e.g., 證券主檔的發布日期或版本號), 主檔更新時換一個版本即可讓舊快照失效
+ *
+ * 檔案格式 (DataOutputStream, big-endian):
+ *   magic(int) formatVersion(int) sourceVersion(UTF) createdEpochMillis(long)
+ *   underlyingCount(int) + 標的代碼(UTF)...   選擇權以 id 參照標的, 讀回時共用同一個 String
+ *   securityCount(int) + 證券...
+ *     STOCK: type(byte) ticker(UTF) mu(double) sigma(double)
+ *     CALL / PUT: type(byte) ticker(UTF) underlyingId(int) strike(double) maturity(double) sigma(double)
+ *   securityCount(int) 再寫一次作為結尾標記 (檔案被截斷時讀取失敗)
+ */
+public class SecuritySnapshotCache {
+
+    static final int MAGIC = 0x4E415653; // "NAVS"
+    static final int FORMAT_VERSION = 1;
+
+    private static final byte TYPE_STOCK = 1;
+    private static final byte TYPE_CALL = 2;
+    private static final byte TYPE_PUT = 3;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+
+    public SecuritySnapshotCache(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * 讀取快照
+     * @param sourceVersion 目前證券主檔的版本
+     * @return 證券定義; 快照不存在或已失效時回傳 null (應改從資料庫載入)
+     */
+    public Map<String, Security> load(String sourceVersion) {
+        return load(sourceVersion, new SymbolTable());
+    }
+
+    /**
+     * 讀取快照, 同時在 symbols 中為每個代碼與標的代碼指派 id
+     */
+    public Map<String, Security> load(String sourceVersion, SymbolTable symbols) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                System.out.println("證券快照格式不符, 改從資料庫載入: " + file);
+                return null;
+            }
+            String snapshotVersion = in.readUTF();
+            in.readLong(); // createdEpochMillis
+            if (!snapshotVersion.equals(sourceVersion)) {
+                System.out.println("證券快照版本 " + snapshotVersion + " 不是目前版本 " + sourceVersion + ", 改從資料庫載入");
+                return null;
+            }
+
+            String[] underlyings = new String[in.readInt()];
+            for (int i = 0; i < underlyings.length; i++) {
+                underlyings[i] = canonical(symbols, in.readUTF());
+            }
+            int count = in.readInt();
+            Map<String, Security> securities = new HashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                byte type = in.readByte();
+                String ticker = canonical(symbols, in.readUTF());
+                if (type == TYPE_STOCK) {
+                    securities.put(ticker, new Stock(ticker, in.readDouble(), in.readDouble()));
+                } else {
+                    String underlying = underlyings[in.readInt()];
+                    double strike = in.readDouble();
+                    double maturity = in.readDouble();
+                    double sigma = in.readDouble();
+                    securities.put(ticker, type == TYPE_CALL
+                            ? new EuropeanCallOption(ticker, underlying, strike, maturity, sigma)
+                            : new EuropeanPutOption(ticker, underlying, strike, maturity, sigma));
+                }
+            }
+            if (in.readInt() != count) {
+                throw new IOException("結尾標記不符");
+            }
+            return securities;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("證券快照無法讀取, 改從資料庫載入: " + file + " (" + e + ")");
+            return null;
+        }
+    }
+
+    /**
+     * 寫入快照 (寫到暫存檔後以 rename 取代舊快照); 不支援的證券類型不會寫入
+     */
+    public void save(Map<String, Security> securities, String sourceVersion) throws IOException {
+        Map<String, Integer> underlyingIds = new HashMap<>();
+        List<String> underlyings = new ArrayList<>();
+        List<Security> supported = new ArrayList<>(securities.size());
+        for (Security security : securities.values()) {
+            String underlying = underlyingOf(security);
+            if (underlying != null && !underlyingIds.containsKey(underlying)) {
+                underlyingIds.put(underlying, underlyings.size());
+                underlyings.add(underlying);
+            }
+            if (security instanceof Stock || underlying != null) {
+                supported.add(security);
+            }
+        }
+
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(sourceVersion);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(underlyings.size());
+            for (String underlying : underlyings) {
+                out.writeUTF(underlying);
+            }
+            out.writeInt(supported.size());
+            for (Security security : supported) {
+                writeSecurity(out, security, underlyingIds);
+            }
+            out.writeInt(supported.size());
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeSecurity(DataOutputStream out, Security security, Map<String, Integer> underlyingIds) throws IOException {
+        if (security instanceof Stock) {
+            Stock stock = (Stock) security;
+            out.writeByte(TYPE_STOCK);
+            out.writeUTF(stock.getTicker());
+            out.writeDouble(stock.getMu());
+            out.writeDouble(stock.getSigma());
+        } else if (security instanceof EuropeanCallOption) {
+            EuropeanCallOption call = (EuropeanCallOption) security;
+            out.writeByte(TYPE_CALL);
+            out.writeUTF(call.getTicker());
+            out.writeInt(underlyingIds.get(call.getUnderlyingTicker()));
+            out.writeDouble(call.getStrikePrice());
+            out.writeDouble(call.getTimeToMaturity());
+            out.writeDouble(call.getSigma());
+        } else {
+            EuropeanPutOption put = (EuropeanPutOption) security;
+            out.writeByte(TYPE_PUT);
+            out.writeUTF(put.getTicker());
+            out.writeInt(underlyingIds.get(put.getUnderlyingTicker()));
+            out.writeDouble(put.getStrikePrice());
+            out.writeDouble(put.getTimeToMaturity());
+            out.writeDouble(put.getSigma());
+        }
+    }
+
+    private static String canonical(SymbolTable symbols, String symbol) {
+        return symbols.symbol(symbols.intern(symbol));
+    }
+
+    // 選擇權的標的代碼; 股票與不支援的類型回傳 null
+    private static String underlyingOf(Security security) {
+        if (security instanceof EuropeanCallOption) {
+            return ((EuropeanCallOption) security).getUnderlyingTicker();
+        }
+        if (security instanceof EuropeanPutOption) {
+            return ((EuropeanPutOption) security).getUnderlyingTicker();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.realtimevalsystem.service;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Ring buffer 的序號計數器
+ * - 前後以 long 欄位填充, 避免與其他熱欄位共用 cache line (false sharing)
+ * - 單一寫入者以 lazySet (ordered store) 發布, 讀取者以 volatile 讀取
+ */
+class SequencePadding {
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+class SequenceValue extends SequencePadding {
+    protected volatile long value;
+}
+
+public final class Sequence extends SequenceValue {
+
+    private static final AtomicLongFieldUpdater<SequenceValue> VALUE =
+            AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+    long p9, p10, p11, p12, p13, p14, p15;
+
+    public Sequence(long initialValue) {
+        VALUE.lazySet(this, initialValue);
+    }
+
+    public long get() {
+        return value;
+    }
+
+    // 單一寫入者發布新序號 (不需要完整的 volatile write 屏障)
+    public void set(long newValue) {
+        VALUE.lazySet(this, newValue);
+    }
+}
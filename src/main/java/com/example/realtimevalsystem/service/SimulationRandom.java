@@ -0,0 +1,74 @@
+package com.example.realtimevalsystem.service;
+
+/**
+ * 模擬用亂數的設定: 均勻亂數演算法 + 常態分佈取樣方法 + 種子
+ * 每個線程 (或模擬區塊) 以 newSampler / newStream 取得自己的串流, 串流之間不共用狀態 (沒有競爭, 也不需要同步);
+ * 串流依呼叫順序由同一個根串流 split 出來, 因此同一設定以相同順序取得的串流永遠相同
+ *
+ * 系統參數: -Dnav.rng=splittable|xoroshiro128++|xoroshiro128+|jdk  -Dnav.normal=ziggurat|polar  -Dnav.seed=<long>
+ */
+public final class SimulationRandom {
+
+    public static final String DEFAULT_ALGORITHM = RandomStream.XOROSHIRO_128_PLUS_PLUS;
+    public static final String DEFAULT_NORMAL_METHOD = NormalSampler.ZIGGURAT;
+
+    private final String algorithm;
+    private final String normalMethod;
+    private final long seed;
+    private final RandomStream root;
+
+    public SimulationRandom(String algorithm, String normalMethod, long seed) {
+        this.algorithm = algorithm;
+        this.normalMethod = normalMethod;
+        this.seed = seed;
+        this.root = RandomStream.create(algorithm, seed);
+        NormalSampler.create(normalMethod, root); // 名稱錯誤時在建立設定時就丟出例外
+    }
+
+    /**
+     * 依系統參數建立; 未指定種子時以目前時間為種子 (每次執行不同)
+     */
+    public static SimulationRandom fromSystemProperties() {
+        return new SimulationRandom(
+                System.getProperty("nav.rng", DEFAULT_ALGORITHM),
+                System.getProperty("nav.normal", DEFAULT_NORMAL_METHOD),
+                Long.getLong("nav.seed", System.nanoTime()));
+    }
+
+    /**
+     * 新的獨立均勻亂數串流 (交給單一線程使用)
+     */
+    public synchronized RandomStream newStream() {
+        return root.split();
+    }
+
+    /**
+     * 新的獨立常態分佈取樣器 (交給單一線程使用)
+     */
+    public NormalSampler newSampler() {
+        return NormalSampler.create(normalMethod, newStream());
+    }
+
+    /**
+     * 以 stream 建立本設定的常態分佈取樣器 (呼叫端自行管理串流時使用)
+     */
+    public NormalSampler sampler(RandomStream stream) {
+        return NormalSampler.create(normalMethod, stream);
+    }
+
+    /**
+     * 以另一個種子建立相同演算法的設定 (e.g., 每次 Monte Carlo 執行指定自己的種子)
+     */
+    public SimulationRandom withSeed(long seed) {
+        return new SimulationRandom(algorithm, normalMethod, seed);
+    }
+
+    public String getAlgorithm() { return algorithm; }
+    public String getNormalMethod() { return normalMethod; }
+    public long getSeed() { return seed; }
+
+    @Override
+    public String toString() {
+        return algorithm + " / " + normalMethod + " (seed " + seed + ")";
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.PortfolioUpdate;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 訂閱註冊表: 讓多個 PortfolioResultListener 同時訂閱, 且彼此互不影響
+ * - 每個訂閱者有自己的有界佇列與遞送線程, 慢的訂閱者不會拖慢定價線程或其他訂閱者
+ * - 佇列滿時依 OverflowPolicy 處理 (丟棄最舊 / 只保留最新 / 阻塞發布者)
+ * - 每個訂閱者分別統計遞送數、丟棄數與落後的更新數 (lag)
+ *
+ * - 設定 LatencyMetrics 時, 遞送線程在把更新交給訂閱者前記錄遞送時間 (估值結束 -> 遞送, 報價建立 -> 遞送)
+ *
+ * 遞送線程由 ThreadFactory 建立; 預設為 daemon 平台線程, 在 JDK 21+ 可傳入 Thread.ofVirtual().factory()
+ */
+public class SubscriptionRegistry implements PortfolioResultListener {
+
+    public enum OverflowPolicy {
+        /** 佇列滿時丟棄最舊的更新 */
+        DROP_OLDEST,
+        /** 只保留最新一筆更新 (佇列容量固定為 1) */
+        CONFLATE_TO_LATEST,
+        /** 佇列滿時阻塞發布者, 不丟棄任何更新 (只適合必須完整接收的訂閱者) */
+        BLOCK
+    }
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ThreadFactory threadFactory;
+    private volatile LatencyMetrics metrics;
+
+    public SubscriptionRegistry() {
+        this(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public SubscriptionRegistry(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * 記錄遞送延遲與遞送數 (null = 不記錄), 套用到所有訂閱者
+     */
+    public void setMetrics(LatencyMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 註冊一個訂閱者並啟動它的遞送線程
+     * @param name     訂閱者名稱 (用於線程名稱與統計)
+     * @param listener 訂閱者
+     * @param capacity 佇列容量 (CONFLATE_TO_LATEST 時忽略)
+     * @param policy   佇列滿時的處理方式
+     */
+    public Subscription subscribe(String name, PortfolioResultListener listener, int capacity, OverflowPolicy policy) {
+        Subscription subscription = new Subscription(name, listener,
+                policy == OverflowPolicy.CONFLATE_TO_LATEST ? 1 : capacity, policy);
+        Thread thread = threadFactory.newThread(subscription::deliverLoop);
+        thread.setName("Subscriber-" + name);
+        subscription.deliveryThread = thread;
+        subscriptions.add(subscription);
+        thread.start();
+        return subscription;
+    }
+
+    /**
+     * 發布者呼叫 (定價線程或管線的分派線程): 依序放入每個訂閱者的佇列
+     */
+    @Override
+    public void onPortfolioUpdate(PortfolioUpdate update) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(update);
+        }
+    }
+
+    public List<Subscription> getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * 單一訂閱者的佇列、遞送線程與統計
+     */
+    public final class Subscription {
+
+        private final String name;
+        private final PortfolioResultListener listener;
+        private final OverflowPolicy policy;
+        private final BlockingQueue<PortfolioUpdate> queue;
+        private volatile Thread deliveryThread;
+
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile long lastEnqueuedUpdate;
+        private volatile long lastDeliveredUpdate;
+
+        private Subscription(String name, PortfolioResultListener listener, int capacity, OverflowPolicy policy) {
+            this.name = name;
+            this.listener = listener;
+            this.policy = policy;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        private void offer(PortfolioUpdate update) {
+            lastEnqueuedUpdate = update.getUpdateNumber();
+            if (policy == OverflowPolicy.BLOCK) {
+                try {
+                    queue.put(update);
+                } catch (InterruptedException e) {
+                    dropped.incrementAndGet();
+                    Thread.currentThread().interrupt(); // 保持中斷狀態
+                }
+                return;
+            }
+            while (!queue.offer(update)) {
+                if (queue.poll() != null) {
+                    dropped.incrementAndGet();
+                }
+            }
+        }
+
+        private void deliverLoop() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    PortfolioUpdate update = queue.take();
+                    LatencyMetrics currentMetrics = metrics;
+                    if (currentMetrics != null) {
+                        currentMetrics.recordDelivery(update, System.nanoTime());
+                    }
+                    try {
+                        listener.onPortfolioUpdate(update);
+                    } catch (RuntimeException e) {
+                        System.err.println("訂閱者 " + name + " 處理更新時發生錯誤: " + e.getMessage());
+                        e.printStackTrace();
+                    }
+                    lastDeliveredUpdate = update.getUpdateNumber();
+                    delivered.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // 保持中斷狀態
+            }
+        }
+
+        /**
+         * 取消訂閱並停止遞送線程 (佇列中尚未遞送的更新會被捨棄)
+         */
+        public void close() {
+            subscriptions.remove(this);
+            Thread thread = deliveryThread;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        public String getName() { return name; }
+        public OverflowPolicy getPolicy() { return policy; }
+        public long getDeliveredCount() { return delivered.get(); }
+        public long getDroppedCount() { return dropped.get(); }
+        public int getQueueSize() { return queue.size(); }
+
+        /**
+         * @return 最新放入佇列的更新編號與最後遞送完成的更新編號之差
+         */
+        public long getLag() {
+            return Math.max(0L, lastEnqueuedUpdate - lastDeliveredUpdate);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s[%s] delivered=%d dropped=%d lag=%d queue=%d",
+                    name, policy, getDeliveredCount(), getDroppedCount(), getLag(), getQueueSize());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.realtimevalsystem.service;
+
+/**
+ * 以代碼 id (見 SymbolTable) 接收價格更新的監聽器, MarketDataListener 的 int 版本
+ * 熱路徑上不傳遞 String: 實作以 id 直接當陣列索引
+ * 帶 tickNanos 的版本另外傳遞報價建立的時間 (System.nanoTime()), 供延遲指標量測 tick 到估值 / 遞送的延遲;
+ * 預設忽略時間並呼叫不帶時間的版本
+ */
+public interface SymbolIdMarketDataListener {
+
+    /**
+     * 當一支股票價格更新時被呼叫
+     * @param symbolId 股票代碼的 id
+     * @param newPrice 新的價格
+     */
+    void onStockPriceUpdate(int symbolId, double newPrice);
+
+    /**
+     * 一次收到一批股票的最新價格
+     * 預設逐筆呼叫 onStockPriceUpdate; 實作可覆寫以在整批套用後只重新估值/發布一次
+     * @param symbolIds 股票代碼 id (只讀取前 count 筆, 呼叫結束後陣列會被重複使用)
+     * @param prices    對應的新價格
+     * @param count     本批筆數
+     */
+    default void onStockPriceBatch(int[] symbolIds, double[] prices, int count) {
+        for (int i = 0; i < count; i++) {
+            onStockPriceUpdate(symbolIds[i], prices[i]);
+        }
+    }
+
+    /**
+     * 與 onStockPriceUpdate(int, double) 相同, 另外帶報價建立的時間
+     * @param tickNanos 報價建立時的 System.nanoTime()
+     */
+    default void onStockPriceUpdate(int symbolId, double newPrice, long tickNanos) {
+        onStockPriceUpdate(symbolId, newPrice);
+    }
+
+    /**
+     * 與 onStockPriceBatch(int[], double[], int) 相同, 另外帶本批最早一筆報價的建立時間
+     * 預設逐筆呼叫 onStockPriceUpdate(int, double, long)
+     * @param tickNanos 本批最早建立的報價的 System.nanoTime()
+     */
+    default void onStockPriceBatch(int[] symbolIds, double[] prices, int count, long tickNanos) {
+        for (int i = 0; i < count; i++) {
+            onStockPriceUpdate(symbolIds[i], prices[i], tickNanos);
+        }
+    }
+}
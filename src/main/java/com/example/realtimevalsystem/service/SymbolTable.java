@@ -0,0 +1,83 @@
+package com.example.realtimevalsystem.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 代碼符號表: 為每個代碼 (股票, 選擇權) 指派從 0 開始的連續 int id
+ * - 在載入時 (SecurityDefinitionService, PositionLoader) 指派 id, 熱路徑上只傳遞 id, 以 id 當陣列索引 (不做 String 雜湊/比對)
+ * - 只有在呈現端 (e.g., PortfolioUpdate 的觸發代碼, 主控台) 才以 symbol(id) 轉回字串
+ * - id 一經指派就不再改變; 執行中新增的代碼 (e.g., 日內成交) 取得下一個 id
+ *
+ * 執行緒安全: intern 會加鎖 (只在載入與新增代碼時呼叫), idOf 與 symbol 不加鎖
+ */
+public class SymbolTable {
+
+    public static final int NO_SYMBOL = -1;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] symbols;
+    private int size;
+
+    public SymbolTable() {
+        this(1024);
+    }
+
+    public SymbolTable(int expectedSymbols) {
+        this.symbols = new String[Math.max(16, expectedSymbols)];
+    }
+
+    /**
+     * @return 代碼的 id, 第一次出現時指派下一個 id
+     */
+    public int intern(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(symbol);
+            if (id != null) {
+                return id;
+            }
+            String[] current = symbols;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[size] = symbol;
+            symbols = current; // 先發布字串, 再發布 id (讀到 id 的線程一定讀得到字串)
+            ids.put(symbol, size);
+            return size++;
+        }
+    }
+
+    public void internAll(Collection<String> symbols) {
+        for (String symbol : symbols) {
+            intern(symbol);
+        }
+    }
+
+    /**
+     * @return 代碼的 id, 尚未指派時回傳 NO_SYMBOL
+     */
+    public int idOf(String symbol) {
+        Integer id = ids.get(symbol);
+        return id == null ? NO_SYMBOL : id;
+    }
+
+    /**
+     * @return id 對應的代碼 (呈現端使用)
+     */
+    public String symbol(int id) {
+        return symbols[id];
+    }
+
+    /**
+     * @return 目前已指派的 id 數量 (id 介於 [0, size))
+     */
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.EuropeanCallOption;
+import com.example.realtimevalsystem.model.EuropeanPutOption;
+import com.example.realtimevalsystem.model.Position;
+import com.example.realtimevalsystem.model.Security;
+import com.example.realtimevalsystem.model.Stock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 壓力測試 / 效能測試用的合成證券 / 持倉 / 初始價格 (不需要資料庫或 CSV)
+ * 每個標的 "SYN<u>" 產生 1 筆股票持倉 + optionsPerUnderlying 筆買權/賣權持倉
+ * (履約價為初始價格的 70% - 130%, 到期 0.05 - 2.05 年, 與標的相同的 sigma); 同一種子產生的帳本永遠相同
+ */
+public class SyntheticBookGenerator {
+
+    private final Map<String, Security> securities = new HashMap<>();
+    private final List<Position> positions = new ArrayList<>();
+    private final Map<String, Double> initialPrices = new HashMap<>();
+    private final List<String> tickers = new ArrayList<>();
+
+    public SyntheticBookGenerator(int underlyingCount, int optionsPerUnderlying, long seed) {
+        this(underlyingCount, optionsPerUnderlying, Integer.MAX_VALUE, seed);
+    }
+
+    /**
+     * 以持倉筆數指定大小: 每個標的 positionsPerUnderlying 筆持倉 (1 筆股票 + positionsPerUnderlying - 1 筆選擇權), 總共恰好 positionCount 筆
+     */
+    public static SyntheticBookGenerator forPositionCount(int positionCount, int positionsPerUnderlying, long seed) {
+        int underlyingCount = Math.max(1, (positionCount + positionsPerUnderlying - 1) / positionsPerUnderlying);
+        return new SyntheticBookGenerator(underlyingCount, positionsPerUnderlying - 1, positionCount, seed);
+    }
+
+    private SyntheticBookGenerator(int underlyingCount, int optionsPerUnderlying, int positionLimit, long seed) {
+        RandomStream random = RandomStream.create(RandomStream.SPLITTABLE, seed);
+        for (int u = 0; u < underlyingCount && positions.size() < positionLimit; u++) {
+            String ticker = "SYN" + u;
+            double spot = 50.0 + 150.0 * random.nextDouble();
+            double mu = 0.02 + 0.10 * random.nextDouble();
+            double sigma = 0.1 + 0.5 * random.nextDouble();
+            tickers.add(ticker);
+            initialPrices.put(ticker, spot);
+            securities.put(ticker, new Stock(ticker, mu, sigma));
+            positions.add(new Position(ticker, random.nextInt(2001) - 1000));
+
+            for (int k = 1; k <= optionsPerUnderlying && positions.size() < positionLimit; k++) {
+                double strike = Math.round(spot * (0.7 + 0.6 * random.nextDouble()));
+                double maturity = 0.05 + 2.0 * random.nextDouble();
+                boolean call = (k & 1) == 0;
+                String option = ticker + "-" + k + (call ? "-C" : "-P");
+                securities.put(option, call
+                        ? new EuropeanCallOption(option, ticker, strike, maturity, sigma)
+                        : new EuropeanPutOption(option, ticker, strike, maturity, sigma));
+                positions.add(new Position(option, random.nextInt(20001) - 10000));
+            }
+        }
+    }
+
+    public Map<String, Security> getSecurities() { return securities; }
+    public List<Position> getPositions() { return positions; }
+    public Map<String, Double> getInitialPrices() { return initialPrices; }
+    public List<String> getTickers() { return tickers; }
+
+    /**
+     * 從本合成帳本中隨機抽樣出多個客戶投資組合 "PF<p>" (證券可重疊, 數量重新抽樣)
+     */
+    public Map<String, List<Position>> clientPortfolios(int portfolioCount, int positionsPerPortfolio, long seed) {
+        RandomStream random = RandomStream.create(RandomStream.SPLITTABLE, seed);
+        Map<String, List<Position>> portfolios = new HashMap<>();
+        for (int p = 0; p < portfolioCount; p++) {
+            List<Position> book = new ArrayList<>(positionsPerPortfolio);
+            for (int i = 0; i < positionsPerPortfolio; i++) {
+                Position template = positions.get(random.nextInt(positions.size()));
+                book.add(new Position(template.getSymbol(), random.nextInt(2001) - 1000));
+            }
+            portfolios.put("PF" + p, book);
+        }
+        return portfolios;
+    }
+
+    /**
+     * 預先產生一段 tick 序列: 每筆隨機選一個標的 (寫入 tickerIndexes, 索引對應 getTickers()), 價格做 0.1% 的隨機漫步
+     * 供量測迴圈使用, 避免在迴圈中產生亂數或配置物件
+     */
+    public double[] tickPrices(int[] tickerIndexes, long seed) {
+        RandomStream random = RandomStream.create(RandomStream.SPLITTABLE, seed);
+        NormalSampler normal = NormalSampler.create(NormalSampler.ZIGGURAT, random.split());
+        double[] current = new double[tickers.size()];
+        for (int u = 0; u < current.length; u++) {
+            current[u] = initialPrices.get(tickers.get(u));
+        }
+        double[] prices = new double[tickerIndexes.length];
+        for (int i = 0; i < tickerIndexes.length; i++) {
+            int u = random.nextInt(current.length);
+            current[u] *= 1.0 + 0.001 * normal.nextGaussian();
+            tickerIndexes[i] = u;
+            prices[i] = current[u];
+        }
+        return prices;
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.realtimevalsystem.service;
+
+import java.io.PrintStream;
+
+/**
+ * 可重複使用的終端輸出緩衝區 (ConsoleResultSubscriber 專用)
+ * - 數字直接格式化成字元, 不經過 String.format / StringBuilder, 穩定狀態下不配置任何物件
+ * - 內容以 UTF-8 編碼累積在 byte[] 中, 一次寫出
+ * - 提供 ANSI 游標定位 / 清除行等控制碼
+ *
+ * 非執行緒安全, 只應由單一 render 線程使用
+ */
+final class TerminalBuffer {
+
+    private static final long[] POW10 = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L};
+    private static final double MAX_FIXED = 1e15; // 超過此值改用 Double.toString (極少見, 允許配置)
+
+    private byte[] bytes;
+    private int length;
+    private final char[] scratch = new char[64]; // 數字由後往前填入
+
+    TerminalBuffer(int initialCapacity) {
+        this.bytes = new byte[initialCapacity];
+    }
+
+    void reset() {
+        length = 0;
+    }
+
+    int length() {
+        return length;
+    }
+
+    void writeTo(PrintStream out) {
+        out.write(bytes, 0, length);
+        out.flush();
+    }
+
+    // --- 文字 ---------------------------------------------------------------------------------------------------------
+    TerminalBuffer append(char c) {
+        ensureCapacity(3);
+        if (c < 0x80) {
+            bytes[length++] = (byte) c;
+        } else if (c < 0x800) {
+            bytes[length++] = (byte) (0xC0 | (c >> 6));
+            bytes[length++] = (byte) (0x80 | (c & 0x3F));
+        } else {
+            bytes[length++] = (byte) (0xE0 | (c >> 12));
+            bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[length++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return this;
+    }
+
+    TerminalBuffer append(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            append(s.charAt(i));
+        }
+        return this;
+    }
+
+    TerminalBuffer repeat(char c, int count) {
+        for (int i = 0; i < count; i++) {
+            append(c);
+        }
+        return this;
+    }
+
+    /** 靠左對齊, 不足 width 以空白補齊 (等同 %-Ns) */
+    TerminalBuffer appendLeft(String s, int width) {
+        append(s);
+        return repeat(' ', width - s.length());
+    }
+
+    // --- 數字 (靠右對齊) ------------------------------------------------------------------------------------------------
+    /** 等同 %Nd */
+    TerminalBuffer appendLong(long v, int width) {
+        if (v == Long.MIN_VALUE) {
+            return appendRight(Long.toString(v), width);
+        }
+        int start = formatDigits(Math.abs(v), false, scratch.length);
+        if (v < 0) {
+            scratch[--start] = '-';
+        }
+        return appendScratch(start, width);
+    }
+
+    /**
+     * 等同 %N.Df (grouping = true 時等同 %,N.Df)
+     * 以二進位值四捨五入; 剛好落在進位邊界 (e.g., 2.445) 時最後一位可能與 String.format 差 1
+     */
+    TerminalBuffer appendFixed(double v, int decimals, boolean grouping, int width) {
+        if (!(Math.abs(v) < MAX_FIXED)) {
+            return appendRight(Double.toString(v), width);
+        }
+        return appendScratch(formatFixed(v, decimals, grouping, scratch.length), width);
+    }
+
+    /** 變化百分比: "0.00%", "▲ +1.23%" 或 "▼ 1.23%" */
+    TerminalBuffer appendPercentChange(double pctChange, int width) {
+        if (!(Math.abs(pctChange * 100) < MAX_FIXED)) {
+            return appendRight(Double.toString(pctChange), width);
+        }
+        int end = scratch.length;
+        scratch[--end] = '%';
+        if (Math.abs(pctChange) < 0.000001) {
+            return appendScratch(formatFixed(0.0, 2, false, end), width);
+        }
+        int start = formatFixed(Math.abs(pctChange * 100), 2, false, end);
+        if (pctChange > 0) {
+            scratch[--start] = '+';
+            scratch[--start] = ' ';
+            scratch[--start] = '▲';
+        } else {
+            scratch[--start] = ' ';
+            scratch[--start] = '▼';
+        }
+        return appendScratch(start, width);
+    }
+
+    /** HH:mm:ss (本地時區) */
+    TerminalBuffer appendTime(long epochMillis, int zoneOffsetMillis) {
+        long secondOfDay = Math.floorMod((epochMillis + zoneOffsetMillis) / 1000, 86_400L);
+        appendTwoDigits((int) (secondOfDay / 3600)).append(':');
+        appendTwoDigits((int) (secondOfDay / 60 % 60)).append(':');
+        return appendTwoDigits((int) (secondOfDay % 60));
+    }
+
+    // --- ANSI 控制碼 --------------------------------------------------------------------------------------------------
+    /** 移動游標到第 row 行第 col 欄 (皆從 1 開始) */
+    TerminalBuffer cursorTo(int row, int col) {
+        append('\u001B').append('[');
+        appendLong(row, 0).append(';');
+        return appendLong(col, 0).append('H');
+    }
+
+    TerminalBuffer clearToEndOfLine() {
+        return append("\u001B[K");
+    }
+
+    TerminalBuffer clearScreen() {
+        return append("\u001B[H\u001B[2J");
+    }
+
+    // --- 內部 ---------------------------------------------------------------------------------------------------------
+    private TerminalBuffer appendTwoDigits(int v) {
+        return append((char) ('0' + v / 10)).append((char) ('0' + v % 10));
+    }
+
+    private TerminalBuffer appendRight(String s, int width) {
+        repeat(' ', width - s.length());
+        return append(s);
+    }
+
+    private TerminalBuffer appendScratch(int start, int width) {
+        repeat(' ', width - (scratch.length - start));
+        for (int i = start; i < scratch.length; i++) {
+            append(scratch[i]);
+        }
+        return this;
+    }
+
+    // 由 end 往前填入定點小數, 回傳起始位置
+    private int formatFixed(double v, int decimals, boolean grouping, int end) {
+        long units = Math.round(Math.abs(v) * POW10[decimals]);
+        int pos = end;
+        for (int d = 0; d < decimals; d++) {
+            scratch[--pos] = (char) ('0' + units % 10);
+            units /= 10;
+        }
+        if (decimals > 0) {
+            scratch[--pos] = '.';
+        }
+        pos = formatDigits(units, grouping, pos);
+        if (v < 0 && hasNonZeroDigit(pos, end)) {
+            scratch[--pos] = '-';
+        }
+        return pos;
+    }
+
+    // 由 end 往前填入非負整數, 回傳起始位置
+    private int formatDigits(long value, boolean grouping, int end) {
+        int pos = end;
+        int digits = 0;
+        do {
+            if (grouping && digits > 0 && digits % 3 == 0) {
+                scratch[--pos] = ',';
+            }
+            scratch[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+            digits++;
+        } while (value > 0);
+        return pos;
+    }
+
+    // 四捨五入後為 0 的負數不印負號
+    private boolean hasNonZeroDigit(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (scratch[i] > '0' && scratch[i] <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > bytes.length) {
+            byte[] grown = new byte[Math.max(bytes.length * 2, length + extra)];
+            System.arraycopy(bytes, 0, grown, 0, length);
+            bytes = grown;
+        }
+    }
+}
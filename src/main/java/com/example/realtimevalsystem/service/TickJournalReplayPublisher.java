@@ -0,0 +1,201 @@
+package com.example.realtimevalsystem.service;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 報價日誌重播發布者
+ * - 依序讀取 TickJournalWriter 寫出的所有 segment, 透過 MarketDataListener / SymbolIdMarketDataListener 重新發布
+ * - 每個 segment 的代碼字典在開啟時對應到 SymbolTable 的 id 一次, 之後每筆記錄以陣列查出代碼 id, 不雜湊 String
+ * - RECORDED: 依記錄的時間間隔重播 (重現事故); MAX: 不等待, 盡快重播 (也可當作估值引擎的吞吐量 benchmark)
+ * - 可取代 MarketDataPublisher 作為市場數據線程 (run)
+ */
+public class TickJournalReplayPublisher implements Runnable {
+
+    public enum Speed {
+        /** 依記錄的時間間隔重播 */
+        RECORDED,
+        /** 不等待, 盡快重播 */
+        MAX;
+
+        /**
+         * @param name "recorded" 或 "max" (不分大小寫)
+         */
+        public static Speed fromName(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    private static final long SLEEP_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final Path directory;
+    private final Speed speed;
+    private final SymbolTable symbols;
+    private final List<MarketDataListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<SymbolIdMarketDataListener> symbolIdListeners = new CopyOnWriteArrayList<>();
+    private volatile long ticksReplayed;
+
+    public TickJournalReplayPublisher(Path directory, Speed speed) {
+        this(directory, speed, new SymbolTable());
+    }
+
+    /**
+     * @param symbols 代碼符號表 (日誌的代碼在此指派 id, 送給 SymbolIdMarketDataListener; 通常與估值服務共用同一個)
+     */
+    public TickJournalReplayPublisher(Path directory, Speed speed, SymbolTable symbols) {
+        this.directory = directory;
+        this.speed = speed;
+        this.symbols = symbols;
+    }
+
+    /**
+     * 註冊一個監聽器來接收價格更新 (取代所有已註冊的監聽器)
+     */
+    public void setListener(MarketDataListener listener) {
+        listeners.clear();
+        symbolIdListeners.clear();
+        listeners.add(listener);
+    }
+
+    public void addListener(MarketDataListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(MarketDataListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 增加一個以代碼 id 接收價格的監聽器 (不傳遞 String)
+     */
+    public void addSymbolIdListener(SymbolIdMarketDataListener listener) {
+        symbolIdListeners.add(listener);
+    }
+
+    public void removeSymbolIdListener(SymbolIdMarketDataListener listener) {
+        symbolIdListeners.remove(listener);
+    }
+
+    @Override
+    public void run() {
+        try {
+            long count = replay();
+            System.out.println("報價日誌重播完畢: " + count + " 筆");
+        } catch (IOException e) {
+            System.err.println("報價日誌重播失敗: " + directory);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 在呼叫者線程上重播整個日誌 (被中斷時提前結束)
+     * @return 重播的報價數
+     */
+    public long replay() throws IOException {
+        long count = 0;
+        long firstTimestamp = 0;
+        long startNanos = 0;
+        for (Path file : listSegments()) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                segment.order(ByteOrder.LITTLE_ENDIAN);
+                String[] tickers = readHeader(file, segment);
+                int[] symbolIds = new int[tickers.length]; // 日誌的代碼索引 -> 代碼 id
+                for (int i = 0; i < tickers.length; i++) {
+                    symbolIds[i] = symbols.intern(tickers[i]);
+                }
+                int headerSize = segment.getInt(TickJournalWriter.OFFSET_HEADER_SIZE);
+                long capacity = segment.getLong(TickJournalWriter.OFFSET_CAPACITY);
+
+                for (long r = 0; r < capacity; r++) {
+                    int position = (int) (headerSize + r * TickJournalWriter.RECORD_SIZE);
+                    long timestamp = segment.getLong(position + TickJournalWriter.RECORD_TIMESTAMP);
+                    if (timestamp == 0) {
+                        break; // 此 segment 的結尾 (未寫滿)
+                    }
+                    if (count == 0) {
+                        firstTimestamp = timestamp;
+                        startNanos = System.nanoTime();
+                    } else if (speed == Speed.RECORDED && !waitUntil(startNanos + (timestamp - firstTimestamp))) {
+                        return count; // 被中斷
+                    }
+
+                    int tickerIndex = segment.getInt(position + TickJournalWriter.RECORD_TICKER_ID);
+                    double price = segment.getDouble(position + TickJournalWriter.RECORD_PRICE);
+                    for (MarketDataListener listener : listeners) {
+                        listener.onStockPriceUpdate(tickers[tickerIndex], price);
+                    }
+                    if (!symbolIdListeners.isEmpty()) {
+                        long tickNanos = System.nanoTime();
+                        for (SymbolIdMarketDataListener listener : symbolIdListeners) {
+                            listener.onStockPriceUpdate(symbolIds[tickerIndex], price, tickNanos);
+                        }
+                    }
+                    ticksReplayed = ++count;
+                }
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(TickJournalWriter.SEGMENT_PREFIX) && name.endsWith(TickJournalWriter.SEGMENT_SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static String[] readHeader(Path file, MappedByteBuffer segment) throws IOException {
+        if (segment.getInt(0) != TickJournalWriter.MAGIC || segment.getInt(4) != TickJournalWriter.VERSION) {
+            throw new IOException("不是有效的報價日誌檔案: " + file);
+        }
+        String[] tickers = new String[segment.getInt(TickJournalWriter.OFFSET_TICKER_COUNT)];
+        segment.position(TickJournalWriter.OFFSET_DICTIONARY);
+        for (int i = 0; i < tickers.length; i++) {
+            byte[] bytes = new byte[segment.getShort()];
+            segment.get(bytes);
+            tickers[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return tickers;
+    }
+
+    // 長的等待用 sleep, 最後一小段用 parkNanos 以提高精準度; 被中斷時回傳 false
+    private static boolean waitUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            if (remaining > SLEEP_THRESHOLD_NANOS) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(remaining - SLEEP_THRESHOLD_NANOS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // 保持中斷狀態
+                    return false;
+                }
+            } else {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    public long getTicksReplayed() { return ticksReplayed; }
+}
@@ -0,0 +1,221 @@
+package com.example.realtimevalsystem.service;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 只能附加的二進位報價日誌 (tick journal)
+ * - 以 SymbolIdMarketDataListener 的身分掛在 MarketDataPublisher 上, 記錄每一筆 (時間戳, 股票代碼 id, 價格);
+ *   發布者的代碼 id (SymbolTable) 以陣列對應到日誌字典中的位置, 熱路徑上不雜湊 String
+ * - 透過 memory-mapped 檔案寫入固定長度的記錄, 每筆報價只是幾次記憶體寫入: 沒有物件配置, 也沒有系統呼叫
+ * - 一個 segment 寫滿後換到下一個檔案 (ticks-00000.journal, ticks-00001.journal, ...), 只有換檔時才有 I/O
+ * - 目錄中已有 segment 時, 新的 segment 接在最後一個之後 (重播時依檔名順序讀取)
+ *
+ * 檔案格式 (little-endian):
+ *   header: magic(int) version(int) headerSize(int) tickerCount(int) createdEpochMillis(long) recordCapacity(long)
+ *           之後為股票代碼字典: 每個代碼為 length(short) + UTF-8 bytes, 代碼 id 即字典中的位置
+ *   record: timestampNanos(long, epoch 奈秒) tickerId(int) reserved(int) price(double), 共 24 bytes
+ * 檔案預先配置並填 0, 時間戳為 0 的記錄代表日誌結尾 (時間戳最後才寫入)
+ *
+ * 非執行緒安全: 只應由單一市場數據線程寫入 (MarketDataPublisher 在自己的線程上依序呼叫監聽器)
+ */
+public class TickJournalWriter implements SymbolIdMarketDataListener, AutoCloseable {
+
+    // --- 檔案格式 (TickJournalReplayPublisher 共用) ------------------------------------------------------------------
+    static final int MAGIC = 0x4E41564A; // "NAVJ"
+    static final int VERSION = 1;
+    static final int RECORD_SIZE = 24;
+    static final int OFFSET_HEADER_SIZE = 8;
+    static final int OFFSET_TICKER_COUNT = 12;
+    static final int OFFSET_CREATED = 16;
+    static final int OFFSET_CAPACITY = 24;
+    static final int OFFSET_DICTIONARY = 32;
+    static final int RECORD_TIMESTAMP = 0;
+    static final int RECORD_TICKER_ID = 8;
+    static final int RECORD_PRICE = 16;
+    static final String SEGMENT_PREFIX = "ticks-";
+    static final String SEGMENT_SUFFIX = ".journal";
+    static final int MAX_RECORDS_PER_SEGMENT = (Integer.MAX_VALUE - 65_536) / RECORD_SIZE; // 單一 mapping 最大 2GB
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final List<String> tickers = new ArrayList<>();
+    private final int[] tickerIdsBySymbolId; // 代碼 id -> 字典中的位置 (-1 = 不記錄)
+
+    // epoch 奈秒時間戳 = 建立時的 epoch 時間 + 單調時鐘的經過時間
+    private final long baseEpochNanos;
+    private final long baseNanoTime;
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentIndex = -1;
+    private int headerSize;
+    private int recordsInSegment;
+    private boolean failed;
+
+    private long recordsWritten;
+    private long ticksIgnored;
+
+    /**
+     * @param directory         日誌目錄 (不存在時自動建立)
+     * @param tickers           會被記錄的股票代碼 (寫入每個 segment 的字典)
+     * @param symbols           發布者的代碼符號表 (代碼在此指派 id)
+     * @param recordsPerSegment 每個 segment 的記錄數
+     */
+    public TickJournalWriter(Path directory, Collection<String> tickers, SymbolTable symbols, int recordsPerSegment) throws IOException {
+        if (recordsPerSegment < 1 || recordsPerSegment > MAX_RECORDS_PER_SEGMENT) {
+            throw new IllegalArgumentException("recordsPerSegment must be in [1, " + MAX_RECORDS_PER_SEGMENT + "]: " + recordsPerSegment);
+        }
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        int[] symbolIds = new int[tickers.size()];
+        int maxSymbolId = -1;
+        int n = 0;
+        for (String ticker : tickers) {
+            symbolIds[n] = symbols.intern(ticker);
+            maxSymbolId = Math.max(maxSymbolId, symbolIds[n++]);
+        }
+        this.tickerIdsBySymbolId = new int[maxSymbolId + 1];
+        Arrays.fill(tickerIdsBySymbolId, -1);
+        for (int i = 0; i < n; i++) {
+            if (tickerIdsBySymbolId[symbolIds[i]] < 0) { // 重複的代碼只登錄一次
+                tickerIdsBySymbolId[symbolIds[i]] = this.tickers.size();
+                this.tickers.add(symbols.symbol(symbolIds[i]));
+            }
+        }
+        this.baseEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        this.baseNanoTime = System.nanoTime();
+        Files.createDirectories(directory);
+        this.segmentIndex = lastSegmentIndex(directory); // 目錄中已有日誌時接在後面, 不覆寫
+        rollSegment();
+    }
+
+    /**
+     * 市場數據線程: 附加一筆記錄; 未註冊的股票代碼會被忽略 (計入 ticksIgnored)
+     */
+    @Override
+    public void onStockPriceUpdate(int symbolId, double newPrice) {
+        int tickerId = symbolId >= 0 && symbolId < tickerIdsBySymbolId.length ? tickerIdsBySymbolId[symbolId] : -1;
+        if (tickerId < 0 || failed) {
+            ticksIgnored++;
+            return;
+        }
+        if (recordsInSegment == recordsPerSegment) {
+            try {
+                rollSegment();
+            } catch (IOException e) {
+                failed = true;
+                System.err.println("報價日誌換檔失敗, 之後的報價不再記錄: " + e.getMessage());
+                e.printStackTrace();
+                ticksIgnored++;
+                return;
+            }
+        }
+
+        int position = headerSize + recordsInSegment * RECORD_SIZE;
+        segment.putInt(position + RECORD_TICKER_ID, tickerId);
+        segment.putDouble(position + RECORD_PRICE, newPrice);
+        segment.putLong(position + RECORD_TIMESTAMP, baseEpochNanos + (System.nanoTime() - baseNanoTime));
+        recordsInSegment++;
+        recordsWritten++;
+    }
+
+    // --- segment 管理 (只在建立與換檔時執行) -----------------------------------------------------------------------------
+    private void rollSegment() throws IOException {
+        closeSegment();
+        segmentIndex++;
+        Path file = directory.resolve(segmentFileName(segmentIndex));
+
+        byte[][] encoded = new byte[tickers.size()][];
+        int dictionarySize = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = tickers.get(i).getBytes(StandardCharsets.UTF_8);
+            dictionarySize += 2 + encoded[i].length;
+        }
+        headerSize = alignToRecord(OFFSET_DICTIONARY + dictionarySize);
+        long segmentSize = headerSize + (long) recordsPerSegment * RECORD_SIZE;
+        if (segmentSize > Integer.MAX_VALUE) {
+            throw new IOException("segment 超過 2GB, 請減少 recordsPerSegment: " + segmentSize);
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(0, MAGIC);
+        segment.putInt(4, VERSION);
+        segment.putInt(OFFSET_HEADER_SIZE, headerSize);
+        segment.putInt(OFFSET_TICKER_COUNT, encoded.length);
+        segment.putLong(OFFSET_CREATED, System.currentTimeMillis());
+        segment.putLong(OFFSET_CAPACITY, recordsPerSegment);
+        segment.position(OFFSET_DICTIONARY);
+        for (byte[] ticker : encoded) {
+            segment.putShort((short) ticker.length);
+            segment.put(ticker);
+        }
+        recordsInSegment = 0;
+    }
+
+    private void closeSegment() throws IOException {
+        if (channel != null) {
+            segment.force();
+            channel.close(); // mapping 在 buffer 被 GC 時才釋放 (JDK 8 沒有公開的 unmap API)
+            channel = null;
+            segment = null;
+        }
+    }
+
+    private static int alignToRecord(int size) {
+        return (size + RECORD_SIZE - 1) / RECORD_SIZE * RECORD_SIZE;
+    }
+
+    private static int lastSegmentIndex(Path directory) throws IOException {
+        int last = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    last = Math.max(last, Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // 不是本類別產生的檔名, 略過
+                }
+            }
+        }
+        return last;
+    }
+
+    static String segmentFileName(int index) {
+        return String.format("%s%05d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * 將目前 segment 寫回磁碟 (msync), 不應在每筆報價後呼叫
+     * 可在其他線程 (e.g., shutdown hook) 呼叫; 寫入中的記錄可能尚未完整, 重播時以時間戳判斷
+     */
+    public void flush() {
+        MappedByteBuffer current = segment;
+        if (current != null) {
+            current.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+    }
+
+    public long getRecordsWritten() { return recordsWritten; }
+    public long getTicksIgnored() { return ticksIgnored; }
+    public int getSegmentCount() { return segmentIndex + 1; }
+}
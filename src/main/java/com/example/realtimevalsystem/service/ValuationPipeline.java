@@ -0,0 +1,185 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.PortfolioUpdate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Ring buffer 事件管線: 市場數據 -> 估值 -> 訂閱者
+ *
+ *   MarketDataThread --[tick ring]--> ValuationStage --[update ring]--> FanOutStage --> 訂閱者
+ *
+ * - 每個階段在自己的線程上執行, 之間只以預先配置的 ring buffer 與序號溝通, 熱路徑上沒有鎖
+ * - 估值階段一次取出所有可用的 tick, 以 onStockPriceBatch 整批套用後只發布一次
+ * - 等待策略 (busy-spin / yield / park) 決定延遲與 CPU 使用的取捨
+ * - 每個階段的 queue depth 與延遲直方圖可隨時讀取
+ * - 報價可以代碼或代碼 id 送入; 估值階段一律以代碼 id 整批送給估值服務 (代碼在估值線程上轉成 id)
+ * - 報價帶建立時間時以該時間為 tick 的時間戳, 否則以放入 tick ring 的時間; 每批以最早的時間戳送給估值服務
+ */
+public class ValuationPipeline implements MarketDataListener, SymbolIdMarketDataListener {
+
+    // --- 事件 (預先配置, 重複使用) ---------------------------------------------------------------------------------------
+    static final class TickEvent {
+        String ticker;    // 以代碼送入時使用
+        int symbolId;     // 以代碼 id 送入時使用 (否則為 NO_SYMBOL)
+        double price;
+        long createdNanos;
+    }
+
+    static final class UpdateEvent {
+        PortfolioUpdate update;
+        long publishedNanos;
+    }
+
+    private final PortfolioValuationService valuationService;
+    private final SymbolTable symbols;
+    private final List<PortfolioResultListener> subscribers = new CopyOnWriteArrayList<>();
+
+    private final RingBuffer<TickEvent> tickRing;
+    private final RingBuffer<UpdateEvent> updateRing;
+    private final EventProcessor<TickEvent> valuationStage;
+    private final EventProcessor<UpdateEvent> fanOutStage;
+    private final List<Thread> threads = new ArrayList<>();
+
+    // 估值階段的批次緩衝區 (只在估值線程上使用)
+    private final int[] batchSymbolIds;
+    private final double[] batchPrices;
+    private int batchCount;
+    private long batchTickNanos; // 本批最早的 tick 時間戳
+
+    // --- 延遲直方圖 ---------------------------------------------------------------------------------------------------
+    private final LatencyHistogram tickQueueLatency = new LatencyHistogram("tick-queue");
+    private final LatencyHistogram valuationLatency = new LatencyHistogram("valuation");
+    private final LatencyHistogram updateQueueLatency = new LatencyHistogram("update-queue");
+    private final LatencyHistogram fanOutLatency = new LatencyHistogram("fan-out");
+
+    /**
+     * @param valuationService 估值服務 (其結果監聽器會被設定為本管線)
+     * @param bufferSize       每個 ring buffer 的大小, 必須是 2 的次方
+     * @param waitStrategy     各階段的等待策略
+     */
+    public ValuationPipeline(PortfolioValuationService valuationService, int bufferSize, WaitStrategy waitStrategy) {
+        this.valuationService = valuationService;
+        this.symbols = valuationService.getSymbolTable();
+        this.tickRing = new RingBuffer<>(bufferSize, TickEvent::new, waitStrategy);
+        this.updateRing = new RingBuffer<>(bufferSize, UpdateEvent::new, waitStrategy);
+        this.batchSymbolIds = new int[bufferSize];
+        this.batchPrices = new double[bufferSize];
+
+        this.valuationStage = new EventProcessor<>(tickRing, this::onTick);
+        this.fanOutStage = new EventProcessor<>(updateRing, this::onUpdate);
+        valuationService.setListener(this::publishUpdate);
+    }
+
+    public void addSubscriber(PortfolioResultListener subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void start() {
+        startStage(valuationStage, "ValuationThread");
+        startStage(fanOutStage, "FanOutThread");
+    }
+
+    public void stop() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    private void startStage(Runnable stage, String name) {
+        Thread thread = new Thread(stage);
+        thread.setName(name);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    // --- 階段 0: 市場數據線程 (單一生產者) --------------------------------------------------------------------------------
+    @Override
+    public void onStockPriceUpdate(String ticker, double newPrice) {
+        publishTick(ticker, SymbolTable.NO_SYMBOL, newPrice, System.nanoTime());
+    }
+
+    @Override
+    public void onStockPriceUpdate(int symbolId, double newPrice) {
+        publishTick(null, symbolId, newPrice, System.nanoTime());
+    }
+
+    @Override
+    public void onStockPriceUpdate(int symbolId, double newPrice, long tickNanos) {
+        publishTick(null, symbolId, newPrice, tickNanos);
+    }
+
+    private void publishTick(String ticker, int symbolId, double newPrice, long tickNanos) {
+        long sequence;
+        try {
+            sequence = tickRing.next();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // 保持中斷狀態, 丟棄此 tick
+            return;
+        }
+        TickEvent event = tickRing.get(sequence);
+        event.ticker = ticker;
+        event.symbolId = symbolId;
+        event.price = newPrice;
+        event.createdNanos = tickNanos;
+        tickRing.publish(sequence);
+    }
+
+    // --- 階段 1: 估值線程 ---------------------------------------------------------------------------------------------
+    private void onTick(TickEvent event, long sequence, boolean endOfBatch) {
+        long now = System.nanoTime();
+        tickQueueLatency.record(now - event.createdNanos);
+        int symbolId = event.ticker == null ? event.symbolId : symbols.idOf(event.ticker);
+        if (symbolId >= 0) { // 沒有 id 的代碼不在帳本中, 略過
+            if (batchCount == 0 || event.createdNanos - batchTickNanos < 0L) {
+                batchTickNanos = event.createdNanos;
+            }
+            batchSymbolIds[batchCount] = symbolId;
+            batchPrices[batchCount] = event.price;
+            batchCount++;
+        }
+
+        if ((endOfBatch && batchCount > 0) || batchCount == batchSymbolIds.length) {
+            valuationService.onStockPriceBatch(batchSymbolIds, batchPrices, batchCount, batchTickNanos);
+            valuationLatency.record(System.nanoTime() - now);
+            batchCount = 0;
+        }
+    }
+
+    // 估值服務的結果監聽器: 在估值線程上把更新放入 update ring
+    private void publishUpdate(PortfolioUpdate update) {
+        long sequence;
+        try {
+            sequence = updateRing.next();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        UpdateEvent event = updateRing.get(sequence);
+        event.update = update;
+        event.publishedNanos = System.nanoTime();
+        updateRing.publish(sequence);
+    }
+
+    // --- 階段 2: 分派線程 ---------------------------------------------------------------------------------------------
+    private void onUpdate(UpdateEvent event, long sequence, boolean endOfBatch) {
+        long now = System.nanoTime();
+        updateQueueLatency.record(now - event.publishedNanos);
+        for (PortfolioResultListener subscriber : subscribers) {
+            subscriber.onPortfolioUpdate(event.update);
+        }
+        event.update = null; // 釋放參考, 讓更新可以被 GC
+        fanOutLatency.record(System.nanoTime() - now);
+    }
+
+    // --- 觀測 --------------------------------------------------------------------------------------------------------
+    public long getTickQueueDepth() { return tickRing.getDepth(); }
+    public long getUpdateQueueDepth() { return updateRing.getDepth(); }
+    public LatencyHistogram getTickQueueLatency() { return tickQueueLatency; }
+    public LatencyHistogram getValuationLatency() { return valuationLatency; }
+    public LatencyHistogram getUpdateQueueLatency() { return updateQueueLatency; }
+    public LatencyHistogram getFanOutLatency() { return fanOutLatency; }
+}
@@ -0,0 +1,99 @@
+package com.example.realtimevalsystem.service;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 等待策略: 決定消費者 (或等待空位的生產者) 在序號尚未到達時如何等待
+ * - BUSY_SPIN: 最低延遲, 持續佔用一顆 CPU
+ * - YIELDING:  自旋一段時間後 Thread.yield(), 延遲低且讓出 CPU 給其他線程
+ * - PARKING:   自旋後 LockSupport.parkNanos, CPU 使用最少, 延遲最高 (約數十微秒)
+ * 所有策略都不使用鎖, 以輪詢序號的方式等待; 線程被中斷時丟出 InterruptedException
+ */
+public interface WaitStrategy {
+
+    WaitStrategy BUSY_SPIN = new BusySpin();
+    WaitStrategy YIELDING = new Yielding();
+    WaitStrategy PARKING = new Parking(50_000L);
+
+    /**
+     * 等待直到 dependency >= sequence
+     * @return dependency 目前的值 (可能大於 sequence, 供整批處理)
+     */
+    long waitFor(long sequence, Sequence dependency) throws InterruptedException;
+
+    /**
+     * 依名稱取得策略 ("busy-spin", "yield", "park"), 供設定檔 / 系統參數使用
+     */
+    static WaitStrategy fromName(String name) {
+        switch (name) {
+            case "busy-spin":
+                return BUSY_SPIN;
+            case "yield":
+                return YIELDING;
+            case "park":
+                return PARKING;
+            default:
+                throw new IllegalArgumentException("未知的等待策略: " + name);
+        }
+    }
+
+    static void checkInterrupted() throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    final class BusySpin implements WaitStrategy {
+        @Override
+        public long waitFor(long sequence, Sequence dependency) throws InterruptedException {
+            long available;
+            while ((available = dependency.get()) < sequence) {
+                checkInterrupted();
+            }
+            return available;
+        }
+    }
+
+    final class Yielding implements WaitStrategy {
+        private static final int SPIN_TRIES = 100;
+
+        @Override
+        public long waitFor(long sequence, Sequence dependency) throws InterruptedException {
+            long available;
+            int counter = SPIN_TRIES;
+            while ((available = dependency.get()) < sequence) {
+                checkInterrupted();
+                if (counter > 0) {
+                    counter--;
+                } else {
+                    Thread.yield();
+                }
+            }
+            return available;
+        }
+    }
+
+    final class Parking implements WaitStrategy {
+        private static final int SPIN_TRIES = 100;
+        private final long parkNanos;
+
+        public Parking(long parkNanos) {
+            this.parkNanos = parkNanos;
+        }
+
+        @Override
+        public long waitFor(long sequence, Sequence dependency) throws InterruptedException {
+            long available;
+            int counter = SPIN_TRIES;
+            while ((available = dependency.get()) < sequence) {
+                checkInterrupted();
+                if (counter > 0) {
+                    counter--;
+                } else {
+                    LockSupport.parkNanos(parkNanos);
+                }
+            }
+            return available;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.PortfolioUpdate;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * CompiledBook 熱路徑不配置物件
+ * 以 com.sun.management.ThreadMXBean.getThreadAllocatedBytes 量測暖機 (JIT 編譯) 之後 TICKS 次
+ * updateUnderlyingPrice / setQuantity 期間本線程配置的位元組數, 扣除量測本身的配置後必須為 0:
+ * - 完整定價, 快速模式 (泰勒展開), 共用合約價格 (兩個帳本共用一個 ContractPriceTable, 一個定價一個複製)
+ * 插值模式在標的價格移出範圍時會要求背景建表 (配置新的插值表), 不在檢查範圍內
+ *
+ * PortfolioValuationService 的發布 (onStockPriceBatch -> publish) 會配置不可變的 PortfolioUpdate 與變動的列
+ * (訂閱者可以保留或跨線程傳遞), 不是 0; 這裡檢查 DELTA 模式下每次發布的配置量只與變動的列數有關, 不隨帳本大小成長
+ */
+class AllocationTest {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int TICKS = 100_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final SyntheticBookGenerator synthetic = new SyntheticBookGenerator(200, 20, 13L);
+    private final OptionPricingService pricingService = new OptionPricingService();
+
+    // 預先產生報價與數量, 量測期間不產生亂數或配置物件
+    private final int[] underlyings = new int[TICKS];
+    private final double[] prices = new double[TICKS];
+    private final int[] positions = new int[TICKS];
+    private final long[] quantities = new long[TICKS];
+
+    AllocationTest() {
+        CompiledBook book = newBook();
+        RandomStream random = RandomStream.create(RandomStream.SPLITTABLE, 31L);
+        for (int i = 0; i < TICKS; i++) {
+            underlyings[i] = random.nextInt(book.underlyingCount());
+            prices[i] = book.getUnderlyingPrice(underlyings[i]) * (1.0 + 0.01 * (2.0 * random.nextDouble() - 1.0));
+            positions[i] = random.nextInt(book.size());
+            quantities[i] = random.nextInt(20001) - 10000;
+        }
+    }
+
+    @Test
+    void exactPricingDoesNotAllocate() {
+        assertEquals(0L, allocatedBytes(newBook(), null), "完整定價配置的位元組數");
+    }
+
+    @Test
+    void fastModeDoesNotAllocate() {
+        CompiledBook fast = newBook();
+        fast.enableFastMode(0.02, Long.MAX_VALUE);
+        assertEquals(0L, allocatedBytes(fast, null), "快速模式配置的位元組數");
+    }
+
+    @Test
+    void sharedContractPricesDoNotAllocate() {
+        ContractPriceTable table = new ContractPriceTable(synthetic.getSecurities(), synthetic.getSecurities().keySet(), pricingService);
+        CompiledBook shared = newBook();
+        CompiledBook sharedCopy = newBook();
+        shared.shareContractPrices(table);
+        sharedCopy.shareContractPrices(table);
+        assertEquals(0L, allocatedBytes(shared, sharedCopy), "共用合約價格配置的位元組數");
+        assertTrue(table.getSharedCount() > 0, "第二個帳本沒有直接共用表中的價格");
+    }
+
+    @Test
+    void deltaPublishingDoesNotGrowWithTheBook() {
+        long small = publishedBytesPerTick(50, PortfolioValuationService.UpdateMode.DELTA);
+        long large = publishedBytesPerTick(1_000, PortfolioValuationService.UpdateMode.DELTA);
+        long snapshot = publishedBytesPerTick(1_000, PortfolioValuationService.UpdateMode.SNAPSHOT);
+        assertTrue(large <= small + small / 2 + 256,
+                () -> "DELTA 模式每次發布的配置隨帳本成長: 50 個標的 " + small + " bytes, 1000 個標的 " + large + " bytes");
+        assertTrue(snapshot > 10 * large,
+                () -> "完整快照應配置整個帳本的列表: 快照 " + snapshot + " bytes, DELTA " + large + " bytes");
+    }
+
+    // 每次發布一個標的的報價 (以代碼 id 整批送入), 暖機後每次發布平均配置的位元組數
+    private long publishedBytesPerTick(int underlyingCount, PortfolioValuationService.UpdateMode mode) {
+        assumeTrue(THREADS.isThreadAllocatedMemorySupported(), "此 JVM 不支援 getThreadAllocatedBytes");
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        SyntheticBookGenerator book = new SyntheticBookGenerator(underlyingCount, 20, 13L);
+        PortfolioValuationService service = new PortfolioValuationService(book.getPositions(), book.getSecurities(),
+                book.getInitialPrices(), pricingService);
+        PortfolioUpdate[] last = new PortfolioUpdate[1];
+        service.setListener(update -> last[0] = update);
+        service.setUpdateMode(mode, Integer.MAX_VALUE);
+
+        int ticks = 20_000;
+        int[] ids = new int[ticks];
+        double[] spots = new double[ticks];
+        RandomStream random = RandomStream.create(RandomStream.SPLITTABLE, 37L);
+        for (int i = 0; i < ticks; i++) {
+            String ticker = book.getTickers().get(random.nextInt(underlyingCount));
+            ids[i] = service.getSymbolTable().intern(ticker);
+            spots[i] = book.getInitialPrices().get(ticker) * (1.0 + 0.01 * (2.0 * random.nextDouble() - 1.0));
+        }
+        int[] batchIds = new int[1];
+        double[] batchPrices = new double[1];
+        long thread = Thread.currentThread().getId();
+        long before = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS / 4; round++) {
+            if (round == WARMUP_ROUNDS / 4) {
+                before = THREADS.getThreadAllocatedBytes(thread);
+            }
+            for (int i = 0; i < ticks; i++) {
+                batchIds[0] = ids[i];
+                batchPrices[0] = spots[i];
+                service.onStockPriceBatch(batchIds, batchPrices, 1, 0L);
+            }
+        }
+        assertTrue(last[0] != null, "沒有發布任何更新");
+        return (THREADS.getThreadAllocatedBytes(thread) - before) / ticks;
+    }
+
+    private CompiledBook newBook() {
+        return new CompiledBook(synthetic.getPositions(), synthetic.getSecurities(), synthetic.getInitialPrices(), pricingService);
+    }
+
+    private long allocatedBytes(CompiledBook book, CompiledBook copy) {
+        assumeTrue(THREADS.isThreadAllocatedMemorySupported(), "此 JVM 不支援 getThreadAllocatedBytes");
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            run(book, copy);
+        }
+        long thread = Thread.currentThread().getId();
+        long overhead = Long.MAX_VALUE; // 量測本身 (getThreadAllocatedBytes) 的配置
+        for (int k = 0; k < 10; k++) {
+            long before = THREADS.getThreadAllocatedBytes(thread);
+            overhead = Math.min(overhead, THREADS.getThreadAllocatedBytes(thread) - before);
+        }
+        long before = THREADS.getThreadAllocatedBytes(thread);
+        run(book, copy);
+        return THREADS.getThreadAllocatedBytes(thread) - before - overhead;
+    }
+
+    private void run(CompiledBook book, CompiledBook copy) {
+        for (int i = 0; i < TICKS; i++) {
+            book.updateUnderlyingPrice(underlyings[i], prices[i]);
+            book.setQuantity(positions[i], quantities[i]);
+            if (copy != null) {
+                copy.updateUnderlyingPrice(underlyings[i], prices[i]); // 相同價格: 直接複製表中的價格與 Greeks
+            }
+        }
+    }
+}
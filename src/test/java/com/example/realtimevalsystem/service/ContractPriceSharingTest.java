@@ -0,0 +1,127 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.CalculatedPosition;
+import com.example.realtimevalsystem.model.PortfolioUpdate;
+import com.example.realtimevalsystem.model.Position;
+import com.example.realtimevalsystem.model.Security;
+import com.example.realtimevalsystem.model.Stock;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 共用合約價格 (ContractPriceTable) 的正確性
+ * 同一組投資組合建立兩個多線程引擎 (共用 / 各自定價), 送入相同的報價序列:
+ * 每回合各標的連續跳動數次 (分片之間的 conflation 與寫入競爭), 等待處理完畢後,
+ * 每個投資組合最後一次更新中每筆持倉的價格必須與各自定價的引擎逐位元相同 (讀到舊的或寫入到一半的價格都會造成差異);
+ * 每 VOLATILITY_INTERVAL 回合更新部分合約的波動率 (updateVolatilities), 檢查參數版本不同時不會共用以舊參數計算的價格
+ * 表與服務的 N(x) 實作不同時 setContractPriceTable 拋出 IllegalArgumentException, 服務照常自行定價, 表不被使用
+ */
+class ContractPriceSharingTest {
+
+    private static final int THREADS = 4;
+    private static final int ROUNDS = 50;
+    private static final int MOVES_PER_ROUND = 5;
+    private static final int VOLATILITY_INTERVAL = 10;
+
+    private final SyntheticBookGenerator universe = SyntheticBookGenerator.forPositionCount(1_000, 20, 42L);
+
+    @Test
+    void sharedPricesMatchSeparatelyPricedEngine() {
+        Map<String, List<Position>> portfolios = universe.clientPortfolios(400, 50, 7L);
+        Map<String, PortfolioUpdate> sharedUpdates = new ConcurrentHashMap<>();
+        Map<String, PortfolioUpdate> separateUpdates = new ConcurrentHashMap<>();
+        MultiPortfolioValuationEngine sharedEngine = new MultiPortfolioValuationEngine(portfolios, universe.getSecurities(),
+                universe.getInitialPrices(), new OptionPricingService(), THREADS, true);
+        MultiPortfolioValuationEngine separateEngine = new MultiPortfolioValuationEngine(portfolios, universe.getSecurities(),
+                universe.getInitialPrices(), new OptionPricingService(), THREADS, false);
+        sharedEngine.setListener(sharedUpdates::put);
+        separateEngine.setListener(separateUpdates::put);
+        sharedEngine.start();
+        separateEngine.start();
+
+        Random random = new Random(11L);
+        double[] prices = new double[universe.getTickers().size()];
+        for (int u = 0; u < prices.length; u++) {
+            prices[u] = universe.getInitialPrices().get(universe.getTickers().get(u));
+        }
+        long compared = 0;
+        long mismatches = 0;
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                if (round % VOLATILITY_INTERVAL == VOLATILITY_INTERVAL - 1) {
+                    Map<String, Double> sigmas = new HashMap<>();
+                    for (Map.Entry<String, Security> entry : universe.getSecurities().entrySet()) {
+                        if (!(entry.getValue() instanceof Stock) && random.nextInt(4) == 0) {
+                            sigmas.put(entry.getKey(), 0.1 + 0.5 * random.nextDouble());
+                        }
+                    }
+                    sharedEngine.updateVolatilities(sigmas);
+                    separateEngine.updateVolatilities(sigmas);
+                }
+                for (int move = 0; move < MOVES_PER_ROUND; move++) {
+                    for (int u = 0; u < prices.length; u++) {
+                        prices[u] *= 1.0 + 0.002 * random.nextGaussian();
+                        sharedEngine.onStockPriceUpdate(universe.getTickers().get(u), prices[u]);
+                        separateEngine.onStockPriceUpdate(universe.getTickers().get(u), prices[u]);
+                    }
+                }
+                while (!sharedEngine.isIdle() || !separateEngine.isIdle()) {
+                    Thread.yield();
+                }
+                for (Map.Entry<String, PortfolioUpdate> entry : separateUpdates.entrySet()) {
+                    List<CalculatedPosition> expected = entry.getValue().getPositions();
+                    List<CalculatedPosition> actual = sharedUpdates.get(entry.getKey()).getPositions();
+                    for (int i = 0; i < expected.size(); i++) {
+                        compared++;
+                        if (Double.doubleToLongBits(expected.get(i).getPrice()) != Double.doubleToLongBits(actual.get(i).getPrice())) {
+                            mismatches++;
+                        }
+                    }
+                }
+            }
+        } finally {
+            sharedEngine.stop();
+            separateEngine.stop();
+        }
+
+        assertTrue(compared > 0, "沒有比較任何持倉價格");
+        assertEquals(0L, mismatches, "共用表的價格與各自定價不一致的筆數");
+        assertTrue(sharedEngine.getContractPriceTable().getSharedCount() > 0, "沒有任何帳本直接共用表中的價格");
+    }
+
+    // 表以查表 N(x) 定價, 服務以 Cody: 拒絕共用, 帳本照常自行定價, 表不被使用
+    @Test
+    void tableWithDifferentNormalCdfIsRejected() {
+        OptionPricingService cody = new OptionPricingService(NormalCdf.create(NormalCdf.CODY));
+        ContractPriceTable table = new ContractPriceTable(universe.getSecurities(), universe.getSecurities().keySet(),
+                new OptionPricingService(NormalCdf.create(NormalCdf.TABLE)));
+        PortfolioValuationService service = new PortfolioValuationService(universe.getPositions(), universe.getSecurities(),
+                universe.getInitialPrices(), cody);
+        assertThrows(IllegalArgumentException.class, () -> service.setContractPriceTable(table));
+
+        CompiledBook book = new CompiledBook(universe.getPositions(), universe.getSecurities(), universe.getInitialPrices(), cody);
+        assertThrows(IllegalArgumentException.class, () -> book.shareContractPrices(table));
+        AtomicReference<PortfolioUpdate> last = new AtomicReference<>();
+        service.setListener(last::set);
+        for (int u = 0; u < book.underlyingCount(); u++) {
+            double spot = book.getUnderlyingPrice(u) * 1.01;
+            book.updateUnderlyingPrice(u, spot);
+            service.onStockPriceUpdate(book.getUnderlyingTicker(u), spot);
+        }
+        List<CalculatedPosition> positions = last.get().getPositions();
+        for (int i = 0; i < book.size(); i++) {
+            assertEquals(book.getPrice(i), positions.get(i).getPrice(), book.getSymbol(i) + " 的價格");
+        }
+        assertEquals(0L, table.getComputedCount() + table.getSharedCount(), "N(x) 不同的表被使用的次數");
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.CalculatedPosition;
+import com.example.realtimevalsystem.model.EuropeanCallOption;
+import com.example.realtimevalsystem.model.EuropeanPutOption;
+import com.example.realtimevalsystem.model.ImpliedVolatilityResult;
+import com.example.realtimevalsystem.model.ImpliedVolatilityResult.Status;
+import com.example.realtimevalsystem.model.PortfolioUpdate;
+import com.example.realtimevalsystem.model.Security;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ImpliedVolatilityService
+ * - 往返: QUOTES 筆以已知波動率 (0.05 - 1.5, 到期 0.02 - 3 年, 履約價 50% - 200%) 計算的報價, 時間價值不小於 MIN_TIME_VALUE 的報價必須全部收斂,
+ *   以求得的波動率重新定價與報價的差 <= REPRICE_LIMIT (相對標的價格)
+ * - 邊界: 低於內含價值 / 高於上限的報價為 OUT_OF_BOUNDS, 非正數或 NaN 的輸入為 INVALID_INPUT
+ * - 送入估值引擎: 以合成帳本的代碼求解後呼叫 PortfolioValuationService.updateVolatilities, 下一次發布的價格必須等於報價
+ * 求解耗時見 ImpliedVolatilityBenchmark
+ */
+class ImpliedVolatilityServiceTest {
+
+    private static final int QUOTES = 1_000_000;
+    private static final double MIN_TIME_VALUE = 1e-6;   // 相對標的價格
+    private static final double REPRICE_LIMIT = 1e-9;    // 相對標的價格
+
+    private static final OptionPricingService PRICING = new OptionPricingService();
+
+    private final ImpliedVolatilityService service = new ImpliedVolatilityService(PRICING);
+
+    @Test
+    void solvedVolatilitiesRepriceTheQuotes() {
+        RandomStream random = RandomStream.create(RandomStream.SPLITTABLE, 2024L);
+        double[] prices = new double[QUOTES];
+        double[] spots = new double[QUOTES];
+        double[] strikes = new double[QUOTES];
+        double[] maturities = new double[QUOTES];
+        double[] signs = new double[QUOTES];
+        for (int i = 0; i < QUOTES; i++) {
+            spots[i] = 100.0;
+            strikes[i] = 100.0 * (0.5 + 1.5 * random.nextDouble());
+            maturities[i] = 0.02 + 2.98 * random.nextDouble();
+            double sigma = 0.05 + 1.45 * random.nextDouble();
+            signs[i] = (i & 1) == 0 ? OptionPricingService.CALL_SIGN : OptionPricingService.PUT_SIGN;
+            prices[i] = price(spots[i], strikes[i], sigma, maturities[i], signs[i]);
+        }
+        ImpliedVolatilityResult result = service.solve(prices, spots, strikes, maturities, signs,
+                Runtime.getRuntime().availableProcessors());
+
+        int eligible = 0;
+        int failures = 0;
+        double maxRepriceError = 0.0;
+        for (int i = 0; i < QUOTES; i++) {
+            double timeValue = prices[i] - Math.max(signs[i] * (spots[i] - OptionPricingService.discountedStrike(strikes[i], maturities[i])), 0.0);
+            if (timeValue < MIN_TIME_VALUE * spots[i]) {
+                continue; // 時間價值低於 double 可分辨的程度, 波動率無法由價格決定
+            }
+            eligible++;
+            if (result.getStatus(i) != Status.CONVERGED) {
+                failures++;
+                continue;
+            }
+            maxRepriceError = Math.max(maxRepriceError,
+                    Math.abs(price(spots[i], strikes[i], result.getVolatility(i), maturities[i], signs[i]) - prices[i]) / spots[i]);
+        }
+        assertTrue(eligible > QUOTES / 2, "有效報價太少: " + eligible);
+        assertEquals(0, failures, "未收斂的有效報價筆數");
+        double error = maxRepriceError;
+        assertTrue(error <= REPRICE_LIMIT, () -> String.format("重新定價最大相對誤差 %.3e 超過 %.0e", error, REPRICE_LIMIT));
+    }
+
+    @Test
+    void quotesOutsideTheBoundsAreRejected() {
+        double X = OptionPricingService.discountedStrike(90.0, 1.0);
+        double[] prices = {100.0 - X - 0.01, 100.0, X, 5.0, Double.NaN, 5.0};
+        double[] spots = {100.0, 100.0, 100.0, -1.0, 100.0, 100.0};
+        double[] strikes = {90.0, 90.0, 90.0, 90.0, 90.0, 90.0};
+        double[] maturities = {1.0, 1.0, 1.0, 1.0, 1.0, 0.0};
+        double[] signs = {1.0, 1.0, -1.0, 1.0, 1.0, 1.0};
+        Status[] expected = {Status.OUT_OF_BOUNDS, Status.OUT_OF_BOUNDS, Status.OUT_OF_BOUNDS,
+                Status.INVALID_INPUT, Status.INVALID_INPUT, Status.INVALID_INPUT};
+        ImpliedVolatilityResult result = service.solve(prices, spots, strikes, maturities, signs, 1);
+        assertEquals(expected.length, result.getFailures().size(), "失敗筆數");
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], result.getStatus(i), "第 " + i + " 筆的狀態");
+            assertTrue(Double.isNaN(result.getVolatility(i)), "第 " + i + " 筆的波動率應為 NaN");
+        }
+    }
+
+    @Test
+    void solvedVolatilitiesFeedTheValuationEngine() {
+        SyntheticBookGenerator synthetic = new SyntheticBookGenerator(50, 20, 5L);
+        Map<String, Security> securities = synthetic.getSecurities();
+        Map<String, Double> spots = synthetic.getInitialPrices();
+
+        // 市場報價: 以帳本波動率的 1.2 倍定價
+        Map<String, Double> quotes = new HashMap<>();
+        for (Security security : securities.values()) {
+            if (security instanceof EuropeanCallOption) {
+                EuropeanCallOption call = (EuropeanCallOption) security;
+                quotes.put(call.getTicker(), PRICING.calculateCallPrice(spots.get(call.getUnderlyingTicker()),
+                        call.getStrikePrice(), call.getSigma() * 1.2, call.getTimeToMaturity()));
+            } else if (security instanceof EuropeanPutOption) {
+                EuropeanPutOption put = (EuropeanPutOption) security;
+                quotes.put(put.getTicker(), PRICING.calculatePutPrice(spots.get(put.getUnderlyingTicker()),
+                        put.getStrikePrice(), put.getSigma() * 1.2, put.getTimeToMaturity()));
+            }
+        }
+        ImpliedVolatilityResult result = service.solve(quotes, securities, spots, 1);
+        assertEquals(quotes.size(), result.getConvergedCount(), "收斂的合約數");
+
+        PortfolioValuationService valuation = new PortfolioValuationService(
+                synthetic.getPositions(), securities, spots, PRICING);
+        AtomicReference<PortfolioUpdate> last = new AtomicReference<>();
+        valuation.setListener(last::set);
+        long version = valuation.updateVolatilities(result.getVolatilities());
+        String ticker = synthetic.getTickers().get(0);
+        valuation.onStockPriceUpdate(ticker, spots.get(ticker)); // 在估值線程上套用並發布
+
+        PortfolioUpdate update = last.get();
+        assertEquals(version, update.getPositionsVersion(), "發布的持倉版本");
+        for (CalculatedPosition position : update.getPositions()) {
+            Double quote = quotes.get(position.getSymbol());
+            if (quote != null) {
+                assertEquals(quote, position.getPrice(), 1e-8, position.getSymbol() + " 的發布價格");
+            }
+        }
+    }
+
+    private static double price(double S, double K, double sigma, double t, double sign) {
+        return sign > 0.0 ? PRICING.calculateCallPrice(S, K, sigma, t) : PRICING.calculatePutPrice(S, K, sigma, t);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.PortfolioUpdate;
+import com.example.realtimevalsystem.model.Position;
+import com.example.realtimevalsystem.model.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 增量估值 (以差額更新總 NAV) 與完整重新計算的等價
+ * - CompiledBook: 隨機的報價與數量變更 (STEPS 次) 之後, 每筆持倉的價值與以目前價格 / 數量重新建立的帳本逐位元相同,
+ *   resumTotals() 之後的總 NAV 也逐位元相同; 期間差額累加的漂移 (相對 Σ|價值|) <= DRIFT_TOLERANCE
+ * - PortfolioValuationService (DELTA 模式): 成交與報價交錯, 每次發布的快照 NAV 與完整重新計算逐位元相同
+ */
+class IncrementalValuationTest {
+
+    private static final int STEPS = 200_000;
+    private static final int SERVICE_TICKS = 20_000;
+    private static final int SNAPSHOT_INTERVAL = 64;
+    private static final double DRIFT_TOLERANCE = 1e-12;
+
+    private static final OptionPricingService PRICING = new OptionPricingService();
+
+    @Test
+    void compiledBookMatchesFullRecomputeAfterResum() {
+        SyntheticBookGenerator synthetic = new SyntheticBookGenerator(200, 20, 5L);
+        List<Position> positions = new ArrayList<>(synthetic.getPositions());
+        Map<String, Double> spots = new HashMap<>(synthetic.getInitialPrices());
+        CompiledBook book = new CompiledBook(positions, synthetic.getSecurities(), spots, PRICING);
+
+        RandomStream random = RandomStream.create(RandomStream.SPLITTABLE, 23L);
+        double maxDrift = 0.0;
+        for (int step = 1; step <= STEPS; step++) {
+            if (random.nextInt(4) == 0) {
+                int i = random.nextInt(positions.size());
+                long quantity = random.nextInt(20001) - 10000;
+                book.setQuantity(i, quantity);
+                positions.set(i, new Position(positions.get(i).getSymbol(), quantity));
+            } else {
+                int u = random.nextInt(book.underlyingCount());
+                double spot = book.getUnderlyingPrice(u) * (1.0 + 0.01 * (2.0 * random.nextDouble() - 1.0));
+                book.updateUnderlyingPrice(u, spot);
+                spots.put(book.getUnderlyingTicker(u), spot);
+            }
+            if (step % 1000 == 0) {
+                double sum = 0.0;
+                double gross = 0.0;
+                for (int i = 0; i < book.size(); i++) {
+                    sum += book.getValue(i);
+                    gross += Math.abs(book.getValue(i));
+                }
+                maxDrift = Math.max(maxDrift, Math.abs(book.getTotalNAV() - sum) / gross);
+            }
+        }
+
+        CompiledBook reference = new CompiledBook(positions, synthetic.getSecurities(), spots, PRICING);
+        int valueMismatches = 0;
+        for (int i = 0; i < book.size(); i++) {
+            if (Double.doubleToLongBits(book.getValue(i)) != Double.doubleToLongBits(reference.getValue(i))) {
+                valueMismatches++;
+            }
+        }
+        book.resumTotals();
+
+        assertEquals(0, valueMismatches, "持倉價值與重新建立的帳本不一致的筆數");
+        assertEquals(reference.getTotalNAV(), book.getTotalNAV(), "重新加總後的 NAV");
+        double drift = maxDrift;
+        assertTrue(drift <= DRIFT_TOLERANCE, () -> String.format("差額累加的最大漂移 %.3e 超過 %.0e", drift, DRIFT_TOLERANCE));
+    }
+
+    @Test
+    void deltaModeSnapshotsMatchFullRecompute() {
+        SyntheticBookGenerator synthetic = new SyntheticBookGenerator(100, 20, 9L);
+        List<Position> positions = new ArrayList<>(synthetic.getPositions());
+        Map<String, Double> spots = new HashMap<>(synthetic.getInitialPrices());
+        PortfolioValuationService service = new PortfolioValuationService(
+                positions, synthetic.getSecurities(), spots, PRICING);
+        service.setUpdateMode(PortfolioValuationService.UpdateMode.DELTA, SNAPSHOT_INTERVAL);
+        PortfolioUpdate[] last = new PortfolioUpdate[1];
+        service.setListener(update -> last[0] = update);
+
+        RandomStream random = RandomStream.create(RandomStream.SPLITTABLE, 29L);
+        List<String> tickers = synthetic.getTickers();
+        int snapshots = 0;
+        int mismatches = 0;
+        for (int t = 0; t < SERVICE_TICKS; t++) {
+            if (random.nextInt(8) == 0) {
+                int i = random.nextInt(positions.size());
+                long change = random.nextInt(2001) - 1000;
+                service.applyTrades(Collections.singletonList(new Trade(positions.get(i).getSymbol(), change)));
+                positions.set(i, new Position(positions.get(i).getSymbol(), positions.get(i).getPositionSize() + change));
+            }
+            String ticker = tickers.get(random.nextInt(tickers.size()));
+            double spot = spots.get(ticker) * (1.0 + 0.01 * (2.0 * random.nextDouble() - 1.0));
+            spots.put(ticker, spot);
+            service.onStockPriceUpdate(ticker, spot); // 同步套用已提交的成交與報價後發布
+            if (last[0].isSnapshot()) {
+                snapshots++;
+                double expected = new CompiledBook(positions, synthetic.getSecurities(), spots, PRICING).getTotalNAV();
+                if (Double.doubleToLongBits(last[0].getTotalNAV()) != Double.doubleToLongBits(expected)) {
+                    mismatches++;
+                }
+            }
+        }
+        assertTrue(snapshots > 0, "沒有發布任何快照");
+        assertEquals(0, mismatches, "快照 NAV 與完整重新計算不一致的次數");
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.realtimevalsystem.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * MonteCarloRiskEngine 的決定性: 每個 演算法 x 取樣方法, simulatePnl 在 parallelism 1 / 2 / 4 / 8 下每個情境的損益逐位元相同
+ * (情境數不是 BLOCK_SIZE 的倍數), 同一種子重跑相同, 不同種子不同
+ * 執行時間見 MonteCarloRiskBenchmark
+ */
+class MonteCarloRiskEngineTest {
+
+    private static final int SCENARIOS = 10 * MonteCarloRiskEngine.BLOCK_SIZE + 37;
+    private static final int[] PARALLELISMS = {2, 4, 8};
+    private static final double HORIZON = 1.0 / 252;
+    private static final long SEED = 20240601L;
+
+    @Test
+    void simulatedPnlDoesNotDependOnParallelism() {
+        SyntheticBookGenerator synthetic = SyntheticBookGenerator.forPositionCount(2_000, 100, 42L);
+        MonteCarloRiskEngine engine = new MonteCarloRiskEngine(synthetic.getPositions(), synthetic.getSecurities(),
+                synthetic.getInitialPrices(), new OptionPricingService());
+        engine.setConstantCorrelation(0.3);
+
+        String[] algorithms = {RandomStream.JDK, RandomStream.SPLITTABLE, RandomStream.XOROSHIRO_128_PLUS, RandomStream.XOROSHIRO_128_PLUS_PLUS};
+        String[] methods = {NormalSampler.POLAR, NormalSampler.ZIGGURAT};
+        for (String algorithm : algorithms) {
+            for (String method : methods) {
+                String label = algorithm + " / " + method;
+                engine.setRandom(new SimulationRandom(algorithm, method, SEED));
+                double[] reference = engine.simulatePnl(SCENARIOS, HORIZON, SEED, 1);
+                for (int parallelism : PARALLELISMS) {
+                    assertEquals(0, countMismatches(reference, engine.simulatePnl(SCENARIOS, HORIZON, SEED, parallelism)),
+                            label + ": parallelism " + parallelism + " 與 1 不一致的情境數");
+                }
+                assertEquals(0, countMismatches(reference, engine.simulatePnl(SCENARIOS, HORIZON, SEED, 4)),
+                        label + ": 同一種子重跑不一致的情境數");
+                assertEquals(SCENARIOS, countMismatches(reference, engine.simulatePnl(SCENARIOS, HORIZON, SEED + 1, 4)),
+                        label + ": 換種子後不同的情境數");
+            }
+        }
+    }
+
+    private static int countMismatches(double[] expected, double[] actual) {
+        int mismatches = 0;
+        for (int s = 0; s < expected.length; s++) {
+            if (Double.doubleToLongBits(expected[s]) != Double.doubleToLongBits(actual[s])) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+}
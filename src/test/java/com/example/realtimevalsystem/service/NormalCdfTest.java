@@ -0,0 +1,84 @@
+package com.example.realtimevalsystem.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * NormalCdf 各實作的精度
+ * 參考值以 80 位數的 BigDecimal 計算 erf 的 Taylor 級數: N(x) = (1 + erf(x / sqrt(2))) / 2
+ * 在 [-9, 9] 上 POINTS 個點 (不與 TABLE 的格點對齊) 比較絕對誤差 |N(x) - 參考值| 的最大值, 超過實作的上限時失敗
+ */
+class NormalCdfTest {
+
+    private static final int POINTS = 4099;
+    private static final double LOWER = -9.0;
+    private static final double UPPER = 9.0;
+
+    private static final MathContext MC = new MathContext(80);
+    private static final BigDecimal SQRT_2 = new BigDecimal(
+            "1.4142135623730950488016887242096980785696718753769480731766797379907324784621");
+    private static final BigDecimal TWO_OVER_SQRT_PI = new BigDecimal(
+            "1.1283791670955125738961589031215451716881012586579977136881714434212849368829868");
+    private static final BigDecimal TOLERANCE = new BigDecimal("1e-75");
+    private static final BigDecimal HALF = new BigDecimal("0.5");
+
+    private static final double[] X = new double[POINTS];
+    private static final double[] REFERENCE = new double[POINTS];
+
+    static {
+        for (int i = 0; i < POINTS; i++) {
+            X[i] = LOWER + (UPPER - LOWER) * i / (POINTS - 1) + 1e-3 * Math.sin(i); // 錯開 TABLE 的格點
+            REFERENCE[i] = referenceCdf(X[i]);
+        }
+    }
+
+    @Test
+    void codyIsAccurateToDoublePrecision() {
+        assertMaxError(NormalCdf.CODY, 1e-15);
+    }
+
+    @Test
+    void tableInterpolationIsAccurateTo1e11() {
+        assertMaxError(NormalCdf.TABLE, 1e-11);
+    }
+
+    @Test
+    void abramowitzStegunIsAccurateTo1e7() {
+        assertMaxError(NormalCdf.ABRAMOWITZ_STEGUN, 1e-7);
+    }
+
+    private static void assertMaxError(String method, double absoluteLimit) {
+        NormalCdf cdf = NormalCdf.create(method);
+        double maxAbsolute = 0.0;
+        double worstX = 0.0;
+        for (int i = 0; i < POINTS; i++) {
+            double error = Math.abs(cdf.cdf(X[i]) - REFERENCE[i]);
+            if (error > maxAbsolute) {
+                maxAbsolute = error;
+                worstX = X[i];
+            }
+        }
+        double error = maxAbsolute;
+        double x = worstX;
+        assertTrue(error < absoluteLimit,
+                () -> String.format("%s 最大絕對誤差 %.3e (x = %.3f) 超過 %.0e", method, error, x, absoluteLimit));
+    }
+
+    // erf(z) = 2/sqrt(pi) * sum_n (-1)^n z^(2n+1) / (n! (2n+1))
+    private static double referenceCdf(double x) {
+        BigDecimal z = new BigDecimal(x).divide(SQRT_2, MC);
+        BigDecimal minusZSquared = z.multiply(z, MC).negate();
+        BigDecimal term = z; // (-1)^n z^(2n+1) / n!
+        BigDecimal sum = z;
+        for (int n = 1; term.abs().compareTo(TOLERANCE) > 0; n++) {
+            term = term.multiply(minusZSquared, MC).divide(BigDecimal.valueOf(n), MC);
+            sum = sum.add(term.divide(BigDecimal.valueOf(2L * n + 1), MC), MC);
+        }
+        BigDecimal erf = sum.multiply(TWO_OVER_SQRT_PI, MC);
+        return HALF.add(HALF.multiply(erf, MC), MC).doubleValue();
+    }
+}
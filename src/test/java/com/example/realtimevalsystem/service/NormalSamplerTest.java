@@ -0,0 +1,131 @@
+package com.example.realtimevalsystem.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 常態分佈取樣器的統計檢查, 每個 演算法 x 取樣方法 各取 SAMPLES 個樣本:
+ * - 動差: 平均 0, 變異數 1, 偏態 0, 超額峰態 0 (容許 5 個標準誤)
+ * - Kolmogorov-Smirnov: sqrt(n) * D < 1.95 (p = 0.001)
+ * - 卡方: 依 N(x) 分成 100 個等機率區間, 99 自由度的卡方 < 148.2 (p = 0.001)
+ * - 尾端: |x| > 3 與 |x| > 3.4426 (Ziggurat 尾端演算法的起點) 的比例與理論值相差不超過 5 個標準誤
+ * - 獨立性: 同一設定 split 出的兩個串流的相關係數接近 0
+ */
+class NormalSamplerTest {
+
+    private static final int SAMPLES = 2_000_000;
+    private static final int BINS = 100;
+    private static final double KS_LIMIT = 1.95;
+    private static final double CHI_SQUARE_LIMIT = 148.2;
+    private static final double Z_LIMIT = 5.0;
+
+    private static final OptionPricingService CDF = new OptionPricingService();
+
+    @Test
+    void samplersPassStatisticalChecks() {
+        String[] algorithms = {RandomStream.JDK, RandomStream.SPLITTABLE, RandomStream.XOROSHIRO_128_PLUS, RandomStream.XOROSHIRO_128_PLUS_PLUS};
+        String[] methods = {NormalSampler.POLAR, NormalSampler.ZIGGURAT};
+        for (String algorithm : algorithms) {
+            for (String method : methods) {
+                check(new SimulationRandom(algorithm, method, 20201001L));
+            }
+        }
+    }
+
+    private static void check(SimulationRandom random) {
+        NormalSampler sampler = random.newSampler();
+        double[] x = new double[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            x[i] = sampler.nextGaussian();
+        }
+
+        // --- 動差 ---
+        double mean = 0.0;
+        for (double v : x) {
+            mean += v;
+        }
+        mean /= SAMPLES;
+        double m2 = 0.0;
+        double m3 = 0.0;
+        double m4 = 0.0;
+        for (double v : x) {
+            double d = v - mean;
+            double d2 = d * d;
+            m2 += d2;
+            m3 += d2 * d;
+            m4 += d2 * d2;
+        }
+        m2 /= SAMPLES;
+        m3 /= SAMPLES;
+        m4 /= SAMPLES;
+        double skewness = m3 / Math.pow(m2, 1.5);
+        double excessKurtosis = m4 / (m2 * m2) - 3.0;
+
+        // --- 卡方 (等機率區間) 與尾端比例 ---
+        long[] bins = new long[BINS];
+        long beyond3 = 0;
+        long beyondTail = 0;
+        for (double v : x) {
+            bins[Math.min(BINS - 1, (int) (CDF.N(v) * BINS))]++;
+            double a = Math.abs(v);
+            if (a > 3.0) {
+                beyond3++;
+            }
+            if (a > 3.442619855899) {
+                beyondTail++;
+            }
+        }
+        double expected = (double) SAMPLES / BINS;
+        double chiSquare = 0.0;
+        for (long count : bins) {
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+
+        // --- Kolmogorov-Smirnov ---
+        double[] sorted = x.clone();
+        Arrays.sort(sorted);
+        double d = 0.0;
+        for (int i = 0; i < SAMPLES; i++) {
+            double cdf = CDF.N(sorted[i]);
+            d = Math.max(d, Math.max((i + 1.0) / SAMPLES - cdf, cdf - (double) i / SAMPLES));
+        }
+        double ks = Math.sqrt(SAMPLES) * d;
+
+        // --- 兩個 split 串流的相關係數 ---
+        NormalSampler first = random.newSampler();
+        NormalSampler second = random.newSampler();
+        double cross = 0.0;
+        for (int i = 0; i < SAMPLES; i++) {
+            cross += first.nextGaussian() * second.nextGaussian();
+        }
+        double correlation = cross / SAMPLES;
+
+        double n = SAMPLES;
+        assertWithin(random, "平均", mean, 0.0, 1.0 / Math.sqrt(n));
+        assertWithin(random, "變異數", m2, 1.0, Math.sqrt(2.0 / n));
+        assertWithin(random, "偏態", skewness, 0.0, Math.sqrt(6.0 / n));
+        assertWithin(random, "超額峰態", excessKurtosis, 0.0, Math.sqrt(24.0 / n));
+        assertTail(random, "|x| > 3", beyond3, 2.0 * (1.0 - CDF.N(3.0)));
+        assertTail(random, "|x| > R", beyondTail, 2.0 * (1.0 - CDF.N(3.442619855899)));
+        assertWithin(random, "串流相關", correlation, 0.0, 1.0 / Math.sqrt(n));
+        assertBelow(random, "KS sqrt(n)*D", ks, KS_LIMIT);
+        assertBelow(random, "卡方 (99 df)", chiSquare, CHI_SQUARE_LIMIT);
+    }
+
+    private static void assertWithin(SimulationRandom random, String name, double value, double expected, double standardError) {
+        double z = (value - expected) / standardError;
+        assertTrue(Math.abs(z) < Z_LIMIT, () -> String.format("%s %s = %.6f (z = %.2f)", random, name, value, z));
+    }
+
+    private static void assertTail(SimulationRandom random, String name, long count, double probability) {
+        double expected = probability * SAMPLES;
+        assertWithin(random, name, count, expected, Math.sqrt(expected * (1.0 - probability)));
+    }
+
+    private static void assertBelow(SimulationRandom random, String name, double value, double limit) {
+        assertTrue(value < limit, () -> String.format("%s %s = %.6f (上限 %.2f)", random, name, value, limit));
+    }
+}
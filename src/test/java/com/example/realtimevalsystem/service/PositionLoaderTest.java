@@ -0,0 +1,279 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.Position;
+import com.example.realtimevalsystem.model.PositionTable;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * PositionLoader / PositionCsvParser 與舊版逐行解析 (replaceAll("\\s+", "") + split(",") + Long.parseLong) 的等價
+ * - 隨機產生遠大於 64 KB 解析視窗的檔案 (空白與正負號的各種寫法, 部分行以 CRLF 結尾, 混入格式錯誤的列),
+ *   在 1 / 3 / 8 個區塊平行解析下, 每一列的代碼與數量都與舊版相同, 格式錯誤的列的行號與舊版拒絕的行完全相同
+ * - 單行比視窗還長 (視窗加倍), long 的邊界值, 檔案沒有結尾換行, 區塊數多於行數
+ * - 比舊版嚴格的地方: 結尾多一個逗號 / 空的代碼, 舊版會接受, 這裡列為格式錯誤
+ */
+class PositionLoaderTest {
+
+    private static final int LINES = 40_000;
+    private static final int[] PARALLELISM = {1, 3, 8};
+    private static final String HEADER = "symbol,positionSize";
+    private static final String[] MALFORMED = {
+            "SYN1-C", "SYN1-C,1,2", "SYN1-C,", "SYN1-C,abc", "SYN1-C,1.5", "SYN1-C,--3", "SYN1-C,5-", "SYN1-C,+",
+            "SYN1-C,9223372036854775808", "SYN1-C,-9223372036854775809", "SYN1-C,99999999999999999999"};
+
+    private final PositionLoader loader = new PositionLoader();
+
+    @Test
+    void matchesLegacyParseAtAnyParallelism() throws IOException {
+        String content = randomFile(new Random(13L), true);
+        assertTrue(content.length() > 4 * (1 << 16), "測試檔案應遠大於 64 KB 的解析視窗");
+        assertMatchesLegacy(content);
+    }
+
+    @Test
+    void lastLineWithoutNewlineIsParsed() throws IOException {
+        assertMatchesLegacy(randomFile(new Random(17L), false));
+        assertMatchesLegacy(HEADER + "\nAAPL,10\nMSFT , -5");
+        assertMatchesLegacy(HEADER + "\r\nAAPL,10\r\nMSFT,abc");
+    }
+
+    // 區塊數多於資料行時, 對齊到同一行首的邊界合併, 空的檔案 (只有標頭) 也是一個區塊
+    @Test
+    void moreChunksThanLines() throws IOException {
+        assertMatchesLegacy(HEADER + "\nAAPL,1\nBAD\nMSFT,2\n");
+        assertMatchesLegacy(HEADER + "\n");
+        assertMatchesLegacy(HEADER);
+    }
+
+    @Test
+    void longBoundsAndSigns() throws IOException {
+        assertMatchesLegacy(HEADER + "\n"
+                + "A,9223372036854775807\n"
+                + "B,-9223372036854775808\n"
+                + "C,9223372036854775808\n"
+                + "D,-9223372036854775809\n"
+                + "E,-92233720368547758080\n"
+                + "F,0000000000000000000000009223372036854775807\n"
+                + "G,922337203685477580\n"
+                + "H, 9 223 372 036 854 775 807\n"
+                + "I,+ 42\n"
+                + "J,\t-\t7 \r\n"
+                + "K,-0\n"
+                + "L,+-1\n"
+                + "M,1+\n"
+                + " N O ,  12  \n");
+    }
+
+    // 超過 64 KB 的單行: 視窗加倍後仍整行解析; 代碼中夾有空白時先壓縮 (Dictionary 的 scratch 也要加大)
+    @Test
+    void linesLongerThanTheWindow() throws IOException {
+        StringBuilder symbol = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            symbol.append("S ").append(i % 10);
+        }
+        StringBuilder spaces = new StringBuilder();
+        for (int i = 0; i < 300_000; i++) {
+            spaces.append(' ');
+        }
+        String content = HEADER + "\nAAPL,1\n" + symbol + ",7\n" + spaces + "MSFT," + spaces + "-3" + spaces + "\n"
+                + symbol + ",1,2\nAAPL,2\n";
+        assertMatchesLegacy(content);
+
+        PositionTable table = load(content, 1);
+        assertEquals(symbol.toString().replace(" ", ""), table.getSymbol(1), "超長代碼");
+        PositionTable.MalformedRow row = table.getMalformedRows().get(0);
+        assertEquals(5L, row.getLineNumber(), "超長格式錯誤列的行號");
+        assertTrue(row.getContent().length() <= 200, "格式錯誤列的內容應截斷");
+    }
+
+    @Test
+    void stricterThanLegacy() throws IOException {
+        PositionTable table = load(HEADER + "\nAAPL,5,\n,5\n  ,  \nAAPL,5\n", 1);
+        assertEquals(1, table.size(), "有效列數");
+        assertReasons(table, "欄位數應為 2 (symbol,positionSize), 實際為 3", "缺少代碼", "缺少代碼");
+        assertLineNumbers(table, 2L, 3L, 4L);
+    }
+
+    @Test
+    void malformedReasons() throws IOException {
+        PositionTable table = load(HEADER + "\nAAPL\nAAPL,1,2\nAAPL,\nAAPL,1.5\nAAPL,99999999999999999999\n", 1);
+        assertReasons(table, "欄位數應為 2 (symbol,positionSize), 實際為 1", "欄位數應為 2 (symbol,positionSize), 實際為 3",
+                "缺少數量", "數量不是整數", "數量超出 long 範圍");
+        assertEquals("第 2 行: 欄位數應為 2 (symbol,positionSize), 實際為 1 [AAPL]", table.getMalformedRows().get(0).toString(),
+                "格式錯誤列的描述");
+    }
+
+    // 多投資組合: 不同區塊數的結果相同, 格式錯誤的列不會登錄投資組合代碼
+    @Test
+    void portfoliosMatchAtAnyParallelism() throws IOException {
+        Random random = new Random(19L);
+        StringBuilder content = new StringBuilder("portfolioId,symbol,positionSize\n");
+        List<Long> expectedLines = new ArrayList<>();
+        for (int line = 2; line < LINES + 2; line++) {
+            if (random.nextInt(50) == 0) {
+                content.append(random.nextBoolean() ? "BAD" + line + ",AAPL,x" : ",AAPL,1").append('\n');
+                expectedLines.add((long) line);
+            } else {
+                content.append(" P").append(random.nextInt(30)).append(" , SYN").append(random.nextInt(500))
+                        .append("-C,").append(random.nextInt(2001) - 1000).append(random.nextInt(3) == 0 ? "\r\n" : "\n");
+            }
+        }
+        Map<String, List<Position>> expected = null;
+        for (int parallelism : PARALLELISM) {
+            Path file = write(content.toString());
+            try {
+                PositionTable table = loader.loadPortfolioTable(file, parallelism);
+                assertEquals(30, table.portfolioCount(), "投資組合數 (格式錯誤的列不登錄), parallelism " + parallelism);
+                assertEquals(expectedLines, lineNumbers(table), "格式錯誤列的行號, parallelism " + parallelism);
+                Map<String, List<Position>> portfolios = table.toPortfolios();
+                if (expected == null) {
+                    expected = portfolios;
+                    continue;
+                }
+                assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(portfolios.keySet()), "投資組合順序");
+                for (Map.Entry<String, List<Position>> entry : expected.entrySet()) {
+                    assertSamePositions(entry.getValue(), portfolios.get(entry.getKey()), entry.getKey() + ", parallelism " + parallelism);
+                }
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    // --- 與舊版比較 ---------------------------------------------------------------------------------------------------
+    private void assertMatchesLegacy(String content) throws IOException {
+        List<Position> expectedRows = new ArrayList<>();
+        List<Long> expectedLines = new ArrayList<>();
+        legacyParse(content, expectedRows, expectedLines);
+        Path file = write(content);
+        try {
+            for (int parallelism : PARALLELISM) {
+                PositionTable table = loader.loadPositionTable(file, parallelism);
+                assertSamePositions(expectedRows, table.toPositions(), "parallelism " + parallelism);
+                assertEquals(expectedLines, lineNumbers(table), "格式錯誤列的行號, parallelism " + parallelism);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // 舊版 PositionLoader 的解析: 欄位數為 2 且數量可由 Long.parseLong 解析的列才是持倉; 去掉空白後不是空行的其他列為格式錯誤
+    private static void legacyParse(String content, List<Position> rows, List<Long> malformedLines) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+        reader.readLine(); // 標頭
+        String line;
+        long lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String stripped = line.replaceAll("\\s+", "");
+            String[] parts = stripped.split(",");
+            Position position = null;
+            if (parts.length == 2) {
+                try {
+                    position = new Position(parts[0], Long.parseLong(parts[1]));
+                } catch (NumberFormatException e) {
+                    position = null;
+                }
+            }
+            if (position != null) {
+                rows.add(position);
+            } else if (!stripped.isEmpty()) {
+                malformedLines.add(lineNumber);
+            }
+        }
+    }
+
+    // 約 LINES 行: 代碼與數量的各種空白 / 正負號寫法, 1/3 以 CRLF 結尾, 約 4% 空白行、4% 格式錯誤
+    private static String randomFile(Random random, boolean trailingNewline) {
+        String[] names = {"SYN", "台積電", "BRK.B", "X"};
+        StringBuilder content = new StringBuilder(HEADER).append('\n');
+        for (int line = 0; line < LINES; line++) {
+            int kind = random.nextInt(25);
+            if (kind == 0) {
+                content.append(random.nextBoolean() ? "" : " \t ");
+            } else if (kind == 1) {
+                content.append(MALFORMED[random.nextInt(MALFORMED.length)]);
+            } else {
+                String symbol = names[random.nextInt(names.length)] + random.nextInt(500) + "-C";
+                if (random.nextInt(10) == 0) {
+                    int cut = 1 + random.nextInt(symbol.length() - 1);
+                    symbol = symbol.substring(0, cut) + " " + symbol.substring(cut); // 代碼中夾空白
+                }
+                long quantity = random.nextInt(4) == 0 ? random.nextLong() : random.nextInt(20001) - 10000;
+                String digits = Long.toString(Math.abs(quantity));
+                if (quantity == Long.MIN_VALUE) {
+                    digits = "9223372036854775808";
+                }
+                String sign = quantity < 0 ? "-" : random.nextInt(5) == 0 ? "+" : "";
+                String pad = random.nextInt(4) == 0 ? " " : "";
+                String signPad = random.nextInt(8) == 0 ? "\t" : "";
+                content.append(pad).append(symbol).append(pad).append(',').append(pad)
+                        .append(sign).append(signPad).append(digits).append(pad);
+            }
+            if (line < LINES - 1 || trailingNewline) {
+                content.append(random.nextInt(3) == 0 ? "\r\n" : "\n");
+            }
+        }
+        return content.toString();
+    }
+
+    private PositionTable load(String content, int parallelism) throws IOException {
+        Path file = write(content);
+        try {
+            return loader.loadPositionTable(file, parallelism);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Path write(String content) throws IOException {
+        Path file = Files.createTempFile("positions", ".csv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void assertSamePositions(List<Position> expected, List<Position> actual, String label) {
+        assertEquals(expected.size(), actual.size(), label + " 的持倉筆數");
+        for (int i = 0; i < expected.size(); i++) {
+            int row = i;
+            assertEquals(expected.get(i).getSymbol(), actual.get(i).getSymbol(), () -> label + " 第 " + row + " 筆的代碼");
+            assertEquals(expected.get(i).getPositionSize(), actual.get(i).getPositionSize(), () -> label + " 第 " + row + " 筆的數量");
+        }
+    }
+
+    private static List<Long> lineNumbers(PositionTable table) {
+        List<Long> lines = new ArrayList<>();
+        for (PositionTable.MalformedRow row : table.getMalformedRows()) {
+            lines.add(row.getLineNumber());
+        }
+        return lines;
+    }
+
+    private static void assertLineNumbers(PositionTable table, Long... expected) {
+        assertEquals(Arrays.asList(expected), lineNumbers(table), "格式錯誤列的行號");
+    }
+
+    private static void assertReasons(PositionTable table, String... expected) {
+        List<String> reasons = new ArrayList<>();
+        for (PositionTable.MalformedRow row : table.getMalformedRows()) {
+            reasons.add(row.getReason());
+        }
+        assertEquals(Arrays.asList(expected), reasons, "格式錯誤的原因");
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.EuropeanCallOption;
+import com.example.realtimevalsystem.model.EuropeanPutOption;
+import com.example.realtimevalsystem.model.Security;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CompiledBook 插值模式 (ChebyshevPriceCache) 的誤差
+ * 對每個誤差上限 MAX_ERRORS, 以合成帳本 (到期 0.05 - 2.05 年, 履約價 70% - 130%) 啟用插值模式並等待所有插值表建立後:
+ * - 範圍內: 每個標的 TICKS 個隨機價格 (含範圍兩端), 每個選擇權的價格與完整 Black-Scholes 的差 <= 誤差上限
+ * - 範圍外: 標的價格移出範圍時必須完整定價 (與 Black-Scholes 逐位元一致), 並在背景以新價格重新建表
+ */
+class PriceSurfaceTest {
+
+    private static final int UNDERLYINGS = 200;
+    private static final int OPTIONS_PER_UNDERLYING = 20;
+    private static final int TICKS = 200;
+    private static final double BAND = 0.05;
+    private static final long BUILD_TIMEOUT_MILLIS = 60_000L;
+
+    private static final OptionPricingService PRICING = new OptionPricingService();
+
+    private final SyntheticBookGenerator synthetic = new SyntheticBookGenerator(UNDERLYINGS, OPTIONS_PER_UNDERLYING, 7L);
+
+    @Test
+    void interpolationStaysWithin1e4() throws InterruptedException {
+        check(1e-4);
+    }
+
+    @Test
+    void interpolationStaysWithin1e6() throws InterruptedException {
+        check(1e-6);
+    }
+
+    @Test
+    void interpolationStaysWithin1e8() throws InterruptedException {
+        check(1e-8);
+    }
+
+    private void check(double maxError) throws InterruptedException {
+        CompiledBook book = new CompiledBook(synthetic.getPositions(), synthetic.getSecurities(),
+                synthetic.getInitialPrices(), PRICING);
+        book.enableInterpolationMode(BAND, maxError);
+        ChebyshevPriceCache cache = book.getPriceCache();
+        double[] centers = new double[book.underlyingCount()];
+        for (int u = 0; u < book.underlyingCount(); u++) {
+            centers[u] = book.getUnderlyingPrice(u);
+            book.updateUnderlyingPrice(u, centers[u]); // 完整定價並要求建表
+        }
+        assertTrue(awaitSurfaces(book, cache, centers), "插值表未在時限內建立");
+
+        // --- 範圍內 ---
+        RandomStream random = RandomStream.create(RandomStream.SPLITTABLE, 11L);
+        double maxPriceError = 0.0;
+        for (int u = 0; u < book.underlyingCount(); u++) {
+            for (int k = 0; k < TICKS; k++) {
+                double move = k == 0 ? -BAND : k == 1 ? BAND : BAND * (2.0 * random.nextDouble() - 1.0);
+                double spot = Math.min(Math.max(centers[u] * (1.0 + move), centers[u] * (1.0 - BAND)), centers[u] * (1.0 + BAND));
+                book.updateUnderlyingPrice(u, spot);
+                double s = spot;
+                int underlying = u;
+                assertTrue(cache.surface(u, spot) != null, () -> "標的 " + underlying + " 在價格 " + s + " 沒有以插值計價");
+                for (int i : book.getPositionsForUnderlying(u)) {
+                    if (book.getType(i) != CompiledBook.TYPE_STOCK) {
+                        Security security = synthetic.getSecurities().get(book.getSymbol(i));
+                        maxPriceError = Math.max(maxPriceError, Math.abs(book.getPrice(i) - exactPrice(security, spot)));
+                    }
+                }
+            }
+        }
+        double error = maxPriceError;
+        assertTrue(error <= maxError, () -> String.format("範圍內最大價格誤差 %.3e 超過 %.0e", error, maxError));
+
+        // --- 範圍外: 完整定價, 並以新價格重新建表 ---
+        double[] moved = new double[book.underlyingCount()];
+        for (int u = 0; u < book.underlyingCount(); u++) {
+            moved[u] = centers[u] * (1.0 + 2.0 * BAND);
+            book.updateUnderlyingPrice(u, moved[u]);
+            for (int i : book.getPositionsForUnderlying(u)) {
+                if (book.getType(i) != CompiledBook.TYPE_STOCK) {
+                    String symbol = book.getSymbol(i);
+                    assertTrue(book.getPrice(i) == exactPrice(synthetic.getSecurities().get(symbol), moved[u]),
+                            () -> symbol + " 在範圍外沒有完整定價");
+                }
+            }
+        }
+        assertTrue(awaitSurfaces(book, cache, moved), "範圍外的價格沒有重新建表");
+    }
+
+    // 等待每個標的都有涵蓋指定價格的插值表
+    private static boolean awaitSurfaces(CompiledBook book, ChebyshevPriceCache cache, double[] spots) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + BUILD_TIMEOUT_MILLIS;
+        for (int u = 0; u < book.underlyingCount(); u++) {
+            while (cache.surface(u, spots[u]) == null) {
+                if (System.currentTimeMillis() > deadline) {
+                    return false;
+                }
+                Thread.sleep(1);
+            }
+        }
+        return true;
+    }
+
+    private static double exactPrice(Security security, double spot) {
+        if (security instanceof EuropeanCallOption) {
+            EuropeanCallOption call = (EuropeanCallOption) security;
+            return PRICING.calculateCallPrice(spot, call.getStrikePrice(), call.getSigma(), call.getTimeToMaturity());
+        }
+        EuropeanPutOption put = (EuropeanPutOption) security;
+        return PRICING.calculatePutPrice(spot, put.getStrikePrice(), put.getSigma(), put.getTimeToMaturity());
+    }
+}
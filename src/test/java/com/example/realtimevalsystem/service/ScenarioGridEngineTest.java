@@ -0,0 +1,161 @@
+package com.example.realtimevalsystem.service;
+
+import com.example.realtimevalsystem.model.EuropeanCallOption;
+import com.example.realtimevalsystem.model.EuropeanPutOption;
+import com.example.realtimevalsystem.model.Position;
+import com.example.realtimevalsystem.model.ScenarioGridReport;
+import com.example.realtimevalsystem.model.Security;
+import com.example.realtimevalsystem.model.Stock;
+import com.example.realtimevalsystem.model.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ScenarioGridEngine
+ * - 參照值: 抽樣的格子以 OptionPricingService 逐筆持倉重新定價 (相當於每個情境手動重新估值), 合計損益的差 <= TOLERANCE (相對總曝險 Σ|q|·S)
+ * - 不同執行緒數的結果逐位元相同, 兩個變動都為 0 的格子損益恰好為 0, 各標的損益相加等於合計
+ * - 跟隨估值引擎: 報價、波動率更新、成交之後重新計算, 結果與以新狀態計算的參照值一致 (持倉版本改變時重新編譯)
+ * - 編譯時還沒有報價的標的, 之後收到報價 (持倉版本不變) 即列入網格
+ * 網格耗時見 ScenarioGridBenchmark
+ */
+class ScenarioGridEngineTest {
+
+    private static final double TOLERANCE = 1e-12;
+    private static final int SAMPLES = 40;
+    private static final double[] SPOT_SHOCKS = ScenarioGridEngine.symmetricShocks(0.20, 20);
+    private static final double[] VOL_SHOCKS = ScenarioGridEngine.symmetricShocks(0.50, 10);
+
+    private static final OptionPricingService PRICING = new OptionPricingService();
+
+    @Test
+    void gridFollowsTheValuationEngine() {
+        SyntheticBookGenerator synthetic = new SyntheticBookGenerator(100, 20, 3L);
+        Map<String, Security> securities = synthetic.getSecurities();
+        List<Position> positions = new ArrayList<>(synthetic.getPositions());
+        Map<String, Double> spots = new HashMap<>(synthetic.getInitialPrices());
+        Map<String, Double> volatilities = new HashMap<>();
+        PortfolioValuationService valuation = new PortfolioValuationService(positions, securities, spots, PRICING);
+        ScenarioGridEngine engine = new ScenarioGridEngine(valuation, securities, PRICING);
+
+        checkReport("初始狀態", engine, positions, securities, spots, volatilities);
+
+        // 報價: 估值線程套用後, 下一次計算以新的標的價格為基準
+        String ticker = synthetic.getTickers().get(0);
+        spots.put(ticker, spots.get(ticker) * 1.1);
+        valuation.onStockPriceUpdate(ticker, spots.get(ticker));
+        checkReport("報價之後", engine, positions, securities, spots, volatilities);
+
+        // 波動率更新與成交: 持倉版本改變, 重新編譯
+        for (Security security : securities.values()) {
+            if (security instanceof EuropeanCallOption && ((EuropeanCallOption) security).getUnderlyingTicker().equals(ticker)) {
+                volatilities.put(security.getTicker(), ((EuropeanCallOption) security).getSigma() * 1.5);
+            }
+        }
+        valuation.updateVolatilities(volatilities);
+        String traded = positions.get(1).getSymbol();
+        long version = valuation.applyTrades(Collections.singletonList(new Trade(traded, 5000L)));
+        positions.set(1, new Position(traded, positions.get(1).getPositionSize() + 5000L));
+        checkReport("波動率更新與成交之後", engine, positions, securities, spots, volatilities);
+        assertEquals(version, engine.getCompiledVersion(), "網格編譯的持倉版本");
+    }
+
+    @Test
+    void underlyingPricedAfterCompileIsIncluded() {
+        SyntheticBookGenerator synthetic = new SyntheticBookGenerator(10, 5, 3L);
+        String late = synthetic.getTickers().get(3);
+        Map<String, Double> spots = new HashMap<>(synthetic.getInitialPrices());
+        double lateSpot = spots.remove(late);
+        PortfolioValuationService valuation = new PortfolioValuationService(synthetic.getPositions(),
+                synthetic.getSecurities(), spots, PRICING);
+        ScenarioGridEngine engine = new ScenarioGridEngine(valuation, synthetic.getSecurities(), PRICING);
+
+        ScenarioGridReport before = engine.run(SPOT_SHOCKS, VOL_SHOCKS, 1);
+        assertFalse(before.getUnderlyingTickers().contains(late), "沒有報價的標的不應列入網格");
+
+        valuation.onStockPriceUpdate(late, lateSpot);
+        ScenarioGridReport after = engine.run(SPOT_SHOCKS, VOL_SHOCKS, 1);
+        assertEquals(before.getPositionsVersion(), after.getPositionsVersion(), "持倉版本");
+        assertTrue(after.getUnderlyingTickers().contains(late), "收到報價後的標的應列入網格");
+        spots.put(late, lateSpot);
+        checkReport("補上報價之後", engine, synthetic.getPositions(), synthetic.getSecurities(), spots, new HashMap<>());
+    }
+
+    private static void checkReport(String label, ScenarioGridEngine engine, List<Position> positions,
+                                    Map<String, Security> securities, Map<String, Double> spots, Map<String, Double> volatilities) {
+        ScenarioGridReport parallel = engine.run(SPOT_SHOCKS, VOL_SHOCKS, 4);
+        ScenarioGridReport sequential = engine.run(SPOT_SHOCKS, VOL_SHOCKS, 1);
+
+        double exposure = 0.0;
+        for (Position position : positions) {
+            exposure += Math.abs(position.getPositionSize()) * spots.get(underlyingOf(securities.get(position.getSymbol())));
+        }
+        for (int s = 0; s < SPOT_SHOCKS.length; s++) {
+            for (int v = 0; v < VOL_SHOCKS.length; v++) {
+                String cell = label + " (" + s + ", " + v + ")";
+                assertEquals(sequential.getTotalPnl(s, v), parallel.getTotalPnl(s, v), cell + " 1 / 4 執行緒的合計損益");
+                double sum = 0.0;
+                for (String ticker : parallel.getUnderlyingTickers()) {
+                    assertEquals(sequential.getPnl(ticker, s, v), parallel.getPnl(ticker, s, v), cell + " 1 / 4 執行緒的 " + ticker + " 損益");
+                    sum += parallel.getPnl(ticker, s, v);
+                }
+                assertEquals(parallel.getTotalPnl(s, v), sum, TOLERANCE * exposure, cell + " 各標的損益相加");
+            }
+        }
+        assertEquals(0.0, parallel.getTotalPnl(SPOT_SHOCKS.length / 2, VOL_SHOCKS.length / 2), label + " 中心格的損益");
+
+        // 抽樣的格子 (含四個角) 與逐筆持倉重新定價的參照值比較
+        double base = revalue(positions, securities, spots, volatilities, 0.0, 0.0);
+        assertEquals(base / exposure, parallel.getPortfolioValue() / exposure, TOLERANCE, label + " 投資組合價值 (相對曝險)");
+        RandomStream random = RandomStream.create(RandomStream.SPLITTABLE, 17L);
+        for (int k = 0; k < SAMPLES; k++) {
+            int s = k < 4 ? (k & 1) * (SPOT_SHOCKS.length - 1) : random.nextInt(SPOT_SHOCKS.length);
+            int v = k < 4 ? (k >> 1) * (VOL_SHOCKS.length - 1) : random.nextInt(VOL_SHOCKS.length);
+            double expected = revalue(positions, securities, spots, volatilities, SPOT_SHOCKS[s], VOL_SHOCKS[v]) - base;
+            assertEquals(expected / exposure, parallel.getTotalPnl(s, v) / exposure, TOLERANCE,
+                    label + " (" + s + ", " + v + ") 與參照值的損益 (相對曝險)");
+        }
+    }
+
+    // 參照值: 所有標的同時套用變動後, 逐筆持倉以 OptionPricingService 定價
+    private static double revalue(List<Position> positions, Map<String, Security> securities, Map<String, Double> spots,
+                                  Map<String, Double> volatilities, double spotShock, double volShock) {
+        double value = 0.0;
+        for (Position position : positions) {
+            Security security = securities.get(position.getSymbol());
+            double spot = spots.get(underlyingOf(security)) * (1.0 + spotShock);
+            double price;
+            if (security instanceof Stock) {
+                price = spot;
+            } else if (security instanceof EuropeanCallOption) {
+                EuropeanCallOption call = (EuropeanCallOption) security;
+                double sigma = volatilities.getOrDefault(call.getTicker(), call.getSigma()) * (1.0 + volShock);
+                price = PRICING.calculateCallPrice(spot, call.getStrikePrice(), sigma, call.getTimeToMaturity());
+            } else {
+                EuropeanPutOption put = (EuropeanPutOption) security;
+                double sigma = volatilities.getOrDefault(put.getTicker(), put.getSigma()) * (1.0 + volShock);
+                price = PRICING.calculatePutPrice(spot, put.getStrikePrice(), sigma, put.getTimeToMaturity());
+            }
+            value += position.getPositionSize() * price;
+        }
+        return value;
+    }
+
+    private static String underlyingOf(Security security) {
+        if (security instanceof EuropeanCallOption) {
+            return ((EuropeanCallOption) security).getUnderlyingTicker();
+        }
+        if (security instanceof EuropeanPutOption) {
+            return ((EuropeanPutOption) security).getUnderlyingTicker();
+        }
+        return security.getTicker();
+    }
+}